@@ -99,6 +99,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Pre-defined strategies for mapping between Java types and DynamoDB types.
@@ -203,6 +205,15 @@ public final class ConversionSchemas {
         private final DynamoDBReflector reflector;
         private final S3ClientCache s3cc;
 
+        /*
+         * The marshaller and unmarshaller of each getter, with their member
+         * marshallers resolved, so they're looked up only once.
+         */
+        private final ConcurrentMap<Method, ArgumentMarshaller> marshallers =
+                new ConcurrentHashMap<Method, ArgumentMarshaller>();
+        private final ConcurrentMap<Method, ArgumentUnmarshaller> unmarshallers =
+                new ConcurrentHashMap<Method, ArgumentUnmarshaller>();
+
         public StandardItemConverter(
                 MarshallerSet marshallerSet,
                 UnmarshallerSet unmarshallerSet,
@@ -268,15 +279,16 @@ public final class ConversionSchemas {
             final Map<String, AttributeValue> result =
                     new HashMap<String, AttributeValue>();
 
-            for (final Method getter : reflector.getRelevantGetters(clazz)) {
+            for (final ItemSchema.Property property : reflector.getItemSchema(clazz)
+                    .getProperties()) {
+                final Method getter = property.getGetter();
                 final Object getterResult =
                         ReflectionUtils.safeInvoke(getter, object);
 
                 if (getterResult != null) {
                     final AttributeValue value = convert(getter, getterResult);
                     if (value != null) {
-                        final String name = reflector.getAttributeName(getter);
-                        result.put(name, value);
+                        result.put(property.getAttributeName(), value);
                     }
                 }
             }
@@ -285,11 +297,16 @@ public final class ConversionSchemas {
         }
 
         private ArgumentMarshaller getMarshaller(Method getter) {
-            ArgumentMarshaller marshaller =
-                    marshallerSet.getMarshaller(getter);
+            ArgumentMarshaller marshaller = marshallers.get(getter);
+            if (marshaller != null) {
+                return marshaller;
+            }
+
+            marshaller = marshallerSet.getMarshaller(getter);
 
             marshaller = augment(getter.getGenericReturnType(), marshaller);
 
+            marshallers.putIfAbsent(getter, marshaller);
             return marshaller;
         }
 
@@ -413,11 +430,11 @@ public final class ConversionSchemas {
                 return result;
             }
 
-            for (final Method m : reflector.getRelevantGetters(clazz)) {
-                final String attributeName = reflector.getAttributeName(m);
-                final AttributeValue av = value.get(attributeName);
+            for (final ItemSchema.Property property : reflector.getItemSchema(clazz)
+                    .getProperties()) {
+                final AttributeValue av = value.get(property.getAttributeName());
                 if (av != null) {
-                    setValue(result, m, av);
+                    setValue(result, property, av);
                 }
             }
 
@@ -426,10 +443,14 @@ public final class ConversionSchemas {
 
         private void setValue(
                 Object target,
-                Method getter,
+                ItemSchema.Property property,
                 AttributeValue value) {
 
-            final Method setter = reflector.getSetter(getter);
+            final Method getter = property.getGetter();
+            // a missing setter only fails once there's a value to set
+            final Method setter = property.getSetter() == null
+                    ? reflector.getSetter(getter)
+                    : property.getSetter();
             final ArgumentUnmarshaller unmarshaller =
                     getUnmarshaller(getter, setter);
 
@@ -441,13 +462,19 @@ public final class ConversionSchemas {
                 Method getter,
                 Method setter) {
 
-            ArgumentUnmarshaller unmarshaller =
-                    unmarshallerSet.getUnmarshaller(getter, setter);
+            ArgumentUnmarshaller unmarshaller = unmarshallers.get(getter);
+            if (unmarshaller != null) {
+                return unmarshaller;
+            }
+
+            unmarshaller = unmarshallerSet.getUnmarshaller(getter, setter);
 
             unmarshaller = augment(
                     setter.getGenericParameterTypes()[0], unmarshaller);
 
-            return new NullableUnmarshaller(unmarshaller);
+            unmarshaller = new NullableUnmarshaller(unmarshaller);
+            unmarshallers.putIfAbsent(getter, unmarshaller);
+            return unmarshaller;
         }
 
         private ArgumentUnmarshaller getMemberUnmarshaller(Type type) {
@@ -1263,11 +1290,11 @@ public final class ConversionSchemas {
 
     static class CachingMarshallerSet implements MarshallerSet {
 
-        private final Map<Method, ArgumentMarshaller> cache =
-                new HashMap<Method, ArgumentMarshaller>();
+        private final ConcurrentMap<Method, ArgumentMarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentMarshaller>();
 
-        private final Map<Type, ArgumentMarshaller> memberCache =
-                new HashMap<Type, ArgumentMarshaller>();
+        private final ConcurrentMap<Type, ArgumentMarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentMarshaller>();
 
         private final MarshallerSet wrapped;
 
@@ -1277,40 +1304,40 @@ public final class ConversionSchemas {
 
         @Override
         public ArgumentMarshaller getMarshaller(Method getter) {
-            synchronized (cache) {
-                ArgumentMarshaller marshaler = cache.get(getter);
-                if (marshaler != null) {
-                    return marshaler;
-                }
-
-                marshaler = wrapped.getMarshaller(getter);
-                cache.put(getter, marshaler);
+            ArgumentMarshaller marshaler = cache.get(getter);
+            if (marshaler != null) {
                 return marshaler;
             }
+
+            marshaler = wrapped.getMarshaller(getter);
+            if (marshaler != null) {
+                cache.putIfAbsent(getter, marshaler);
+            }
+            return marshaler;
         }
 
         @Override
         public ArgumentMarshaller getMemberMarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentMarshaller marshaller = memberCache.get(memberType);
-                if (marshaller != null) {
-                    return marshaller;
-                }
-
-                marshaller = wrapped.getMemberMarshaller(memberType);
-                memberCache.put(memberType, marshaller);
+            ArgumentMarshaller marshaller = memberCache.get(memberType);
+            if (marshaller != null) {
                 return marshaller;
             }
+
+            marshaller = wrapped.getMemberMarshaller(memberType);
+            if (marshaller != null) {
+                memberCache.putIfAbsent(memberType, marshaller);
+            }
+            return marshaller;
         }
     }
 
     static class CachingUnmarshallerSet implements UnmarshallerSet {
 
-        private final Map<Method, ArgumentUnmarshaller> cache =
-                new HashMap<Method, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Method, ArgumentUnmarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentUnmarshaller>();
 
-        private final Map<Type, ArgumentUnmarshaller> memberCache =
-                new HashMap<Type, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Type, ArgumentUnmarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentUnmarshaller>();
 
         private final UnmarshallerSet wrapped;
 
@@ -1323,30 +1350,30 @@ public final class ConversionSchemas {
                 Method getter,
                 Method setter) {
 
-            synchronized (cache) {
-                ArgumentUnmarshaller unmarshaler = cache.get(getter);
-                if (unmarshaler != null) {
-                    return unmarshaler;
-                }
-
-                unmarshaler = wrapped.getUnmarshaller(getter, setter);
-                cache.put(getter, unmarshaler);
+            ArgumentUnmarshaller unmarshaler = cache.get(getter);
+            if (unmarshaler != null) {
                 return unmarshaler;
             }
+
+            unmarshaler = wrapped.getUnmarshaller(getter, setter);
+            if (unmarshaler != null) {
+                cache.putIfAbsent(getter, unmarshaler);
+            }
+            return unmarshaler;
         }
 
         @Override
         public ArgumentUnmarshaller getMemberUnmarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
-                if (unmarshaller != null) {
-                    return unmarshaller;
-                }
-
-                unmarshaller = wrapped.getMemberUnmarshaller(memberType);
-                memberCache.put(memberType, unmarshaller);
+            ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
+            if (unmarshaller != null) {
                 return unmarshaller;
             }
+
+            unmarshaller = wrapped.getMemberUnmarshaller(memberType);
+            if (unmarshaller != null) {
+                memberCache.putIfAbsent(memberType, unmarshaller);
+            }
+            return unmarshaller;
         }
     }
 
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of the items read by {@link DynamoDBMapper#load}, so that
+ * items read over and over don't cost a GetItem request each time.
+ * <p>
+ * Items are cached by table name and key, and evicted least recently used
+ * first once the cache holds more than its max number of items or more than
+ * its max number of bytes, as estimated from the lengths of the attribute
+ * names and values. An item expires after the time to live of its table,
+ * which is the default one unless set with {@link #setTableTimeToLive}.
+ * <p>
+ * The mappers sharing the cache drop the items they save or delete, including
+ * with batchWrite, but writes made by other clients are only seen once the
+ * cached item expires. Loads with {@link DynamoDBMapperConfig.ConsistentReads#CONSISTENT}
+ * skip the cache and cache the item they read.
+ * <p>
+ * Set it with {@link DynamoDBMapperConfig.Builder#setItemCache}. The objects
+ * are unmarshalled from the cached attributes on every load, so callers never
+ * share an object. Items are copied into and out of the cache, binary values
+ * included, so changing a loaded object doesn't change the cached item.
+ */
+public class DynamoDBItemCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long defaultTimeToLiveNanos;
+
+    private final Map<String, Long> tableTimeToLiveNanos = new ConcurrentHashMap<String, Long>();
+
+    /** The cached items, least recently used first. Guarded by itself. */
+    private final LinkedHashMap<CacheKey, Entry> entries =
+            new LinkedHashMap<CacheKey, Entry>(16, 0.75f, true);
+
+    /** The estimated size of the cached items. Guarded by entries. */
+    private long bytes;
+
+    /**
+     * Incremented by each invalidation, so that an item read before it isn't
+     * cached after it. Guarded by entries.
+     */
+    private long invalidations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries the max number of items cached, at least 1.
+     * @param maxBytes the max estimated size of the items cached, at least 1.
+     * @param timeToLive how long items are cached by default, at least 0. With
+     *            0, items are only cached for the tables with a time to live of
+     *            their own.
+     * @param unit the unit of the time to live.
+     */
+    public DynamoDBItemCache(int maxEntries, long maxBytes, long timeToLive, TimeUnit unit) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache limits must be at least 1");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.defaultTimeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * Sets how long the items of a table are cached.
+     *
+     * @param tableName the name of the table, after any table name override.
+     * @param timeToLive how long the items are cached, at least 0. With 0, the
+     *            items of the table aren't cached.
+     * @param unit the unit of the time to live.
+     */
+    public void setTableTimeToLive(String tableName, long timeToLive, TimeUnit unit) {
+        if (tableName == null) {
+            throw new IllegalArgumentException("Table name cannot be null");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        tableTimeToLiveNanos.put(tableName, unit.toNanos(timeToLive));
+    }
+
+    /**
+     * Sets how long the items of a table are cached.
+     *
+     * @param tableName the name of the table, after any table name override.
+     * @param timeToLive how long the items are cached, at least 0. With 0, the
+     *            items of the table aren't cached.
+     * @param unit the unit of the time to live.
+     * @return this cache
+     */
+    public DynamoDBItemCache withTableTimeToLive(String tableName, long timeToLive,
+            TimeUnit unit) {
+        setTableTimeToLive(tableName, timeToLive, unit);
+        return this;
+    }
+
+    /**
+     * Caches the items of a table for the default time to live again.
+     *
+     * @param tableName the name of the table.
+     */
+    public void removeTableTimeToLive(String tableName) {
+        tableTimeToLiveNanos.remove(tableName);
+    }
+
+    /**
+     * Drops the item with the key given, if cached.
+     *
+     * @param tableName the name of the table.
+     * @param key the primary key of the item.
+     */
+    public void invalidate(String tableName, Map<String, AttributeValue> key) {
+        synchronized (entries) {
+            invalidations++;
+            final Entry removed = entries.remove(new CacheKey(tableName, key));
+            if (removed != null) {
+                bytes -= removed.bytes;
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached items.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidations++;
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @return the number of loads answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of loads which didn't find their item in the cache,
+     *         not counting the consistent reads.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of items evicted to stay within the limits, not
+     *         counting the expired and invalidated ones.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of items cached, including expired ones not dropped
+     *         yet.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the estimated size of the items cached.
+     */
+    public long getSizeInBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns the cached attributes of the item with the key given, or null
+     * if it isn't cached or has expired. The attributes returned are a copy.
+     */
+    Map<String, AttributeValue> get(String tableName, Map<String, AttributeValue> key) {
+        final CacheKey cacheKey = new CacheKey(tableName, key);
+        synchronized (entries) {
+            final Entry entry = entries.get(cacheKey);
+            if (entry != null) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    hits.incrementAndGet();
+                    return copy(entry.item);
+                }
+                entries.remove(cacheKey);
+                bytes -= entry.bytes;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the token to pass to {@link #put} for an item about to be read.
+     */
+    long startRead() {
+        synchronized (entries) {
+            return invalidations;
+        }
+    }
+
+    /**
+     * Caches the attributes of an item, unless its table isn't cached, it is
+     * too large, or items have been invalidated since it was read.
+     *
+     * @param readToken the token {@link #startRead} returned before the item
+     *            was read.
+     */
+    void put(String tableName, Map<String, AttributeValue> key, Map<String, AttributeValue> item,
+            long readToken) {
+        final Long tableTimeToLive = tableTimeToLiveNanos.get(tableName);
+        final long timeToLive = tableTimeToLive == null ? defaultTimeToLiveNanos
+                : tableTimeToLive;
+        if (timeToLive == 0) {
+            return;
+        }
+        final long size = estimateSize(item);
+        if (size > maxBytes) {
+            return;
+        }
+        final Entry entry = new Entry(copy(item), size,
+                System.nanoTime() + timeToLive);
+        synchronized (entries) {
+            if (invalidations != readToken) {
+                return;
+            }
+            final Entry replaced = entries.put(new CacheKey(tableName, key), entry);
+            if (replaced != null) {
+                bytes -= replaced.bytes;
+            }
+            bytes += size;
+            final Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Copies the attributes of an item. The binary values are copied too, as
+     * the unmarshalled objects may share their bytes.
+     */
+    private static Map<String, AttributeValue> copy(Map<String, AttributeValue> item) {
+        final Map<String, AttributeValue> copy = new HashMap<String, AttributeValue>();
+        for (final Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            copy.put(attribute.getKey(), copy(attribute.getValue()));
+        }
+        return copy;
+    }
+
+    private static AttributeValue copy(AttributeValue value) {
+        final AttributeValue copy = new AttributeValue();
+        copy.setS(value.getS());
+        copy.setN(value.getN());
+        copy.setBOOL(value.getBOOL());
+        copy.setNULL(value.getNULL());
+        if (value.getB() != null) {
+            copy.setB(copy(value.getB()));
+        }
+        if (value.getSS() != null) {
+            copy.setSS(new ArrayList<String>(value.getSS()));
+        }
+        if (value.getNS() != null) {
+            copy.setNS(new ArrayList<String>(value.getNS()));
+        }
+        if (value.getBS() != null) {
+            final List<ByteBuffer> bs = new ArrayList<ByteBuffer>(value.getBS().size());
+            for (final ByteBuffer b : value.getBS()) {
+                bs.add(copy(b));
+            }
+            copy.setBS(bs);
+        }
+        if (value.getM() != null) {
+            copy.setM(copy(value.getM()));
+        }
+        if (value.getL() != null) {
+            final List<AttributeValue> l = new ArrayList<AttributeValue>(value.getL().size());
+            for (final AttributeValue element : value.getL()) {
+                l.add(copy(element));
+            }
+            copy.setL(l);
+        }
+        return copy;
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Estimates the size of an item the way DynamoDB measures it: the lengths
+     * of the attribute names plus the lengths of the values.
+     */
+    static long estimateSize(Map<String, AttributeValue> item) {
+        long size = 0;
+        for (final Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            size += attribute.getKey().length() + estimateSize(attribute.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(AttributeValue value) {
+        if (value.getS() != null) {
+            return value.getS().length();
+        }
+        if (value.getN() != null) {
+            return value.getN().length();
+        }
+        if (value.getB() != null) {
+            return value.getB().remaining();
+        }
+        if (value.getSS() != null) {
+            return sumLengths(value.getSS());
+        }
+        if (value.getNS() != null) {
+            return sumLengths(value.getNS());
+        }
+        if (value.getBS() != null) {
+            long size = 0;
+            for (final ByteBuffer b : value.getBS()) {
+                size += b.remaining();
+            }
+            return size;
+        }
+        if (value.getM() != null) {
+            return 3 + estimateSize(value.getM());
+        }
+        if (value.getL() != null) {
+            long size = 3;
+            for (final AttributeValue element : value.getL()) {
+                size += 1 + estimateSize(element);
+            }
+            return size;
+        }
+        // BOOL or NULL
+        return 1;
+    }
+
+    private static long sumLengths(Collection<String> strings) {
+        long size = 0;
+        for (final String s : strings) {
+            size += s.length();
+        }
+        return size;
+    }
+
+    /**
+     * The table name and primary key of an item.
+     */
+    private static final class CacheKey {
+        private final String tableName;
+        private final Map<String, AttributeValue> key;
+
+        CacheKey(String tableName, Map<String, AttributeValue> key) {
+            this.tableName = tableName;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) o;
+            return tableName.equals(other.tableName) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tableName.hashCode() + key.hashCode();
+        }
+    }
+
+    /**
+     * A cached item.
+     */
+    private static final class Entry {
+        private final Map<String, AttributeValue> item;
+        private final long bytes;
+        private final long expiresAt;
+
+        Entry(Map<String, AttributeValue> item, long bytes, long expiresAt) {
+            this.item = item;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
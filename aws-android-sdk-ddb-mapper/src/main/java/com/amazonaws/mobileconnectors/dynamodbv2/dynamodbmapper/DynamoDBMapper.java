@@ -16,7 +16,6 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.mobile.config.AWSConfiguration;
@@ -24,7 +23,6 @@ import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperCo
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.SaveBehavior;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBTableSchemaParser.TableIndexesInfo;
-import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeAction;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -32,7 +30,6 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
@@ -70,14 +67,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Object mapper for domain-object interaction with DynamoDB.
@@ -187,12 +184,9 @@ public class DynamoDBMapper {
     /** The max back off time for batch write */
     static final long MAX_BACKOFF_IN_MILLISECONDS = 1000 * 3;
 
-    private static final long THREAD_SLEEP_TWO_SECONDS = 1000 * 2;
-
     /** The max number of items allowed in a BatchWrite request */
     static final int MAX_ITEMS_PER_BATCH = 25;
 
-    private static final int MAX_BATCH_GET_COUNT = 100;
     /**
      * This retry count is applicable only when every batch get item request
      * results in no data retrieved from server and the un processed keys is
@@ -200,8 +194,9 @@ public class DynamoDBMapper {
      */
     static final int BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS = 5;
 
+    /** The backoff after the first throttled batch request */
     private static final int EXPONENTIAL_BACKOFF_OFFSET = 500;
-    private static final int EXPONENTIAL_BACKOFF_RANDOMIZATION_OFFSET = 100;
+
     /**
      * User agent for requests made using the {@link DynamoDBMapper}.
      */
@@ -597,10 +592,28 @@ public class DynamoDBMapper {
         rq.setTableName(tableName);
         rq.setConsistentRead(config.getConsistentReads() == ConsistentReads.CONSISTENT);
 
-        final GetItemResult item = db.getItem(applyUserAgent(rq));
-        final Map<String, AttributeValue> itemAttributes = item.getItem();
+        final Projection projection = getProjection(clazz, null);
+        if (projection != null) {
+            rq.setProjectionExpression(projection.expression);
+            rq.setExpressionAttributeNames(projection.attributeNames);
+        }
+
+        // a view only reads some of the attributes, which mustn't be cached
+        final DynamoDBItemCache cache = projection == null ? config.getItemCache() : null;
+        Map<String, AttributeValue> itemAttributes = null;
+        if (cache != null && !rq.getConsistentRead()) {
+            itemAttributes = cache.get(tableName, key);
+        }
         if (itemAttributes == null) {
-            return null;
+            final long readToken = cache == null ? 0 : cache.startRead();
+            final GetItemResult item = db.getItem(applyUserAgent(rq));
+            itemAttributes = item.getItem();
+            if (itemAttributes == null) {
+                return null;
+            }
+            if (cache != null) {
+                cache.put(tableName, key, itemAttributes, readToken);
+            }
         }
 
         final T object = privateMarshallIntoObject(
@@ -874,24 +887,33 @@ public class DynamoDBMapper {
     }
 
     /**
-     * A replacement for {@link #marshallIntoObjects(Class, List)} that takes an
-     * extra set of parameters to be tunneled through to
-     * {@code privateMarshalIntoObject} (if nothing along the way is
-     * overridden). It's package-private because some of the Paginated*List
-     * classes call back into it, but final because no one, even in this
-     * package, should ever override it.
+     * A replacement for {@link #marshallIntoObjects(Class, List)} that
+     * converts the items of a query, scan or batch get response straight into
+     * objects, one at a time, without building the transformer parameters of
+     * the whole page first. Without an {@link AttributeTransformer} the
+     * attribute values go to the converter as they are, and attributes the
+     * class doesn't map are never looked at. It's package-private because
+     * some of the Paginated*List classes call back into it, but final because
+     * no one, even in this package, should ever override it.
      */
-    final <T> List<T> marshallIntoObjects(
-            final List<AttributeTransformer.Parameters<T>> parameters) {
-        final List<T> result = new ArrayList<T>(parameters.size());
-
-        ItemConverter converter = null;
-        if (!parameters.isEmpty()) {
-            converter = getConverter(parameters.get(0).getMapperConfig());
+    final <T> List<T> unmarshallItems(
+            final List<Map<String, AttributeValue>> items,
+            final Class<T> clazz,
+            final String tableName,
+            final DynamoDBMapperConfig config) {
+        if (items == null || items.isEmpty()) {
+            return new ArrayList<T>(0);
         }
 
-        for (final AttributeTransformer.Parameters<T> entry : parameters) {
-            result.add(privateMarshallIntoObject(converter, entry));
+        final ItemConverter converter = getConverter(config);
+        final List<T> result = new ArrayList<T>(items.size());
+        for (final Map<String, AttributeValue> item : items) {
+            if (transformer == null) {
+                result.add(converter.unconvert(clazz, item));
+            } else {
+                result.add(privateMarshallIntoObject(converter,
+                        toParameters(item, clazz, tableName, config)));
+            }
         }
 
         return result;
@@ -1129,7 +1151,34 @@ public class DynamoDBMapper {
             };
         }
 
-        saveObjectHandler.execute();
+        try {
+            saveObjectHandler.execute();
+        } finally {
+            invalidateCachedItem(finalConfig, converter, tableName, object);
+        }
+    }
+
+    /**
+     * Drops the item of the object given from the item cache of the config,
+     * if any. Objects whose key is still null weren't saved, so they aren't
+     * cached.
+     */
+    private void invalidateCachedItem(DynamoDBMapperConfig config, ItemConverter converter,
+            String tableName, Object object) {
+        final DynamoDBItemCache cache = config.getItemCache();
+        if (cache == null) {
+            return;
+        }
+        final Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        for (final Method keyGetter : reflector.getPrimaryKeyGetters(object.getClass())) {
+            final AttributeValue value = converter.convert(keyGetter,
+                    ReflectionUtils.safeInvoke(keyGetter, object));
+            if (value == null) {
+                return;
+            }
+            key.put(reflector.getAttributeName(keyGetter), value);
+        }
+        cache.invalidate(tableName, key);
     }
 
     /**
@@ -1399,7 +1448,10 @@ public class DynamoDBMapper {
                     .withReturnValues(ReturnValue.ALL_NEW)
                     .withRequestMetricCollector(saveConfig.getRequestMetricCollector());
 
-            return db.updateItem(applyUserAgent(req));
+            final DynamoDBRateLimiter limiter = saveConfig.getRateLimiter();
+            return limiter == null
+                    ? db.updateItem(applyUserAgent(req))
+                    : limiter.updateItem(db, applyUserAgent(req));
         }
 
         /**
@@ -1428,7 +1480,10 @@ public class DynamoDBMapper {
                     .withConditionalOperator(userProvidedConditionOperator)
                     .withRequestMetricCollector(saveConfig.getRequestMetricCollector());
 
-            return db.putItem(applyUserAgent(req));
+            final DynamoDBRateLimiter limiter = saveConfig.getRateLimiter();
+            return limiter == null
+                    ? db.putItem(applyUserAgent(req))
+                    : limiter.putItem(db, applyUserAgent(req));
         }
 
         private void onAutoGenerateAssignableKey(Method method, String attributeName) {
@@ -1587,7 +1642,14 @@ public class DynamoDBMapper {
                             deleteExpression.getConditionalOperator());
 
         }
-        db.deleteItem(applyUserAgent(req));
+        try {
+            db.deleteItem(applyUserAgent(req));
+        } finally {
+            final DynamoDBItemCache cache = config.getItemCache();
+            if (cache != null) {
+                cache.invalidate(tableName, key);
+            }
+        }
     }
 
     /**
@@ -1719,11 +1781,47 @@ public class DynamoDBMapper {
      */
     public List<FailedBatch> batchWrite(List<? extends Object> objectsToWrite,
             List<? extends Object> objectsToDelete, DynamoDBMapperConfig config) {
-        config = mergeConfig(config);
-
         final List<FailedBatch> totalFailedBatches = new LinkedList<FailedBatch>();
+        batchWrite(objectsToWrite, objectsToDelete, config, new FailedBatchListener() {
+            @Override
+            public void onFailedBatch(FailedBatch failedBatch) {
+                totalFailedBatches.add(failedBatch);
+            }
+        });
+        return totalFailedBatches;
+    }
 
-        final HashMap<String, List<WriteRequest>> requestItems = new HashMap<String, List<WriteRequest>>();
+    /**
+     * Saves and deletes the objects given using one or more calls to the
+     * {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)} API,
+     * reporting each failed batch as soon as it fails.
+     * <p>
+     * Up to {@link DynamoDBMapperConfig#getBatchWriteConcurrency()} requests
+     * are in flight at a time. Items left unprocessed by DynamoDB are sent
+     * again in the following requests, and throttled requests are retried
+     * after a randomized, exponentially growing delay during which no new
+     * request is sent.
+     * </p>
+     *
+     * @param objectsToWrite A list of objects to save to DynamoDB. <b>No
+     *            version checks are performed</b>.
+     * @param objectsToDelete A list of objects to delete from DynamoDB. <b>No
+     *            version checks are performed</b>.
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()}
+     *            and {@link DynamoDBMapperConfig#getBatchWriteConcurrency()}
+     *            are considered.
+     * @param listener notified of each failed batch, with the unprocessed
+     *            items and the exception causing the failure, on the calling
+     *            thread.
+     * @see DynamoDBMapper#batchWrite(List, List, DynamoDBMapperConfig)
+     */
+    public void batchWrite(List<? extends Object> objectsToWrite,
+            List<? extends Object> objectsToDelete, DynamoDBMapperConfig config,
+            FailedBatchListener listener) {
+        config = mergeConfig(config);
+
+        final Map<String, List<WriteRequest>> requestItems =
+                new LinkedHashMap<String, List<WriteRequest>>();
 
         final ItemConverter converter = getConverter(config);
 
@@ -1782,49 +1880,22 @@ public class DynamoDBMapper {
                     new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(key)));
         }
 
-        // Break into chunks of 25 items and make service requests to DynamoDB
-        while (!requestItems.isEmpty()) {
-
-            final HashMap<String, List<WriteRequest>> batch =
-                    new HashMap<String, List<WriteRequest>>();
-
-            int i = 0;
-
-            final Iterator<Entry<String, List<WriteRequest>>> tableIter = requestItems.entrySet()
-                    .iterator();
-            while (tableIter.hasNext() && i < MAX_ITEMS_PER_BATCH) {
-
-                final Entry<String, List<WriteRequest>> tableRequest = tableIter.next();
-
-                batch.put(tableRequest.getKey(), new LinkedList<WriteRequest>());
-                final Iterator<WriteRequest> writeRequestIter = tableRequest.getValue().iterator();
-
-                while (writeRequestIter.hasNext() && i++ < MAX_ITEMS_PER_BATCH) {
-                    final WriteRequest writeRequest = writeRequestIter.next();
-                    batch.get(tableRequest.getKey()).add(writeRequest);
-                    writeRequestIter.remove();
-                }
-
-                // If we've processed all the write requests for this table,
-                // remove it from the parent iterator.
-                if (!writeRequestIter.hasNext()) {
-                    tableIter.remove();
-                }
+        // Break into chunks of 25 items and make service requests to DynamoDB,
+        // unprocessed items are merged into the next chunks
+        final Integer concurrency = config.getBatchWriteConcurrency();
+        try {
+            new ParallelBatchWriter(db, concurrency == null ? 1 : concurrency,
+                    EXPONENTIAL_BACKOFF_OFFSET, MAX_BACKOFF_IN_MILLISECONDS,
+                    config.getRateLimiter(), getParallelScanExecutor(config))
+                    .write(requestItems, listener);
+        } finally {
+            for (final Object written : objectsToWrite) {
+                invalidateCachedItem(config, converter,
+                        getTableName(written.getClass(), written, config), written);
             }
-
-            final List<FailedBatch> failedBatches = writeOneBatch(batch);
-            if (failedBatches != null) {
-                totalFailedBatches.addAll(failedBatches);
-
-                // If contains throttling exception, we do a backoff
-                if (containsThrottlingException(failedBatches)) {
-                    try {
-                        Thread.sleep(THREAD_SLEEP_TWO_SECONDS);
-                    } catch (final InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new AmazonClientException(e.getMessage(), e);
-                    }
-                }
+            for (final Object deleted : objectsToDelete) {
+                invalidateCachedItem(config, converter,
+                        getTableName(deleted.getClass(), deleted, config), deleted);
             }
         }
 
@@ -1832,130 +1903,6 @@ public class DynamoDBMapper {
         for (final ValueUpdate update : inMemoryUpdates) {
             update.apply();
         }
-
-        return totalFailedBatches;
-    }
-
-    /**
-     * Process one batch of requests(max 25). It will divide the batch if
-     * receives request too large exception(the total size of the request is
-     * beyond 1M).
-     */
-    List<FailedBatch> writeOneBatch(Map<String, List<WriteRequest>> batch) {
-
-        final List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
-        final Map<String, List<WriteRequest>> firstHalfBatch = new HashMap<String, List<WriteRequest>>();
-        final Map<String, List<WriteRequest>> secondHalfBatch = new HashMap<String, List<WriteRequest>>();
-        final FailedBatch failedBatch = callUntilCompletion(batch);
-
-        if (failedBatch != null) {
-            // If the exception is request entity too large, we divide the batch
-            // into smaller parts.
-
-            if (failedBatch.getException() instanceof AmazonServiceException
-                    && RetryUtils
-                            .isRequestEntityTooLargeException((AmazonServiceException) failedBatch
-                                    .getException())) {
-
-                // If only one item left, the item size must beyond 64k, which
-                // exceedes the limit.
-
-                if (computeFailedBatchSize(failedBatch) == 1) {
-                    failedBatches.add(failedBatch);
-                } else {
-                    divideBatch(batch, firstHalfBatch, secondHalfBatch);
-                    failedBatches.addAll(writeOneBatch(firstHalfBatch));
-                    failedBatches.addAll(writeOneBatch(secondHalfBatch));
-                }
-
-            } else {
-                failedBatches.add(failedBatch);
-            }
-
-        }
-        return failedBatches;
-    }
-
-    /**
-     * Check whether there are throttling exception in the failed batches.
-     */
-    boolean containsThrottlingException(List<FailedBatch> failedBatches) {
-        for (final FailedBatch failedBatch : failedBatches) {
-            final Exception e = failedBatch.getException();
-            if (e instanceof AmazonServiceException
-                    && RetryUtils.isThrottlingException((AmazonServiceException) e)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Divide the batch of objects to save into two smaller batches. Each
-     * contains half of the elements.
-     */
-    private void divideBatch(Map<String, List<WriteRequest>> batch,
-            Map<String, List<WriteRequest>> firstHalfBatch,
-            Map<String, List<WriteRequest>> secondHalfBatch) {
-        for (final String key : batch.keySet()) {
-
-            final List<WriteRequest> requests = batch.get(key);
-
-            final List<WriteRequest> firstHalfRequests = requests.subList(0, requests.size() / 2);
-
-            final List<WriteRequest> secondHalfRequests = requests.subList(requests.size() / 2,
-                    requests.size());
-
-            firstHalfBatch.put(key, firstHalfRequests);
-
-            secondHalfBatch.put(key, secondHalfRequests);
-
-        }
-
-    }
-
-    /**
-     * Count the total number of unprocessed items in the failed batch.
-     */
-
-    private int computeFailedBatchSize(FailedBatch failedBatch) {
-
-        int count = 0;
-
-        for (final String tableName : failedBatch.getUnprocessedItems().keySet()) {
-            count += failedBatch.getUnprocessedItems().get(tableName).size();
-        }
-        return count;
-    }
-
-    /**
-     * Continue trying to process the batch until it finishes or an exception
-     * occurs.
-     */
-
-    private FailedBatch callUntilCompletion(Map<String, List<WriteRequest>> batch) {
-        BatchWriteItemResult result = null;
-        int retries = 0;
-        FailedBatch failedBatch = null;
-        while (true) {
-            try {
-                result = db.batchWriteItem(applyBatchOperationUserAgent(
-                        new BatchWriteItemRequest().withRequestItems(batch)));
-            } catch (final Exception e) {
-                failedBatch = new FailedBatch();
-                failedBatch.setUnprocessedItems(batch);
-                failedBatch.setException(e);
-                return failedBatch;
-            }
-            retries++;
-            batch = result.getUnprocessedItems();
-            if (batch.size() > 0) {
-                pauseExponentially(retries);
-            } else {
-                break;
-            }
-        }
-        return failedBatch;
     }
 
     /**
@@ -1988,17 +1935,57 @@ public class DynamoDBMapper {
      *         mapping that table.
      */
     public Map<String, List<Object>> batchLoad(List<Object> itemsToGet, DynamoDBMapperConfig config) {
+        final Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
+        batchLoad(itemsToGet, config, new BatchLoadListener() {
+            @Override
+            public void onBatchLoaded(String tableName, List<Object> objects) {
+                List<Object> tableObjects = resultSet.get(tableName);
+                if (tableObjects == null) {
+                    tableObjects = new LinkedList<Object>();
+                    resultSet.put(tableName, tableObjects);
+                }
+                tableObjects.addAll(objects);
+            }
+        });
+        return resultSet;
+    }
+
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * handing the objects to a listener as each request completes instead of
+     * returning them all at the end.
+     * <p>
+     * Up to {@link DynamoDBMapperConfig#getBatchLoadConcurrency()}
+     * BatchGetItem requests are in flight at a time. Keys left unprocessed by
+     * DynamoDB are sent again in the following requests, after a randomized,
+     * exponentially growing delay during which no new request is sent.
+     * </p>
+     *
+     * @param itemsToGet Key objects, corresponding to the class to fetch, with
+     *            their primary key values set.
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()},
+     *            {@link DynamoDBMapperConfig#getConsistentReads()} and
+     *            {@link DynamoDBMapperConfig#getBatchLoadConcurrency()} are
+     *            considered.
+     * @param listener receives the loaded objects of each table, on the
+     *            calling thread.
+     * @see DynamoDBMapper#batchLoad(List, DynamoDBMapperConfig)
+     */
+    public void batchLoad(List<Object> itemsToGet, DynamoDBMapperConfig config,
+            final BatchLoadListener listener) {
         config = mergeConfig(config);
         final boolean consistentReads = (config.getConsistentReads() == ConsistentReads.CONSISTENT);
 
         if (itemsToGet == null || itemsToGet.isEmpty()) {
-            return new HashMap<String, List<Object>>();
+            return;
         }
 
-        final Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
+        final Integer concurrency = config.getBatchLoadConcurrency();
+        final ParallelBatchLoader loader = new ParallelBatchLoader(db,
+                concurrency == null ? 1 : concurrency, EXPONENTIAL_BACKOFF_OFFSET,
+                MAX_BACKOFF_IN_MILLISECONDS, consistentReads, config.getRequestMetricCollector(),
+                getParallelScanExecutor(config));
         final Map<String, Class<?>> classesByTableName = new HashMap<String, Class<?>>();
-        final Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
-        int count = 0;
 
         final ItemConverter converter = getConverter(config);
 
@@ -2008,32 +1995,19 @@ public class DynamoDBMapper {
             final String tableName = getTableName(clazz, keyObject, config);
             classesByTableName.put(tableName, clazz);
 
-            if (!requestItems.containsKey(tableName)) {
-
-                requestItems.put(
-                        tableName,
-                        new KeysAndAttributes().withConsistentRead(consistentReads).withKeys(
-                                new LinkedList<Map<String, AttributeValue>>()));
-            }
-
-            requestItems.get(tableName).getKeys().add(
-                    getKey(converter, keyObject));
-
-            // Reach the maximum number which can be handled in a single
-            // batchGet
-            if (++count == MAX_BATCH_GET_COUNT) {
-                processBatchGetRequest(classesByTableName, requestItems, resultSet, config,
-                        converter);
-                requestItems.clear();
-                count = 0;
-            }
+            loader.add(tableName, getKey(converter, keyObject));
         }
 
-        if (count > 0) {
-            processBatchGetRequest(classesByTableName, requestItems, resultSet, config, converter);
-        }
-
-        return resultSet;
+        final DynamoDBMapperConfig loadConfig = config;
+        loader.load(new ParallelBatchLoader.ItemsListener() {
+            @Override
+            public void onItems(String tableName, List<Map<String, AttributeValue>> items) {
+                @SuppressWarnings("unchecked")
+                final Class<Object> clazz = (Class<Object>) classesByTableName.get(tableName);
+                listener.onBatchLoaded(tableName,
+                        unmarshallItems(items, clazz, tableName, loadConfig));
+            }
+        });
     }
 
     /**
@@ -2088,67 +2062,6 @@ public class DynamoDBMapper {
         return batchLoad(keys, config);
     }
 
-    /**
-     * @param config never null
-     */
-    private void processBatchGetRequest(
-            final Map<String, Class<?>> classesByTableName,
-            final Map<String, KeysAndAttributes> requestItems,
-            final Map<String, List<Object>> resultSet,
-            final DynamoDBMapperConfig config,
-            final ItemConverter converter) {
-
-        BatchGetItemResult batchGetItemResult = null;
-        final BatchGetItemRequest batchGetItemRequest = new BatchGetItemRequest()
-                .withRequestMetricCollector(config.getRequestMetricCollector());
-        batchGetItemRequest.setRequestItems(requestItems);
-
-        int retries = 0;
-
-        do {
-            if (batchGetItemResult != null) {
-                retries++;
-
-                pauseExponentially(retries);
-                if (retries > BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
-                    throw new AmazonClientException(
-                            "Batch Get Item request to server hasn't received any data. "
-                                    + "Please try again later.");
-                }
-
-                batchGetItemRequest.setRequestItems(
-                        batchGetItemResult.getUnprocessedKeys());
-            }
-
-            batchGetItemResult = db.batchGetItem(
-                    applyBatchOperationUserAgent(batchGetItemRequest));
-
-            final Map<String, List<Map<String, AttributeValue>>> responses = batchGetItemResult
-                    .getResponses();
-            for (final String tableName : responses.keySet()) {
-                List<Object> objects = null;
-                if (resultSet.get(tableName) != null) {
-                    objects = resultSet.get(tableName);
-                } else {
-                    objects = new LinkedList<Object>();
-                }
-
-                final Class<?> clazz = classesByTableName.get(tableName);
-
-                for (final Map<String, AttributeValue> item : responses.get(tableName)) {
-                    final AttributeTransformer.Parameters<?> parameters =
-                            toParameters(item, clazz, tableName, config);
-                    objects.add(privateMarshallIntoObject(converter, parameters));
-                }
-
-                resultSet.put(tableName, objects);
-            }
-            // To see whether there are unprocessed keys.
-        } while (batchGetItemResult.getUnprocessedKeys() != null
-                && batchGetItemResult.getUnprocessedKeys().size() > 0);
-
-    }
-
     private final class ValueUpdate {
 
         private final Method method;
@@ -2259,9 +2172,10 @@ public class DynamoDBMapper {
             DynamoDBMapperConfig config) {
         config = mergeConfig(config);
 
-        final ScanRequest scanRequest = createScanRequestFromExpression(clazz, scanExpression, config);
+        final ScanRequest scanRequest = applyProjection(clazz,
+                createScanRequestFromExpression(clazz, scanExpression, config));
 
-        final ScanResult scanResult = db.scan(applyUserAgent(scanRequest));
+        final ScanResult scanResult = sendScan(db, scanRequest, config);
         return new PaginatedScanList<T>(this, clazz, db, scanRequest, scanResult,
                 config.getPaginationLoadingStrategy(), config);
     }
@@ -2286,9 +2200,10 @@ public class DynamoDBMapper {
 
     /**
      * Scans through an Amazon DynamoDB table on logically partitioned segments
-     * in parallel. This method will create a thread pool of the specified size,
-     * and each thread will issue scan requests for its assigned segment,
-     * following the returned continuation token, until the end of its segment.
+     * in parallel. Each segment is scanned on the parallel scan executor of the
+     * config, or on a bounded thread pool shared by all parallel scans, issuing
+     * scan requests for the segment and following the returned continuation
+     * token until the end of the segment.
      * Callers should be responsible for setting the appropriate number of total
      * segments. More scan segments would result in better performance but more
      * consumed capacity of the table. The results are returned in one
@@ -2327,12 +2242,67 @@ public class DynamoDBMapper {
         // segment number.
         final List<ScanRequest> parallelScanRequests = createParallelScanRequestsFromExpression(clazz,
                 scanExpression, totalSegments, config);
-        final ParallelScanTask parallelScanTask = new ParallelScanTask(this, db, parallelScanRequests);
+        final ParallelScanTask parallelScanTask = new ParallelScanTask(db, parallelScanRequests,
+                config.getRateLimiter(), getParallelScanExecutor(config));
 
         return new PaginatedParallelScanList<T>(this, clazz, db, parallelScanTask,
                 config.getPaginationLoadingStrategy(), config);
     }
 
+    /**
+     * Scans through an Amazon DynamoDB table on logically partitioned segments
+     * in parallel, handing the objects of each page to the listener as soon as
+     * a segment has scanned it, instead of keeping them in a list. Segments are
+     * scanned as in {@link #parallelScan(Class, DynamoDBScanExpression, int,
+     * DynamoDBMapperConfig)}, except that a segment only scans ahead one page:
+     * it scans its next page while its current one is with the listener, and
+     * then waits for the listener, so each segment holds at most two pages
+     * and memory use stays bounded however large the table is.
+     * <p>
+     * The listener is called on the calling thread, one page at a time, and
+     * this method returns once every segment has been scanned. If a segment
+     * scan or the listener throws an exception, the other segments are
+     * stopped and the exception is thrown.
+     *
+     * @param <T> The type of the objects being returned.
+     * @param clazz The class annotated with DynamoDB annotations describing how
+     *            to store the object data in Amazon DynamoDB.
+     * @param scanExpression Details on how to run the scan, including any
+     *            filters to apply to limit results.
+     * @param totalSegments Number of total parallel scan segments. <b>Range:
+     *            </b>1 - 4096
+     * @param config The configuration to use for this scan, which overrides the
+     *            default provided at object construction.
+     * @param listener receives the objects of each page.
+     */
+    public <T> void parallelScan(Class<T> clazz, DynamoDBScanExpression scanExpression,
+            int totalSegments, DynamoDBMapperConfig config,
+            final ParallelScanListener<T> listener) {
+        final DynamoDBMapperConfig mergedConfig = mergeConfig(config);
+        final Class<T> modelClass = clazz;
+
+        final List<ScanRequest> parallelScanRequests = createParallelScanRequestsFromExpression(clazz,
+                scanExpression, totalSegments, mergedConfig);
+        final String tableName = parallelScanRequests.get(0).getTableName();
+        new StreamingParallelScan(db, parallelScanRequests, getParallelScanExecutor(mergedConfig),
+                mergedConfig).scan(new StreamingParallelScan.PageListener() {
+                    @Override
+                    public void onPage(int segment, ScanResult result) {
+                        listener.onSegmentScanned(segment, unmarshallItems(result.getItems(),
+                                modelClass, tableName, mergedConfig));
+                    }
+                });
+    }
+
+    /**
+     * Returns the parallel scan executor of the config given, or else the one
+     * shared by all mappers. Paginated lists also prefetch pages on it.
+     */
+    static ExecutorService getParallelScanExecutor(DynamoDBMapperConfig config) {
+        final ExecutorService executor = config.getParallelScanExecutor();
+        return executor == null ? ParallelScanTask.getSharedExecutor() : executor;
+    }
+
     /**
      * Scans through an Amazon DynamoDB table and returns a single page of
      * matching results. The table to scan is determined by looking at the
@@ -2353,14 +2323,13 @@ public class DynamoDBMapper {
             DynamoDBMapperConfig config) {
         config = mergeConfig(config);
 
-        final ScanRequest scanRequest = createScanRequestFromExpression(clazz, scanExpression, config);
+        final ScanRequest scanRequest = applyProjection(clazz,
+                createScanRequestFromExpression(clazz, scanExpression, config));
 
-        final ScanResult scanResult = db.scan(applyUserAgent(scanRequest));
+        final ScanResult scanResult = sendScan(db, scanRequest, config);
         final ScanResultPage<T> result = new ScanResultPage<T>();
-        final List<AttributeTransformer.Parameters<T>> parameters =
-                toParameters(scanResult.getItems(), clazz, scanRequest.getTableName(), config);
-
-        result.setResults(marshallIntoObjects(parameters));
+        result.setResults(
+                unmarshallItems(scanResult.getItems(), clazz, scanRequest.getTableName(), config));
         result.setLastEvaluatedKey(scanResult.getLastEvaluatedKey());
 
         return result;
@@ -2435,9 +2404,10 @@ public class DynamoDBMapper {
             DynamoDBQueryExpression<T> queryExpression, DynamoDBMapperConfig config) {
         config = mergeConfig(config);
 
-        final QueryRequest queryRequest = createQueryRequestFromExpression(clazz, queryExpression, config);
+        final QueryRequest queryRequest = applyProjection(clazz,
+                createQueryRequestFromExpression(clazz, queryExpression, config));
 
-        final QueryResult queryResult = db.query(applyUserAgent(queryRequest));
+        final QueryResult queryResult = sendQuery(db, queryRequest, config);
         return new PaginatedQueryList<T>(this, clazz, db, queryRequest, queryResult,
                 config.getPaginationLoadingStrategy(), config);
     }
@@ -2484,14 +2454,13 @@ public class DynamoDBMapper {
             DynamoDBQueryExpression<T> queryExpression, DynamoDBMapperConfig config) {
         config = mergeConfig(config);
 
-        final QueryRequest queryRequest = createQueryRequestFromExpression(clazz, queryExpression, config);
+        final QueryRequest queryRequest = applyProjection(clazz,
+                createQueryRequestFromExpression(clazz, queryExpression, config));
 
-        final QueryResult scanResult = db.query(applyUserAgent(queryRequest));
+        final QueryResult scanResult = sendQuery(db, queryRequest, config);
         final QueryResultPage<T> result = new QueryResultPage<T>();
-        final List<AttributeTransformer.Parameters<T>> parameters =
-                toParameters(scanResult.getItems(), clazz, queryRequest.getTableName(), config);
-
-        result.setResults(marshallIntoObjects(parameters));
+        result.setResults(
+                unmarshallItems(scanResult.getItems(), clazz, queryRequest.getTableName(), config));
         result.setLastEvaluatedKey(scanResult.getLastEvaluatedKey());
 
         return result;
@@ -2537,7 +2506,7 @@ public class DynamoDBMapper {
         int count = 0;
         ScanResult scanResult = null;
         do {
-            scanResult = db.scan(applyUserAgent(scanRequest));
+            scanResult = sendScan(db, scanRequest, config);
             count += scanResult.getCount();
             scanRequest.setExclusiveStartKey(scanResult.getLastEvaluatedKey());
         } while (scanResult.getLastEvaluatedKey() != null);
@@ -2584,7 +2553,7 @@ public class DynamoDBMapper {
         int count = 0;
         QueryResult queryResult = null;
         do {
-            queryResult = db.query(applyUserAgent(queryRequest));
+            queryResult = sendQuery(db, queryRequest, config);
             count += queryResult.getCount();
             queryRequest.setExclusiveStartKey(queryResult.getLastEvaluatedKey());
         } while (queryResult.getLastEvaluatedKey() != null);
@@ -2645,7 +2614,8 @@ public class DynamoDBMapper {
 
         final List<ScanRequest> parallelScanRequests = new LinkedList<ScanRequest>();
         for (int segment = 0; segment < totalSegments; segment++) {
-            final ScanRequest scanRequest = createScanRequestFromExpression(clazz, scanExpression, config);
+            final ScanRequest scanRequest = applyProjection(clazz,
+                    createScanRequestFromExpression(clazz, scanExpression, config));
             parallelScanRequests.add(scanRequest
                     .withSegment(segment).withTotalSegments(totalSegments)
                     .withExclusiveStartKey(null));
@@ -2686,6 +2656,79 @@ public class DynamoDBMapper {
         return applyUserAgent(queryRequest);
     }
 
+    /**
+     * Makes the request given read only the attributes of the class, if it's a
+     * {@link DynamoDBProjection} view.
+     */
+    private ScanRequest applyProjection(Class<?> clazz, ScanRequest scanRequest) {
+        final Projection projection = getProjection(clazz,
+                scanRequest.getExpressionAttributeNames());
+        if (projection != null) {
+            scanRequest.setProjectionExpression(projection.expression);
+            scanRequest.setExpressionAttributeNames(projection.attributeNames);
+        }
+        return scanRequest;
+    }
+
+    /**
+     * Makes the request given read only the attributes of the class, if it's a
+     * {@link DynamoDBProjection} view.
+     */
+    private QueryRequest applyProjection(Class<?> clazz, QueryRequest queryRequest) {
+        final Projection projection = getProjection(clazz,
+                queryRequest.getExpressionAttributeNames());
+        if (projection != null) {
+            queryRequest.setProjectionExpression(projection.expression);
+            queryRequest.setExpressionAttributeNames(projection.attributeNames);
+        }
+        return queryRequest;
+    }
+
+    /**
+     * Returns the projection of the attributes of the class given, or null if
+     * it isn't a {@link DynamoDBProjection} view.
+     *
+     * @param attributeNames the expression attribute names of the request,
+     *            which are kept, or null.
+     */
+    private Projection getProjection(Class<?> clazz, Map<String, String> attributeNames) {
+        final ItemSchema schema = reflector.getItemSchema(clazz);
+        if (!schema.isProjection()) {
+            return null;
+        }
+        // a copy, as the names may belong to the caller's expression
+        final Map<String, String> names = attributeNames == null
+                ? new HashMap<String, String>()
+                : new HashMap<String, String>(attributeNames);
+        final StringBuilder expression = new StringBuilder();
+        int placeholder = 0;
+        for (final ItemSchema.Property property : schema.getProperties()) {
+            String name;
+            do {
+                name = "#proj" + placeholder++;
+            } while (names.containsKey(name));
+            names.put(name, property.getAttributeName());
+            if (expression.length() > 0) {
+                expression.append(", ");
+            }
+            expression.append(name);
+        }
+        return new Projection(expression.toString(), names);
+    }
+
+    /**
+     * A ProjectionExpression and the ExpressionAttributeNames it uses.
+     */
+    private static final class Projection {
+        private final String expression;
+        private final Map<String, String> attributeNames;
+
+        Projection(String expression, Map<String, String> attributeNames) {
+            this.expression = expression;
+            this.attributeNames = attributeNames;
+        }
+    }
+
     /**
      * Utility method for checking the validity of both hash and range key
      * conditions. It also tries to infer the correct index name from the POJO
@@ -3009,22 +3052,6 @@ public class DynamoDBMapper {
                 tableName);
     }
 
-    final <T> List<AttributeTransformer.Parameters<T>> toParameters(
-            final List<Map<String, AttributeValue>> attributeValues,
-            final Class<T> modelClass,
-            final String tableName,
-            final DynamoDBMapperConfig mapperConfig) {
-        final List<AttributeTransformer.Parameters<T>> rval =
-                new ArrayList<AttributeTransformer.Parameters<T>>(
-                        attributeValues.size());
-
-        for (final Map<String, AttributeValue> item : attributeValues) {
-            rval.add(toParameters(item, modelClass, tableName, mapperConfig));
-        }
-
-        return rval;
-    }
-
     /**
      * The one true implementation of AttributeTransformer.Parameters.
      */
@@ -3192,26 +3219,6 @@ public class DynamoDBMapper {
         return schema.getConverter(params);
     }
 
-    private void pauseExponentially(int retries) {
-        if (retries == 0) {
-            return;
-        }
-
-        final Random random = new Random();
-        long delay = 0;
-        final long scaleFactor = EXPONENTIAL_BACKOFF_OFFSET
-                + random.nextInt(EXPONENTIAL_BACKOFF_RANDOMIZATION_OFFSET);
-        delay = (long) (Math.pow(2, retries) * scaleFactor);
-        delay = Math.min(delay, MAX_BACKOFF_IN_MILLISECONDS);
-
-        try {
-            Thread.sleep(delay);
-        } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new AmazonClientException(e.getMessage(), e);
-        }
-    }
-
     /**
      * Returns a new map object that merges the two sets of expected value
      * conditions (user-specified or imposed by the internal implementation of
@@ -3265,6 +3272,30 @@ public class DynamoDBMapper {
         return mergedExpectedValues;
     }
 
+    /**
+     * Sends a query request, within the budget of the rate limiter of the
+     * config if any.
+     */
+    static QueryResult sendQuery(AmazonDynamoDB db, QueryRequest queryRequest,
+            DynamoDBMapperConfig config) {
+        final DynamoDBRateLimiter limiter = config == null ? null : config.getRateLimiter();
+        return limiter == null
+                ? db.query(applyUserAgent(queryRequest))
+                : limiter.query(db, applyUserAgent(queryRequest));
+    }
+
+    /**
+     * Sends a scan request, within the budget of the rate limiter of the
+     * config if any.
+     */
+    static ScanResult sendScan(AmazonDynamoDB db, ScanRequest scanRequest,
+            DynamoDBMapperConfig config) {
+        final DynamoDBRateLimiter limiter = config == null ? null : config.getRateLimiter();
+        return limiter == null
+                ? db.scan(applyUserAgent(scanRequest))
+                : limiter.scan(db, applyUserAgent(scanRequest));
+    }
+
     static <X extends AmazonWebServiceRequest> X applyUserAgent(X request) {
         request.getRequestClientOptions().appendUserAgent(
                 DynamoDBMapper.class.getName() + "/"
@@ -3310,6 +3341,58 @@ public class DynamoDBMapper {
 
     }
 
+    /**
+     * Receives the failed batches of a batch write as they fail.
+     *
+     * @see DynamoDBMapper#batchWrite(List, List, DynamoDBMapperConfig,
+     *      FailedBatchListener)
+     */
+    public interface FailedBatchListener {
+        /**
+         * Called for each batch that could not be written.
+         *
+         * @param failedBatch the unprocessed items and the exception causing
+         *            the failure.
+         */
+        void onFailedBatch(FailedBatch failedBatch);
+    }
+
+    /**
+     * Receives the objects of a batch load as their requests complete.
+     *
+     * @see DynamoDBMapper#batchLoad(List, DynamoDBMapperConfig,
+     *      BatchLoadListener)
+     */
+    public interface BatchLoadListener {
+        /**
+         * Called with the objects loaded from a table by one request. It may
+         * be called several times for the same table.
+         *
+         * @param tableName the name of the table.
+         * @param objects the loaded objects, all of the class mapped to the
+         *            table.
+         */
+        void onBatchLoaded(String tableName, List<Object> objects);
+    }
+
+    /**
+     * Receives the objects of a parallel scan as its segments scan them.
+     *
+     * @param <T> the type of the objects.
+     * @see DynamoDBMapper#parallelScan(Class, DynamoDBScanExpression, int,
+     *      DynamoDBMapperConfig, ParallelScanListener)
+     */
+    public interface ParallelScanListener<T> {
+        /**
+         * Called with the objects of one page of a segment. The pages of a
+         * segment arrive in order, interleaved with those of other segments.
+         *
+         * @param segment the segment the page was scanned from.
+         * @param objects the objects of the page.
+         */
+        void onSegmentScanned(int segment, List<T> objects);
+    }
+
     /**
      * Returns the underlying {@link S3ClientCache} for accessing S3.
      *
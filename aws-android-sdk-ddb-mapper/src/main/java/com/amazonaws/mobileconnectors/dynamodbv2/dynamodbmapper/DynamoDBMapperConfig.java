@@ -17,6 +17,8 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.metrics.RequestMetricCollector;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * Immutable configuration object for service call behavior. An instance of this
  * configuration is supplied to every {@link DynamoDBMapper} at construction; if
@@ -52,6 +54,12 @@ public class DynamoDBMapperConfig {
         private PaginationLoadingStrategy paginationLoadingStrategy;
         private RequestMetricCollector requestMetricCollector;
         private ConversionSchema conversionSchema;
+        private Integer batchWriteConcurrency;
+        private DynamoDBRateLimiter rateLimiter;
+        private Integer batchLoadConcurrency;
+        private ExecutorService parallelScanExecutor;
+        private Integer paginationPrefetchDepth;
+        private DynamoDBItemCache itemCache;
 
         /**
          * Creates a new builder initialized with the {@link #DEFAULT} values.
@@ -65,6 +73,12 @@ public class DynamoDBMapperConfig {
             paginationLoadingStrategy = DEFAULT.getPaginationLoadingStrategy();
             requestMetricCollector = DEFAULT.getRequestMetricCollector();
             conversionSchema = DEFAULT.getConversionSchema();
+            batchWriteConcurrency = DEFAULT.getBatchWriteConcurrency();
+            rateLimiter = DEFAULT.getRateLimiter();
+            batchLoadConcurrency = DEFAULT.getBatchLoadConcurrency();
+            parallelScanExecutor = DEFAULT.getParallelScanExecutor();
+            paginationPrefetchDepth = DEFAULT.getPaginationPrefetchDepth();
+            itemCache = DEFAULT.getItemCache();
         }
 
         /**
@@ -255,6 +269,158 @@ public class DynamoDBMapperConfig {
             return this;
         }
 
+        /**
+         * @return the current max number of batch write requests in flight
+         */
+        public Integer getBatchWriteConcurrency() {
+            return batchWriteConcurrency;
+        }
+
+        /**
+         * @param value the new max number of batch write requests in flight,
+         *            at least 1
+         */
+        public void setBatchWriteConcurrency(Integer value) {
+            if (value != null && value < 1) {
+                throw new IllegalArgumentException("Batch write concurrency must be at least 1");
+            }
+            batchWriteConcurrency = value;
+        }
+
+        /**
+         * @param value the new max number of batch write requests in flight,
+         *            at least 1
+         * @return this builder
+         */
+        public Builder withBatchWriteConcurrency(Integer value) {
+            setBatchWriteConcurrency(value);
+            return this;
+        }
+
+        /**
+         * @return the current rate limiter
+         */
+        public DynamoDBRateLimiter getRateLimiter() {
+            return rateLimiter;
+        }
+
+        /**
+         * @param value the new rate limiter
+         */
+        public void setRateLimiter(DynamoDBRateLimiter value) {
+            rateLimiter = value;
+        }
+
+        /**
+         * @param value the new rate limiter
+         * @return this builder
+         */
+        public Builder withRateLimiter(DynamoDBRateLimiter value) {
+            setRateLimiter(value);
+            return this;
+        }
+
+        /**
+         * @return the current max number of batch load requests in flight
+         */
+        public Integer getBatchLoadConcurrency() {
+            return batchLoadConcurrency;
+        }
+
+        /**
+         * @param value the new max number of batch load requests in flight,
+         *            at least 1
+         */
+        public void setBatchLoadConcurrency(Integer value) {
+            if (value != null && value < 1) {
+                throw new IllegalArgumentException("Batch load concurrency must be at least 1");
+            }
+            batchLoadConcurrency = value;
+        }
+
+        /**
+         * @param value the new max number of batch load requests in flight,
+         *            at least 1
+         * @return this builder
+         */
+        public Builder withBatchLoadConcurrency(Integer value) {
+            setBatchLoadConcurrency(value);
+            return this;
+        }
+
+        /**
+         * @return the current parallel scan executor
+         */
+        public ExecutorService getParallelScanExecutor() {
+            return parallelScanExecutor;
+        }
+
+        /**
+         * @param value the new parallel scan executor
+         */
+        public void setParallelScanExecutor(ExecutorService value) {
+            parallelScanExecutor = value;
+        }
+
+        /**
+         * @param value the new parallel scan executor
+         * @return this builder
+         */
+        public Builder withParallelScanExecutor(ExecutorService value) {
+            setParallelScanExecutor(value);
+            return this;
+        }
+
+        /**
+         * @return the current number of pages prefetched ahead of the iteration
+         */
+        public Integer getPaginationPrefetchDepth() {
+            return paginationPrefetchDepth;
+        }
+
+        /**
+         * @param value the new number of pages prefetched ahead of the iteration
+         */
+        public void setPaginationPrefetchDepth(Integer value) {
+            if (value != null && value < 0) {
+                throw new IllegalArgumentException(
+                        "Pagination prefetch depth must not be negative");
+            }
+            paginationPrefetchDepth = value;
+        }
+
+        /**
+         * @param value the new number of pages prefetched ahead of the iteration
+         * @return this builder
+         */
+        public Builder withPaginationPrefetchDepth(Integer value) {
+            setPaginationPrefetchDepth(value);
+            return this;
+        }
+
+        /**
+         * @return the current item cache
+         */
+        public DynamoDBItemCache getItemCache() {
+            return itemCache;
+        }
+
+        /**
+         * @param value the new item cache
+         */
+        public void setItemCache(DynamoDBItemCache value) {
+            itemCache = value;
+        }
+
+        /**
+         * @param value the new item cache
+         * @return this builder
+         */
+        public Builder withItemCache(DynamoDBItemCache value) {
+            setItemCache(value);
+            return this;
+        }
+
         /**
          * Builds a new {@code DynamoDBMapperConfig} object.
          *
@@ -269,7 +435,13 @@ public class DynamoDBMapperConfig {
                     objectTableNameResolver,
                     paginationLoadingStrategy,
                     requestMetricCollector,
-                    conversionSchema);
+                    conversionSchema,
+                    batchWriteConcurrency,
+                    rateLimiter,
+                    batchLoadConcurrency,
+                    parallelScanExecutor,
+                    paginationPrefetchDepth,
+                    itemCache);
         }
     }
 
@@ -528,6 +700,12 @@ public class DynamoDBMapperConfig {
     private final PaginationLoadingStrategy paginationLoadingStrategy;
     private final RequestMetricCollector requestMetricCollector;
     private final ConversionSchema conversionSchema;
+    private final Integer batchWriteConcurrency;
+    private final DynamoDBRateLimiter rateLimiter;
+    private final Integer batchLoadConcurrency;
+    private final ExecutorService parallelScanExecutor;
+    private final Integer paginationPrefetchDepth;
+    private final DynamoDBItemCache itemCache;
 
     /**
      * Legacy constructor, using default PaginationLoadingStrategy
@@ -598,7 +776,13 @@ public class DynamoDBMapperConfig {
                 null,
                 paginationLoadingStrategy,
                 requestMetricCollector,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null);
     }
 
     private DynamoDBMapperConfig(
@@ -609,7 +793,13 @@ public class DynamoDBMapperConfig {
             ObjectTableNameResolver objectTableNameResolver,
             PaginationLoadingStrategy paginationLoadingStrategy,
             RequestMetricCollector requestMetricCollector,
-            ConversionSchema conversionSchema) {
+            ConversionSchema conversionSchema,
+            Integer batchWriteConcurrency,
+            DynamoDBRateLimiter rateLimiter,
+            Integer batchLoadConcurrency,
+            ExecutorService parallelScanExecutor,
+            Integer paginationPrefetchDepth,
+            DynamoDBItemCache itemCache) {
 
         this.saveBehavior = saveBehavior;
         this.consistentReads = consistentReads;
@@ -619,6 +809,12 @@ public class DynamoDBMapperConfig {
         this.paginationLoadingStrategy = paginationLoadingStrategy;
         this.requestMetricCollector = requestMetricCollector;
         this.conversionSchema = conversionSchema;
+        this.batchWriteConcurrency = batchWriteConcurrency;
+        this.rateLimiter = rateLimiter;
+        this.batchLoadConcurrency = batchLoadConcurrency;
+        this.parallelScanExecutor = parallelScanExecutor;
+        this.paginationPrefetchDepth = paginationPrefetchDepth;
+        this.itemCache = itemCache;
     }
 
     /**
@@ -628,7 +824,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(SaveBehavior saveBehavior) {
         this(saveBehavior, null, null, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -639,7 +835,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(ConsistentReads consistentReads) {
         this(null, consistentReads, null, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -649,7 +845,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(TableNameOverride tableNameOverride) {
         this(null, null, tableNameOverride, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -660,7 +856,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(TableNameResolver tableNameResolver) {
         this(null, null, null, tableNameResolver, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -671,7 +867,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(ObjectTableNameResolver objectTableNameResolver) {
         this(null, null, null, null, objectTableNameResolver, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -684,7 +880,7 @@ public class DynamoDBMapperConfig {
     public DynamoDBMapperConfig(TableNameResolver tableNameResolver,
             ObjectTableNameResolver objectTableNameResolver) {
         this(null, null, null, tableNameResolver, objectTableNameResolver, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -697,7 +893,7 @@ public class DynamoDBMapperConfig {
             PaginationLoadingStrategy paginationLoadingStrategy) {
 
         this(null, null, null, null, null, paginationLoadingStrategy, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null, null);
     }
 
     /**
@@ -706,7 +902,7 @@ public class DynamoDBMapperConfig {
      * @param conversionSchema the dynamodb {@link ConversionSchema}
      */
     public DynamoDBMapperConfig(ConversionSchema conversionSchema) {
-        this(null, null, null, null, null, null, null, conversionSchema);
+        this(null, null, null, null, null, null, null, conversionSchema, null, null, null, null, null, null);
     }
 
     /**
@@ -736,6 +932,12 @@ public class DynamoDBMapperConfig {
                     defaults.getPaginationLoadingStrategy();
             this.requestMetricCollector = defaults.getRequestMetricCollector();
             this.conversionSchema = defaults.getConversionSchema();
+            this.batchWriteConcurrency = defaults.getBatchWriteConcurrency();
+            this.rateLimiter = defaults.getRateLimiter();
+            this.batchLoadConcurrency = defaults.getBatchLoadConcurrency();
+            this.parallelScanExecutor = defaults.getParallelScanExecutor();
+            this.paginationPrefetchDepth = defaults.getPaginationPrefetchDepth();
+            this.itemCache = defaults.getItemCache();
 
         } else {
 
@@ -773,6 +975,30 @@ public class DynamoDBMapperConfig {
                     ? defaults.getConversionSchema()
                     : overrides.getConversionSchema();
 
+            this.batchWriteConcurrency = (overrides.getBatchWriteConcurrency() == null)
+                    ? defaults.getBatchWriteConcurrency()
+                    : overrides.getBatchWriteConcurrency();
+
+            this.rateLimiter = (overrides.getRateLimiter() == null)
+                    ? defaults.getRateLimiter()
+                    : overrides.getRateLimiter();
+
+            this.batchLoadConcurrency = (overrides.getBatchLoadConcurrency() == null)
+                    ? defaults.getBatchLoadConcurrency()
+                    : overrides.getBatchLoadConcurrency();
+
+            this.parallelScanExecutor = (overrides.getParallelScanExecutor() == null)
+                    ? defaults.getParallelScanExecutor()
+                    : overrides.getParallelScanExecutor();
+
+            this.paginationPrefetchDepth = (overrides.getPaginationPrefetchDepth() == null)
+                    ? defaults.getPaginationPrefetchDepth()
+                    : overrides.getPaginationPrefetchDepth();
+
+            this.itemCache = (overrides.getItemCache() == null)
+                    ? defaults.getItemCache()
+                    : overrides.getItemCache();
+
         }
     }
 
@@ -860,6 +1086,73 @@ public class DynamoDBMapperConfig {
         return conversionSchema;
     }
 
+    /**
+     * Returns the max number of BatchWriteItem requests a batch write keeps in
+     * flight, or null if not specified. With more than one, the batches of a
+     * write are sent in parallel, on the parallel scan executor.
+     *
+     * @return the max number of batch write requests in flight
+     */
+    public Integer getBatchWriteConcurrency() {
+        return batchWriteConcurrency;
+    }
+
+    /**
+     * Returns the rate limiter keeping the save, batchWrite, query and scan
+     * requests within a budget of capacity units, or null if not specified.
+     *
+     * @return the {@link DynamoDBRateLimiter}
+     */
+    public DynamoDBRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the max number of BatchGetItem requests a batch load keeps in
+     * flight, or null if not specified. With more than one, the batches of a
+     * load are sent in parallel, on the parallel scan executor.
+     *
+     * @return the max number of batch load requests in flight
+     */
+    public Integer getBatchLoadConcurrency() {
+        return batchLoadConcurrency;
+    }
+
+    /**
+     * Returns the executor running the segment scans of parallel scans, or
+     * null if not specified. The mapper then uses a bounded thread pool
+     * shared by all its parallel scans. The executor is never shut down by
+     * the mapper.
+     *
+     * @return the parallel scan executor
+     */
+    public ExecutorService getParallelScanExecutor() {
+        return parallelScanExecutor;
+    }
+
+    /**
+     * Returns how many pages of a paginated query or scan list are loaded in
+     * the background ahead of the page being read, or null if not specified.
+     * With 0, the default, the next page is only loaded once the list reaches
+     * it. In ITERATION_ONLY mode the list then holds up to this many pages
+     * besides the current one. Pages are loaded on the parallel scan executor.
+     *
+     * @return the pagination prefetch depth
+     */
+    public Integer getPaginationPrefetchDepth() {
+        return paginationPrefetchDepth;
+    }
+
+    /**
+     * Returns the cache of the items read by load, or null if not specified,
+     * in which case every load sends a GetItem request.
+     *
+     * @return the item cache
+     */
+    public DynamoDBItemCache getItemCache() {
+        return itemCache;
+    }
+
     /**
      * Default configuration uses UPDATE behavior for saves and EVENTUALly
      * consistent reads, with no table name override and lazy-loading strategy.
@@ -872,5 +1165,11 @@ public class DynamoDBMapperConfig {
             null, // ObjectTableNameResolver
             PaginationLoadingStrategy.LAZY_LOADING,
             null, // RequestMetricCollector
-            ConversionSchemas.DEFAULT);
+            ConversionSchemas.DEFAULT,
+            1, // BatchWriteConcurrency
+            null, // RateLimiter
+            1, // BatchLoadConcurrency
+            null, // ParallelScanExecutor
+            0, // PaginationPrefetchDepth
+            null); // ItemCache
 }
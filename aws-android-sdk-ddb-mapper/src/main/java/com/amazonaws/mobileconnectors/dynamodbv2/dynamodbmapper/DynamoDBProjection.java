@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to mark a {@link DynamoDBTable} class as a view mapping only
+ * some of the attributes of the items of its table. When loading, querying or
+ * scanning such a class, the mapper asks DynamoDB for the mapped attributes
+ * only, with a ProjectionExpression, so the other attributes are neither
+ * sent nor unmarshalled.
+ * <p>
+ * Only the top level attributes are projected: a mapped document attribute
+ * is read whole. Counts, batch loads and the item cache aren't affected, and
+ * a view shouldn't be saved with {@code SaveBehavior.CLOBBER}, which would
+ * remove the attributes it doesn't map. Nor should the mapper have an
+ * {@link AttributeTransformer} needing the attributes left out.
+ * <p>
+ * This annotation is inherited by subclasses.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface DynamoDBProjection {
+
+}
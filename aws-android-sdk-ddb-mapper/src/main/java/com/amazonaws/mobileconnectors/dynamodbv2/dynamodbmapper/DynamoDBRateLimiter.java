@@ -0,0 +1,309 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side rate limiter keeping the requests of a {@link DynamoDBMapper} to
+ * a table within a budget of read and write capacity units per second, so that
+ * long running jobs use the provisioned throughput steadily instead of
+ * alternating between being throttled and backing off.
+ * <p>
+ * Each table has a token bucket for reads and one for writes, refilled at the
+ * budget of the table and holding up to one second of it. A request waits
+ * until its bucket isn't in debt, then the capacity DynamoDB reports it
+ * consumed is taken from the bucket. The mapper asks for the consumed
+ * capacity of its save, batchWrite, query and scan requests to the tables
+ * with a budget; requests to other tables aren't limited.
+ * <p>
+ * Set it with {@link DynamoDBMapperConfig.Builder#setRateLimiter}. The
+ * budget applies to the requests of all the mappers sharing the limiter.
+ */
+public class DynamoDBRateLimiter {
+
+    /** Units taken from a bucket when a request starts. */
+    static final double UNITS_PER_REQUEST = 1.0;
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, TokenBucket> readBuckets =
+            new ConcurrentHashMap<String, TokenBucket>();
+    private final Map<String, TokenBucket> writeBuckets =
+            new ConcurrentHashMap<String, TokenBucket>();
+
+    /**
+     * Sets the budget of a table.
+     *
+     * @param tableName the name of the table, after any table name override.
+     * @param readCapacityUnits read capacity units per second, greater than 0.
+     * @param writeCapacityUnits write capacity units per second, greater than
+     *            0.
+     */
+    public void setTableCapacity(String tableName, double readCapacityUnits,
+            double writeCapacityUnits) {
+        if (tableName == null) {
+            throw new IllegalArgumentException("Table name cannot be null");
+        }
+        if (readCapacityUnits <= 0 || writeCapacityUnits <= 0) {
+            throw new IllegalArgumentException("Capacity units must be greater than 0");
+        }
+        final long now = System.nanoTime();
+        readBuckets.put(tableName, new TokenBucket(readCapacityUnits, now));
+        writeBuckets.put(tableName, new TokenBucket(writeCapacityUnits, now));
+    }
+
+    /**
+     * Sets the budget of a table.
+     *
+     * @param tableName the name of the table, after any table name override.
+     * @param readCapacityUnits read capacity units per second, greater than 0.
+     * @param writeCapacityUnits write capacity units per second, greater than
+     *            0.
+     * @return this limiter
+     */
+    public DynamoDBRateLimiter withTableCapacity(String tableName, double readCapacityUnits,
+            double writeCapacityUnits) {
+        setTableCapacity(tableName, readCapacityUnits, writeCapacityUnits);
+        return this;
+    }
+
+    /**
+     * Stops limiting the requests to a table.
+     *
+     * @param tableName the name of the table.
+     */
+    public void removeTableCapacity(String tableName) {
+        readBuckets.remove(tableName);
+        writeBuckets.remove(tableName);
+    }
+
+    TokenBucket getReadBucket(String tableName) {
+        return readBuckets.get(tableName);
+    }
+
+    TokenBucket getWriteBucket(String tableName) {
+        return writeBuckets.get(tableName);
+    }
+
+    QueryResult query(AmazonDynamoDB db, QueryRequest request) {
+        final TokenBucket bucket = readBuckets.get(request.getTableName());
+        if (bucket == null) {
+            return db.query(request);
+        }
+        acquire(bucket);
+        ConsumedCapacity consumed = null;
+        try {
+            final QueryResult result = db.query(
+                    request.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            consumed = result.getConsumedCapacity();
+            return result;
+        } finally {
+            settle(bucket, consumed);
+        }
+    }
+
+    ScanResult scan(AmazonDynamoDB db, ScanRequest request) {
+        final TokenBucket bucket = readBuckets.get(request.getTableName());
+        if (bucket == null) {
+            return db.scan(request);
+        }
+        acquire(bucket);
+        ConsumedCapacity consumed = null;
+        try {
+            final ScanResult result = db.scan(
+                    request.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            consumed = result.getConsumedCapacity();
+            return result;
+        } finally {
+            settle(bucket, consumed);
+        }
+    }
+
+    PutItemResult putItem(AmazonDynamoDB db, PutItemRequest request) {
+        final TokenBucket bucket = writeBuckets.get(request.getTableName());
+        if (bucket == null) {
+            return db.putItem(request);
+        }
+        acquire(bucket);
+        ConsumedCapacity consumed = null;
+        try {
+            final PutItemResult result = db.putItem(
+                    request.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            consumed = result.getConsumedCapacity();
+            return result;
+        } finally {
+            settle(bucket, consumed);
+        }
+    }
+
+    UpdateItemResult updateItem(AmazonDynamoDB db, UpdateItemRequest request) {
+        final TokenBucket bucket = writeBuckets.get(request.getTableName());
+        if (bucket == null) {
+            return db.updateItem(request);
+        }
+        acquire(bucket);
+        ConsumedCapacity consumed = null;
+        try {
+            final UpdateItemResult result = db.updateItem(
+                    request.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            consumed = result.getConsumedCapacity();
+            return result;
+        } finally {
+            settle(bucket, consumed);
+        }
+    }
+
+    BatchWriteItemResult batchWriteItem(AmazonDynamoDB db, BatchWriteItemRequest request) {
+        final Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+        for (final String tableName : request.getRequestItems().keySet()) {
+            final TokenBucket bucket = writeBuckets.get(tableName);
+            if (bucket != null) {
+                buckets.put(tableName, bucket);
+            }
+        }
+        if (buckets.isEmpty()) {
+            return db.batchWriteItem(request);
+        }
+        for (final TokenBucket bucket : buckets.values()) {
+            acquire(bucket);
+        }
+        List<ConsumedCapacity> consumed = new ArrayList<ConsumedCapacity>();
+        try {
+            final BatchWriteItemResult result = db.batchWriteItem(
+                    request.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+            if (result.getConsumedCapacity() != null) {
+                consumed = result.getConsumedCapacity();
+            }
+            return result;
+        } finally {
+            for (final Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+                ConsumedCapacity tableConsumed = null;
+                for (final ConsumedCapacity capacity : consumed) {
+                    if (entry.getKey().equals(capacity.getTableName())) {
+                        tableConsumed = capacity;
+                    }
+                }
+                settle(entry.getValue(), tableConsumed);
+            }
+        }
+    }
+
+    /**
+     * Waits until a bucket isn't in debt and takes the units of a request.
+     */
+    private static void acquire(TokenBucket bucket) {
+        long wait;
+        while ((wait = bucket.tryAcquire(System.nanoTime())) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Replaces the units taken when a request started with the units it
+     * consumed. A failed request consumed nothing.
+     */
+    private static void settle(TokenBucket bucket, ConsumedCapacity consumed) {
+        final double units = consumed == null || consumed.getCapacityUnits() == null
+                ? 0 : consumed.getCapacityUnits();
+        bucket.take(units - UNITS_PER_REQUEST);
+    }
+
+    /**
+     * Capacity units available to the requests to a table, refilled at a
+     * constant rate. The balance goes negative when the requests consumed
+     * more than was available; new requests then wait until it's paid back.
+     */
+    static final class TokenBucket {
+        private final double unitsPerNano;
+        private final double maxBalance;
+        private double balance;
+        private long refillTime;
+
+        /**
+         * @param unitsPerSecond the refill rate, which is also the max balance.
+         * @param now the current time in nanoseconds.
+         */
+        TokenBucket(double unitsPerSecond, long now) {
+            unitsPerNano = unitsPerSecond / NANOS_PER_SECOND;
+            maxBalance = unitsPerSecond;
+            balance = maxBalance;
+            refillTime = now;
+        }
+
+        /**
+         * Takes the units of a request unless the bucket is in debt.
+         *
+         * @param now the current time in nanoseconds.
+         * @return 0 if the units were taken, else nanoseconds until the debt
+         *         is paid back.
+         */
+        synchronized long tryAcquire(long now) {
+            refill(now);
+            if (balance < 0) {
+                return Math.max(1, (long) Math.ceil(-balance / unitsPerNano));
+            }
+            balance -= UNITS_PER_REQUEST;
+            return 0;
+        }
+
+        /**
+         * Takes units from the bucket, or gives them back if negative.
+         *
+         * @param units the capacity units.
+         */
+        synchronized void take(double units) {
+            balance = Math.min(maxBalance, balance - units);
+        }
+
+        synchronized double getBalance(long now) {
+            refill(now);
+            return balance;
+        }
+
+        private void refill(long now) {
+            if (now > refillTime) {
+                balance = Math.min(maxBalance, balance + (now - refillTime) * unitsPerNano);
+                refillTime = now;
+            }
+        }
+    }
+}
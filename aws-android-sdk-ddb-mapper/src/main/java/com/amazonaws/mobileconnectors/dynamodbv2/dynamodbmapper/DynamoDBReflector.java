@@ -16,14 +16,12 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Reflection assistant for {@link DynamoDBMapper}
@@ -31,40 +29,72 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 class DynamoDBReflector {
 
     /*
-     * Several caches for performance. Collectively, they can make this class
-     * over twice as fast.
+     * The mapped properties of each class, built once and published for
+     * lock-free reads.
      */
-    private final Map<Class<?>, Collection<Method>> getterCache = new HashMap<Class<?>, Collection<Method>>();
-    private final Map<Class<?>, Method> primaryHashKeyGetterCache = new HashMap<Class<?>, Method>();
-    private final Map<Class<?>, Method> primaryRangeKeyGetterCache = new HashMap<Class<?>, Method>();
+    private final ConcurrentMap<Class<?>, ItemSchema> schemaCache =
+            new ConcurrentHashMap<Class<?>, ItemSchema>();
 
     /*
      * All caches keyed by a Method use the getter for a particular mapped
      * property
      */
-    private final Map<Method, Method> setterCache = new HashMap<Method, Method>();
+    private final ConcurrentMap<Method, Method> setterCache =
+            new ConcurrentHashMap<Method, Method>();
 
-    private final Map<Method, String> attributeNameCache = new HashMap<Method, String>();
+    private final ConcurrentMap<Method, String> attributeNameCache =
+            new ConcurrentHashMap<Method, String>();
 
-    private final Map<Method, Boolean> versionAttributeGetterCache = new HashMap<Method, Boolean>();
-    private final Map<Method, Boolean> autoGeneratedKeyGetterCache = new HashMap<Method, Boolean>();
+    private final ConcurrentMap<Method, ItemSchema.Property> propertyCache =
+            new ConcurrentHashMap<Method, ItemSchema.Property>();
 
-    private final ReentrantReadWriteLock readWriteLockAttrName = new ReentrantReadWriteLock();
-    private final ReadLock readLockAttrName = readWriteLockAttrName.readLock();
-    private final WriteLock writeLockAttrName = readWriteLockAttrName.writeLock();
+    /**
+     * Returns the mapped properties of the class given. The schema is built on
+     * the first call for a class; concurrent first calls may each build one,
+     * but they all return the one published.
+     */
+    ItemSchema getItemSchema(Class<?> clazz) {
+        ItemSchema schema = schemaCache.get(clazz);
+        if (schema == null) {
+            final ItemSchema built = buildItemSchema(clazz);
+            schema = schemaCache.putIfAbsent(clazz, built);
+            if (schema == null) {
+                schema = built;
+            }
+        }
+        return schema;
+    }
+
+    private ItemSchema buildItemSchema(Class<?> clazz) {
+        final List<ItemSchema.Property> properties = new ArrayList<ItemSchema.Property>();
+        for (final Method getter : findRelevantGetters(clazz)) {
+            Method setter;
+            try {
+                setter = getSetter(getter);
+            } catch (final DynamoDBMappingException e) {
+                // only a problem if the property is unmarshalled
+                setter = null;
+            }
+            final ItemSchema.Property property = new ItemSchema.Property(
+                    getter,
+                    setter,
+                    getAttributeName(getter),
+                    ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBHashKey.class),
+                    ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBRangeKey.class),
+                    computeIsVersionAttributeGetter(getter),
+                    computeIsAssignableKey(getter));
+            propertyCache.putIfAbsent(getter, property);
+            properties.add(property);
+        }
+        return new ItemSchema(clazz, properties);
+    }
 
     /**
      * Returns the set of getter methods which are relevant when marshalling or
      * unmarshalling an object.
      */
     Collection<Method> getRelevantGetters(Class<?> clazz) {
-        synchronized (getterCache) {
-            if (!getterCache.containsKey(clazz)) {
-                List<Method> relevantGetters = findRelevantGetters(clazz);
-                getterCache.put(clazz, relevantGetters);
-            }
-            return getterCache.get(clazz);
-        }
+        return getItemSchema(clazz).getGetters();
     }
 
     static List<Method> findRelevantGetters(Class<?> clazz) {
@@ -100,38 +130,15 @@ class DynamoDBReflector {
      * given, or null if the class doesn't have one.
      */
     <T> Method getPrimaryRangeKeyGetter(Class<T> clazz) {
-        synchronized (primaryRangeKeyGetterCache) {
-            if (!primaryRangeKeyGetterCache.containsKey(clazz)) {
-                Method rangeKeyMethod = null;
-                for (Method method : getRelevantGetters(clazz)) {
-                    if (method.getParameterTypes().length == 0
-                            && ReflectionUtils.getterOrFieldHasAnnotation(method,
-                                    DynamoDBRangeKey.class)) {
-                        rangeKeyMethod = method;
-                        break;
-                    }
-                }
-                primaryRangeKeyGetterCache.put(clazz, rangeKeyMethod);
-            }
-            return primaryRangeKeyGetterCache.get(clazz);
-        }
+        return getItemSchema(clazz).getRangeKeyGetter();
     }
 
     /**
      * Returns all annotated {@link DynamoDBHashKey} and
-     * {@link DynamoDBRangeKey} getters for the class given, throwing an
-     * exception if there isn't one. TODO: caching
+     * {@link DynamoDBRangeKey} getters for the class given.
      */
     <T> Collection<Method> getPrimaryKeyGetters(Class<T> clazz) {
-        List<Method> keyGetters = new LinkedList<Method>();
-        for (Method getter : getRelevantGetters(clazz)) {
-            if (ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBHashKey.class)
-                    || ReflectionUtils.getterOrFieldHasAnnotation(getter, DynamoDBRangeKey.class)) {
-                keyGetters.add(getter);
-            }
-        }
-
-        return keyGetters;
+        return getItemSchema(clazz).getKeyGetters();
     }
 
     /**
@@ -139,21 +146,7 @@ class DynamoDBReflector {
      * throwing an exception if there isn't one.
      */
     <T> Method getPrimaryHashKeyGetter(Class<T> clazz) {
-        Method hashKeyMethod;
-        synchronized (primaryHashKeyGetterCache) {
-            if (!primaryHashKeyGetterCache.containsKey(clazz)) {
-                for (Method method : getRelevantGetters(clazz)) {
-                    if (method.getParameterTypes().length == 0
-                            && ReflectionUtils.getterOrFieldHasAnnotation(method,
-                                    DynamoDBHashKey.class)) {
-                        primaryHashKeyGetterCache.put(clazz, method);
-                        break;
-                    }
-                }
-            }
-            hashKeyMethod = primaryHashKeyGetterCache.get(clazz);
-        }
-
+        final Method hashKeyMethod = getItemSchema(clazz).getHashKeyGetter();
         if (hashKeyMethod == null) {
             throw new DynamoDBMappingException(
                     "Public, zero-parameter hash key property must be annotated with "
@@ -178,13 +171,7 @@ class DynamoDBReflector {
      * Returns the attribute name corresponding to the given getter method.
      */
     String getAttributeName(Method getter) {
-        String attributeName;
-        readLockAttrName.lock();
-        try {
-            attributeName = attributeNameCache.get(getter);
-        } finally {
-            readLockAttrName.unlock();
-        }
+        String attributeName = attributeNameCache.get(getter);
         if (attributeName != null)
             return attributeName;
         DynamoDBHashKey hashKeyAnnotation = ReflectionUtils.getAnnotationFromGetterOrField(getter,
@@ -236,12 +223,7 @@ class DynamoDBReflector {
     }
 
     private String cacheAttributeName(Method getter, String attributeName) {
-        writeLockAttrName.lock();
-        try {
-            attributeNameCache.put(getter, attributeName);
-        } finally {
-            writeLockAttrName.unlock();
-        }
+        attributeNameCache.putIfAbsent(getter, attributeName);
         return attributeName;
     }
 
@@ -250,27 +232,26 @@ class DynamoDBReflector {
      * setter exists.
      */
     Method getSetter(Method getter) {
-        synchronized (setterCache) {
-            if (!setterCache.containsKey(getter)) {
-                String fieldName = ReflectionUtils.getFieldNameByGetter(getter, false);
-                String setterName = "set" + fieldName;
-                Method setter = null;
-                try {
-                    setter = getter.getDeclaringClass().getMethod(setterName,
-                            getter.getReturnType());
-                } catch (NoSuchMethodException e) {
-                    throw new DynamoDBMappingException(
-                            "Expected a public, one-argument method called " + setterName
-                                    + " on class " + getter.getDeclaringClass(), e);
-                } catch (SecurityException e) {
-                    throw new DynamoDBMappingException(
-                            "No access to public, one-argument method called " + setterName
-                                    + " on class " + getter.getDeclaringClass(), e);
-                }
-                setterCache.put(getter, setter);
-            }
-            return setterCache.get(getter);
+        Method setter = setterCache.get(getter);
+        if (setter != null) {
+            return setter;
+        }
+        final String fieldName = ReflectionUtils.getFieldNameByGetter(getter, false);
+        final String setterName = "set" + fieldName;
+        try {
+            setter = getter.getDeclaringClass().getMethod(setterName,
+                    getter.getReturnType());
+        } catch (NoSuchMethodException e) {
+            throw new DynamoDBMappingException(
+                    "Expected a public, one-argument method called " + setterName
+                            + " on class " + getter.getDeclaringClass(), e);
+        } catch (SecurityException e) {
+            throw new DynamoDBMappingException(
+                    "No access to public, one-argument method called " + setterName
+                            + " on class " + getter.getDeclaringClass(), e);
         }
+        setterCache.putIfAbsent(getter, setter);
+        return setter;
     }
 
     /**
@@ -278,36 +259,36 @@ class DynamoDBReflector {
      * version attribute.
      */
     boolean isVersionAttributeGetter(Method getter) {
-        synchronized (versionAttributeGetterCache) {
-            if (!versionAttributeGetterCache.containsKey(getter)) {
-                versionAttributeGetterCache.put(
-                        getter,
-                        getter.getName().startsWith("get")
-                                && getter.getParameterTypes().length == 0
-                                && ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                        DynamoDBVersionAttribute.class));
-            }
-            return versionAttributeGetterCache.get(getter);
-        }
+        final ItemSchema.Property property = propertyCache.get(getter);
+        return property == null
+                ? computeIsVersionAttributeGetter(getter)
+                : property.isVersionAttribute();
+    }
+
+    private static boolean computeIsVersionAttributeGetter(Method getter) {
+        return getter.getName().startsWith("get")
+                && getter.getParameterTypes().length == 0
+                && ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                        DynamoDBVersionAttribute.class);
     }
 
     /**
      * Returns whether the method given is an assignable key getter.
      */
     boolean isAssignableKey(Method getter) {
-        synchronized (autoGeneratedKeyGetterCache) {
-            if (!autoGeneratedKeyGetterCache.containsKey(getter)) {
-                autoGeneratedKeyGetterCache.put(
-                        getter,
-                        ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                DynamoDBAutoGeneratedKey.class)
-                                && (ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                        DynamoDBHashKey.class) ||
-                                ReflectionUtils.getterOrFieldHasAnnotation(getter,
-                                        DynamoDBRangeKey.class)));
-            }
-            return autoGeneratedKeyGetterCache.get(getter);
-        }
+        final ItemSchema.Property property = propertyCache.get(getter);
+        return property == null
+                ? computeIsAssignableKey(getter)
+                : property.isAssignableKey();
+    }
+
+    private static boolean computeIsAssignableKey(Method getter) {
+        return ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                DynamoDBAutoGeneratedKey.class)
+                && (ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                        DynamoDBHashKey.class) ||
+                ReflectionUtils.getterOrFieldHasAnnotation(getter,
+                        DynamoDBRangeKey.class));
     }
 
     /**
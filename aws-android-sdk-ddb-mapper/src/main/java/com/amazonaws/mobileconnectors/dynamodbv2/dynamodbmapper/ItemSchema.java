@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The mapped properties of a class, read from its annotations once and never
+ * changed afterwards, so it can be shared by all threads without locking.
+ * Built and cached by {@link DynamoDBReflector#getItemSchema(Class)}.
+ */
+final class ItemSchema {
+
+    private final Class<?> clazz;
+    private final List<Property> properties;
+    private final List<Method> getters;
+    private final List<Method> keyGetters;
+    private final Map<String, Property> propertiesByAttributeName;
+    private final Method hashKeyGetter;
+    private final Method rangeKeyGetter;
+    private final boolean projection;
+
+    ItemSchema(Class<?> clazz, List<Property> properties) {
+        final List<Method> getters = new ArrayList<Method>(properties.size());
+        final List<Method> keyGetters = new ArrayList<Method>(2);
+        final Map<String, Property> byName = new LinkedHashMap<String, Property>();
+        Method hashKeyGetter = null;
+        Method rangeKeyGetter = null;
+        for (final Property property : properties) {
+            getters.add(property.getter);
+            if (property.hashKey || property.rangeKey) {
+                keyGetters.add(property.getter);
+            }
+            if (property.hashKey && hashKeyGetter == null) {
+                hashKeyGetter = property.getter;
+            }
+            if (property.rangeKey && rangeKeyGetter == null) {
+                rangeKeyGetter = property.getter;
+            }
+            if (!byName.containsKey(property.attributeName)) {
+                byName.put(property.attributeName, property);
+            }
+        }
+        this.clazz = clazz;
+        this.properties = Collections.unmodifiableList(new ArrayList<Property>(properties));
+        this.getters = Collections.unmodifiableList(getters);
+        this.keyGetters = Collections.unmodifiableList(keyGetters);
+        this.propertiesByAttributeName = Collections.unmodifiableMap(byName);
+        this.hashKeyGetter = hashKeyGetter;
+        this.rangeKeyGetter = rangeKeyGetter;
+        this.projection = clazz.getAnnotation(DynamoDBProjection.class) != null;
+    }
+
+    Class<?> getModelClass() {
+        return clazz;
+    }
+
+    /**
+     * Returns the mapped properties, in the order of the class's getters.
+     */
+    List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns the getters of the mapped properties.
+     */
+    List<Method> getGetters() {
+        return getters;
+    }
+
+    /**
+     * Returns the getters of the hash and range key properties.
+     */
+    List<Method> getKeyGetters() {
+        return keyGetters;
+    }
+
+    /**
+     * Returns the property mapped to the attribute given, or null.
+     */
+    Property getProperty(String attributeName) {
+        return propertiesByAttributeName.get(attributeName);
+    }
+
+    /**
+     * Returns the {@link DynamoDBHashKey} getter, or null if there isn't one.
+     */
+    Method getHashKeyGetter() {
+        return hashKeyGetter;
+    }
+
+    /**
+     * Returns the {@link DynamoDBRangeKey} getter, or null if there isn't one.
+     */
+    Method getRangeKeyGetter() {
+        return rangeKeyGetter;
+    }
+
+    /**
+     * Returns whether the class is a {@link DynamoDBProjection} view, whose
+     * reads only ask for the mapped attributes.
+     */
+    boolean isProjection() {
+        return projection;
+    }
+
+    /**
+     * A mapped property: its accessors, attribute name and the annotations
+     * the mapper acts on.
+     */
+    static final class Property {
+        private final Method getter;
+        private final Method setter;
+        private final String attributeName;
+        private final boolean hashKey;
+        private final boolean rangeKey;
+        private final boolean versionAttribute;
+        private final boolean assignableKey;
+
+        /**
+         * @param getter the getter of the property.
+         * @param setter the setter, or null if the class doesn't have one.
+         * @param attributeName the name of the attribute.
+         * @param hashKey whether it's the hash key.
+         * @param rangeKey whether it's the range key.
+         * @param versionAttribute whether it's the version attribute.
+         * @param assignableKey whether it's an auto generated key.
+         */
+        Property(Method getter, Method setter, String attributeName, boolean hashKey,
+                boolean rangeKey, boolean versionAttribute, boolean assignableKey) {
+            this.getter = getter;
+            this.setter = setter;
+            this.attributeName = attributeName;
+            this.hashKey = hashKey;
+            this.rangeKey = rangeKey;
+            this.versionAttribute = versionAttribute;
+            this.assignableKey = assignableKey;
+        }
+
+        Method getGetter() {
+            return getter;
+        }
+
+        /**
+         * Returns the setter, or null if the class doesn't have one.
+         */
+        Method getSetter() {
+            return setter;
+        }
+
+        String getAttributeName() {
+            return attributeName;
+        }
+
+        boolean isHashKey() {
+            return hashKey;
+        }
+
+        boolean isRangeKey() {
+            return rangeKey;
+        }
+
+        boolean isVersionAttribute() {
+            return versionAttribute;
+        }
+
+        boolean isAssignableKey() {
+            return assignableKey;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads the pages of a query or scan in the background, up to a given number
+ * of pages ahead of the one being read. Each page starts from the last key of
+ * the page before, so pages are requested one at a time, the next as soon as
+ * the previous arrives while fewer than the depth are waiting to be read.
+ *
+ * @param <R> the type of the service results.
+ */
+abstract class PagePrefetcher<R> {
+
+    private final Executor executor;
+    private final int depth;
+
+    /** The pages loaded and not read yet, in order. */
+    private final LinkedList<R> pages = new LinkedList<R>();
+
+    /** The key the next page to load starts from. */
+    private Map<String, AttributeValue> nextStartKey;
+
+    /** Whether the last page has been loaded. */
+    private boolean lastPageLoaded;
+
+    /** Whether a page is being loaded. */
+    private boolean loading;
+
+    /** The failure of the last load, thrown to the next reader. */
+    private RuntimeException failure;
+
+    private final Runnable load = new Runnable() {
+        @Override
+        public void run() {
+            final Map<String, AttributeValue> startKey;
+            synchronized (PagePrefetcher.this) {
+                startKey = nextStartKey;
+            }
+            RuntimeException error = null;
+            try {
+                final R page = fetch(startKey);
+                final Map<String, AttributeValue> lastKey = lastEvaluatedKey(page);
+                synchronized (PagePrefetcher.this) {
+                    pages.add(page);
+                    nextStartKey = lastKey;
+                    lastPageLoaded = lastKey == null;
+                }
+            } catch (final RuntimeException e) {
+                error = e;
+            } catch (final Error e) {
+                // the reader gets an exception instead of waiting forever
+                error = new AmazonClientException("Unable to load the next page.", e);
+                throw e;
+            } finally {
+                synchronized (PagePrefetcher.this) {
+                    loading = false;
+                    if (error != null) {
+                        failure = error;
+                    } else {
+                        loadAhead();
+                    }
+                    PagePrefetcher.this.notifyAll();
+                }
+            }
+        }
+    };
+
+    /**
+     * @param executor runs the page loads.
+     * @param depth the max number of pages loaded ahead, at least 1.
+     * @param startKey the key the first page to load starts from, not null.
+     */
+    PagePrefetcher(Executor executor, int depth, Map<String, AttributeValue> startKey) {
+        this.executor = executor;
+        this.depth = depth;
+        this.nextStartKey = startKey;
+    }
+
+    /**
+     * Starts loading pages ahead, without waiting for the first to be read.
+     */
+    synchronized void start() {
+        loadAhead();
+    }
+
+    /**
+     * Sends the request for the page starting from the key given.
+     */
+    protected abstract R fetch(Map<String, AttributeValue> startKey);
+
+    /**
+     * Returns the key the page after the one given starts from, or null if it
+     * is the last page.
+     */
+    protected abstract Map<String, AttributeValue> lastEvaluatedKey(R page);
+
+    /**
+     * Returns whether every page has been read.
+     */
+    synchronized boolean atEnd() {
+        return pages.isEmpty() && lastPageLoaded;
+    }
+
+    /**
+     * Returns the next page, waiting for it to load if needed. If the load
+     * failed, its exception is thrown and the page is loaded again on the next
+     * call.
+     *
+     * @throws NoSuchElementException if every page has been read.
+     */
+    synchronized R next() {
+        loadAhead();
+        try {
+            while (pages.isEmpty() && failure == null && !lastPageLoaded) {
+                wait();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for the next page.", e);
+        }
+        if (pages.isEmpty()) {
+            if (failure == null) {
+                throw new NoSuchElementException("Every page has been read.");
+            }
+            final RuntimeException e = failure;
+            failure = null;
+            throw e;
+        }
+        final R page = pages.removeFirst();
+        loadAhead();
+        return page;
+    }
+
+    /**
+     * Starts loading the next page unless one is loading, the depth is
+     * reached, the last page is loaded or the last load failed.
+     */
+    private void loadAhead() {
+        if (!loading && !lastPageLoaded && failure == null && pages.size() < depth) {
+            loading = true;
+            try {
+                executor.execute(load);
+            } catch (final RuntimeException e) {
+                // e.g. rejected by an executor that was shut down
+                loading = false;
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+}
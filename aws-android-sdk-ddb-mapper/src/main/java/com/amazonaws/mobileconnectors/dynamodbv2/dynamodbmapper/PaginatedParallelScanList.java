@@ -92,12 +92,8 @@ public class PaginatedParallelScanList<T> extends PaginatedList<T> {
         final List<T> allItems = new LinkedList<T>();
         for (final ScanResult scanResult : scanResults) {
             if (null != scanResult) {
-                allItems.addAll(mapper.marshallIntoObjects(
-                        mapper.toParameters(
-                                scanResult.getItems(),
-                                clazz,
-                                parallelScanTask.getTableName(),
-                                config)));
+                allItems.addAll(mapper.unmarshallItems(
+                        scanResult.getItems(), clazz, parallelScanTask.getTableName(), config));
             }
         }
         return allItems;
@@ -17,10 +17,12 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation of the List interface that represents the results from a query
@@ -43,8 +45,17 @@ public class PaginatedQueryList<T> extends PaginatedList<T> {
 
     private final DynamoDBMapperConfig config;
 
-    /** The current results for the last executed query operation */
-    private QueryResult queryResult;
+    /**
+     * The key to start the next page from, or null after the last page. The
+     * items of a page aren't kept once they're converted.
+     */
+    private Map<String, AttributeValue> lastEvaluatedKey;
+
+    /**
+     * Loads the next pages in the background, or null if the config doesn't
+     * prefetch or there is only one page.
+     */
+    private final PagePrefetcher<QueryResult> prefetcher;
 
     /**
      * Constructor.
@@ -68,15 +79,33 @@ public class PaginatedQueryList<T> extends PaginatedList<T> {
         super(mapper, clazz, dynamo, paginationLoadingStrategy);
 
         this.queryRequest = queryRequest;
-        this.queryResult = queryResult;
+        this.lastEvaluatedKey = queryResult.getLastEvaluatedKey();
         this.config = config;
 
-        allResults.addAll(mapper.marshallIntoObjects(
-                mapper.toParameters(
-                        queryResult.getItems(),
-                        clazz,
-                        queryRequest.getTableName(),
-                        config)));
+        final Integer prefetchDepth = config == null ? null : config.getPaginationPrefetchDepth();
+        if (prefetchDepth != null && prefetchDepth > 0 && lastEvaluatedKey != null) {
+            prefetcher = new PagePrefetcher<QueryResult>(
+                    DynamoDBMapper.getParallelScanExecutor(config), prefetchDepth,
+                    lastEvaluatedKey) {
+                @Override
+                protected QueryResult fetch(Map<String, AttributeValue> startKey) {
+                    queryRequest.setExclusiveStartKey(startKey);
+                    return DynamoDBMapper.sendQuery(dynamo, queryRequest,
+                            PaginatedQueryList.this.config);
+                }
+
+                @Override
+                protected Map<String, AttributeValue> lastEvaluatedKey(QueryResult page) {
+                    return page.getLastEvaluatedKey();
+                }
+            };
+            prefetcher.start();
+        } else {
+            prefetcher = null;
+        }
+
+        allResults.addAll(mapper.unmarshallItems(
+                queryResult.getItems(), clazz, queryRequest.getTableName(), config));
 
         // If the results should be eagerly loaded at once
         if (paginationLoadingStrategy == PaginationLoadingStrategy.EAGER_LOADING) {
@@ -86,17 +115,20 @@ public class PaginatedQueryList<T> extends PaginatedList<T> {
 
     @Override
     protected boolean atEndOfResults() {
-        return queryResult.getLastEvaluatedKey() == null;
+        return prefetcher == null ? lastEvaluatedKey == null : prefetcher.atEnd();
     }
 
     @Override
     protected synchronized List<T> fetchNextPage() {
-        queryRequest.setExclusiveStartKey(queryResult.getLastEvaluatedKey());
-        queryResult = dynamo.query(DynamoDBMapper.applyUserAgent(queryRequest));
-        return mapper.marshallIntoObjects(mapper.toParameters(
-                queryResult.getItems(),
-                clazz,
-                queryRequest.getTableName(),
-                config));
+        final QueryResult queryResult;
+        if (prefetcher != null) {
+            queryResult = prefetcher.next();
+        } else {
+            queryRequest.setExclusiveStartKey(lastEvaluatedKey);
+            queryResult = DynamoDBMapper.sendQuery(dynamo, queryRequest, config);
+            lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+        }
+        return mapper.unmarshallItems(
+                queryResult.getItems(), clazz, queryRequest.getTableName(), config);
     }
 }
@@ -17,10 +17,12 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation of the List interface that represents the results from a scan
@@ -43,8 +45,17 @@ public class PaginatedScanList<T> extends PaginatedList<T> {
 
     private final DynamoDBMapperConfig config;
 
-    /** The current results for the last executed scan operation */
-    private ScanResult scanResult;
+    /**
+     * The key to start the next page from, or null after the last page. The
+     * items of a page aren't kept once they're converted.
+     */
+    private Map<String, AttributeValue> lastEvaluatedKey;
+
+    /**
+     * Loads the next pages in the background, or null if the config doesn't
+     * prefetch or there is only one page.
+     */
+    private final PagePrefetcher<ScanResult> prefetcher;
 
     /**
      * Constructor.
@@ -68,15 +79,33 @@ public class PaginatedScanList<T> extends PaginatedList<T> {
         super(mapper, clazz, dynamo, paginationLoadingStrategy);
 
         this.scanRequest = scanRequest;
-        this.scanResult = scanResult;
+        this.lastEvaluatedKey = scanResult.getLastEvaluatedKey();
         this.config = config;
 
-        allResults.addAll(mapper.marshallIntoObjects(
-                mapper.toParameters(
-                        scanResult.getItems(),
-                        clazz,
-                        scanRequest.getTableName(),
-                        config)));
+        final Integer prefetchDepth = config == null ? null : config.getPaginationPrefetchDepth();
+        if (prefetchDepth != null && prefetchDepth > 0 && lastEvaluatedKey != null) {
+            prefetcher = new PagePrefetcher<ScanResult>(
+                    DynamoDBMapper.getParallelScanExecutor(config), prefetchDepth,
+                    lastEvaluatedKey) {
+                @Override
+                protected ScanResult fetch(Map<String, AttributeValue> startKey) {
+                    scanRequest.setExclusiveStartKey(startKey);
+                    return DynamoDBMapper.sendScan(dynamo, scanRequest,
+                            PaginatedScanList.this.config);
+                }
+
+                @Override
+                protected Map<String, AttributeValue> lastEvaluatedKey(ScanResult page) {
+                    return page.getLastEvaluatedKey();
+                }
+            };
+            prefetcher.start();
+        } else {
+            prefetcher = null;
+        }
+
+        allResults.addAll(mapper.unmarshallItems(
+                scanResult.getItems(), clazz, scanRequest.getTableName(), config));
 
         // If the results should be eagerly loaded at once
         if (paginationLoadingStrategy == PaginationLoadingStrategy.EAGER_LOADING) {
@@ -86,17 +115,20 @@ public class PaginatedScanList<T> extends PaginatedList<T> {
 
     @Override
     protected boolean atEndOfResults() {
-        return scanResult.getLastEvaluatedKey() == null;
+        return prefetcher == null ? lastEvaluatedKey == null : prefetcher.atEnd();
     }
 
     @Override
     protected synchronized List<T> fetchNextPage() {
-        scanRequest.setExclusiveStartKey(scanResult.getLastEvaluatedKey());
-        scanResult = dynamo.scan(DynamoDBMapper.applyUserAgent(scanRequest));
-        return mapper.marshallIntoObjects(mapper.toParameters(
-                scanResult.getItems(),
-                clazz,
-                scanRequest.getTableName(),
-                config));
+        final ScanResult scanResult;
+        if (prefetcher != null) {
+            scanResult = prefetcher.next();
+        } else {
+            scanRequest.setExclusiveStartKey(lastEvaluatedKey);
+            scanResult = DynamoDBMapper.sendScan(dynamo, scanRequest, config);
+            lastEvaluatedKey = scanResult.getLastEvaluatedKey();
+        }
+        return mapper.unmarshallItems(
+                scanResult.getItems(), clazz, scanRequest.getTableName(), config);
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads items with several BatchGetItem requests in flight. Keys are sent in
+ * batches of up to {@link #MAX_KEYS_PER_BATCH}; the unprocessed keys of a
+ * request are merged into the next batches, so a throttled batch doesn't hold
+ * up the others. When DynamoDB throttles or leaves keys unprocessed, no new
+ * request is sent for an exponentially growing, randomized delay.
+ */
+class ParallelBatchLoader extends PipelinedBatchRequests<ParallelBatchLoader.Batch, BatchGetItemResult> {
+
+    /** The max number of keys allowed in a BatchGetItem request. */
+    static final int MAX_KEYS_PER_BATCH = 100;
+
+    /** Times a batch is retried after throttling before the load fails. */
+    static final int MAX_THROTTLED_RETRIES = 10;
+
+    private final AmazonDynamoDB db;
+    private final boolean consistentReads;
+    private final RequestMetricCollector requestMetricCollector;
+
+    /** Keys not sent yet, in order. */
+    private final LinkedList<TableKey> pending = new LinkedList<TableKey>();
+    /** Consecutive requests that returned no item and processed no key. */
+    private int requestsWithoutProgress;
+    /** Receives the items loaded. */
+    private ItemsListener listener;
+
+    /**
+     * @param db the DynamoDB client.
+     * @param concurrency the max number of requests in flight.
+     * @param baseBackoffMillis the backoff after the first throttled request.
+     * @param maxBackoffMillis the max backoff.
+     * @param consistentReads whether the reads are strongly consistent.
+     * @param requestMetricCollector the request metric collector, or null.
+     * @param executor runs the requests when more than one may be in flight.
+     */
+    ParallelBatchLoader(AmazonDynamoDB db, int concurrency, long baseBackoffMillis,
+            long maxBackoffMillis, boolean consistentReads,
+            RequestMetricCollector requestMetricCollector, Executor executor) {
+        super(checkConcurrency(concurrency), baseBackoffMillis, maxBackoffMillis, executor);
+        this.db = db;
+        this.consistentReads = consistentReads;
+        this.requestMetricCollector = requestMetricCollector;
+    }
+
+    private static int checkConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Batch load concurrency must be at least 1");
+        }
+        return concurrency;
+    }
+
+    /**
+     * Adds a key to load.
+     *
+     * @param tableName the table of the item.
+     * @param key the primary key of the item.
+     */
+    void add(String tableName, Map<String, AttributeValue> key) {
+        pending.add(new TableKey(tableName, key));
+    }
+
+    /**
+     * Loads the items of the keys added, returning once each of them has been
+     * loaded or found missing.
+     *
+     * @param listener receives the items as their requests complete, on the
+     *            calling thread.
+     * @throws AmazonClientException if a request failed, or DynamoDB
+     *             processed none of the keys several times in a row.
+     */
+    void load(ItemsListener listener) {
+        this.listener = listener;
+        sendAll();
+    }
+
+    @Override
+    protected boolean hasPendingItems() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Takes the next pending keys, up to a full batch.
+     */
+    @Override
+    protected Batch nextBatch() {
+        final Batch batch = new Batch();
+        while (batch.size < MAX_KEYS_PER_BATCH && !pending.isEmpty()) {
+            final TableKey key = pending.poll();
+            batch.add(key.tableName, key.key, consistentReads);
+        }
+        return batch;
+    }
+
+    @Override
+    protected BatchGetItemResult send(Batch batch) {
+        final BatchGetItemRequest request = new BatchGetItemRequest()
+                .withRequestItems(batch.requestItems);
+        request.setRequestMetricCollector(requestMetricCollector);
+        return db.batchGetItem(DynamoDBMapper.applyBatchOperationUserAgent(request));
+    }
+
+    @Override
+    protected void handle(Batch batch, BatchGetItemResult result, RuntimeException e) {
+        if (e != null) {
+            if (e instanceof AmazonServiceException
+                    && RetryUtils.isThrottlingException((AmazonServiceException) e)
+                    && batch.throttledRetries < MAX_THROTTLED_RETRIES) {
+                batch.throttledRetries++;
+                retry(batch);
+                backOff();
+                return;
+            }
+            throw e;
+        }
+
+        int loaded = 0;
+        final Map<String, List<Map<String, AttributeValue>>> responses =
+                result.getResponses();
+        if (responses != null) {
+            for (final Map.Entry<String, List<Map<String, AttributeValue>>> entry : responses
+                    .entrySet()) {
+                if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    loaded += entry.getValue().size();
+                    listener.onItems(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        final Map<String, KeysAndAttributes> unprocessed = result.getUnprocessedKeys();
+        if (unprocessed == null || unprocessed.isEmpty()) {
+            requestsWithoutProgress = 0;
+            succeeded();
+            return;
+        }
+
+        // the unprocessed keys go first into the next batches
+        final List<TableKey> keys = new ArrayList<TableKey>();
+        for (final Map.Entry<String, KeysAndAttributes> entry : unprocessed.entrySet()) {
+            for (final Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                keys.add(new TableKey(entry.getKey(), key));
+            }
+        }
+        if (loaded == 0 && keys.size() >= batch.size) {
+            if (++requestsWithoutProgress > DynamoDBMapper.BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
+                throw new AmazonClientException(
+                        "Batch Get Item request to server hasn't received any data. "
+                                + "Please try again later.");
+            }
+        } else {
+            requestsWithoutProgress = 0;
+        }
+        for (final ListIterator<TableKey> it = keys.listIterator(keys.size()); it.hasPrevious();) {
+            pending.addFirst(it.previous());
+        }
+        backOff();
+    }
+
+    /**
+     * Receives the items loaded by a request.
+     */
+    interface ItemsListener {
+        /**
+         * @param tableName the table of the items.
+         * @param items the attributes of the items.
+         */
+        void onItems(String tableName, List<Map<String, AttributeValue>> items);
+    }
+
+    /**
+     * A key with its table.
+     */
+    private static final class TableKey {
+        private final String tableName;
+        private final Map<String, AttributeValue> key;
+
+        TableKey(String tableName, Map<String, AttributeValue> key) {
+            this.tableName = tableName;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The keys of one BatchGetItem request.
+     */
+    static final class Batch {
+        private final Map<String, KeysAndAttributes> requestItems =
+                new LinkedHashMap<String, KeysAndAttributes>();
+        private int size;
+        private int throttledRetries;
+
+        void add(String tableName, Map<String, AttributeValue> key, boolean consistentReads) {
+            KeysAndAttributes keys = requestItems.get(tableName);
+            if (keys == null) {
+                keys = new KeysAndAttributes().withConsistentRead(consistentReads)
+                        .withKeys(new LinkedList<Map<String, AttributeValue>>());
+                requestItems.put(tableName, keys);
+            }
+            keys.getKeys().add(key);
+            size++;
+        }
+    }
+}
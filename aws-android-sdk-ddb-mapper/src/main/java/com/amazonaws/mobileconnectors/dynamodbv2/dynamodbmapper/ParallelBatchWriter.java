@@ -0,0 +1,214 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatchListener;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes items with several BatchWriteItem requests in flight. Items are sent
+ * in batches of up to {@link DynamoDBMapper#MAX_ITEMS_PER_BATCH}; the
+ * unprocessed items of a request are merged into the next batches rather than
+ * retried on their own, so one slow batch doesn't hold up the others. When
+ * DynamoDB throttles or leaves items unprocessed, no new request is sent for
+ * an exponentially growing, randomized delay, which keeps the writers from
+ * retrying in lockstep.
+ */
+class ParallelBatchWriter extends PipelinedBatchRequests<ParallelBatchWriter.Batch, BatchWriteItemResult> {
+
+    /** Times a batch is retried after throttling before it's reported as failed. */
+    static final int MAX_THROTTLED_RETRIES = 10;
+
+    private final AmazonDynamoDB db;
+    private final DynamoDBRateLimiter rateLimiter;
+
+    /** Items not sent yet, in order. */
+    private final LinkedList<TableWriteRequest> pending = new LinkedList<TableWriteRequest>();
+    /** Notified of the failed batches. */
+    private FailedBatchListener listener;
+
+    /**
+     * @param db the DynamoDB client.
+     * @param concurrency the max number of requests in flight.
+     * @param baseBackoffMillis the backoff after the first throttled request.
+     * @param maxBackoffMillis the max backoff.
+     * @param rateLimiter limits the consumed write capacity, or null.
+     * @param executor runs the requests when more than one may be in flight.
+     */
+    ParallelBatchWriter(AmazonDynamoDB db, int concurrency, long baseBackoffMillis,
+            long maxBackoffMillis, DynamoDBRateLimiter rateLimiter, Executor executor) {
+        super(checkConcurrency(concurrency), baseBackoffMillis, maxBackoffMillis, executor);
+        this.db = db;
+        this.rateLimiter = rateLimiter;
+    }
+
+    private static int checkConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Batch write concurrency must be at least 1");
+        }
+        return concurrency;
+    }
+
+    /**
+     * Writes the items, returning once each of them has been written or
+     * reported as failed.
+     *
+     * @param requestItems the write requests by table name.
+     * @param listener notified of each batch that failed, on the calling
+     *            thread.
+     */
+    void write(Map<String, List<WriteRequest>> requestItems, FailedBatchListener listener) {
+        for (final Map.Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+            for (final WriteRequest request : entry.getValue()) {
+                pending.add(new TableWriteRequest(entry.getKey(), request));
+            }
+        }
+        this.listener = listener;
+        sendAll();
+    }
+
+    @Override
+    protected boolean hasPendingItems() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Takes the next pending items, up to a full batch.
+     */
+    @Override
+    protected Batch nextBatch() {
+        final Batch batch = new Batch();
+        while (batch.size < DynamoDBMapper.MAX_ITEMS_PER_BATCH && !pending.isEmpty()) {
+            final TableWriteRequest item = pending.poll();
+            batch.add(item.tableName, item.request);
+        }
+        return batch;
+    }
+
+    @Override
+    protected BatchWriteItemResult send(Batch batch) {
+        final BatchWriteItemRequest request = DynamoDBMapper.applyBatchOperationUserAgent(
+                new BatchWriteItemRequest().withRequestItems(batch.requestItems));
+        return rateLimiter == null
+                ? db.batchWriteItem(request)
+                : rateLimiter.batchWriteItem(db, request);
+    }
+
+    @Override
+    protected void handle(Batch batch, BatchWriteItemResult result, RuntimeException e) {
+        if (e == null) {
+            final Map<String, List<WriteRequest>> unprocessed = result.getUnprocessedItems();
+            if (unprocessed != null && !unprocessed.isEmpty()) {
+                // the unprocessed items go first into the next batches
+                final List<TableWriteRequest> items = new ArrayList<TableWriteRequest>();
+                for (final Map.Entry<String, List<WriteRequest>> entry : unprocessed.entrySet()) {
+                    for (final WriteRequest request : entry.getValue()) {
+                        items.add(new TableWriteRequest(entry.getKey(), request));
+                    }
+                }
+                for (final ListIterator<TableWriteRequest> it = items.listIterator(items.size()); it.hasPrevious();) {
+                    pending.addFirst(it.previous());
+                }
+                backOff();
+            } else {
+                succeeded();
+            }
+            return;
+        }
+
+        if (e instanceof AmazonServiceException
+                && RetryUtils.isRequestEntityTooLargeException((AmazonServiceException) e)
+                && batch.size > 1) {
+            // the request is over 16 MB, send the halves on their own
+            final Batch[] halves = batch.divide();
+            retry(halves[1]);
+            retry(halves[0]);
+        } else if (e instanceof AmazonServiceException
+                && RetryUtils.isThrottlingException((AmazonServiceException) e)
+                && batch.throttledRetries < MAX_THROTTLED_RETRIES) {
+            batch.throttledRetries++;
+            retry(batch);
+            backOff();
+        } else {
+            final FailedBatch failedBatch = new FailedBatch();
+            failedBatch.setUnprocessedItems(batch.requestItems);
+            failedBatch.setException(e);
+            listener.onFailedBatch(failedBatch);
+        }
+    }
+
+    /**
+     * A write request with its table.
+     */
+    private static final class TableWriteRequest {
+        private final String tableName;
+        private final WriteRequest request;
+
+        TableWriteRequest(String tableName, WriteRequest request) {
+            this.tableName = tableName;
+            this.request = request;
+        }
+    }
+
+    /**
+     * The write requests of one BatchWriteItem request.
+     */
+    static final class Batch {
+        private final Map<String, List<WriteRequest>> requestItems =
+                new LinkedHashMap<String, List<WriteRequest>>();
+        private int size;
+        private int throttledRetries;
+
+        void add(String tableName, WriteRequest request) {
+            List<WriteRequest> requests = requestItems.get(tableName);
+            if (requests == null) {
+                requests = new LinkedList<WriteRequest>();
+                requestItems.put(tableName, requests);
+            }
+            requests.add(request);
+            size++;
+        }
+
+        Batch[] divide() {
+            final Batch[] halves = new Batch[] {
+                    new Batch(), new Batch()
+            };
+            int i = 0;
+            for (final Map.Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+                for (final WriteRequest request : entry.getValue()) {
+                    halves[i++ < size / 2 ? 0 : 1].add(entry.getKey(), request);
+                }
+            }
+            halves[0].throttledRetries = throttledRetries;
+            halves[1].throttledRetries = throttledRetries;
+            return halves;
+        }
+    }
+}
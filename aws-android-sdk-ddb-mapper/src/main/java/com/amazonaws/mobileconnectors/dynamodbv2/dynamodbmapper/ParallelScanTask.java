@@ -29,6 +29,11 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A task thats runs DynamoDB scan operations in parallel.
@@ -61,8 +66,48 @@ public class ParallelScanTask {
 
     private final ExecutorService executorService;
 
+    /** Whether the executor was created for this scan, to shut down at the end. */
+    private final boolean ownsExecutorService;
+
     private final AmazonDynamoDB dynamo;
 
+    private final DynamoDBRateLimiter rateLimiter;
+
+    /**
+     * Returns the thread pool shared by the parallel scans of all mappers
+     * whose config doesn't give an executor. It runs up to twice as many
+     * segment scans at once as there are processors, at least four, and
+     * queues the others; its daemon threads stop after a minute of idling.
+     */
+    static ExecutorService getSharedExecutor() {
+        return SharedExecutorHolder.EXECUTOR;
+    }
+
+    private static final class SharedExecutorHolder {
+        private static final long KEEP_ALIVE_SECONDS = 60;
+        private static final ExecutorService EXECUTOR = newSharedExecutor();
+
+        private static ExecutorService newSharedExecutor() {
+            final int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(r);
+                            thread.setDaemon(true);
+                            thread.setName("DynamoDBMapperParallelScan-"
+                                    + count.incrementAndGet());
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
     @Deprecated
     @SuppressWarnings("checkstyle:javadocmethod")
     public ParallelScanTask(DynamoDBMapper mapper, AmazonDynamoDB dynamo,
@@ -71,10 +116,27 @@ public class ParallelScanTask {
     }
 
     ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests) {
+        this(dynamo, parallelScanRequests, null);
+    }
+
+    ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests,
+            DynamoDBRateLimiter rateLimiter) {
+        this(dynamo, parallelScanRequests, rateLimiter, null);
+    }
+
+    /**
+     * @param executorService runs the segment scans, and is left running at
+     *            the end. If null, the task creates a thread pool of its own.
+     */
+    ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests,
+            DynamoDBRateLimiter rateLimiter, ExecutorService executorService) {
         this.dynamo = dynamo;
+        this.rateLimiter = rateLimiter;
         this.parallelScanRequests = parallelScanRequests;
         this.totalSegments = parallelScanRequests.size();
-        executorService = Executors.newCachedThreadPool();
+        this.ownsExecutorService = executorService == null;
+        this.executorService = ownsExecutorService
+                ? Executors.newCachedThreadPool() : executorService;
 
         // Create synchronized views of the list to guarantee any changes are
         // visible across all threads.
@@ -104,7 +166,9 @@ public class ParallelScanTask {
                 }
             }
             // Shut down if all data have been scanned and loaded.
-            executorService.shutdown();
+            if (ownsExecutorService) {
+                executorService.shutdown();
+            }
             return true;
         }
     }
@@ -251,7 +315,9 @@ public class ParallelScanTask {
         } else {
             segmentScanRequest.setExclusiveStartKey(null);
         }
-        final ScanResult scanResult = dynamo.scan(DynamoDBMapper.applyUserAgent(segmentScanRequest));
+        final ScanResult scanResult = rateLimiter == null
+                ? dynamo.scan(DynamoDBMapper.applyUserAgent(segmentScanRequest))
+                : rateLimiter.scan(dynamo, DynamoDBMapper.applyUserAgent(segmentScanRequest));
 
         /**
          * Cache the scan result in segmentScanResults. We should never try to
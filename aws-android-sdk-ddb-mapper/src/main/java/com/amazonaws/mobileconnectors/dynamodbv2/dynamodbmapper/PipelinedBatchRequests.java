@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the batches of a batch operation with several requests in flight.
+ * Batches to send again go before the new ones. When DynamoDB throttles or
+ * leaves items unprocessed, no new request is sent for an exponentially
+ * growing, randomized delay, which keeps the callers from retrying in
+ * lockstep. The results are handled on the calling thread as the requests
+ * complete.
+ *
+ * @param <B> the type of the batches.
+ * @param <R> the type of the results of the requests.
+ */
+abstract class PipelinedBatchRequests<B, R> {
+
+    /** Runs the requests on the calling thread. */
+    private static final Executor CALLER_RUNS = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final int concurrency;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Executor executor;
+    private final Random random = new Random();
+
+    /** Batches to send again, before the pending items. */
+    private final LinkedList<B> retries = new LinkedList<B>();
+    /** Consecutive throttled requests, which the backoff grows with. */
+    private int backoffAttempts;
+    /** Time before which no request is sent. */
+    private long resumeTime;
+
+    /**
+     * @param concurrency the max number of requests in flight, at least 1.
+     * @param baseBackoffMillis the backoff after the first throttled request.
+     * @param maxBackoffMillis the max backoff.
+     * @param executor runs the requests when more than one may be in flight,
+     *            usually the executor shared by the parallel scans.
+     */
+    PipelinedBatchRequests(int concurrency, long baseBackoffMillis, long maxBackoffMillis,
+            Executor executor) {
+        this.concurrency = concurrency;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns whether some items haven't been sent yet.
+     */
+    protected abstract boolean hasPendingItems();
+
+    /**
+     * Takes the next pending items, up to a full batch.
+     */
+    protected abstract B nextBatch();
+
+    /**
+     * Sends the request of a batch. Called on a thread of the executor.
+     */
+    protected abstract R send(B batch);
+
+    /**
+     * Handles the result of the request of a batch, or the exception it
+     * threw. Called on the calling thread; an exception thrown stops the
+     * operation.
+     */
+    protected abstract void handle(B batch, R result, RuntimeException exception);
+
+    /**
+     * Sends the batches, returning once all the items have been sent and the
+     * results handled. The requests still in flight when it throws are
+     * cancelled.
+     */
+    void sendAll() {
+        final CompletionService<Outcome<B, R>> completion = new ExecutorCompletionService<Outcome<B, R>>(
+                concurrency > 1 ? executor : CALLER_RUNS);
+        final Set<Future<Outcome<B, R>>> inFlight = new HashSet<Future<Outcome<B, R>>>();
+        try {
+            while (hasBatchToSend() || !inFlight.isEmpty()) {
+                final long now = System.currentTimeMillis();
+                while (inFlight.size() < concurrency && now >= resumeTime && hasBatchToSend()) {
+                    final B batch = retries.isEmpty() ? nextBatch() : retries.poll();
+                    inFlight.add(completion.submit(new Callable<Outcome<B, R>>() {
+                        @Override
+                        public Outcome<B, R> call() {
+                            try {
+                                return new Outcome<B, R>(batch, send(batch), null);
+                            } catch (final RuntimeException e) {
+                                return new Outcome<B, R>(batch, null, e);
+                            }
+                        }
+                    }));
+                }
+
+                final Future<Outcome<B, R>> done;
+                if (inFlight.isEmpty()) {
+                    // backing off
+                    Thread.sleep(resumeTime - now);
+                    continue;
+                } else if (inFlight.size() < concurrency && hasBatchToSend()) {
+                    done = completion.poll(resumeTime - now, TimeUnit.MILLISECONDS);
+                } else {
+                    done = completion.take();
+                }
+                if (done == null) {
+                    continue;
+                }
+                inFlight.remove(done);
+                final Outcome<B, R> outcome = getOutcome(done);
+                handle(outcome.batch, outcome.result, outcome.exception);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        } finally {
+            for (final Future<Outcome<B, R>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private boolean hasBatchToSend() {
+        return !retries.isEmpty() || hasPendingItems();
+    }
+
+    private static <B, R> Outcome<B, R> getOutcome(Future<Outcome<B, R>> done)
+            throws InterruptedException {
+        try {
+            return done.get();
+        } catch (final ExecutionException e) {
+            // exceptions are caught around send, only errors get here
+            throw new AmazonClientException("Batch request failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Sends a batch again before the other batches.
+     */
+    final void retry(B batch) {
+        retries.addFirst(batch);
+    }
+
+    /**
+     * Holds back new requests for a random delay up to an exponentially
+     * growing limit.
+     */
+    final void backOff() {
+        backoffAttempts++;
+        final long limit = Math.min(maxBackoffMillis,
+                baseBackoffMillis << Math.min(backoffAttempts - 1, 20));
+        final long delay = (long) (random.nextDouble() * limit);
+        resumeTime = Math.max(resumeTime, System.currentTimeMillis() + delay);
+    }
+
+    /**
+     * Shrinks the backoff after a request processed all its items.
+     */
+    final void succeeded() {
+        if (backoffAttempts > 0) {
+            backoffAttempts--;
+        }
+    }
+
+    /**
+     * The result of a request.
+     */
+    private static final class Outcome<B, R> {
+        private final B batch;
+        private final R result;
+        private final RuntimeException exception;
+
+        Outcome(B batch, R result, RuntimeException exception) {
+            this.batch = batch;
+            this.result = result;
+            this.exception = exception;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Scans the segments of a parallel scan and hands over each page on the
+ * calling thread as soon as it's scanned, in whatever order the segments
+ * produce them. A segment asks for its next page while its current page is
+ * waiting to be handed over, but not for the one after: when the listener
+ * falls behind, the segments pause, so no more than two pages per segment
+ * are held in memory.
+ */
+class StreamingParallelScan {
+
+    private final AmazonDynamoDB db;
+    private final List<ScanRequest> segmentRequests;
+    private final Executor executor;
+    private final DynamoDBMapperConfig config;
+
+    /**
+     * @param db the DynamoDB client.
+     * @param segmentRequests the scan request of each segment, which are
+     *            updated with the start key of each page.
+     * @param executor runs the scan requests.
+     * @param config the config whose rate limiter, if any, the requests go
+     *            through.
+     */
+    StreamingParallelScan(AmazonDynamoDB db, List<ScanRequest> segmentRequests,
+            Executor executor, DynamoDBMapperConfig config) {
+        this.db = db;
+        this.segmentRequests = segmentRequests;
+        this.executor = executor;
+        this.config = config;
+    }
+
+    /**
+     * Scans every segment to its end, returning once all the pages have been
+     * handed over. If a segment scan or the listener fails, the other
+     * segments are stopped and the exception is thrown.
+     *
+     * @param listener receives the pages, on the calling thread.
+     */
+    void scan(PageListener listener) {
+        final CompletionService<Page> completion = new ExecutorCompletionService<Page>(executor);
+        final Set<Future<Page>> inFlight = new HashSet<Future<Page>>();
+        try {
+            for (int segment = 0; segment < segmentRequests.size(); segment++) {
+                inFlight.add(submit(completion, segment, null));
+            }
+            while (!inFlight.isEmpty()) {
+                final Future<Page> done = completion.take();
+                inFlight.remove(done);
+                final Page page = getPage(done);
+
+                final Map<String, AttributeValue> lastEvaluatedKey =
+                        page.result.getLastEvaluatedKey();
+                // the next page is scanned while this one is handed over; the
+                // one after is only requested once it's taken, after onPage
+                // returns, so a slow listener holds the segment back
+                if (lastEvaluatedKey != null) {
+                    inFlight.add(submit(completion, page.segment, lastEvaluatedKey));
+                }
+                listener.onPage(page.segment, page.result);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Parallel scan interrupted by other thread.", e);
+        } finally {
+            for (final Future<Page> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Future<Page> submit(CompletionService<Page> completion, final int segment,
+            final Map<String, AttributeValue> startKey) {
+        return completion.submit(new Callable<Page>() {
+            @Override
+            public Page call() {
+                final ScanRequest request = segmentRequests.get(segment);
+                request.setExclusiveStartKey(startKey);
+                return new Page(segment, DynamoDBMapper.sendScan(db, request, config));
+            }
+        });
+    }
+
+    private static Page getPage(Future<Page> done) throws InterruptedException {
+        try {
+            return done.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof AmazonClientException) {
+                throw (AmazonClientException) e.getCause();
+            }
+            throw new AmazonClientException("Internal error during the parallel scan.",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Receives the pages of a parallel scan.
+     */
+    interface PageListener {
+        /**
+         * @param segment the segment of the page.
+         * @param result the page.
+         */
+        void onPage(int segment, ScanResult result);
+    }
+
+    /**
+     * A page scanned from a segment.
+     */
+    private static final class Page {
+        private final int segment;
+        private final ScanResult result;
+
+        Page(int segment, ScanResult result) {
+            this.segment = segment;
+            this.result = result;
+        }
+    }
+}
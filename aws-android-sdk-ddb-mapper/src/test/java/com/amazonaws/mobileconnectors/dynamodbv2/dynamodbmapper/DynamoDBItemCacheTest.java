@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class DynamoDBItemCacheTest {
+
+    private static final String TABLE = "testTable";
+
+    @Test
+    public void testHitsAndMisses() {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+
+        assertNull(cache.get(TABLE, key(1)));
+        cache.put(TABLE, key(1), item(1, "value"), cache.startRead());
+        assertEquals(item(1, "value"), cache.get(TABLE, key(1)));
+        assertNull(cache.get("otherTable", key(1)));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(2, 1000, 1, TimeUnit.MINUTES);
+        cache.put(TABLE, key(1), item(1, "a"), cache.startRead());
+        cache.put(TABLE, key(2), item(2, "b"), cache.startRead());
+        assertNotNull(cache.get(TABLE, key(1)));
+
+        cache.put(TABLE, key(3), item(3, "c"), cache.startRead());
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get(TABLE, key(1)));
+        assertNull(cache.get(TABLE, key(2)));
+    }
+
+    @Test
+    public void testBytesAreBounded() {
+        final Map<String, AttributeValue> item = item(1, "0123456789");
+        final long itemSize = DynamoDBItemCache.estimateSize(item);
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 2 * itemSize, 1,
+                TimeUnit.MINUTES);
+
+        cache.put(TABLE, key(1), item, cache.startRead());
+        cache.put(TABLE, key(2), item(2, "0123456789"), cache.startRead());
+        cache.put(TABLE, key(3), item(3, "0123456789"), cache.startRead());
+
+        assertEquals(2, cache.size());
+        assertEquals(2 * itemSize, cache.getSizeInBytes());
+        assertNull(cache.get(TABLE, key(1)));
+
+        cache.put(TABLE, key(4), item(4, "an item larger than the whole cache"),
+                cache.startRead());
+        assertNull(cache.get(TABLE, key(4)));
+    }
+
+    @Test
+    public void testItemsExpire() throws InterruptedException {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES)
+                .withTableTimeToLive(TABLE, 50, TimeUnit.MILLISECONDS);
+        cache.put(TABLE, key(1), item(1, "value"), cache.startRead());
+        cache.put("otherTable", key(1), item(1, "value"), cache.startRead());
+
+        Thread.sleep(100);
+
+        assertNull(cache.get(TABLE, key(1)));
+        assertNotNull(cache.get("otherTable", key(1)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testTableWithoutTimeToLiveIsNotCached() {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 0, TimeUnit.MINUTES)
+                .withTableTimeToLive(TABLE, 1, TimeUnit.MINUTES);
+        cache.put(TABLE, key(1), item(1, "value"), cache.startRead());
+        cache.put("otherTable", key(1), item(1, "value"), cache.startRead());
+
+        assertNotNull(cache.get(TABLE, key(1)));
+        assertNull(cache.get("otherTable", key(1)));
+    }
+
+    @Test
+    public void testItemReadBeforeInvalidationIsNotCached() {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        cache.put(TABLE, key(1), item(1, "old"), cache.startRead());
+
+        final long readToken = cache.startRead();
+        cache.invalidate(TABLE, key(1));
+        cache.put(TABLE, key(1), item(1, "old"), readToken);
+
+        assertNull(cache.get(TABLE, key(1)));
+        assertEquals(0, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void testReturnedItemIsACopy() {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        cache.put(TABLE, key(1), item(1, "value"), cache.startRead());
+
+        cache.get(TABLE, key(1)).remove("value");
+
+        assertEquals(item(1, "value"), cache.get(TABLE, key(1)));
+    }
+
+    @Test
+    public void testBinaryValuesAreCopied() {
+        final DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        final Map<String, AttributeValue> item = binaryItem(1);
+        cache.put(TABLE, key(1), item, cache.startRead());
+
+        item.get("b").getB().array()[0] = 9;
+        final Map<String, AttributeValue> loaded = cache.get(TABLE, key(1));
+        loaded.get("b").getB().array()[1] = 9;
+        loaded.get("bs").getBS().get(0).get();
+        loaded.get("l").getL().get(0).getB().array()[2] = 9;
+
+        assertEquals(binaryItem(1), cache.get(TABLE, key(1)));
+    }
+
+    @Test
+    public void testEstimateSize() {
+        final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("s", new AttributeValue().withS("abc"));
+        item.put("n", new AttributeValue().withN("12"));
+        item.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[4])));
+        item.put("ss", new AttributeValue().withSS(Arrays.asList("a", "bc")));
+        item.put("bool", new AttributeValue().withBOOL(true));
+        item.put("m", new AttributeValue().withM(
+                Collections.singletonMap("x", new AttributeValue().withS("y"))));
+        item.put("l", new AttributeValue().withL(new AttributeValue().withN("1")));
+
+        // names 1+1+1+2+4+1+1, values 3+2+4+3+1+(3+2)+(3+1+1)
+        assertEquals(11 + 23, DynamoDBItemCache.estimateSize(item));
+    }
+
+    private static Map<String, AttributeValue> key(int id) {
+        return Collections.singletonMap("id", new AttributeValue().withN(String.valueOf(id)));
+    }
+
+    private static Map<String, AttributeValue> binaryItem(int id) {
+        final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(key(id));
+        item.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        item.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        item.put("l", new AttributeValue().withL(
+                new AttributeValue().withB(ByteBuffer.wrap(new byte[] {1, 2, 3}))));
+        return item;
+    }
+
+    private static Map<String, AttributeValue> item(int id, String value) {
+        final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(key(id));
+        item.put("value", new AttributeValue().withS(value));
+        return item;
+    }
+}
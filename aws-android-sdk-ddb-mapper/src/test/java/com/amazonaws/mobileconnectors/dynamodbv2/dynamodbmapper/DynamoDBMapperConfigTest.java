@@ -17,6 +17,7 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
 import com.amazonaws.Request;
@@ -31,6 +32,10 @@ import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperCo
 
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 public class DynamoDBMapperConfigTest {
 
     @Test
@@ -66,7 +71,35 @@ public class DynamoDBMapperConfigTest {
         assertNotNull(b.withTableNameResolver(tnr));
         assertSame(b.getTableNameResolver(), tnr);
 
+        assertEquals(b.getBatchWriteConcurrency().intValue(), 1);
+        assertNotNull(b.withBatchWriteConcurrency(4));
+        assertEquals(b.getBatchWriteConcurrency().intValue(), 4);
+
+        assertEquals(b.getBatchLoadConcurrency().intValue(), 1);
+        assertNotNull(b.withBatchLoadConcurrency(8));
+        assertEquals(b.getBatchLoadConcurrency().intValue(), 8);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        assertNull(b.getParallelScanExecutor());
+        assertNotNull(b.withParallelScanExecutor(executor));
+        assertSame(b.getParallelScanExecutor(), executor);
+
+        assertEquals(b.getPaginationPrefetchDepth().intValue(), 0);
+        assertNotNull(b.withPaginationPrefetchDepth(2));
+        assertEquals(b.getPaginationPrefetchDepth().intValue(), 2);
+
+        DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        assertNull(b.getItemCache());
+        assertNotNull(b.withItemCache(cache));
+        assertSame(b.getItemCache(), cache);
+
         DynamoDBMapperConfig conf = b.build();
+        executor.shutdown();
+        assertEquals(conf.getPaginationPrefetchDepth().intValue(), 2);
+        assertSame(conf.getItemCache(), cache);
+        assertEquals(conf.getBatchWriteConcurrency().intValue(), 4);
+        assertEquals(conf.getBatchLoadConcurrency().intValue(), 8);
+        assertSame(conf.getParallelScanExecutor(), executor);
         assertEquals(conf.getConsistentReads(), ConsistentReads.CONSISTENT);
         assertSame(conf.getConversionSchema(), cs);
         assertSame(conf.getObjectTableNameResolver(), otnr);
@@ -135,6 +168,21 @@ public class DynamoDBMapperConfigTest {
         assertEquals(conf.getSaveBehavior(), conf.getSaveBehavior());
         assertEquals(conf.getTableNameOverride(), copy.getTableNameOverride());
         assertEquals(conf.getTableNameResolver(), copy.getTableNameResolver());
+        assertEquals(conf.getBatchWriteConcurrency(), copy.getBatchWriteConcurrency());
+        assertEquals(conf.getBatchLoadConcurrency(), copy.getBatchLoadConcurrency());
+        assertEquals(conf.getParallelScanExecutor(), copy.getParallelScanExecutor());
+        assertEquals(conf.getPaginationPrefetchDepth(), copy.getPaginationPrefetchDepth());
+        assertEquals(conf.getItemCache(), copy.getItemCache());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchWriteConcurrencyLessThanOne() {
+        new DynamoDBMapperConfig.Builder().withBatchWriteConcurrency(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePaginationPrefetchDepth() {
+        new DynamoDBMapperConfig.Builder().withPaginationPrefetchDepth(-1);
     }
 
     @Test
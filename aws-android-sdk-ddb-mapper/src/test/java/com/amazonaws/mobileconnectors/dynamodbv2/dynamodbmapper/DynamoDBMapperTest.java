@@ -27,7 +27,9 @@ import com.amazonaws.AmazonServiceException;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.HashKeyAutoGenerated;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.SaveObjectHandler;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.ConsistentReads;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.SaveBehavior;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -38,8 +40,13 @@ import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
 import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.amazonaws.util.StringUtils;
 
@@ -49,10 +56,14 @@ import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class DynamoDBMapperTest {
 
@@ -128,37 +139,29 @@ public class DynamoDBMapperTest {
     }
 
     @Test
-    public void testWriteOneBatchWithEntityTooLarge() {
-        Map<String, List<WriteRequest>> batchMap = new HashMap<String, List<WriteRequest>>();
-        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
-        WriteRequest wr1 = new WriteRequest();
-        WriteRequest wr2 = new WriteRequest();
-        WriteRequest wr3 = new WriteRequest();
-        batchList.add(wr1);
-        batchList.add(wr2);
-        batchList.add(wr3);
-        batchMap.put("testTable", batchList);
+    public void testBatchWriteWithEntityTooLarge() {
+        List<Object> objectsToWrite = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++) {
+            objectsToWrite.add(new MockTwoValuePlusVersionClass("PrimaryKey" + i, "Value1", null));
+        }
         EasyMock.reset(mockClient);
 
         AmazonServiceException ase = new AmazonServiceException("TestException");
         ase.setErrorCode("Request entity too large");
 
-        BatchWriteItemResult mockResult = EasyMock.createMock(BatchWriteItemResult.class);
-        EasyMock.reset(mockResult);
-        EasyMock.expect(mockResult.getUnprocessedItems()).andReturn(
-                new HashMap<String, List<WriteRequest>>()).times(2);
+        Capture<BatchWriteItemRequest> requests = new Capture<BatchWriteItemRequest>(CaptureType.ALL);
         // Will cause batches to be split and re-tried
-        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.capture(requests)))
                 .andThrow(ase);
-        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
-                .andReturn(mockResult);
-        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
-                .andReturn(mockResult);
-        EasyMock.replay(mockClient, mockResult);
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.capture(requests)))
+                .andReturn(new BatchWriteItemResult()).times(2);
+        EasyMock.replay(mockClient);
 
-        List<FailedBatch> result = mapper.writeOneBatch(batchMap);
+        List<FailedBatch> result = mapper.batchWrite(objectsToWrite, new ArrayList<Object>());
         assertEquals(result.size(), 0);
         EasyMock.verify(mockClient);
+        assertEquals(1, requests.getValues().get(1).getRequestItems().values().iterator().next().size());
+        assertEquals(2, requests.getValues().get(2).getRequestItems().values().iterator().next().size());
     }
 
     @Test
@@ -346,12 +349,305 @@ public class DynamoDBMapperTest {
                 nonAutogen));
     }
 
+    @Test
+    public void testBatchLoadListenerReceivesObjectsOfEachRequest() {
+        List<Object> itemsToGet = new ArrayList<Object>();
+        itemsToGet.add(new MockDifferentTableName("PrimaryKey1", null));
+        itemsToGet.add(new MockDifferentTableName("PrimaryKey2", null));
+        final String tableName = "aws-android-sdk-dynamodbmapper-test-different-table";
+
+        EasyMock.reset(mockClient);
+        Map<String, AttributeValue> first = new HashMap<String, AttributeValue>();
+        first.put("id", new AttributeValue().withS("PrimaryKey1"));
+        Map<String, AttributeValue> second = new HashMap<String, AttributeValue>();
+        second.put("id", new AttributeValue().withS("PrimaryKey2"));
+        EasyMock.expect(mockClient.batchGetItem(anyObject(BatchGetItemRequest.class))).andReturn(
+                new BatchGetItemResult()
+                        .addResponsesEntry(tableName, Collections.singletonList(first))
+                        .addUnprocessedKeysEntry(tableName, new KeysAndAttributes().withKeys(second)));
+        EasyMock.expect(mockClient.batchGetItem(anyObject(BatchGetItemRequest.class))).andReturn(
+                new BatchGetItemResult()
+                        .addResponsesEntry(tableName, Collections.singletonList(second)));
+        EasyMock.replay(mockClient);
+
+        final List<Object> loaded = new ArrayList<Object>();
+        mapper.batchLoad(itemsToGet, null, new DynamoDBMapper.BatchLoadListener() {
+            @Override
+            public void onBatchLoaded(String table, List<Object> objects) {
+                assertEquals(tableName, table);
+                assertEquals(1, objects.size());
+                loaded.addAll(objects);
+            }
+        });
+
+        EasyMock.verify(mockClient);
+        assertEquals(2, loaded.size());
+        assertEquals("PrimaryKey1", ((MockDifferentTableName) loaded.get(0)).getId());
+        assertEquals("PrimaryKey2", ((MockDifferentTableName) loaded.get(1)).getId());
+    }
+
     @Test
     public void testBatchLoadReturnsEmptyMapWithRequestOfNoObjects() {
         Map<String, List<Object>> result = mapper.batchLoad(new ArrayList<Object>());
         assertEquals(result.keySet().size(), 0);
     }
 
+    @Test
+    public void testLoadIsCachedUntilSave() {
+        DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        mapper = new DynamoDBMapper(mockClient, new DynamoDBMapperConfig.Builder()
+                .withItemCache(cache).build());
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("PrimaryKey1"));
+        item.put("firstValue", new AttributeValue().withS("value"));
+
+        EasyMock.reset(mockClient);
+        EasyMock.expect(mockClient.getItem(anyObject(GetItemRequest.class)))
+                .andReturn(new GetItemResult().withItem(item)).times(3);
+        EasyMock.expect(mockClient.putItem(anyObject(PutItemRequest.class)))
+                .andReturn(new PutItemResult());
+        EasyMock.replay(mockClient);
+
+        MockDifferentTableName loaded = mapper.load(MockDifferentTableName.class, "PrimaryKey1");
+        loaded.setFirstValue("changed");
+        assertEquals("value",
+                mapper.load(MockDifferentTableName.class, "PrimaryKey1").getFirstValue());
+        assertEquals(1, cache.getHitCount());
+
+        mapper.save(loaded, new DynamoDBMapperConfig(SaveBehavior.CLOBBER));
+        mapper.load(MockDifferentTableName.class, "PrimaryKey1");
+        mapper.load(MockDifferentTableName.class, "PrimaryKey1",
+                new DynamoDBMapperConfig(ConsistentReads.CONSISTENT));
+
+        EasyMock.verify(mockClient);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testChangingLoadedBinaryAttributeDoesNotChangeCachedItem() {
+        DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        mapper = new DynamoDBMapper(mockClient, new DynamoDBMapperConfig.Builder()
+                .withItemCache(cache).build());
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("key", new AttributeValue().withS("PrimaryKey1"));
+        item.put("binaryAttribute", new AttributeValue().withB(ByteBuffer.wrap(new byte[] {
+                1, 2, 3
+        })));
+
+        EasyMock.reset(mockClient);
+        EasyMock.expect(mockClient.getItem(anyObject(GetItemRequest.class)))
+                .andReturn(new GetItemResult().withItem(item));
+        EasyMock.replay(mockClient);
+
+        mapper.load(BinaryAttributeByteArrayClass.class, "PrimaryKey1").getBinaryAttribute()[0] = 9;
+        mapper.load(BinaryAttributeByteArrayClass.class, "PrimaryKey1").getBinaryAttribute()[1] = 9;
+        byte[] loaded = mapper.load(BinaryAttributeByteArrayClass.class, "PrimaryKey1")
+                .getBinaryAttribute();
+
+        EasyMock.verify(mockClient);
+        assertEquals(2, cache.getHitCount());
+        assertTrue(Arrays.equals(new byte[] {
+                1, 2, 3
+        }, loaded));
+    }
+
+    @Test
+    public void testScanOfViewOnlyReadsMappedAttributes() {
+        EasyMock.reset(mockClient);
+        Capture<ScanRequest> capture = new Capture<ScanRequest>();
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(new ScanResult());
+        EasyMock.replay(mockClient);
+
+        Map<String, String> names = Collections.singletonMap("#v", "secondValue");
+        mapper.scanPage(MockView.class, new DynamoDBScanExpression()
+                .withFilterExpression("attribute_exists(#v)")
+                .withExpressionAttributeNames(names), null);
+
+        EasyMock.verify(mockClient);
+        ScanRequest request = capture.getValue();
+        assertEquals("#proj0, #proj1", request.getProjectionExpression());
+        assertEquals(3, request.getExpressionAttributeNames().size());
+        assertEquals("secondValue", request.getExpressionAttributeNames().get("#v"));
+        assertTrue(request.getExpressionAttributeNames().containsValue("id"));
+        assertTrue(request.getExpressionAttributeNames().containsValue("firstValue"));
+        assertEquals(1, names.size());
+    }
+
+    @Test
+    public void testLoadOfViewOnlyReadsMappedAttributesAndIsNotCached() {
+        DynamoDBItemCache cache = new DynamoDBItemCache(10, 1000, 1, TimeUnit.MINUTES);
+        mapper = new DynamoDBMapper(mockClient, new DynamoDBMapperConfig.Builder()
+                .withItemCache(cache).build());
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("PrimaryKey1"));
+        item.put("firstValue", new AttributeValue().withS("value"));
+
+        EasyMock.reset(mockClient);
+        Capture<GetItemRequest> capture = new Capture<GetItemRequest>();
+        EasyMock.expect(mockClient.getItem(EasyMock.capture(capture)))
+                .andReturn(new GetItemResult().withItem(item));
+        EasyMock.replay(mockClient);
+
+        MockView view = mapper.load(MockView.class, "PrimaryKey1");
+
+        EasyMock.verify(mockClient);
+        assertEquals("value", view.getFirstValue());
+        GetItemRequest request = capture.getValue();
+        assertEquals("#proj0, #proj1", request.getProjectionExpression());
+        assertTrue(request.getExpressionAttributeNames().containsValue("id"));
+        assertTrue(request.getExpressionAttributeNames().containsValue("firstValue"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testScanOfTableClassReadsAllAttributes() {
+        EasyMock.reset(mockClient);
+        Capture<ScanRequest> capture = new Capture<ScanRequest>();
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(new ScanResult());
+        EasyMock.replay(mockClient);
+
+        mapper.scanPage(MockDifferentTableName.class, new DynamoDBScanExpression(), null);
+
+        EasyMock.verify(mockClient);
+        assertNull(capture.getValue().getProjectionExpression());
+        assertNull(capture.getValue().getExpressionAttributeNames());
+    }
+
+    @Test
+    public void testScanPageSkipsUnmappedAttributes() {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("PrimaryKey1"));
+        item.put("firstValue", new AttributeValue().withS("value"));
+        item.put("unmapped", new AttributeValue().withS("ignored"));
+
+        EasyMock.reset(mockClient);
+        EasyMock.expect(mockClient.scan(anyObject(ScanRequest.class))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(item)));
+        EasyMock.replay(mockClient);
+
+        ScanResultPage<MockDifferentTableName> page = mapper.scanPage(
+                MockDifferentTableName.class, new DynamoDBScanExpression(), null);
+
+        EasyMock.verify(mockClient);
+        assertEquals(1, page.getResults().size());
+        assertEquals("PrimaryKey1", page.getResults().get(0).getId());
+        assertEquals("value", page.getResults().get(0).getFirstValue());
+        assertNull(page.getLastEvaluatedKey());
+    }
+
+    @Test
+    public void testPaginatedScanListUntransformsEachItem() {
+        final List<Map<String, AttributeValue>> untransformed =
+                new ArrayList<Map<String, AttributeValue>>();
+        mapper = new DynamoDBMapper(mockClient, config, new AttributeTransformer() {
+            @Override
+            public Map<String, AttributeValue> transform(Parameters<?> parameters) {
+                return parameters.getAttributeValues();
+            }
+
+            @Override
+            public Map<String, AttributeValue> untransform(Parameters<?> parameters) {
+                assertEquals(MockDifferentTableName.class, parameters.getModelClass());
+                assertEquals("id", parameters.getHashKeyName());
+                untransformed.add(parameters.getAttributeValues());
+                return parameters.getAttributeValues();
+            }
+        });
+        Map<String, AttributeValue> first = new HashMap<String, AttributeValue>();
+        first.put("id", new AttributeValue().withS("PrimaryKey1"));
+        Map<String, AttributeValue> second = new HashMap<String, AttributeValue>();
+        second.put("id", new AttributeValue().withS("PrimaryKey2"));
+
+        EasyMock.reset(mockClient);
+        Capture<ScanRequest> capture = new Capture<ScanRequest>(CaptureType.ALL);
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(first))
+                        .withLastEvaluatedKey(first));
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(second)));
+        EasyMock.replay(mockClient);
+
+        List<MockDifferentTableName> results = mapper.scan(MockDifferentTableName.class,
+                new DynamoDBScanExpression());
+        assertEquals(2, results.size());
+        assertEquals("PrimaryKey2", results.get(1).getId());
+
+        EasyMock.verify(mockClient);
+        assertEquals(2, untransformed.size());
+        assertEquals(first, capture.getValues().get(1).getExclusiveStartKey());
+    }
+
+    @Test
+    public void testPaginatedScanListPrefetchesNextPages() {
+        Map<String, AttributeValue> first = new HashMap<String, AttributeValue>();
+        first.put("id", new AttributeValue().withS("PrimaryKey1"));
+        Map<String, AttributeValue> second = new HashMap<String, AttributeValue>();
+        second.put("id", new AttributeValue().withS("PrimaryKey2"));
+        Map<String, AttributeValue> third = new HashMap<String, AttributeValue>();
+        third.put("id", new AttributeValue().withS("PrimaryKey3"));
+
+        EasyMock.reset(mockClient);
+        Capture<ScanRequest> capture = new Capture<ScanRequest>(CaptureType.ALL);
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(first))
+                        .withLastEvaluatedKey(first));
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(second))
+                        .withLastEvaluatedKey(second));
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(third)));
+        EasyMock.replay(mockClient);
+
+        DynamoDBMapperConfig prefetching = new DynamoDBMapperConfig.Builder()
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.ITERATION_ONLY)
+                .withPaginationPrefetchDepth(2)
+                .build();
+        List<String> ids = new ArrayList<String>();
+        for (MockDifferentTableName item : mapper.scan(MockDifferentTableName.class,
+                new DynamoDBScanExpression(), prefetching)) {
+            ids.add(item.getId());
+        }
+
+        EasyMock.verify(mockClient);
+        assertEquals(3, ids.size());
+        assertEquals("PrimaryKey3", ids.get(2));
+        assertEquals(second, capture.getValues().get(2).getExclusiveStartKey());
+    }
+
+    @Test
+    public void testParallelScanHandsOverEachPage() {
+        Map<String, AttributeValue> first = new HashMap<String, AttributeValue>();
+        first.put("id", new AttributeValue().withS("PrimaryKey1"));
+        Map<String, AttributeValue> second = new HashMap<String, AttributeValue>();
+        second.put("id", new AttributeValue().withS("PrimaryKey2"));
+
+        EasyMock.reset(mockClient);
+        EasyMock.expect(mockClient.scan(anyObject(ScanRequest.class))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(first))
+                        .withLastEvaluatedKey(first));
+        EasyMock.expect(mockClient.scan(anyObject(ScanRequest.class))).andReturn(
+                new ScanResult().withItems(Collections.singletonList(second)));
+        EasyMock.replay(mockClient);
+
+        final List<MockDifferentTableName> scanned = new ArrayList<MockDifferentTableName>();
+        mapper.parallelScan(MockDifferentTableName.class, new DynamoDBScanExpression(), 1, null,
+                new DynamoDBMapper.ParallelScanListener<MockDifferentTableName>() {
+                    @Override
+                    public void onSegmentScanned(int segment,
+                            List<MockDifferentTableName> objects) {
+                        assertEquals(0, segment);
+                        scanned.addAll(objects);
+                    }
+                });
+
+        EasyMock.verify(mockClient);
+        assertEquals(2, scanned.size());
+        assertEquals("PrimaryKey1", scanned.get(0).getId());
+        assertEquals("PrimaryKey2", scanned.get(1).getId());
+    }
+
     @Test
     public void testCreateScanRequestFromExpression() {
 
@@ -433,25 +729,6 @@ public class DynamoDBMapperTest {
         assertEquals(sr2.getTotalSegments().intValue(), 2);
     }
 
-    @Test
-    public void testContainsThrottlingException() {
-        List<FailedBatch> failedBatches = new ArrayList<FailedBatch>();
-
-        FailedBatch nonThrottle = new FailedBatch();
-        nonThrottle.setException(new AmazonServiceException("InvalidInput"));
-        failedBatches.add(nonThrottle);
-
-        assertFalse(mapper.containsThrottlingException(failedBatches));
-
-        FailedBatch throttle = new FailedBatch();
-        AmazonServiceException ase = new AmazonServiceException("ThrottlingException");
-        ase.setErrorCode("ThrottlingException");
-        nonThrottle.setException(ase);
-        failedBatches.add(throttle);
-
-        assertTrue(mapper.containsThrottlingException(failedBatches));
-    }
-
     @Test
     public void testSaveObjectHandler() {
 
@@ -640,6 +917,35 @@ public class DynamoDBMapperTest {
         }
     }
 
+    @DynamoDBTable(tableName = "aws-android-sdk-dynamodbmapper-test")
+    @DynamoDBProjection
+    private static final class MockView {
+
+        private String id;
+        private String firstValue;
+
+        public MockView() {
+        }
+
+        @DynamoDBHashKey
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        @DynamoDBAttribute
+        public String getFirstValue() {
+            return firstValue;
+        }
+
+        public void setFirstValue(String firstValue) {
+            this.firstValue = firstValue;
+        }
+    }
+
     private static final class FixedCapture<T> extends Capture<T> {
 
         public static interface CapCallback<T> {
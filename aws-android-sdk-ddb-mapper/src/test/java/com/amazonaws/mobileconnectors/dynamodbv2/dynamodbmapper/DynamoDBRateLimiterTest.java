@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.SaveBehavior;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class DynamoDBRateLimiterTest {
+
+    private static final String TABLE = "aws-java-sdk-util";
+    private static final double DELTA = 0.001;
+
+    private AmazonDynamoDB mockClient;
+    private DynamoDBRateLimiter limiter;
+
+    @Before
+    public void setup() {
+        mockClient = EasyMock.createMock(AmazonDynamoDB.class);
+        limiter = new DynamoDBRateLimiter().withTableCapacity(TABLE, 10, 5);
+    }
+
+    @Test
+    public void testBucketWaitsUntilDebtIsPaidBack() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final DynamoDBRateLimiter.TokenBucket bucket = new DynamoDBRateLimiter.TokenBucket(10, 0);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        // the request consumed 30 units, 20 more than were left
+        bucket.take(30 - DynamoDBRateLimiter.UNITS_PER_REQUEST);
+        assertEquals(-20, bucket.getBalance(0), DELTA);
+
+        assertEquals(2 * second, bucket.tryAcquire(0));
+        assertEquals(second, bucket.tryAcquire(second));
+        assertEquals(0, bucket.tryAcquire(2 * second));
+        assertEquals(-DynamoDBRateLimiter.UNITS_PER_REQUEST, bucket.getBalance(2 * second), DELTA);
+    }
+
+    @Test
+    public void testBucketHoldsOneSecondOfCapacity() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final DynamoDBRateLimiter.TokenBucket bucket = new DynamoDBRateLimiter.TokenBucket(10, 0);
+
+        assertEquals(10, bucket.getBalance(60 * second), DELTA);
+        bucket.take(-5);
+        assertEquals(10, bucket.getBalance(60 * second), DELTA);
+    }
+
+    @Test
+    public void testQueryIsChargedConsumedCapacity() {
+        final Capture<QueryRequest> capture = new Capture<QueryRequest>();
+        EasyMock.expect(mockClient.query(EasyMock.capture(capture))).andReturn(
+                new QueryResult().withConsumedCapacity(
+                        new ConsumedCapacity().withTableName(TABLE).withCapacityUnits(4.5)));
+        EasyMock.replay(mockClient);
+
+        limiter.query(mockClient, new QueryRequest().withTableName(TABLE));
+
+        EasyMock.verify(mockClient);
+        assertEquals(ReturnConsumedCapacity.TOTAL.toString(),
+                capture.getValue().getReturnConsumedCapacity());
+        assertTrue(limiter.getReadBucket(TABLE).getBalance(System.nanoTime()) < 10);
+        assertTrue(limiter.getReadBucket(TABLE).getBalance(System.nanoTime()) > 5);
+        assertEquals(5, limiter.getWriteBucket(TABLE).getBalance(System.nanoTime()), DELTA);
+    }
+
+    @Test
+    public void testFailedRequestIsNotCharged() {
+        EasyMock.expect(mockClient.scan(EasyMock.anyObject(ScanRequest.class)))
+                .andThrow(new AmazonServiceException("ProvisionedThroughputExceededException"));
+        EasyMock.replay(mockClient);
+
+        try {
+            limiter.scan(mockClient, new ScanRequest().withTableName(TABLE));
+        } catch (final AmazonServiceException e) {
+            // expected
+        }
+
+        EasyMock.verify(mockClient);
+        assertEquals(10, limiter.getReadBucket(TABLE).getBalance(System.nanoTime()), DELTA);
+    }
+
+    @Test
+    public void testTableWithoutCapacityIsNotLimited() {
+        final Capture<ScanRequest> capture = new Capture<ScanRequest>();
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(new ScanResult());
+        EasyMock.replay(mockClient);
+
+        limiter.scan(mockClient, new ScanRequest().withTableName("otherTable"));
+
+        EasyMock.verify(mockClient);
+        assertNull(capture.getValue().getReturnConsumedCapacity());
+        assertNull(limiter.getReadBucket("otherTable"));
+    }
+
+    @Test
+    public void testMapperSaveIsLimited() {
+        final Capture<PutItemRequest> capture = new Capture<PutItemRequest>();
+        EasyMock.expect(mockClient.putItem(EasyMock.capture(capture))).andReturn(
+                new PutItemResult().withConsumedCapacity(
+                        new ConsumedCapacity().withTableName(TABLE).withCapacityUnits(3.0)));
+        EasyMock.replay(mockClient);
+
+        final DynamoDBMapper mapper = new DynamoDBMapper(mockClient,
+                new DynamoDBMapperConfig.Builder()
+                        .withSaveBehavior(SaveBehavior.CLOBBER)
+                        .withRateLimiter(limiter)
+                        .build());
+        final StringAttributeClass item = new StringAttributeClass();
+        item.setKey("key");
+        mapper.save(item);
+
+        EasyMock.verify(mockClient);
+        assertEquals(ReturnConsumedCapacity.TOTAL.toString(),
+                capture.getValue().getReturnConsumedCapacity());
+        assertTrue(limiter.getWriteBucket(TABLE).getBalance(System.nanoTime()) < 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityMustBePositive() {
+        new DynamoDBRateLimiter().setTableCapacity(TABLE, 10, 0);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts items to attribute values and back with the V2 compatible
+ * conversion schema, on 1, 4 and 16 threads sharing a converter, and prints
+ * the items converted per second.
+ */
+@Ignore("Benchmark, run manually")
+public class ItemConverterBenchmarkTest {
+    private static final int ITEM_COUNT = 200000;
+
+    @Test
+    public void benchmarkConversion() throws Exception {
+        final ItemConverter converter = ConversionSchemas.V2_COMPATIBLE
+                .getConverter(new ConversionSchema.Dependencies());
+        for (int round = 0; round < 2; round++) {
+            for (final int threads : new int[] { 1, 4, 16 }) {
+                run(converter, threads);
+            }
+        }
+    }
+
+    private void run(final ItemConverter converter, int threadCount) throws Exception {
+        final RangeKeyClass item = newItem();
+        final Map<String, AttributeValue> values = converter.convert(item);
+        final int itemsPerThread = ITEM_COUNT / threadCount;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Callable<Integer>> marshallers = new ArrayList<Callable<Integer>>();
+            final List<Callable<Integer>> unmarshallers = new ArrayList<Callable<Integer>>();
+            for (int t = 0; t < threadCount; t++) {
+                marshallers.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int attributes = 0;
+                        for (int i = 0; i < itemsPerThread; i++) {
+                            attributes += converter.convert(item).size();
+                        }
+                        return attributes;
+                    }
+                });
+                unmarshallers.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int keys = 0;
+                        for (int i = 0; i < itemsPerThread; i++) {
+                            keys += (int) converter.unconvert(RangeKeyClass.class, values).getKey();
+                        }
+                        return keys;
+                    }
+                });
+            }
+
+            final long marshallNanos = time(executor, marshallers);
+            final long unmarshallNanos = time(executor, unmarshallers);
+            final int items = itemsPerThread * threadCount;
+            System.out.println(String.format("%2d threads: convert %9.0f items/s, "
+                    + "unconvert %9.0f items/s", threadCount,
+                    items / (marshallNanos / 1e9), items / (unmarshallNanos / 1e9)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long time(ExecutorService executor, List<Callable<Integer>> tasks)
+            throws Exception {
+        final long start = System.nanoTime();
+        for (final Future<Integer> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static RangeKeyClass newItem() {
+        final RangeKeyClass item = new RangeKeyClass();
+        item.setKey(42);
+        item.setRangeKey(7.5);
+        item.setVersion(3L);
+        item.setStringAttribute("string attribute");
+        item.setBigDecimalAttribute(new BigDecimal("1234.5678"));
+        final Set<Integer> integers = new HashSet<Integer>();
+        final Set<String> strings = new HashSet<String>();
+        for (int i = 0; i < 5; i++) {
+            integers.add(i);
+            strings.add("member " + i);
+        }
+        item.setIntegerAttribute(integers);
+        item.setStringSetAttribute(strings);
+        return item;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+
+public class ItemSchemaTest {
+
+    private final DynamoDBReflector reflector = new DynamoDBReflector();
+
+    @Test
+    public void testSchemaIsBuiltOnce() {
+        final ItemSchema schema = reflector.getItemSchema(RangeKeyClass.class);
+        assertSame(schema, reflector.getItemSchema(RangeKeyClass.class));
+        assertSame(RangeKeyClass.class, schema.getModelClass());
+    }
+
+    @Test
+    public void testProjectionAnnotationIsRead() {
+        assertFalse(reflector.getItemSchema(RangeKeyClass.class).isProjection());
+        assertTrue(reflector.getItemSchema(ProjectionClass.class).isProjection());
+    }
+
+    @Test
+    public void testSchemaMapsKeysAndAttributes() throws Exception {
+        final ItemSchema schema = reflector.getItemSchema(RangeKeyClass.class);
+        final Method getKey = RangeKeyClass.class.getMethod("getKey");
+        final Method getRangeKey = RangeKeyClass.class.getMethod("getRangeKey");
+
+        assertEquals(7, schema.getProperties().size());
+        assertEquals(getKey, schema.getHashKeyGetter());
+        assertEquals(getRangeKey, schema.getRangeKeyGetter());
+        assertEquals(2, schema.getKeyGetters().size());
+        assertTrue(schema.getKeyGetters().contains(getKey));
+        assertTrue(schema.getKeyGetters().contains(getRangeKey));
+
+        final ItemSchema.Property integers = schema.getProperty("integerSetAttribute");
+        assertEquals(RangeKeyClass.class.getMethod("getIntegerAttribute"), integers.getGetter());
+        assertEquals(RangeKeyClass.class.getMethod("setIntegerAttribute",
+                Set.class), integers.getSetter());
+        assertFalse(integers.isHashKey());
+
+        assertTrue(schema.getProperty("version").isVersionAttribute());
+        assertTrue(reflector.isVersionAttributeGetter(
+                RangeKeyClass.class.getMethod("getVersion")));
+        assertNull(schema.getProperty("integerAttribute"));
+    }
+
+    @Test
+    public void testReflectorAnswersFromSchema() throws Exception {
+        assertEquals("key", reflector.getPrimaryHashKeyName(RangeKeyClass.class));
+        assertEquals("rangeKey", reflector.getPrimaryRangeKeyName(RangeKeyClass.class));
+        assertTrue(reflector.hasPrimaryRangeKey(RangeKeyClass.class));
+        assertFalse(reflector.hasPrimaryRangeKey(StringAttributeClass.class));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSchemaIsImmutable() {
+        reflector.getItemSchema(RangeKeyClass.class).getProperties().clear();
+    }
+
+    @Test
+    public void testMissingSetterFailsOnlyWhenUnmarshalling() {
+        final ItemSchema schema = reflector.getItemSchema(ReadOnlyClass.class);
+        assertNull(schema.getProperty("computed").getSetter());
+
+        final ItemConverter converter = ConversionSchemas.V2_COMPATIBLE
+                .getConverter(new ConversionSchema.Dependencies()
+                        .with(DynamoDBReflector.class, reflector));
+        assertEquals("value", converter.convert(new ReadOnlyClass()).get("computed").getS());
+        try {
+            converter.unconvert(ReadOnlyClass.class, converter.convert(new ReadOnlyClass()));
+            fail("Expected a DynamoDBMappingException");
+        } catch (final DynamoDBMappingException e) {
+            assertTrue(e.getMessage().contains("setComputed"));
+        }
+    }
+
+    @DynamoDBTable(tableName = "aws-java-sdk-util")
+    public static class ReadOnlyClass {
+        @DynamoDBHashKey
+        public String getComputed() {
+            return "value";
+        }
+    }
+
+    @DynamoDBTable(tableName = "aws-java-sdk-util")
+    @DynamoDBProjection
+    public static class ProjectionClass {
+        private String key;
+
+        @DynamoDBHashKey
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+    }
+}
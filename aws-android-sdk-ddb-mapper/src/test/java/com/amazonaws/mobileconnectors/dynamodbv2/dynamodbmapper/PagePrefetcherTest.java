@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PagePrefetcherTest {
+
+    private static final int PAGES = 5;
+
+    private ExecutorService executor;
+    private AtomicInteger fetched;
+
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        fetched = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPagesAreReadInOrder() {
+        final PagePrefetcher<ScanResult> prefetcher = prefetcher(2, null);
+        prefetcher.start();
+
+        for (int i = 1; i < PAGES; i++) {
+            assertFalse(prefetcher.atEnd());
+            assertEquals(key(i), prefetcher.next().getItems().get(0));
+        }
+        assertTrue(prefetcher.atEnd());
+        assertEquals(PAGES - 1, fetched.get());
+    }
+
+    @Test
+    public void testLoadsStopAtDepth() throws InterruptedException {
+        final PagePrefetcher<ScanResult> prefetcher = prefetcher(2, null);
+        prefetcher.start();
+
+        Thread.sleep(200);
+        assertEquals(2, fetched.get());
+
+        prefetcher.next();
+        Thread.sleep(200);
+        assertEquals(3, fetched.get());
+    }
+
+    @Test
+    public void testFailedLoadIsThrownAndRetried() {
+        final AmazonServiceException ase = new AmazonServiceException("InternalServerError");
+        final PagePrefetcher<ScanResult> prefetcher = prefetcher(1, ase);
+        prefetcher.start();
+
+        assertEquals(key(1), prefetcher.next().getItems().get(0));
+        try {
+            prefetcher.next();
+            fail("Expected an AmazonServiceException");
+        } catch (final AmazonServiceException e) {
+            assertSame(ase, e);
+        }
+        assertEquals(key(2), prefetcher.next().getItems().get(0));
+    }
+
+    @Test
+    public void testErrorIsThrownInsteadOfWaiting() {
+        final AssertionError error = new AssertionError("failed");
+        final PagePrefetcher<ScanResult> prefetcher = prefetcher(1, error);
+        prefetcher.start();
+
+        assertEquals(key(1), prefetcher.next().getItems().get(0));
+        try {
+            prefetcher.next();
+            fail("Expected an AmazonClientException");
+        } catch (final AmazonClientException e) {
+            assertSame(error, e.getCause());
+        }
+        assertEquals(key(2), prefetcher.next().getItems().get(0));
+    }
+
+    @Test
+    public void testNextAfterLastPageThrows() {
+        final PagePrefetcher<ScanResult> prefetcher = prefetcher(2, null);
+        prefetcher.start();
+        for (int i = 1; i < PAGES; i++) {
+            prefetcher.next();
+        }
+        try {
+            prefetcher.next();
+            fail("Expected a NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            assertTrue(prefetcher.atEnd());
+        }
+    }
+
+    private static Map<String, AttributeValue> key(int page) {
+        return Collections.singletonMap("page", new AttributeValue().withN(String.valueOf(page)));
+    }
+
+    /**
+     * A prefetcher of pages 1 to {@link #PAGES} - 1, each holding its own
+     * start key as its item, whose first load of page 2 throws the exception
+     * or error given if any.
+     */
+    private PagePrefetcher<ScanResult> prefetcher(int depth, final Throwable failure) {
+        return new PagePrefetcher<ScanResult>(executor, depth, key(1)) {
+            private boolean failed;
+
+            @Override
+            protected ScanResult fetch(Map<String, AttributeValue> startKey) {
+                final int page = Integer.parseInt(startKey.get("page").getN());
+                if (failure != null && page == 2 && !failed) {
+                    failed = true;
+                    if (failure instanceof Error) {
+                        throw (Error) failure;
+                    }
+                    throw (RuntimeException) failure;
+                }
+                fetched.incrementAndGet();
+                final ScanResult result = new ScanResult().withItems(startKey);
+                if (page < PAGES - 1) {
+                    result.setLastEvaluatedKey(key(page + 1));
+                }
+                return result;
+            }
+
+            @Override
+            protected Map<String, AttributeValue> lastEvaluatedKey(ScanResult page) {
+                return page.getLastEvaluatedKey();
+            }
+        };
+    }
+}
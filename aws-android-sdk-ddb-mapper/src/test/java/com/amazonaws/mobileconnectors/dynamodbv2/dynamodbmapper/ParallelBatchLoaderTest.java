@@ -0,0 +1,243 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelBatchLoaderTest {
+
+    private static final String TABLE = "testTable";
+
+    private AmazonDynamoDB mockClient;
+    private List<Map<String, AttributeValue>> loaded;
+    private AtomicInteger calls;
+    private ParallelBatchLoader.ItemsListener listener;
+
+    @Before
+    public void setup() {
+        mockClient = EasyMock.createMock(AmazonDynamoDB.class);
+        loaded = new ArrayList<Map<String, AttributeValue>>();
+        calls = new AtomicInteger();
+        listener = new ParallelBatchLoader.ItemsListener() {
+            @Override
+            public void onItems(String tableName, List<Map<String, AttributeValue>> items) {
+                assertEquals(TABLE, tableName);
+                calls.incrementAndGet();
+                loaded.addAll(items);
+            }
+        };
+    }
+
+    @Test
+    public void testBatchesAreLoadedInParallel() {
+        final AtomicInteger requestCount = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        // mocks serialize their calls, so count requests on a client of our own
+        final AmazonDynamoDB client = (AmazonDynamoDB) Proxy.newProxyInstance(
+                AmazonDynamoDB.class.getClassLoader(), new Class<?>[] {
+                    AmazonDynamoDB.class
+                }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        assertEquals("batchGetItem", method.getName());
+                        requestCount.incrementAndGet();
+                        final int n = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), n));
+                        }
+                        Thread.sleep(200);
+                        inFlight.decrementAndGet();
+                        return found((BatchGetItemRequest) args[0]);
+                    }
+                });
+
+        final ParallelBatchLoader loader = new ParallelBatchLoader(client, 4, 1, 10, false, null,
+                ParallelScanTask.getSharedExecutor());
+        addKeys(loader, 400);
+        loader.load(listener);
+
+        assertEquals(4, requestCount.get());
+        assertEquals(4, calls.get());
+        assertEquals(400, loaded.size());
+        assertTrue(maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void testUnprocessedKeysAreMergedIntoNextBatch() {
+        final List<BatchGetItemRequest> requests = new ArrayList<BatchGetItemRequest>();
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andAnswer(new IAnswer<BatchGetItemResult>() {
+                    @Override
+                    public BatchGetItemResult answer() throws Throwable {
+                        final BatchGetItemRequest request =
+                                (BatchGetItemRequest) EasyMock.getCurrentArguments()[0];
+                        requests.add(request);
+                        final List<Map<String, AttributeValue>> keys =
+                                request.getRequestItems().get(TABLE).getKeys();
+                        // the last ten keys of the first request are unprocessed
+                        final BatchGetItemResult result = found(new BatchGetItemRequest()
+                                .addRequestItemsEntry(TABLE, new KeysAndAttributes()
+                                        .withKeys(keys.subList(0, 90))));
+                        return result.addUnprocessedKeysEntry(TABLE, new KeysAndAttributes()
+                                .withKeys(keys.subList(90, 100)));
+                    }
+                });
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andAnswer(new IAnswer<BatchGetItemResult>() {
+                    @Override
+                    public BatchGetItemResult answer() throws Throwable {
+                        final BatchGetItemRequest request =
+                                (BatchGetItemRequest) EasyMock.getCurrentArguments()[0];
+                        requests.add(request);
+                        return found(request);
+                    }
+                });
+        EasyMock.replay(mockClient);
+
+        final ParallelBatchLoader loader = new ParallelBatchLoader(mockClient, 1, 1, 10, true, null,
+                ParallelScanTask.getSharedExecutor());
+        addKeys(loader, 150);
+        loader.load(listener);
+
+        EasyMock.verify(mockClient);
+        assertEquals(150, loaded.size());
+        final KeysAndAttributes second = requests.get(1).getRequestItems().get(TABLE);
+        assertTrue(second.getConsistentRead());
+        assertEquals(60, second.getKeys().size());
+        assertEquals(key(90), second.getKeys().get(0));
+        assertEquals(key(100), second.getKeys().get(10));
+    }
+
+    @Test
+    public void testThrottledBatchIsRetried() {
+        final AmazonServiceException ase = new AmazonServiceException("ThrottlingException");
+        ase.setErrorCode("ThrottlingException");
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andThrow(ase);
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andAnswer(new IAnswer<BatchGetItemResult>() {
+                    @Override
+                    public BatchGetItemResult answer() throws Throwable {
+                        return found((BatchGetItemRequest) EasyMock.getCurrentArguments()[0]);
+                    }
+                });
+        EasyMock.replay(mockClient);
+
+        final ParallelBatchLoader loader = new ParallelBatchLoader(mockClient, 2, 1, 10, false, null,
+                ParallelScanTask.getSharedExecutor());
+        addKeys(loader, 10);
+        loader.load(listener);
+
+        EasyMock.verify(mockClient);
+        assertEquals(10, loaded.size());
+    }
+
+    @Test
+    public void testFailsWhenNoKeyIsProcessed() {
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andAnswer(new IAnswer<BatchGetItemResult>() {
+                    @Override
+                    public BatchGetItemResult answer() throws Throwable {
+                        final BatchGetItemRequest request =
+                                (BatchGetItemRequest) EasyMock.getCurrentArguments()[0];
+                        return new BatchGetItemResult()
+                                .withUnprocessedKeys(request.getRequestItems());
+                    }
+                }).times(DynamoDBMapper.BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS + 1);
+        EasyMock.replay(mockClient);
+
+        final ParallelBatchLoader loader = new ParallelBatchLoader(mockClient, 1, 1, 10, false, null,
+                ParallelScanTask.getSharedExecutor());
+        addKeys(loader, 10);
+        try {
+            loader.load(listener);
+            fail("Expected an AmazonClientException");
+        } catch (final AmazonClientException e) {
+            // expected
+        }
+        EasyMock.verify(mockClient);
+    }
+
+    @Test
+    public void testOtherExceptionIsThrown() {
+        final AmazonServiceException ase = new AmazonServiceException("InvalidInput");
+        ase.setErrorCode("ValidationException");
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andThrow(ase);
+        EasyMock.replay(mockClient);
+
+        final ParallelBatchLoader loader = new ParallelBatchLoader(mockClient, 1, 1, 10, false, null,
+                ParallelScanTask.getSharedExecutor());
+        addKeys(loader, 10);
+        try {
+            loader.load(listener);
+            fail("Expected an AmazonServiceException");
+        } catch (final AmazonServiceException e) {
+            assertEquals(ase, e);
+        }
+    }
+
+    private static void addKeys(ParallelBatchLoader loader, int count) {
+        for (int i = 0; i < count; i++) {
+            loader.add(TABLE, key(i));
+        }
+    }
+
+    private static Map<String, AttributeValue> key(int i) {
+        return Collections.singletonMap("id", new AttributeValue().withS("id" + i));
+    }
+
+    /**
+     * A result with an item for each key of the request.
+     */
+    private static BatchGetItemResult found(BatchGetItemRequest request) {
+        final Map<String, List<Map<String, AttributeValue>>> responses =
+                new HashMap<String, List<Map<String, AttributeValue>>>();
+        for (final Map.Entry<String, KeysAndAttributes> entry : request.getRequestItems()
+                .entrySet()) {
+            responses.put(entry.getKey(),
+                    new ArrayList<Map<String, AttributeValue>>(entry.getValue().getKeys()));
+        }
+        return new BatchGetItemResult().withResponses(responses);
+    }
+}
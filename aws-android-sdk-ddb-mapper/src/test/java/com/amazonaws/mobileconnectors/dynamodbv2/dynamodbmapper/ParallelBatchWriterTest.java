@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatchListener;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelBatchWriterTest {
+
+    private static final String TABLE = "testTable";
+
+    private AmazonDynamoDB mockClient;
+    private List<FailedBatch> failedBatches;
+    private FailedBatchListener listener;
+
+    @Before
+    public void setup() {
+        mockClient = EasyMock.createMock(AmazonDynamoDB.class);
+        failedBatches = Collections.synchronizedList(new ArrayList<FailedBatch>());
+        listener = new FailedBatchListener() {
+            @Override
+            public void onFailedBatch(FailedBatch failedBatch) {
+                failedBatches.add(failedBatch);
+            }
+        };
+    }
+
+    @Test
+    public void testBatchesAreWrittenInParallel() {
+        final AtomicInteger requestCount = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        // mocks serialize their calls, so count requests on a client of our own
+        final AmazonDynamoDB client = (AmazonDynamoDB) Proxy.newProxyInstance(
+                AmazonDynamoDB.class.getClassLoader(), new Class<?>[] {
+                    AmazonDynamoDB.class
+                }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        assertEquals("batchWriteItem", method.getName());
+                        requestCount.incrementAndGet();
+                        final int n = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), n));
+                        }
+                        Thread.sleep(200);
+                        inFlight.decrementAndGet();
+                        return new BatchWriteItemResult();
+                    }
+                });
+
+        new ParallelBatchWriter(client, 4, 1, 10, null, ParallelScanTask.getSharedExecutor())
+                .write(requestItems(100), listener);
+
+        assertTrue(failedBatches.isEmpty());
+        assertEquals(4, requestCount.get());
+        assertTrue(maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void testUnprocessedItemsAreMergedIntoNextBatch() {
+        final Map<String, List<WriteRequest>> requestItems = requestItems(30);
+        final List<WriteRequest> requests = requestItems.get(TABLE);
+        final Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+        unprocessed.put(TABLE, new ArrayList<WriteRequest>(requests.subList(20, 25)));
+
+        final Capture<BatchWriteItemRequest> capture = new Capture<BatchWriteItemRequest>(CaptureType.ALL);
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.capture(capture)))
+                .andReturn(new BatchWriteItemResult().withUnprocessedItems(unprocessed));
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.capture(capture)))
+                .andReturn(new BatchWriteItemResult());
+        EasyMock.replay(mockClient);
+
+        new ParallelBatchWriter(mockClient, 1, 1, 10, null, ParallelScanTask.getSharedExecutor())
+                .write(requestItems, listener);
+
+        EasyMock.verify(mockClient);
+        assertTrue(failedBatches.isEmpty());
+        assertEquals(25, capture.getValues().get(0).getRequestItems().get(TABLE).size());
+        final List<WriteRequest> second = capture.getValues().get(1).getRequestItems().get(TABLE);
+        assertEquals(10, second.size());
+        assertEquals(requests.subList(20, 30), second);
+    }
+
+    @Test
+    public void testThrottledBatchIsRetried() {
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.anyObject(BatchWriteItemRequest.class)))
+                .andThrow(throttlingException());
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.anyObject(BatchWriteItemRequest.class)))
+                .andReturn(new BatchWriteItemResult());
+        EasyMock.replay(mockClient);
+
+        new ParallelBatchWriter(mockClient, 2, 1, 10, null, ParallelScanTask.getSharedExecutor())
+                .write(requestItems(10), listener);
+
+        EasyMock.verify(mockClient);
+        assertTrue(failedBatches.isEmpty());
+    }
+
+    @Test
+    public void testThrottledBatchFailsAfterMaxRetries() {
+        final AmazonServiceException ase = throttlingException();
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.anyObject(BatchWriteItemRequest.class)))
+                .andThrow(ase).times(ParallelBatchWriter.MAX_THROTTLED_RETRIES + 1);
+        EasyMock.replay(mockClient);
+
+        new ParallelBatchWriter(mockClient, 2, 1, 10, null, ParallelScanTask.getSharedExecutor())
+                .write(requestItems(10), listener);
+
+        EasyMock.verify(mockClient);
+        assertEquals(1, failedBatches.size());
+        assertSame(ase, failedBatches.get(0).getException());
+        assertEquals(10, failedBatches.get(0).getUnprocessedItems().get(TABLE).size());
+    }
+
+    @Test
+    public void testFailedBatchesAreReportedAsTheyFail() {
+        final AmazonServiceException ase = new AmazonServiceException("InvalidInput");
+        ase.setErrorCode("ValidationException");
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.anyObject(BatchWriteItemRequest.class)))
+                .andThrow(ase);
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.anyObject(BatchWriteItemRequest.class)))
+                .andAnswer(new IAnswer<BatchWriteItemResult>() {
+                    @Override
+                    public BatchWriteItemResult answer() throws Throwable {
+                        // the first batch was reported before this one finished
+                        assertEquals(1, failedBatches.size());
+                        return new BatchWriteItemResult();
+                    }
+                });
+        EasyMock.replay(mockClient);
+
+        new ParallelBatchWriter(mockClient, 1, 1, 10, null, ParallelScanTask.getSharedExecutor())
+                .write(requestItems(30), listener);
+
+        EasyMock.verify(mockClient);
+        assertEquals(1, failedBatches.size());
+        assertSame(ase, failedBatches.get(0).getException());
+        assertEquals(25, failedBatches.get(0).getUnprocessedItems().get(TABLE).size());
+    }
+
+    @Test
+    public void testEntityTooLargeWithSingleItemFails() {
+        final AmazonServiceException ase = new AmazonServiceException("TestException");
+        ase.setErrorCode("Request entity too large");
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.anyObject(BatchWriteItemRequest.class)))
+                .andThrow(ase).times(3);
+        EasyMock.replay(mockClient);
+
+        new ParallelBatchWriter(mockClient, 1, 1, 10, null, ParallelScanTask.getSharedExecutor())
+                .write(requestItems(2), listener);
+
+        EasyMock.verify(mockClient);
+        assertEquals(2, failedBatches.size());
+        assertEquals(1, failedBatches.get(0).getUnprocessedItems().get(TABLE).size());
+        assertEquals(1, failedBatches.get(1).getUnprocessedItems().get(TABLE).size());
+    }
+
+    private static AmazonServiceException throttlingException() {
+        final AmazonServiceException ase = new AmazonServiceException("ThrottlingException");
+        ase.setErrorCode("ThrottlingException");
+        return ase;
+    }
+
+    private static Map<String, List<WriteRequest>> requestItems(int count) {
+        final List<WriteRequest> requests = new ArrayList<WriteRequest>();
+        for (int i = 0; i < count; i++) {
+            final Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS("id" + i));
+            requests.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+        }
+        final Map<String, List<WriteRequest>> requestItems = new LinkedHashMap<String, List<WriteRequest>>();
+        requestItems.put(TABLE, requests);
+        return requestItems;
+    }
+}
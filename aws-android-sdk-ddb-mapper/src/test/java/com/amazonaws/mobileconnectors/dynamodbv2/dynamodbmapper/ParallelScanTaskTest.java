@@ -16,7 +16,9 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
@@ -33,6 +35,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ParallelScanTaskTest {
 
@@ -192,4 +196,29 @@ public class ParallelScanTaskTest {
 
         assertTrue(testTask.isAllSegmentScanFinished());
     }
+
+    @Test
+    public void testGivenExecutorIsNotShutDown() {
+        ScanRequest scan1 = new ScanRequest().withTableName(TABLE);
+        List<ScanRequest> list = new ArrayList<ScanRequest>();
+        list.add(scan1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ParallelScanTask testTask = new ParallelScanTask(mockClient, list, null, executor);
+
+        EasyMock.expect(mockClient.scan(scan1)).andReturn(new ScanResult());
+        EasyMock.replay(mockClient);
+
+        testTask.getNextBatchOfScanResults();
+
+        assertTrue(testTask.isAllSegmentScanFinished());
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSharedExecutorIsReused() {
+        assertSame(ParallelScanTask.getSharedExecutor(), ParallelScanTask.getSharedExecutor());
+        assertFalse(ParallelScanTask.getSharedExecutor().isShutdown());
+    }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2011-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StreamingParallelScanTest {
+
+    private static final String TABLE = "testTable";
+    private static final int PAGES_PER_SEGMENT = 5;
+
+    private ExecutorService executor;
+
+    /** The number of pages each segment has scanned so far. */
+    private ConcurrentMap<Integer, AtomicInteger> scanned;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(4);
+        scanned = new ConcurrentHashMap<Integer, AtomicInteger>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEveryPageIsDeliveredInSegmentOrder() {
+        final AmazonDynamoDB client = pagingClient(null);
+        final List<List<Integer>> pages = new ArrayList<List<Integer>>();
+        for (int i = 0; i < 3; i++) {
+            pages.add(new ArrayList<Integer>());
+        }
+
+        new StreamingParallelScan(client, segmentRequests(3), executor, null).scan(
+                new StreamingParallelScan.PageListener() {
+                    @Override
+                    public void onPage(int segment, ScanResult result) {
+                        pages.get(segment).add(page(result));
+                    }
+                });
+
+        for (final List<Integer> segmentPages : pages) {
+            assertEquals(PAGES_PER_SEGMENT, segmentPages.size());
+            for (int i = 0; i < PAGES_PER_SEGMENT; i++) {
+                assertEquals(i, segmentPages.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentsWaitForSlowListener() {
+        final AmazonDynamoDB client = pagingClient(null);
+        final AtomicInteger delivered = new AtomicInteger();
+
+        new StreamingParallelScan(client, segmentRequests(1), executor, null).scan(
+                new StreamingParallelScan.PageListener() {
+                    @Override
+                    public void onPage(int segment, ScanResult result) {
+                        try {
+                            Thread.sleep(50);
+                        } catch (final InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        // the page handed over plus at most the next one
+                        assertTrue(scanned.get(0).get() <= delivered.incrementAndGet() + 1);
+                    }
+                });
+
+        assertEquals(PAGES_PER_SEGMENT, delivered.get());
+    }
+
+    @Test
+    public void testSegmentFailureIsThrown() {
+        final AmazonServiceException ase = new AmazonServiceException("InvalidInput");
+        final AmazonDynamoDB client = pagingClient(ase);
+
+        try {
+            new StreamingParallelScan(client, segmentRequests(2), executor, null).scan(
+                    new StreamingParallelScan.PageListener() {
+                        @Override
+                        public void onPage(int segment, ScanResult result) {
+                        }
+                    });
+            fail("Expected an AmazonServiceException");
+        } catch (final AmazonServiceException e) {
+            assertSame(ase, e);
+        }
+    }
+
+    @Test
+    public void testListenerFailureStopsScan() {
+        final AmazonDynamoDB client = pagingClient(null);
+        final RuntimeException failure = new IllegalStateException();
+
+        try {
+            new StreamingParallelScan(client, segmentRequests(2), executor, null).scan(
+                    new StreamingParallelScan.PageListener() {
+                        @Override
+                        public void onPage(int segment, ScanResult result) {
+                            throw failure;
+                        }
+                    });
+            fail("Expected an IllegalStateException");
+        } catch (final IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        // each segment scanned its first page and at most the one after
+        for (final AtomicInteger count : scanned.values()) {
+            assertTrue(count.get() <= 2);
+        }
+        assertFalse(executor.isShutdown());
+    }
+
+    private static List<ScanRequest> segmentRequests(int totalSegments) {
+        final List<ScanRequest> requests = new ArrayList<ScanRequest>();
+        for (int segment = 0; segment < totalSegments; segment++) {
+            requests.add(new ScanRequest().withTableName(TABLE).withSegment(segment)
+                    .withTotalSegments(totalSegments));
+        }
+        return requests;
+    }
+
+    private static int page(ScanResult result) {
+        return Integer.parseInt(result.getItems().get(0).get("page").getN());
+    }
+
+    /**
+     * A client whose segments have {@link #PAGES_PER_SEGMENT} pages of one
+     * item each, chained by the start key, or which throws the exception given
+     * for the second page of segment 1.
+     */
+    private AmazonDynamoDB pagingClient(final RuntimeException failure) {
+        // mocks serialize their calls, so scan on a client of our own
+        return (AmazonDynamoDB) Proxy.newProxyInstance(
+                AmazonDynamoDB.class.getClassLoader(), new Class<?>[] {
+                    AmazonDynamoDB.class
+                }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        assertEquals("scan", method.getName());
+                        final ScanRequest request = (ScanRequest) args[0];
+                        final Map<String, AttributeValue> startKey =
+                                request.getExclusiveStartKey();
+                        final int page = startKey == null
+                                ? 0 : Integer.parseInt(startKey.get("page").getN()) + 1;
+                        if (failure != null && request.getSegment() == 1 && page == 1) {
+                            throw failure;
+                        }
+                        scanned.putIfAbsent(request.getSegment(), new AtomicInteger());
+                        scanned.get(request.getSegment()).incrementAndGet();
+
+                        final Map<String, AttributeValue> item = Collections.singletonMap(
+                                "page", new AttributeValue().withN(String.valueOf(page)));
+                        final ScanResult result = new ScanResult().withItems(item);
+                        if (page < PAGES_PER_SEGMENT - 1) {
+                            result.setLastEvaluatedKey(item);
+                        }
+                        return result;
+                    }
+                });
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latest value wins publishing for topics carrying state. At most one message
+ * per topic is pending, waiting for the connection or for the minimum publish
+ * interval of the topic since its last publish; a newer message replaces it.
+ */
+class AWSIotMqttCoalescer {
+    /** Returned by getMinPublishInterval for topics that aren't coalesced. */
+    static final long NOT_COALESCED = -1;
+
+    /** Minimum publish interval in milliseconds, by topic filter. */
+    private final Map<String, Long> minPublishIntervals = new LinkedHashMap<String, Long>();
+    /** Pending messages by topic, oldest first. */
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<String, Pending>();
+    /** Time of the last publish, by topic. */
+    private final Map<String, Long> lastPublishTimes = new HashMap<String, Long>();
+
+    /**
+     * Coalesces the messages of the topics matching a filter.
+     *
+     * @param topicFilter the topic filter, with wildcards.
+     * @param minPublishInterval milliseconds between publishes to a topic, or 0.
+     */
+    synchronized void setMinPublishInterval(String topicFilter, long minPublishInterval) {
+        minPublishIntervals.put(topicFilter, minPublishInterval);
+    }
+
+    /**
+     * Stops coalescing the messages of the topics matching a filter.
+     *
+     * @param topicFilter the topic filter, with wildcards.
+     */
+    synchronized void remove(String topicFilter) {
+        minPublishIntervals.remove(topicFilter);
+    }
+
+    synchronized boolean isEmpty() {
+        return minPublishIntervals.isEmpty();
+    }
+
+    /**
+     * Gets the minimum publish interval of a topic. Of several matching topic
+     * filters, the shortest interval applies.
+     *
+     * @param topic the topic of a message.
+     * @return milliseconds between publishes, or NOT_COALESCED.
+     */
+    synchronized long getMinPublishInterval(String topic) {
+        long interval = NOT_COALESCED;
+        for (final Map.Entry<String, Long> entry : minPublishIntervals.entrySet()) {
+            if (AWSIotMqttSubscriptionTrie.matches(entry.getKey(), topic)
+                    && (interval == NOT_COALESCED || entry.getValue() < interval)) {
+                interval = entry.getValue();
+            }
+        }
+        return interval;
+    }
+
+    /**
+     * Makes a message the pending message of its topic.
+     *
+     * @param message the message.
+     * @return the pending message it replaces, or null.
+     */
+    synchronized Pending put(Pending message) {
+        // a replaced message keeps its place, the topic has been waiting that long
+        return pending.put(message.message.getTopic(), message);
+    }
+
+    /**
+     * Puts back a message taken to be published but refused by the client,
+     * unless a newer message of its topic is pending.
+     *
+     * @param message the message.
+     * @return true if the message is pending again.
+     */
+    synchronized boolean putBack(Pending message) {
+        final String topic = message.message.getTopic();
+        if (pending.containsKey(topic)) {
+            return false;
+        }
+        pending.put(topic, message);
+        return true;
+    }
+
+    /**
+     * Takes the pending messages whose topics may be published.
+     *
+     * @param now the current time in milliseconds.
+     * @return the messages, oldest first.
+     */
+    synchronized List<Pending> takeDue(long now) {
+        final List<Pending> due = new ArrayList<Pending>();
+        for (final Iterator<Pending> it = pending.values().iterator(); it.hasNext();) {
+            final Pending message = it.next();
+            if (dueTime(message) <= now) {
+                due.add(message);
+                it.remove();
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @return the time at which the next pending message may be published,
+     * or NOT_COALESCED if none is pending.
+     */
+    synchronized long nextDueTime() {
+        long next = NOT_COALESCED;
+        for (final Pending message : pending.values()) {
+            final long due = dueTime(message);
+            if (next == NOT_COALESCED || due < next) {
+                next = due;
+            }
+        }
+        return next;
+    }
+
+    private long dueTime(Pending message) {
+        final Long last = lastPublishTimes.get(message.message.getTopic());
+        return last == null ? 0 : last + message.minPublishInterval;
+    }
+
+    /**
+     * Records the publish of a message, which starts the interval of its topic.
+     *
+     * @param topic the topic of the message.
+     * @param now the current time in milliseconds.
+     */
+    synchronized void published(String topic, long now) {
+        lastPublishTimes.put(topic, now);
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Takes all pending messages.
+     *
+     * @return the messages, oldest first.
+     */
+    synchronized List<Pending> clear() {
+        final List<Pending> messages = new ArrayList<Pending>(pending.values());
+        pending.clear();
+        lastPublishTimes.clear();
+        return messages;
+    }
+
+    /**
+     * A message waiting to be published.
+     */
+    static final class Pending {
+        /** The message. */
+        final AWSIotMqttQueueMessage message;
+        /** Publish it as a persistent message? */
+        final boolean retained;
+        /** Milliseconds between publishes to its topic. */
+        final long minPublishInterval;
+
+        Pending(AWSIotMqttQueueMessage message, boolean retained, long minPublishInterval) {
+            this.message = message;
+            this.retained = retained;
+            this.minPublishInterval = minPublishInterval;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+/**
+ * Counters of the message dispatcher since it was set. The dispatch lag of a
+ * message is the time from its arrival to the start of its callbacks.
+ */
+public class AWSIotMqttDispatchMetrics {
+    /** Messages whose callbacks were run. */
+    private final long dispatchedCount;
+    /** Messages dropped because their queue was full. */
+    private final long droppedCount;
+    /** Messages waiting for their callbacks. */
+    private final long queuedCount;
+    /** Total dispatch lag of the dispatched messages, in milliseconds. */
+    private final long totalLagMillis;
+    /** Largest dispatch lag, in milliseconds. */
+    private final long maxLagMillis;
+
+    AWSIotMqttDispatchMetrics(long dispatchedCount, long droppedCount, long queuedCount,
+            long totalLagMillis, long maxLagMillis) {
+        this.dispatchedCount = dispatchedCount;
+        this.droppedCount = droppedCount;
+        this.queuedCount = queuedCount;
+        this.totalLagMillis = totalLagMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * @return the number of messages whose callbacks were run.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * @return the number of messages dropped because their queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the number of messages waiting for their callbacks.
+     */
+    public long getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * @return the average dispatch lag, in milliseconds.
+     */
+    public long getAverageLagMillis() {
+        return dispatchedCount == 0 ? 0 : totalLagMillis / dispatchedCount;
+    }
+
+    /**
+     * @return the largest dispatch lag, in milliseconds.
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "dispatched: " + dispatchedCount + ", dropped: " + droppedCount + ", queued: " + queuedCount
+                + ", average lag: " + getAverageLagMillis() + " ms, max lag: " + maxLagMillis + " ms";
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+/**
+ * What the message dispatcher does with an incoming message when the queue of
+ * its topic's dispatch thread is full. See
+ * {@link AWSIotMqttManager#setMessageDispatcher(int, int, AWSIotMqttDispatchPolicy)}.
+ */
+public enum AWSIotMqttDispatchPolicy {
+    /** Drop the incoming message. */
+    DROP_NEWEST,
+    /** Drop the oldest queued message to make room for the incoming one. */
+    DROP_OLDEST,
+    /**
+     * Wait for room in the queue. This holds up all incoming messages, and in
+     * turn the connection, until the callbacks catch up.
+     */
+    BLOCK
+}
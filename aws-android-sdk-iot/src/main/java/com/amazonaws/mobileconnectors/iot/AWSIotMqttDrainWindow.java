@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+/**
+ * Window of messages drained from the offline queue that may be in flight,
+ * published and not yet acknowledged, at a time. The window adapts to the
+ * throughput of the broker the way TCP's congestion window does: it grows by
+ * one for each acknowledgement until the first throttling, and by one for each
+ * window of acknowledgements afterwards, and it's halved on throttling.
+ */
+class AWSIotMqttDrainWindow {
+    /** Initial size of the window. */
+    static final int DEFAULT_INITIAL_SIZE = 10;
+
+    /** Largest size of the window. */
+    private int maxSize;
+    /** Size of the window, fractional while growing by one per window. */
+    private double size;
+    /** Size up to which the window grows by one per acknowledgement. */
+    private double threshold;
+    /** Messages in flight. */
+    private int inFlight;
+
+    /**
+     * @param maxSize the largest size of the window.
+     */
+    AWSIotMqttDrainWindow(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the largest size of the window, and restarts it.
+     *
+     * @param maxSize the largest size of the window.
+     */
+    synchronized void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Drain window must be > 0");
+        }
+        this.maxSize = maxSize;
+        size = Math.min(DEFAULT_INITIAL_SIZE, maxSize);
+        threshold = maxSize;
+    }
+
+    synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of messages that may be in flight.
+     */
+    synchronized int getSize() {
+        return (int) size;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Takes a place in the window for a message about to be published.
+     *
+     * @return true if there was room for it.
+     */
+    synchronized boolean acquire() {
+        if (inFlight < (int) size) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back the place of a message that wasn't published.
+     */
+    synchronized void release() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+    }
+
+    /**
+     * Gives back the place of a message acknowledged by the broker, and grows
+     * the window.
+     */
+    synchronized void delivered() {
+        release();
+        if (size < threshold) {
+            size = Math.min(size + 1, maxSize);
+        } else {
+            size = Math.min(size + 1 / size, maxSize);
+        }
+    }
+
+    /**
+     * Halves the window, after the client or the broker refused to take more
+     * messages.
+     */
+    synchronized void throttled() {
+        size = Math.max(1, size / 2);
+        threshold = size;
+    }
+
+    /**
+     * Forgets the messages in flight, after a new connection.
+     */
+    synchronized void reset() {
+        inFlight = 0;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistence of the MQTT client's in-flight messages in a directory, one
+ * file for each message, so that QoS 1 messages published but not yet
+ * acknowledged are sent again after the process restarts. The MQTT client
+ * only keeps them across connections with persistent sessions.
+ * <p>
+ * The bytes of the persisted messages are bounded: a message that doesn't fit
+ * is refused, which fails its publish. Files are written to a temporary file
+ * and renamed, so a message is either persisted whole or not at all.
+ */
+class AWSIotMqttFilePersistence implements MqttClientPersistence {
+
+    /** Suffix of message file names, which are the keys. */
+    private static final String MESSAGE_SUFFIX = ".msg";
+    /** Suffix of a message file being written. */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    /** Bytes of a message file besides the message. */
+    private static final int FILE_HEADER_SIZE = 4;
+
+    /** Directory of the directories of each client. */
+    private final File directory;
+    /** Maximum bytes of persisted messages. */
+    private final long maxSize;
+    /** Directory of the open client, or null. */
+    private File clientDirectory;
+    /** Bytes of each persisted message, by key. */
+    private final Map<String, Long> sizes = new HashMap<String, Long>();
+    /** Bytes of the persisted messages. */
+    private long size;
+
+    /**
+     * @param directory the directory of the persisted messages, created if
+     *            missing.
+     * @param maxSize maximum bytes of persisted messages.
+     */
+    AWSIotMqttFilePersistence(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Persistence size must be > 0");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        clientDirectory = new File(directory, safeName(clientId + "-" + serverURI));
+        if (!clientDirectory.isDirectory() && !clientDirectory.mkdirs()) {
+            throw new MqttPersistenceException(new IOException("Unable to create " + clientDirectory));
+        }
+        sizes.clear();
+        size = 0;
+        final File[] files = clientDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = file.getName();
+                if (name.endsWith(MESSAGE_SUFFIX)) {
+                    sizes.put(name.substring(0, name.length() - MESSAGE_SUFFIX.length()), file.length());
+                    size += file.length();
+                } else if (name.endsWith(TEMPORARY_SUFFIX) && !file.delete()) {
+                    throw new MqttPersistenceException(new IOException("Unable to delete " + file));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the string with the characters other than letters, digits and
+     *         - removed, for a file name.
+     */
+    private static String safeName(String name) {
+        final StringBuilder safe = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '-') {
+                safe.append(c);
+            }
+        }
+        return safe.toString();
+    }
+
+    @Override
+    public synchronized void close() throws MqttPersistenceException {
+        clientDirectory = null;
+        sizes.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkOpen();
+        final long messageSize = FILE_HEADER_SIZE + persistable.getHeaderLength() + persistable.getPayloadLength();
+        final Long replacedSize = sizes.get(key);
+        final long newSize = size - (replacedSize == null ? 0 : replacedSize) + messageSize;
+        if (newSize > maxSize) {
+            throw new MqttPersistenceException(new IOException("Persisted messages would exceed " + maxSize
+                    + " bytes"));
+        }
+        final File temporary = new File(clientDirectory, key + TEMPORARY_SUFFIX);
+        try {
+            final FileOutputStream stream = new FileOutputStream(temporary);
+            final DataOutputStream out = new DataOutputStream(stream);
+            try {
+                out.writeInt(persistable.getHeaderLength());
+                out.write(persistable.getHeaderBytes(), persistable.getHeaderOffset(),
+                        persistable.getHeaderLength());
+                if (persistable.getPayloadBytes() != null) {
+                    out.write(persistable.getPayloadBytes(), persistable.getPayloadOffset(),
+                            persistable.getPayloadLength());
+                }
+                out.flush();
+                stream.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (final IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        final File file = messageFile(key);
+        if (!temporary.renameTo(file)) {
+            throw new MqttPersistenceException(new IOException("Unable to rename " + temporary + " to " + file));
+        }
+        sizes.put(key, messageSize);
+        size = newSize;
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkOpen();
+        final File file = messageFile(key);
+        try {
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                final int headerLength = in.readInt();
+                final byte[] bytes = new byte[(int) file.length() - FILE_HEADER_SIZE];
+                in.readFully(bytes);
+                return new MqttPersistentData(key, bytes, 0, headerLength, bytes, headerLength,
+                        bytes.length - headerLength);
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkOpen();
+        final File file = messageFile(key);
+        if (file.exists() && !file.delete()) {
+            throw new MqttPersistenceException(new IOException("Unable to delete " + file));
+        }
+        final Long removedSize = sizes.remove(key);
+        if (removedSize != null) {
+            size -= removedSize;
+        }
+    }
+
+    @Override
+    public synchronized Enumeration<String> keys() throws MqttPersistenceException {
+        checkOpen();
+        return Collections.enumeration(new ArrayList<String>(sizes.keySet()));
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkOpen();
+        for (final String key : new ArrayList<String>(sizes.keySet())) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkOpen();
+        return sizes.containsKey(key);
+    }
+
+    /**
+     * @return the bytes of the persisted messages.
+     */
+    synchronized long sizeInBytes() {
+        return size;
+    }
+
+    private File messageFile(String key) {
+        return new File(clientDirectory, key + MESSAGE_SUFFIX);
+    }
+
+    private void checkOpen() throws MqttPersistenceException {
+        if (clientDirectory == null) {
+            throw new MqttPersistenceException(new IOException("Persistence is not open"));
+        }
+    }
+}
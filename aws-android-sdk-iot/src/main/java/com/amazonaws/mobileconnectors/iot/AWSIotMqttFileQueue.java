@@ -0,0 +1,608 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Offline publish queue kept in append-only segment files in a directory, so
+ * that queued messages survive the process and take no memory while queued.
+ * Messages are appended to the last segment and read from the first one;
+ * segments are deleted once all their messages are read. The position of the
+ * first message is saved on every read, and records cut short by the process
+ * dying while appending are dropped when the queue is opened again. A record
+ * cut short by a failed append is truncated before the next one. Records are
+ * checked against their CRC when read; a damaged record is dropped with the
+ * rest of its segment.
+ * <p>
+ * The queue is bounded by the bytes of the queued messages: messages that
+ * don't fit are refused by {@link #offer(AWSIotMqttQueueMessage)}. The disk
+ * space used is at most that plus one segment of read messages.
+ * <p>
+ * Delivery callbacks can't be saved, so they are only kept, in memory, for
+ * messages queued by this process. Messages of a previous process are
+ * returned with no callback.
+ */
+class AWSIotMqttFileQueue extends AbstractQueue<AWSIotMqttQueueMessage> {
+
+    private static final Log LOGGER = LogFactory.getLog(AWSIotMqttFileQueue.class);
+
+    /** Suffix of segment file names, which are the segment number. */
+    private static final String SEGMENT_SUFFIX = ".queue";
+    /** Name of the file with the position of the first message. */
+    private static final String HEAD_FILE_NAME = "head";
+    /** Smallest segment size, in bytes. */
+    private static final long MIN_SEGMENT_SIZE = 4 * 1024L;
+    /** Largest segment size, in bytes. */
+    private static final long MAX_SEGMENT_SIZE = 1024 * 1024L;
+    /** Bytes of the head file: the first segment and the position in it. */
+    private static final int HEAD_FILE_SIZE = 16;
+    /** Bytes of a record header: the body length and its CRC32. */
+    private static final int RECORD_HEADER_SIZE = 8;
+    /** Record flag of a message queued with a delivery callback. */
+    private static final int FLAG_CALLBACK = 1;
+
+    /** Directory of the segment files. */
+    private final File directory;
+    /** Maximum bytes of queued records. */
+    private final long maxSize;
+    /** Size at which a new segment is started. */
+    private final long segmentSize;
+    /** Numbers of the segments, first to last. */
+    private final ArrayDeque<Long> segments = new ArrayDeque<Long>();
+    /** Delivery callbacks of the queued messages that have one, in order. */
+    private final ArrayDeque<PublishMessageUserData> callbacks = new ArrayDeque<PublishMessageUserData>();
+    /** Buffer a record is built in, to append it with a single write. */
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    /** CRC of record bodies. */
+    private final CRC32 crc = new CRC32();
+
+    /** Number of the first segment, or of the next one when there is none. */
+    private long headSegment;
+    /** Position of the first message in the first segment. */
+    private long headOffset;
+    /** Length of the last segment. */
+    private long tailLength;
+    /** Number of queued messages. */
+    private int count;
+    /** Bytes of the queued records. */
+    private long size;
+    /** Queued messages left by a previous process, which come first. */
+    private int restoredCount;
+    /** Reader of a segment, or null. */
+    private RandomAccessFile reader;
+    /** Number of the segment open in reader. */
+    private long readerSegment;
+    /** Appender to the last segment, or null. */
+    private FileOutputStream writer;
+    /** File the head position is saved in. */
+    private RandomAccessFile headFile;
+    /** First message, read by peek and not yet removed. */
+    private AWSIotMqttQueueMessage peeked;
+    /** Bytes of the last record read. */
+    private int readRecordSize;
+    /** Flags of the last record read. */
+    private int readRecordFlags;
+
+    /**
+     * Opens the queue in a directory, with the messages left in it.
+     *
+     * @param directory the directory of the queue, created if missing. Only
+     *            one queue may use it at a time.
+     * @param maxSize maximum bytes of queued messages.
+     */
+    AWSIotMqttFileQueue(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Offline queue size must be > 0");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new AmazonClientException("Unable to create the offline queue directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, maxSize / 8));
+        try {
+            load();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to open the offline queue in " + directory, e);
+        }
+    }
+
+    /**
+     * Finds the segments and the head, and counts the records left in them,
+     * truncating a segment at the first incomplete or damaged record.
+     */
+    private void load() throws IOException {
+        headFile = new RandomAccessFile(new File(directory, HEAD_FILE_NAME), "rw");
+        if (headFile.length() >= HEAD_FILE_SIZE) {
+            headSegment = headFile.readLong();
+            headOffset = headFile.readLong();
+        }
+
+        final List<Long> numbers = new ArrayList<Long>();
+        final String[] names = directory.list();
+        if (names != null) {
+            for (final String name : names) {
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (final NumberFormatException e) {
+                        LOGGER.warn("Ignoring file " + name + " in the offline queue directory.");
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        for (final long number : numbers) {
+            if (number < headSegment) {
+                deleteSegment(number);
+            } else {
+                segments.add(number);
+            }
+        }
+        if (segments.isEmpty() || segments.peekFirst() != headSegment) {
+            headOffset = 0;
+        }
+        if (!segments.isEmpty()) {
+            headSegment = segments.peekFirst();
+        }
+
+        for (final long number : segments) {
+            tailLength = scan(number, number == headSegment ? headOffset : 0);
+        }
+        restoredCount = count;
+        if (count > 0) {
+            LOGGER.info("Restored " + count + " messages to the offline queue.");
+        }
+    }
+
+    /**
+     * Counts the valid records of a segment from a position.
+     *
+     * @return the length of the segment, after truncating invalid records.
+     */
+    private long scan(long number, long start) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(segmentFile(number), "rw");
+        try {
+            long position = start;
+            while (true) {
+                final int recordSize = checkRecord(file, position);
+                if (recordSize < 0) {
+                    break;
+                }
+                count++;
+                size += recordSize;
+                position += recordSize;
+            }
+            if (position < file.length()) {
+                LOGGER.warn("Dropping an incomplete message at the end of offline queue segment " + number);
+                file.setLength(position);
+            }
+            return position;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads and checks the record at a position.
+     *
+     * @return the bytes of the record, or -1 if it's incomplete or damaged.
+     */
+    private int checkRecord(RandomAccessFile file, long position) throws IOException {
+        if (position + RECORD_HEADER_SIZE > file.length()) {
+            return -1;
+        }
+        file.seek(position);
+        final int bodyLength = file.readInt();
+        final int bodyCrc = file.readInt();
+        if (bodyLength <= 0 || position + RECORD_HEADER_SIZE + bodyLength > file.length()) {
+            return -1;
+        }
+        final byte[] body = new byte[bodyLength];
+        file.readFully(body);
+        crc.reset();
+        crc.update(body, 0, bodyLength);
+        if ((int) crc.getValue() != bodyCrc) {
+            return -1;
+        }
+        return RECORD_HEADER_SIZE + bodyLength;
+    }
+
+    /**
+     * Appends a message, unless it doesn't fit in the maximum size.
+     *
+     * @param message the message to queue.
+     * @return true if the message was queued.
+     */
+    @Override
+    public synchronized boolean offer(AWSIotMqttQueueMessage message) {
+        final byte[] record;
+        try {
+            record = encode(message);
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to encode the queued message.", e);
+        }
+        if (size + record.length > maxSize) {
+            return false;
+        }
+        try {
+            if (writer == null || (tailLength > 0 && tailLength + record.length > segmentSize)) {
+                openTail(tailLength + record.length > segmentSize);
+            }
+            writer.write(record);
+            writer.flush();
+        } catch (final IOException e) {
+            abandonTail();
+            throw new AmazonClientException("Unable to write to the offline queue.", e);
+        }
+        tailLength += record.length;
+        size += record.length;
+        count++;
+        if (hasCallback(message)) {
+            callbacks.add(message.getUserData());
+        }
+        return true;
+    }
+
+    /**
+     * Opens the last segment for appending, or a new one. Bytes past the
+     * queued records, left by a failed append, are truncated first.
+     *
+     * @param full is the last segment full?
+     */
+    private void openTail(boolean full) throws IOException {
+        closeWriter();
+        if (segments.isEmpty()) {
+            segments.add(headSegment);
+            tailLength = 0;
+        } else if (full && tailLength > 0) {
+            segments.add(segments.peekLast() + 1);
+            tailLength = 0;
+        }
+        truncateTail();
+        writer = new FileOutputStream(segmentFile(segments.peekLast()), true);
+    }
+
+    /**
+     * Closes the appender after a failed append and truncates the last
+     * segment back to its queued records, so that the part of the record
+     * written isn't read as the start of the next one. If it can't be
+     * truncated now, it is when the segment is opened for appending again.
+     */
+    private void abandonTail() {
+        try {
+            closeWriter();
+        } catch (final IOException e) {
+            LOGGER.warn("Error closing offline queue segment " + segments.peekLast(), e);
+        } finally {
+            writer = null;
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        try {
+            truncateTail();
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to truncate offline queue segment " + segments.peekLast(), e);
+        }
+    }
+
+    private void truncateTail() throws IOException {
+        final File file = segmentFile(segments.peekLast());
+        if (file.length() > tailLength) {
+            final RandomAccessFile tail = new RandomAccessFile(file, "rw");
+            try {
+                tail.setLength(tailLength);
+            } finally {
+                tail.close();
+            }
+        }
+    }
+
+    private byte[] encode(AWSIotMqttQueueMessage message) throws IOException {
+        recordBuffer.reset();
+        final DataOutputStream out = new DataOutputStream(recordBuffer);
+        // room for the header, filled in below
+        out.writeLong(0);
+        out.writeByte(message.getQos().asInt());
+        out.writeByte(hasCallback(message) ? FLAG_CALLBACK : 0);
+        out.writeUTF(message.getTopic());
+        out.write(message.getMessage());
+        out.flush();
+        final byte[] record = recordBuffer.toByteArray();
+        final int bodyLength = record.length - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(record, RECORD_HEADER_SIZE, bodyLength);
+        writeInt(record, 0, bodyLength);
+        writeInt(record, 4, (int) crc.getValue());
+        return record;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static boolean hasCallback(AWSIotMqttQueueMessage message) {
+        return message.getUserData() != null && message.getUserData().getUserCallback() != null;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage peek() {
+        while (peeked == null && count > 0) {
+            try {
+                final AWSIotMqttQueueMessage message = readRecord(headSegment, headOffset);
+                if (message == null) {
+                    dropHeadSegment();
+                } else if (restoredCount == 0 && (readRecordFlags & FLAG_CALLBACK) != 0) {
+                    peeked = new AWSIotMqttQueueMessage(message.getTopic(), message.getMessage(),
+                            message.getQos(), callbacks.peek());
+                } else {
+                    peeked = message;
+                }
+            } catch (final IOException e) {
+                throw new AmazonClientException("Unable to read the offline queue.", e);
+            }
+        }
+        return peeked;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage poll() {
+        final AWSIotMqttQueueMessage message = peek();
+        if (message == null) {
+            return null;
+        }
+        peeked = null;
+        count--;
+        size -= readRecordSize;
+        if (restoredCount > 0) {
+            restoredCount--;
+        } else if (hasCallback(message)) {
+            callbacks.poll();
+        }
+        headOffset += readRecordSize;
+        try {
+            advanceHead();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to update the offline queue.", e);
+        }
+        return message;
+    }
+
+    /**
+     * Reads the record at a position, setting readRecordSize and
+     * readRecordFlags.
+     *
+     * @return the message of the record, with no callback, or null if the
+     *         record is damaged.
+     */
+    private AWSIotMqttQueueMessage readRecord(long number, long offset) throws IOException {
+        if (reader == null || readerSegment != number) {
+            closeReader();
+            reader = new RandomAccessFile(segmentFile(number), "r");
+            readerSegment = number;
+        }
+        reader.seek(offset);
+        final int bodyLength = reader.readInt();
+        final int bodyCrc = reader.readInt();
+        if (bodyLength <= 0 || offset + RECORD_HEADER_SIZE + bodyLength > reader.length()) {
+            return null;
+        }
+        final byte[] body = new byte[bodyLength];
+        reader.readFully(body);
+        crc.reset();
+        crc.update(body, 0, bodyLength);
+        if ((int) crc.getValue() != bodyCrc) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        final AWSIotMqttQos qos = AWSIotMqttQos.values()[in.readByte()];
+        readRecordFlags = in.readByte();
+        final String topic = in.readUTF();
+        final byte[] data = new byte[in.available()];
+        in.readFully(data);
+        readRecordSize = RECORD_HEADER_SIZE + bodyLength;
+        return new AWSIotMqttQueueMessage(topic, data, qos, new PublishMessageUserData(null, null));
+    }
+
+    /**
+     * Drops the first segment after a damaged record was read from it, then
+     * counts the records left in the other segments again. Which delivery
+     * callbacks belong to them can no longer be told, so they are returned
+     * with none, like the messages of a previous process.
+     */
+    private void dropHeadSegment() throws IOException {
+        LOGGER.error("Dropping the rest of offline queue segment " + headSegment
+                + ", which has a damaged message.");
+        closeReader();
+        if (segments.size() == 1) {
+            closeWriter();
+            tailLength = 0;
+        }
+        deleteSegment(segments.poll());
+        headSegment = segments.isEmpty() ? headSegment + 1 : segments.peekFirst();
+        headOffset = 0;
+        saveHead();
+        count = 0;
+        size = 0;
+        for (final long number : segments) {
+            tailLength = scan(number, 0);
+        }
+        restoredCount = count;
+        callbacks.clear();
+    }
+
+    /**
+     * Deletes the first segment once all its messages are read, and saves the
+     * position of the first message.
+     */
+    private void advanceHead() throws IOException {
+        if (headOffset >= segmentLength(headSegment)) {
+            closeReader();
+            if (segments.size() == 1) {
+                closeWriter();
+            }
+            deleteSegment(segments.poll());
+            headSegment = segments.isEmpty() ? headSegment + 1 : segments.peekFirst();
+            headOffset = 0;
+        }
+        saveHead();
+    }
+
+    private void saveHead() throws IOException {
+        headFile.seek(0);
+        headFile.writeLong(headSegment);
+        headFile.writeLong(headOffset);
+    }
+
+    private long segmentLength(long number) {
+        return number == segments.peekLast() ? tailLength : segmentFile(number).length();
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return the bytes of the queued messages.
+     */
+    synchronized long sizeInBytes() {
+        return size;
+    }
+
+    /**
+     * Removes all messages and deletes their segments.
+     */
+    @Override
+    public synchronized void clear() {
+        try {
+            closeReader();
+            closeWriter();
+            while (!segments.isEmpty()) {
+                headSegment = segments.poll() + 1;
+                deleteSegment(headSegment - 1);
+            }
+            headOffset = 0;
+            saveHead();
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to clear the offline queue.", e);
+        }
+        callbacks.clear();
+        peeked = null;
+        count = 0;
+        size = 0;
+        restoredCount = 0;
+    }
+
+    /**
+     * Returns an iterator over a copy of the queued messages, which are all
+     * read into memory. Meant for tests and diagnostics.
+     */
+    @Override
+    public synchronized Iterator<AWSIotMqttQueueMessage> iterator() {
+        final List<AWSIotMqttQueueMessage> messages = new ArrayList<AWSIotMqttQueueMessage>(count);
+        final Iterator<PublishMessageUserData> callbackIterator = callbacks.iterator();
+        int restored = restoredCount;
+        try {
+            for (final long number : segments) {
+                final long length = segmentLength(number);
+                long offset = number == headSegment ? headOffset : 0;
+                while (offset < length) {
+                    AWSIotMqttQueueMessage message = readRecord(number, offset);
+                    if (message == null) {
+                        throw new IOException("Damaged message in offline queue segment " + number);
+                    }
+                    if (restored > 0) {
+                        restored--;
+                    } else if ((readRecordFlags & FLAG_CALLBACK) != 0) {
+                        message = new AWSIotMqttQueueMessage(message.getTopic(), message.getMessage(),
+                                message.getQos(), callbackIterator.next());
+                    }
+                    messages.add(message);
+                    offset += readRecordSize;
+                }
+            }
+            if (peeked != null) {
+                // restore the size of the peeked record
+                readRecord(headSegment, headOffset);
+            }
+        } catch (final IOException e) {
+            throw new AmazonClientException("Unable to read the offline queue.", e);
+        }
+        return messages.iterator();
+    }
+
+    /**
+     * Closes the files of the queue. The queue can't be used afterwards.
+     */
+    synchronized void close() {
+        try {
+            closeReader();
+            closeWriter();
+            headFile.close();
+        } catch (final IOException e) {
+            LOGGER.warn("Error closing the offline queue.", e);
+        }
+    }
+
+    private void closeReader() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, number + SEGMENT_SUFFIX);
+    }
+
+    private void deleteSegment(long number) {
+        final File file = segmentFile(number);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Unable to delete offline queue segment " + file);
+        }
+    }
+}
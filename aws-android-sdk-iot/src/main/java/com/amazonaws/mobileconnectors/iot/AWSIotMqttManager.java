@@ -37,19 +37,25 @@ import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.File;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.Map;
@@ -85,8 +91,14 @@ public class AWSIotMqttManager {
     public static final Boolean DEFAULT_OFFLINE_PUBLISH_QUEUE_ENABLED = true;
     /** Default value for offline publish queue bound. */
     public static final Integer DEFAULT_OFFLINE_PUBLISH_QUEUE_BOUND = 100;
-    /** Constant for milliseconds between queue publishes. */
+    /** Constant for milliseconds before draining the queue again after the client refused a publish. */
     private static final Long DEFAULT_MILLIS_BETWEEN_QUEUE_PUBLISHES = 250L;
+    /** Default value for the largest window of queued messages in flight when draining the queue. */
+    public static final Integer DEFAULT_MAX_DRAIN_WINDOW = 100;
+    /** Subdirectory of the offline publish queue directory with the queued messages. */
+    private static final String OFFLINE_QUEUE_DIRECTORY = "queue";
+    /** Subdirectory of the offline publish queue directory with the in-flight messages. */
+    private static final String IN_FLIGHT_DIRECTORY = "inflight";
     /** Default value for "connection established" hysteresis timer. */
     private static final Integer DEFAULT_CONNECTION_STABILITY_TIME_SECONDS = 10;
 
@@ -125,11 +137,17 @@ public class AWSIotMqttManager {
      * to proved per-topic message arrived callbacks.
      */
     private final Map<String, AWSIotMqttTopic> topicListeners;
+    /** The topic listeners indexed by topic filter level, to match incoming messages. */
+    private final AWSIotMqttSubscriptionTrie topicTrie = new AWSIotMqttSubscriptionTrie();
     /**
      * Queue for messages attempted to publish while MQTT client was offline.
      * Republished upon reconnect.
      */
-    private final ConcurrentLinkedQueue<AWSIotMqttQueueMessage> mqttMessageQueue;
+    private Queue<AWSIotMqttQueueMessage> mqttMessageQueue;
+    /** Directory of the offline publish queue and in-flight messages, or null to keep them in memory. */
+    private File offlinePublishQueueDirectory;
+    /** Persistence of the in-flight messages, or null to keep them in memory. */
+    private MqttClientPersistence mqttClientPersistence;
     /** KeepAlive interval specified by the user. */
     private int userKeepAlive;
     /** MQTT Will parameters. */
@@ -157,8 +175,31 @@ public class AWSIotMqttManager {
     private Integer offlinePublishQueueBound;
     /** Full queue behavior (keep oldest or keep newest)? */
     private boolean fullQueueKeepsOldest;
-    /** Milliseconds between publishes when publishing queued messages (draining interval). */
+    /** Milliseconds before draining the queue again after the client refused a publish (draining interval). */
     private long drainingInterval;
+    /** Window of queued messages in flight when draining the queue. */
+    private final AWSIotMqttDrainWindow drainWindow = new AWSIotMqttDrainWindow(DEFAULT_MAX_DRAIN_WINDOW);
+    /** Lock held while taking messages from the queue to publish them. */
+    private final Object drainLock = new Object();
+    /** Is draining the queue again scheduled? Guarded by drainLock. */
+    private boolean drainScheduled;
+    /** Lock guarding the drain thread and its handler. */
+    private final Object drainThreadLock = new Object();
+    /**
+     * Thread running the scheduled queue drains and publishes of coalesced
+     * topics, or null until one is scheduled.
+     */
+    private HandlerThread drainThread;
+    /** Handler of the drain thread, or null. */
+    private Handler drainHandler;
+    /** Dispatcher of incoming messages, or null to run callbacks on the client's thread. */
+    private volatile AWSIotMqttMessageDispatcher messageDispatcher;
+    /** Pending messages of coalesced topics. */
+    private final AWSIotMqttCoalescer coalescer = new AWSIotMqttCoalescer();
+    /** Lock held while publishing pending messages of coalesced topics. */
+    private final Object coalesceLock = new Object();
+    /** Time of the next scheduled publish of coalesced topics, or 0 if none is scheduled. */
+    private long coalescedPublishTime;
     /** Was this disconnect requested by the user? */
     private boolean userDisconnect;
     /** Do we need to resubscribe upon reconnecting? */
@@ -498,7 +539,8 @@ public class AWSIotMqttManager {
 
     /**
      * Set the bound for the number of messages queued while offline. Note: When
-     * full queue will act as FIFO and shed oldest messages.
+     * full queue will act as FIFO and shed oldest messages. Doesn't apply to a
+     * queue kept in files, see setOfflinePublishQueueDirectory.
      *
      * @param bound max number of messages to queue while offline. Negative or 0
      *            values ignored.
@@ -511,21 +553,174 @@ public class AWSIotMqttManager {
     }
 
     /**
-     * Get the "draining interval" (the time between publish messages are sent from the offline queue when reconnected).
-     * @return long containing the number of milliseconds between publishes.
+     * Get the "draining interval" (the time before publishing messages from the offline queue again when the
+     * client refused to publish more).
+     * @return long containing the number of milliseconds before publishing again.
      */
     public Long getDrainingInterval() {
         return drainingInterval;
     }
 
     /**
-     * Set the "draining interval" (the time between publish messages are sent from the offline queue when reconnected).
-     * @param interval milliseconds between offline queue publishes.
+     * Set the "draining interval" (the time before publishing messages from the offline queue again when the
+     * client refused to publish more). Queued messages are otherwise published as fast as the broker
+     * acknowledges them, see setMaxDrainWindow.
+     * @param interval milliseconds before publishing again.
      */
     public void setDrainingInterval(Long interval) {
         drainingInterval = interval;
     }
 
+    /**
+     * Get the largest number of messages from the offline queue in flight at a time.
+     *
+     * @return the largest drain window.
+     */
+    public int getMaxDrainWindow() {
+        return drainWindow.getMaxSize();
+    }
+
+    /**
+     * Set the largest number of messages from the offline queue in flight, published
+     * and not yet acknowledged, at a time. When reconnected, the queue is drained
+     * keeping a window of messages in flight, which grows as they are acknowledged up
+     * to this size, and is halved when the client or the connection is throttled.
+     * The client allows at least as many messages in flight.
+     *
+     * @param maxWindow the largest drain window. Defaults to 100.
+     */
+    public void setMaxDrainWindow(int maxWindow) {
+        drainWindow.setMaxSize(maxWindow);
+    }
+
+    /**
+     * Run the callbacks of incoming messages on a set of dispatch threads
+     * instead of the client's thread. The messages of a topic always go to the
+     * same thread, so they are handled in order, while the topics of other
+     * threads proceed in parallel. By default callbacks run one at a time on
+     * the client's thread, and a slow callback holds up every subscription.
+     * Replaces the dispatcher set before, dropping its queued messages.
+     *
+     * @param threadCount number of dispatch threads.
+     * @param queueCapacity max messages waiting on each thread.
+     * @param policy what to do with a message when its thread's queue is full.
+     */
+    public void setMessageDispatcher(int threadCount, int queueCapacity, AWSIotMqttDispatchPolicy policy) {
+        final AWSIotMqttMessageDispatcher dispatcher =
+                new AWSIotMqttMessageDispatcher(threadCount, queueCapacity, policy);
+        final AWSIotMqttMessageDispatcher previous = messageDispatcher;
+        messageDispatcher = dispatcher;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Run the callbacks of incoming messages on the client's thread again.
+     * Messages queued on the dispatch threads are dropped.
+     */
+    public void disableMessageDispatcher() {
+        final AWSIotMqttMessageDispatcher previous = messageDispatcher;
+        messageDispatcher = null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * Get the counters of the message dispatcher: messages dispatched,
+     * dropped and queued, and the time messages waited for their callbacks.
+     *
+     * @return the counters, or null if no dispatcher is set.
+     */
+    public AWSIotMqttDispatchMetrics getMessageDispatchMetrics() {
+        final AWSIotMqttMessageDispatcher dispatcher = messageDispatcher;
+        return dispatcher == null ? null : dispatcher.getMetrics();
+    }
+
+    /**
+     * Coalesce the messages published to the topics matching a topic filter,
+     * for topics carrying state, where only the latest value matters. Instead
+     * of queueing every message while offline or throttled, at most one
+     * message per topic waits to be published, and a newer message replaces
+     * it. The replaced message's callback is notified of the failure. Pending
+     * messages are kept in memory, apart from the offline publish queue, and
+     * are published when connected.
+     * <p>
+     * With a minimum publish interval, a message published sooner than that
+     * after the last one of its topic waits for the end of the interval,
+     * replaced by any newer one meanwhile. Of several matching topic filters,
+     * the shortest interval applies.
+     *
+     * @param topicFilter the topic filter, may include wildcards.
+     * @param minPublishInterval milliseconds between publishes to a topic, 0
+     *            to publish as soon as connected.
+     */
+    public void setCoalescedTopic(String topicFilter, long minPublishInterval) {
+        if (TextUtils.isEmpty(topicFilter)) {
+            throw new IllegalArgumentException("topic is null or empty");
+        }
+        if (minPublishInterval < 0) {
+            throw new IllegalArgumentException("Minimum publish interval must be >= 0");
+        }
+        coalescer.setMinPublishInterval(topicFilter, minPublishInterval);
+    }
+
+    /**
+     * Stop coalescing the messages published to the topics matching a topic
+     * filter. Messages already pending are still published.
+     *
+     * @param topicFilter the topic filter given to setCoalescedTopic.
+     */
+    public void removeCoalescedTopic(String topicFilter) {
+        coalescer.remove(topicFilter);
+    }
+
+    /**
+     * Get the directory of the offline publish queue.
+     *
+     * @return the directory, or null if the queue is kept in memory.
+     */
+    public File getOfflinePublishQueueDirectory() {
+        return offlinePublishQueueDirectory;
+    }
+
+    /**
+     * Keep the offline publish queue in files in a directory instead of in
+     * memory, so that it can hold many more messages and survives the
+     * process. Messages left by a previous process are published after the
+     * next connect, without their delivery callbacks. The queue is bounded by
+     * its size in bytes only: the bound on the number of queued messages set
+     * with setOfflinePublishQueueBound doesn't apply to it.
+     * In-flight QoS 1 messages are also kept in the directory, and sent again
+     * after a restart when the session is persistent (clean session false).
+     * Must be called before connecting.
+     *
+     * @param directory directory for the queue, created if missing. Only one
+     *            client may use it at a time.
+     * @param maxSizeInBytes max bytes of queued messages, and of in-flight
+     *            messages. When the queue is full, the full queue behavior
+     *            applies.
+     */
+    public void setOfflinePublishQueueDirectory(File directory, long maxSizeInBytes) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Offline queue directory cannot be null");
+        }
+        if (maxSizeInBytes <= 0) {
+            throw new IllegalArgumentException("Offline queue size must be > 0");
+        }
+        if (mqttClient != null) {
+            throw new IllegalStateException("Offline queue directory must be set before connecting");
+        }
+        if (mqttMessageQueue instanceof AWSIotMqttFileQueue) {
+            ((AWSIotMqttFileQueue) mqttMessageQueue).close();
+        }
+        mqttMessageQueue = new AWSIotMqttFileQueue(new File(directory, OFFLINE_QUEUE_DIRECTORY), maxSizeInBytes);
+        mqttClientPersistence = new AWSIotMqttFilePersistence(new File(directory, IN_FLIGHT_DIRECTORY),
+                maxSizeInBytes);
+        offlinePublishQueueDirectory = directory;
+    }
+
     /**
      * Keep the oldest messages when publish queue is full?
      * @return boolean true if set to keep oldest messages, false if set to keep newest.
@@ -599,6 +794,15 @@ public class AWSIotMqttManager {
         clientCredentialsProvider = credentialsProvider;
     }
 
+    /**
+     * Creates the persistence of the in-flight messages of a new MQTT client.
+     *
+     * @return the file persistence if the offline queue is kept on disk, memory persistence otherwise.
+     */
+    private MqttClientPersistence newMqttClientPersistence() {
+        return mqttClientPersistence != null ? mqttClientPersistence : new MemoryPersistence();
+    }
+
     /**
      * Sets the MQTT client.  Used for unit tests.
      * @param client - desired MQTT client.
@@ -612,7 +816,7 @@ public class AWSIotMqttManager {
      *
      * @return offline message queue.
      */
-    ConcurrentLinkedQueue<AWSIotMqttQueueMessage> getMqttMessageQueue() {
+    Queue<AWSIotMqttQueueMessage> getMqttMessageQueue() {
         return mqttMessageQueue;
     }
 
@@ -915,7 +1119,7 @@ public class AWSIotMqttManager {
 
         try {
             if (mqttClient == null) {
-                mqttClient = new MqttAsyncClient(mqttBrokerURL, mqttClientId, new MemoryPersistence());
+                mqttClient = new MqttAsyncClient(mqttBrokerURL, mqttClientId, newMqttClientPersistence());
             }
 
             final SocketFactory socketFactory = (proxyHost != null) ?
@@ -1015,7 +1219,7 @@ public class AWSIotMqttManager {
 
                     if (mqttClient == null) {
                         mqttClient = new MqttAsyncClient("wss://" + endpointWithHttpPort, mqttClientId,
-                                new MemoryPersistence());
+                                newMqttClientPersistence());
                     }
 
                     mqttConnect(options);
@@ -1121,7 +1325,7 @@ public class AWSIotMqttManager {
                 mqttClient = new MqttAsyncClient(
                         "wss://" + endpointWithHttpPort + "/mqtt",
                         mqttClientId,
-                        new MemoryPersistence());
+                        newMqttClientPersistence());
             }
 
             if (mqttLWT != null) {
@@ -1138,6 +1342,15 @@ public class AWSIotMqttManager {
         }
     }
 
+    /**
+     * Lets the client have as many messages in flight as the drain window.
+     *
+     * @param options MQTT connect options.
+     */
+    private void setMaxInflight(MqttConnectOptions options) {
+        options.setMaxInflight(Math.max(options.getMaxInflight(), drainWindow.getMaxSize()));
+    }
+
     /**
      * Connect to the MQTT service.
      *
@@ -1149,6 +1362,7 @@ public class AWSIotMqttManager {
         fixTLSPre21(options);
         options.setCleanSession(cleanSession);
         options.setKeepAliveInterval(userKeepAlive);
+        setMaxInflight(options);
 
         // Setup userName if metrics are enabled. We use the connection username as metadata for metrics calculation.
         if (isMetricsEnabled() && !AuthenticationMode.USERNAME_PASSWORD.equals(authMode)) {
@@ -1165,8 +1379,13 @@ public class AWSIotMqttManager {
          */
         if (cleanSession) {
             topicListeners.clear();
+            topicTrie.clear();
+        }
+        // messages queued on disk were kept for this connection
+        if (offlinePublishQueueDirectory == null) {
+            mqttMessageQueue.clear();
+            coalescer.clear();
         }
-        mqttMessageQueue.clear();
 
         resetReconnect();
         userDisconnect = false;
@@ -1184,9 +1403,11 @@ public class AWSIotMqttManager {
                     connectionState = MqttManagerConnectionState.Connected;
                     lastConnackTime = getSystemTimeMs();
                     sessionPresent = asyncActionToken.getSessionPresent();
+                    drainWindow.reset();
                     if (mqttMessageQueue.size() > 0) {
                         publishMessagesFromQueue();
                     }
+                    publishCoalescedMessages();
                     userConnectionCallback();
                 }
 
@@ -1279,9 +1500,11 @@ public class AWSIotMqttManager {
     public boolean disconnect() {
         userDisconnect = true;
         reset();
+        quitDrainThread();
         // do not clear topic listeners if persistent connection is enabled
         if (cleanSession) {
             topicListeners.clear();
+            topicTrie.clear();
         }
         connectionState = MqttManagerConnectionState.Disconnected;
         userConnectionCallback();
@@ -1319,6 +1542,7 @@ public class AWSIotMqttManager {
 
             options.setCleanSession(cleanSession);
             options.setKeepAliveInterval(userKeepAlive);
+            setMaxInflight(options);
 
             if (mqttLWT != null) {
                 options.setWill(mqttLWT.getTopic(), mqttLWT.getMessage().getBytes(),
@@ -1360,9 +1584,11 @@ public class AWSIotMqttManager {
                         if (needResubscribe) {
                             resubscribeToTopics();
                         }
+                        drainWindow.reset();
                         if (mqttMessageQueue.size() > 0) {
                             publishMessagesFromQueue();
                         }
+                        publishCoalescedMessages();
                         userConnectionCallback();
                     }
 
@@ -1501,6 +1727,7 @@ public class AWSIotMqttManager {
             try {
                 final AWSIotMqttTopic topicModel = new AWSIotMqttTopic(topic, qos, callback);
                 topicListeners.put(topic, topicModel);
+                topicTrie.put(topicModel);
 
                 if (subscriptionStatusCallback != null) {
                     mqttClient.subscribe(topic, qos.asInt(), null, new IMqttActionListener() {
@@ -1521,6 +1748,7 @@ public class AWSIotMqttManager {
                 }
             } catch (final MqttException e) {
                 topicListeners.remove(topic);
+                topicTrie.remove(topic);
 
                 if (subscriptionStatusCallback != null) {
                     subscriptionStatusCallback.onFailure(e);
@@ -1549,6 +1777,7 @@ public class AWSIotMqttManager {
                 throw new AmazonClientException("Client error while unsubscribing.", e);
             }
             topicListeners.remove(topic);
+            topicTrie.remove(topic);
         }
     }
 
@@ -1702,6 +1931,20 @@ public class AWSIotMqttManager {
 
         final PublishMessageUserData publishMessageUserData = new PublishMessageUserData(callback, userData);
 
+        final long minPublishInterval = coalescer.getMinPublishInterval(topic);
+        if (minPublishInterval != AWSIotMqttCoalescer.NOT_COALESCED
+                && (connectionState == MqttManagerConnectionState.Connected
+                || connectionState == MqttManagerConnectionState.Reconnecting && offlinePublishQueueEnabled)) {
+            final AWSIotMqttQueueMessage message = new AWSIotMqttQueueMessage(topic, data, qos, publishMessageUserData);
+            final AWSIotMqttCoalescer.Pending replaced =
+                    coalescer.put(new AWSIotMqttCoalescer.Pending(message, isRetained, minPublishInterval));
+            if (replaced != null) {
+                notifyReplaced(replaced);
+            }
+            publishCoalescedMessages();
+            return;
+        }
+
         if (connectionState == MqttManagerConnectionState.Connected) {
             if (mqttMessageQueue.isEmpty()) {
                 try {
@@ -1746,66 +1989,222 @@ public class AWSIotMqttManager {
                                     PublishMessageUserData publishMessageUserData) {
         final AWSIotMqttQueueMessage message = new AWSIotMqttQueueMessage(topic, data, qos, publishMessageUserData);
 
-        if (mqttMessageQueue.size() >= offlinePublishQueueBound) {
+        // a queue on disk is bounded by its size in bytes only
+        if (!(mqttMessageQueue instanceof AWSIotMqttFileQueue)
+                && mqttMessageQueue.size() >= offlinePublishQueueBound) {
             if (fullQueueKeepsOldest) {
-                notifyPublishResult(publishMessageUserData.getUserCallback(), AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail,
-                        publishMessageUserData.getUserData(),
-                        new AmazonClientException("Failed to publish the message. Queue is full and set to hold onto the oldest messages."));
+                notifyQueueFull(publishMessageUserData,
+                        "Failed to publish the message. Queue is full and set to hold onto the oldest messages.");
                 return;
             } else {
                 mqttMessageQueue.remove();
             }
         }
 
-        mqttMessageQueue.add(message);
+        // a queue on disk refuses the messages that don't fit in its size
+        while (!mqttMessageQueue.offer(message)) {
+            if (fullQueueKeepsOldest) {
+                notifyQueueFull(publishMessageUserData,
+                        "Failed to publish the message. Queue is full and set to hold onto the oldest messages.");
+                return;
+            }
+            if (mqttMessageQueue.poll() == null) {
+                notifyQueueFull(publishMessageUserData,
+                        "Failed to publish the message. It is larger than the queue.");
+                return;
+            }
+        }
+    }
+
+    private void notifyQueueFull(PublishMessageUserData publishMessageUserData, String error) {
+        notifyPublishResult(publishMessageUserData.getUserCallback(), AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail,
+                publishMessageUserData.getUserData(), new AmazonClientException(error));
     }
 
     /**
      * Publish messages from the message queue.
      * Called to handle publishing messages accumulated in the message queue when the client was unable to publish.
+     * Publishes as many messages as the drain window has room for, and is called again as they are
+     * acknowledged, so the queue drains as fast as the broker takes the messages. Runs on the thread of
+     * the MQTT client's callbacks, or on a drain thread when retrying after the client refused a publish.
      */
     void publishMessagesFromQueue() {
-        if (connectionState == MqttManagerConnectionState.Connected &&
-            mqttMessageQueue != null &&
-            !mqttMessageQueue.isEmpty()) {
-            final AWSIotMqttQueueMessage message = mqttMessageQueue.poll();
-            if (message != null) {
+        synchronized (drainLock) {
+            while (connectionState == MqttManagerConnectionState.Connected && drainWindow.acquire()) {
+                final AWSIotMqttQueueMessage message = mqttMessageQueue.peek();
+                if (message == null) {
+                    drainWindow.release();
+                    return;
+                }
                 try {
-                    if (message.getUserData() != null && message.getUserData().getUserCallback() != null) {
-                        // this queued message has a callback, publish passing the user data
-                        mqttClient
-                                .publish(message.getTopic(), message.getMessage(), message.getQos()
-                                        .asInt(), false, message.getUserData(), null);
-                    } else {
-                        // this queued message does not have a callback
-                        mqttClient
-                                .publish(message.getTopic(), message.getMessage(), message.getQos()
-                                        .asInt(), false);
-                    }
+                    // the message is the user context, to recognize its delivery
+                    mqttClient.publish(message.getTopic(), message.getMessage(), message.getQos().asInt(),
+                            false, message, null);
                 } catch (final MqttException e) {
+                    drainWindow.release();
+                    if (e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                        // too many messages in flight, keep this one and try again later
+                        drainWindow.throttled();
+                        scheduleQueueDrain();
+                        return;
+                    }
                     // Call this message a failure.  It is possible that this is due to a
                     // connection issue (we are in this path because the connection dropped),
                     // however there are also exceptions inherent to the message (valid topic),
                     // such that publishing this message would never succeed.  It is safer to
                     // remove the message from the queue and notify failure than to block
                     // the queue indefinitely.
-                    notifyPublishResult(message.getUserData().getUserCallback(),
-                            AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail,
-                            message.getUserData().getUserData(),
-                            new AmazonClientException("Client error while publishing.", e));
+                    mqttMessageQueue.poll();
+                    notifyPublishFailure(message, e);
+                    continue;
                 }
+                mqttMessageQueue.poll();
             }
+        }
+    }
 
-            (new Handler(Looper.getMainLooper())).postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    if (!mqttMessageQueue.isEmpty()) {
-                        if (connectionState == MqttManagerConnectionState.Connected) {
-                            publishMessagesFromQueue();
+    /**
+     * Notify the callback of a queued or coalesced message that failed to
+     * publish. Unlike notifyPublishResult, nothing is thrown without a
+     * callback: this runs on the MQTT client's or the drain thread, not on
+     * the publisher's.
+     */
+    private void notifyPublishFailure(AWSIotMqttQueueMessage message, MqttException e) {
+        final PublishMessageUserData userData = message.getUserData();
+        if (userData.getUserCallback() != null) {
+            userData.getUserCallback().statusChanged(
+                    AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail, userData.getUserData());
+        } else {
+            LOGGER.warn("Failed to publish a queued message to " + message.getTopic(), e);
+        }
+    }
+
+    /**
+     * Schedule draining the message queue again after the draining interval,
+     * unless it already is. Called holding drainLock.
+     */
+    private void scheduleQueueDrain() {
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        getDrainHandler().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (drainLock) {
+                    drainScheduled = false;
+                }
+                publishMessagesFromQueue();
+            }
+        }, drainingInterval);
+    }
+
+    /**
+     * Get the handler of the drain thread, starting the thread on first use.
+     * The thread is kept until disconnect.
+     */
+    private Handler getDrainHandler() {
+        synchronized (drainThreadLock) {
+            if (drainHandler == null) {
+                drainThread = new HandlerThread("Queue drain thread");
+                drainThread.start();
+                drainHandler = new Handler(drainThread.getLooper());
+            }
+            return drainHandler;
+        }
+    }
+
+    /**
+     * Quit the drain thread, dropping the scheduled drains and coalesced
+     * publishes. Both run again on the next connect.
+     */
+    private void quitDrainThread() {
+        synchronized (drainThreadLock) {
+            if (drainThread != null) {
+                drainThread.quit();
+                drainThread = null;
+                drainHandler = null;
+            }
+        }
+        synchronized (drainLock) {
+            drainScheduled = false;
+        }
+        synchronized (coalesceLock) {
+            coalescedPublishTime = 0;
+        }
+    }
+
+    /**
+     * Publish the pending messages of coalesced topics whose minimum publish
+     * interval has passed, and schedule publishing the others.
+     */
+    void publishCoalescedMessages() {
+        synchronized (coalesceLock) {
+            if (connectionState != MqttManagerConnectionState.Connected) {
+                return;
+            }
+            final long now = getSystemTimeMs();
+            boolean throttled = false;
+            for (final AWSIotMqttCoalescer.Pending pending : coalescer.takeDue(now)) {
+                final AWSIotMqttQueueMessage message = pending.message;
+                if (!throttled) {
+                    try {
+                        mqttClient.publish(message.getTopic(), message.getMessage(), message.getQos().asInt(),
+                                pending.retained, message.getUserData(), null);
+                        coalescer.published(message.getTopic(), now);
+                        continue;
+                    } catch (final MqttException e) {
+                        if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) {
+                            notifyPublishFailure(message, e);
+                            continue;
                         }
+                        // too many messages in flight, keep the rest pending and try again later
+                        throttled = true;
                     }
                 }
-            }, drainingInterval);
+                if (!coalescer.putBack(pending)) {
+                    notifyReplaced(pending);
+                }
+            }
+
+            final long next = throttled ? now + drainingInterval : coalescer.nextDueTime();
+            if (next != AWSIotMqttCoalescer.NOT_COALESCED
+                    && (coalescedPublishTime == 0 || next < coalescedPublishTime)) {
+                scheduleCoalescedPublish(next, next - now);
+            }
+        }
+    }
+
+    /**
+     * Schedule publishing the pending messages of coalesced topics.
+     *
+     * @param time the time of the publish.
+     * @param delay milliseconds before the publish.
+     */
+    private void scheduleCoalescedPublish(final long time, long delay) {
+        coalescedPublishTime = time;
+        getDrainHandler().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (coalesceLock) {
+                    if (coalescedPublishTime == time) {
+                        coalescedPublishTime = 0;
+                    }
+                }
+                publishCoalescedMessages();
+            }
+        }, delay);
+    }
+
+    /**
+     * Notify the callback of a message replaced by a newer one. Replacing is
+     * expected of coalesced topics, so it isn't thrown without a callback.
+     */
+    private void notifyReplaced(AWSIotMqttCoalescer.Pending pending) {
+        final PublishMessageUserData userData = pending.message.getUserData();
+        if (userData.getUserCallback() != null) {
+            userData.getUserCallback().statusChanged(
+                    AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail, userData.getUserData());
         }
     }
 
@@ -1820,6 +2219,10 @@ public class AWSIotMqttManager {
         mqttClient.setCallback(new MqttCallback() {
             @Override
             public void connectionLost(Throwable cause) {
+                if (drainWindow.getInFlight() > 0) {
+                    // the broker disconnects clients publishing faster than allowed
+                    drainWindow.throttled();
+                }
                 LOGGER.warn("connection is Lost");
                 if (!userDisconnect && autoReconnect) {
                     // If we have been connected longer than the connectionStabilityTime then
@@ -1839,15 +2242,22 @@ public class AWSIotMqttManager {
                 LOGGER.info("message arrived on topic: " + topic);
                 final byte[] data = mqttMessage.getPayload();
 
-                for (final String topicKey : topicListeners.keySet()) {
-                    if (isTopicMatch(topicKey, topic)) {
-                        final AWSIotMqttTopic topicModel = topicListeners.get(topicKey);
-                        if (topicModel != null) {
-                            if (topicModel.getCallback() != null) {
-                                topicModel.getCallback().onMessageArrived(topic, data);
-                            }
-                        }
+                final List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+                topicTrie.match(topic, matches);
+                for (final Iterator<AWSIotMqttTopic> it = matches.iterator(); it.hasNext();) {
+                    if (it.next().getCallback() == null) {
+                        it.remove();
+                    }
+                }
+                final AWSIotMqttMessageDispatcher dispatcher = messageDispatcher;
+                if (dispatcher != null) {
+                    if (!matches.isEmpty()) {
+                        dispatcher.dispatch(topic, data, matches);
                     }
+                    return;
+                }
+                for (final AWSIotMqttTopic topicModel : matches) {
+                    topicModel.getCallback().onMessageArrived(topic, data);
                 }
             }
 
@@ -1856,7 +2266,17 @@ public class AWSIotMqttManager {
                 LOGGER.info("delivery is complete");
                 if (token != null) {
                     final Object o = token.getUserContext();
-                    if (o instanceof PublishMessageUserData) {
+                    if (o instanceof AWSIotMqttQueueMessage) {
+                        final PublishMessageUserData pmud = ((AWSIotMqttQueueMessage) o).getUserData();
+                        drainWindow.delivered();
+                        publishMessagesFromQueue();
+                        // messages restored from disk have no callback
+                        if (pmud.getUserCallback() != null) {
+                            pmud.getUserCallback().statusChanged(
+                                    AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Success,
+                                    pmud.getUserData());
+                        }
+                    } else if (o instanceof PublishMessageUserData) {
                         final PublishMessageUserData pmud = (PublishMessageUserData) o;
                         notifyPublishResult(pmud.getUserCallback(),
                                 AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Success,
@@ -1944,45 +2364,7 @@ public class AWSIotMqttManager {
      * @return true if the topic matches the filter, false otherwise.
      */
     static boolean isTopicMatch(String topicFilter, String topic) {
-        final String[] topicFilterTokens = topicFilter.split("/");
-        final String[] topicTokens = topic.split("/");
-
-        if (topicFilterTokens.length > topicTokens.length) {
-            return false;
-        }
-
-        for (int i = 0; i < topicFilterTokens.length; i++) {
-            final String topicFilterToken = topicFilterTokens[i];
-            final String topicToken = topicTokens[i];
-
-            // we're equal up to this point, the # matches all that is left
-            if (("#").equals(topicFilterToken)) {
-                return true;
-            }
-
-            // if the filter has a +, go to the next token
-            // if the filter token matches the topic token, go to the next token
-            // if neither are true then we've discovered a mismatch
-            if (!("+").equals(topicFilterToken) && !topicFilterToken.equals(topicToken)) {
-                return false;
-            }
-        }
-
-        // if we're here the strings matched token-for-token (including any
-        // '+'s)
-        // and we have reached the end of the topic filter
-        // we have a match unless there are more tokens left in the topic
-        // if we have filter 1/2/3 then:
-        // 1/2/3 matches
-        // 1/2/3/4 does not match
-        //
-        // if we have filter 1/2/+ then:
-        // 1/2/3 matches
-        // 1/2/3/4 does not match
-        //
-        // we already know the filter can't be longer than the topic (from
-        // above)
-        return (topicFilterTokens.length == topicTokens.length);
+        return AWSIotMqttSubscriptionTrie.matches(topicFilter, topic);
     }
 
     /**
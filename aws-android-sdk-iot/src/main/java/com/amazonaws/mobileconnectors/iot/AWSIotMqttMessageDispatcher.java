@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the callbacks of incoming messages on a fixed set of threads, each with
+ * a bounded queue. The messages of a topic always go to the same thread, so
+ * they are handled in order, while a slow callback only holds up the topics
+ * sharing its thread instead of every subscription.
+ */
+class AWSIotMqttMessageDispatcher {
+
+    private static final Log LOGGER = LogFactory.getLog(AWSIotMqttMessageDispatcher.class);
+
+    /** Marker telling a dispatch thread to stop. */
+    private static final Delivery STOP = new Delivery(null, null, null, 0);
+
+    /** Queues of the dispatch threads. */
+    private final List<BlockingQueue<Delivery>> queues;
+    /** What to do with a message when its queue is full. */
+    private final AWSIotMqttDispatchPolicy policy;
+
+    /** Messages whose callbacks were run. */
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    /** Messages dropped because their queue was full. */
+    private final AtomicLong droppedCount = new AtomicLong();
+    /** Total dispatch lag, in nanoseconds. */
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    /** Largest dispatch lag, in nanoseconds. */
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /** Has the dispatcher been shut down? */
+    private volatile boolean shutdown;
+
+    /**
+     * Starts the dispatch threads.
+     *
+     * @param threadCount number of dispatch threads.
+     * @param queueCapacity max messages waiting on each thread.
+     * @param policy what to do with a message when its queue is full.
+     */
+    AWSIotMqttMessageDispatcher(int threadCount, int queueCapacity, AWSIotMqttDispatchPolicy policy) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Dispatcher thread count must be > 0");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Dispatcher queue capacity must be > 0");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Dispatcher policy cannot be null");
+        }
+        this.policy = policy;
+        queues = new ArrayList<BlockingQueue<Delivery>>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final BlockingQueue<Delivery> queue = new ArrayBlockingQueue<Delivery>(queueCapacity);
+            queues.add(queue);
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchLoop(queue);
+                }
+            }, "AWSIotMqtt dispatch thread " + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a message for the callbacks of its subscriptions.
+     *
+     * @param topic the topic of the message.
+     * @param data the message payload.
+     * @param subscriptions the subscriptions matching the topic.
+     */
+    void dispatch(String topic, byte[] data, List<AWSIotMqttTopic> subscriptions) throws InterruptedException {
+        if (shutdown) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        final Delivery delivery = new Delivery(topic, data, subscriptions, System.nanoTime());
+        final BlockingQueue<Delivery> queue = queues.get(stripe(topic));
+        switch (policy) {
+            case BLOCK:
+                queue.put(delivery);
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(delivery)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            default:
+                if (!queue.offer(delivery)) {
+                    droppedCount.incrementAndGet();
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the index of the thread of a topic.
+     */
+    private int stripe(String topic) {
+        final int h = topic.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % queues.size();
+    }
+
+    private void dispatchLoop(BlockingQueue<Delivery> queue) {
+        while (true) {
+            final Delivery delivery;
+            try {
+                delivery = queue.take();
+            } catch (final InterruptedException e) {
+                return;
+            }
+            if (delivery == STOP) {
+                return;
+            }
+            recordLag(System.nanoTime() - delivery.arrivalNanos);
+            for (final AWSIotMqttTopic subscription : delivery.subscriptions) {
+                try {
+                    subscription.getCallback().onMessageArrived(delivery.topic, delivery.data);
+                } catch (final RuntimeException e) {
+                    LOGGER.error("Message callback for " + subscription.getTopic() + " failed.", e);
+                }
+            }
+            dispatchedCount.incrementAndGet();
+        }
+    }
+
+    private void recordLag(long lagNanos) {
+        totalLagNanos.addAndGet(lagNanos);
+        long max = maxLagNanos.get();
+        while (lagNanos > max && !maxLagNanos.compareAndSet(max, lagNanos)) {
+            max = maxLagNanos.get();
+        }
+    }
+
+    /**
+     * @return the counters of the dispatcher.
+     */
+    AWSIotMqttDispatchMetrics getMetrics() {
+        long queued = 0;
+        for (final BlockingQueue<Delivery> queue : queues) {
+            queued += queue.size();
+        }
+        return new AWSIotMqttDispatchMetrics(dispatchedCount.get(), droppedCount.get(), queued,
+                TimeUnit.NANOSECONDS.toMillis(totalLagNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get()));
+    }
+
+    /**
+     * Stops the dispatch threads once their current callbacks return. Queued
+     * messages are dropped.
+     */
+    void shutdown() {
+        shutdown = true;
+        for (final BlockingQueue<Delivery> queue : queues) {
+            // make room for the stop marker, even if a blocked dispatch
+            // just took the room of a cleared message
+            do {
+                droppedCount.addAndGet(queue.size());
+                queue.clear();
+            } while (!queue.offer(STOP));
+        }
+    }
+
+    /**
+     * A message waiting for its callbacks.
+     */
+    private static final class Delivery {
+        private final String topic;
+        private final byte[] data;
+        private final List<AWSIotMqttTopic> subscriptions;
+        private final long arrivalNanos;
+
+        Delivery(String topic, byte[] data, List<AWSIotMqttTopic> subscriptions, long arrivalNanos) {
+            this.topic = topic;
+            this.data = data;
+            this.subscriptions = subscriptions;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+}
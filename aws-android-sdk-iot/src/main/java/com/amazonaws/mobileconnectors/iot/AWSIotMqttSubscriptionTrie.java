@@ -0,0 +1,353 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import java.util.List;
+
+/**
+ * Subscriptions indexed by topic filter level, to find the subscriptions
+ * matching the topic of an incoming message in time proportional to the
+ * number of levels of the topic rather than to the number of subscriptions.
+ * Levels of the topic are looked up in place, without splitting it.
+ * <p>
+ * Matching follows the MQTT rules: a + matches exactly one level, a # matches
+ * the parent level and any number of levels below it, and neither matches a
+ * first level starting with $.
+ * <p>
+ * Changes are serialized, and matching runs without locking against them: a
+ * match running during a change sees the subscription either before or after
+ * it.
+ */
+class AWSIotMqttSubscriptionTrie {
+    /** Topic level separator. */
+    private static final char SEPARATOR = '/';
+    /** Single level wildcard. */
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    /** Multi level wildcard. */
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    /** Root of the trie, the level before the first one. */
+    private final Node root = new Node(null);
+
+    /**
+     * Adds a subscription, replacing the one with the same topic filter.
+     *
+     * @param subscription The subscription to add.
+     */
+    synchronized void put(AWSIotMqttTopic subscription) {
+        final String topicFilter = subscription.getTopic();
+        Node node = root;
+        int start = 0;
+        while (true) {
+            final int end = levelEnd(topicFilter, start);
+            final String level = topicFilter.substring(start, end);
+            Node child = node.child(level);
+            if (child == null) {
+                child = new Node(level);
+                node.addChild(child);
+            }
+            node = child;
+            if (end == topicFilter.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        node.subscription = subscription;
+    }
+
+    /**
+     * Removes the subscription with a topic filter.
+     *
+     * @param topicFilter The topic filter of the subscription.
+     */
+    synchronized void remove(String topicFilter) {
+        remove(root, topicFilter, 0);
+    }
+
+    /**
+     * Removes a subscription below a node, and the nodes left empty.
+     *
+     * @return true if the node is left empty.
+     */
+    private static boolean remove(Node node, String topicFilter, int start) {
+        final int end = levelEnd(topicFilter, start);
+        final Node child = node.child(topicFilter.substring(start, end));
+        if (child == null) {
+            return false;
+        }
+        final boolean childEmpty;
+        if (end == topicFilter.length()) {
+            child.subscription = null;
+            childEmpty = child.isEmpty();
+        } else {
+            childEmpty = remove(child, topicFilter, end + 1);
+        }
+        if (childEmpty) {
+            node.removeChild(child);
+        }
+        return node.isEmpty();
+    }
+
+    /**
+     * Removes all subscriptions.
+     */
+    synchronized void clear() {
+        root.clearChildren();
+    }
+
+    /**
+     * Finds the subscriptions matching a topic.
+     *
+     * @param topic The topic a message was published on, without wildcards.
+     * @param matches The matching subscriptions are added to it.
+     */
+    void match(String topic, List<AWSIotMqttTopic> matches) {
+        final boolean wildcards = topic.length() == 0 || topic.charAt(0) != '$';
+        match(root, topic, 0, wildcards, matches);
+    }
+
+    private static void match(Node node, String topic, int start, boolean wildcards,
+            List<AWSIotMqttTopic> matches) {
+        final Node multiLevel = wildcards ? node.multiLevel : null;
+        if (multiLevel != null) {
+            add(multiLevel, matches);
+        }
+        final int end = levelEnd(topic, start);
+        final Node exact = node.child(topic, start, end);
+        final Node singleLevel = wildcards ? node.singleLevel : null;
+        if (end == topic.length()) {
+            matchLast(exact, matches);
+            matchLast(singleLevel, matches);
+        } else {
+            if (exact != null) {
+                match(exact, topic, end + 1, true, matches);
+            }
+            if (singleLevel != null) {
+                match(singleLevel, topic, end + 1, true, matches);
+            }
+        }
+    }
+
+    /**
+     * Adds the subscriptions of a node matching the last level of a topic,
+     * including a # below it, which also matches its parent level.
+     */
+    private static void matchLast(Node node, List<AWSIotMqttTopic> matches) {
+        if (node != null) {
+            add(node, matches);
+            final Node multiLevel = node.multiLevel;
+            if (multiLevel != null) {
+                add(multiLevel, matches);
+            }
+        }
+    }
+
+    private static void add(Node node, List<AWSIotMqttTopic> matches) {
+        final AWSIotMqttTopic subscription = node.subscription;
+        if (subscription != null) {
+            matches.add(subscription);
+        }
+    }
+
+    /**
+     * Does the topic match the topic filter?
+     *
+     * @param topicFilter MQTT topic filter (subscriptions, including
+     *            wildcards).
+     * @param topic The topic (no wildcards) on which a message was published.
+     * @return true if the topic matches the filter, false otherwise.
+     */
+    static boolean matches(String topicFilter, String topic) {
+        if (topic.length() > 0 && topic.charAt(0) == '$'
+                && (topicFilter.startsWith(SINGLE_LEVEL_WILDCARD) || topicFilter.startsWith(MULTI_LEVEL_WILDCARD))) {
+            return false;
+        }
+        int filterStart = 0;
+        int topicStart = 0;
+        while (true) {
+            final int filterEnd = levelEnd(topicFilter, filterStart);
+            final int filterLength = filterEnd - filterStart;
+            if (filterLength == 1 && topicFilter.charAt(filterStart) == '#') {
+                return true;
+            }
+            if (topicStart > topic.length()) {
+                // the topic ran out of levels, only a trailing # still matches
+                return false;
+            }
+            final int topicEnd = levelEnd(topic, topicStart);
+            final boolean singleLevel = filterLength == 1 && topicFilter.charAt(filterStart) == '+';
+            if (!singleLevel && (filterLength != topicEnd - topicStart
+                    || !topicFilter.regionMatches(filterStart, topic, topicStart, filterLength))) {
+                return false;
+            }
+            if (filterEnd == topicFilter.length()) {
+                return topicEnd == topic.length();
+            }
+            filterStart = filterEnd + 1;
+            topicStart = topicEnd + 1;
+        }
+    }
+
+    /**
+     * @return the index of the separator ending the level starting at start,
+     *         or the length of the string for the last level.
+     */
+    private static int levelEnd(String string, int start) {
+        final int end = string.indexOf(SEPARATOR, start);
+        return end < 0 ? string.length() : end;
+    }
+
+    /**
+     * @return the hash of a level, the same as {@link String#hashCode()} of
+     *         it, spread over the low bits.
+     */
+    private static int hash(String string, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + string.charAt(i);
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A topic filter level. Children other than wildcards are kept in an open
+     * addressed hash table that is copied on every change, so lookups need no
+     * locking.
+     */
+    private static final class Node {
+        private static final Node[] EMPTY = new Node[0];
+
+        /** The level, null for the root. */
+        private final String level;
+        /** Spread hash of the level. */
+        private final int hash;
+        /** Subscription with the topic filter ending at this level. */
+        private volatile AWSIotMqttTopic subscription;
+        /** Child for a + level. */
+        private volatile Node singleLevel;
+        /** Child for a # level. */
+        private volatile Node multiLevel;
+        /** Other children, at most half full. */
+        private volatile Node[] children = EMPTY;
+        /** Number of other children. */
+        private int childCount;
+
+        Node(String level) {
+            this.level = level;
+            this.hash = level == null ? 0 : spread(level.hashCode());
+        }
+
+        Node child(String childLevel) {
+            if (SINGLE_LEVEL_WILDCARD.equals(childLevel)) {
+                return singleLevel;
+            }
+            if (MULTI_LEVEL_WILDCARD.equals(childLevel)) {
+                return multiLevel;
+            }
+            return child(childLevel, 0, childLevel.length());
+        }
+
+        /**
+         * Looks up the child for a level other than a wildcard.
+         */
+        Node child(String topic, int start, int end) {
+            final Node[] table = children;
+            if (table.length == 0) {
+                return null;
+            }
+            final int length = end - start;
+            final int h = hash(topic, start, end);
+            final int mask = table.length - 1;
+            for (int i = h & mask;; i = (i + 1) & mask) {
+                final Node node = table[i];
+                if (node == null) {
+                    return null;
+                }
+                if (node.hash == h && node.level.length() == length
+                        && node.level.regionMatches(0, topic, start, length)) {
+                    return node;
+                }
+            }
+        }
+
+        void addChild(Node child) {
+            if (SINGLE_LEVEL_WILDCARD.equals(child.level)) {
+                singleLevel = child;
+            } else if (MULTI_LEVEL_WILDCARD.equals(child.level)) {
+                multiLevel = child;
+            } else {
+                childCount++;
+                children = rebuild(children, childCount, child, null);
+            }
+        }
+
+        void removeChild(Node child) {
+            if (child == singleLevel) {
+                singleLevel = null;
+            } else if (child == multiLevel) {
+                multiLevel = null;
+            } else {
+                childCount--;
+                children = childCount == 0 ? EMPTY : rebuild(children, childCount, null, child);
+            }
+        }
+
+        void clearChildren() {
+            singleLevel = null;
+            multiLevel = null;
+            childCount = 0;
+            children = EMPTY;
+        }
+
+        boolean isEmpty() {
+            return subscription == null && singleLevel == null && multiLevel == null && childCount == 0;
+        }
+
+        /**
+         * Copies the children into a new table sized for a number of them,
+         * adding one and leaving one out.
+         */
+        private static Node[] rebuild(Node[] table, int count, Node added, Node removed) {
+            int capacity = 2;
+            while (capacity < count * 2) {
+                capacity <<= 1;
+            }
+            final Node[] rebuilt = new Node[capacity];
+            for (final Node node : table) {
+                if (node != null && node != removed) {
+                    insert(rebuilt, node);
+                }
+            }
+            if (added != null) {
+                insert(rebuilt, added);
+            }
+            return rebuilt;
+        }
+
+        private static void insert(Node[] table, Node node) {
+            final int mask = table.length - 1;
+            int i = node.hash & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = node;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class AWSIotMqttCoalescerTest {
+
+    @Test
+    public void testMinPublishIntervalOfTopic() {
+        AWSIotMqttCoalescer coalescer = new AWSIotMqttCoalescer();
+        assertTrue(coalescer.isEmpty());
+        coalescer.setMinPublishInterval("state/#", 1000);
+        coalescer.setMinPublishInterval("state/+/temperature", 100);
+
+        assertEquals(1000, coalescer.getMinPublishInterval("state/door"));
+        assertEquals(100, coalescer.getMinPublishInterval("state/kitchen/temperature"));
+        assertEquals(AWSIotMqttCoalescer.NOT_COALESCED, coalescer.getMinPublishInterval("events/door"));
+
+        coalescer.remove("state/#");
+        assertEquals(AWSIotMqttCoalescer.NOT_COALESCED, coalescer.getMinPublishInterval("state/door"));
+    }
+
+    @Test
+    public void testNewerMessageReplacesPending() {
+        AWSIotMqttCoalescer coalescer = new AWSIotMqttCoalescer();
+        AWSIotMqttCoalescer.Pending a1 = pending("a", "1", 0);
+        AWSIotMqttCoalescer.Pending b1 = pending("b", "1", 0);
+        AWSIotMqttCoalescer.Pending a2 = pending("a", "2", 0);
+
+        assertNull(coalescer.put(a1));
+        assertNull(coalescer.put(b1));
+        assertSame(a1, coalescer.put(a2));
+        assertEquals(2, coalescer.pendingCount());
+
+        // the topic keeps its place
+        List<AWSIotMqttCoalescer.Pending> due = coalescer.takeDue(0);
+        assertEquals(2, due.size());
+        assertSame(a2, due.get(0));
+        assertSame(b1, due.get(1));
+        assertEquals(0, coalescer.pendingCount());
+    }
+
+    @Test
+    public void testPendingUntilEndOfInterval() {
+        AWSIotMqttCoalescer coalescer = new AWSIotMqttCoalescer();
+        coalescer.published("a", 1000);
+        coalescer.put(pending("a", "1", 500));
+        coalescer.put(pending("b", "1", 500));
+
+        assertEquals("b", coalescer.takeDue(1000).get(0).message.getTopic());
+        assertEquals(1500, coalescer.nextDueTime());
+        assertTrue(coalescer.takeDue(1499).isEmpty());
+        assertEquals("a", coalescer.takeDue(1500).get(0).message.getTopic());
+        assertEquals(AWSIotMqttCoalescer.NOT_COALESCED, coalescer.nextDueTime());
+    }
+
+    @Test
+    public void testPutBackUnlessReplaced() {
+        AWSIotMqttCoalescer coalescer = new AWSIotMqttCoalescer();
+        AWSIotMqttCoalescer.Pending a1 = pending("a", "1", 0);
+        coalescer.put(a1);
+        coalescer.takeDue(0);
+        assertTrue(coalescer.putBack(a1));
+
+        coalescer.takeDue(0);
+        coalescer.put(pending("a", "2", 0));
+        assertFalse(coalescer.putBack(a1));
+        assertEquals("2", new String(coalescer.clear().get(0).message.getMessage(), StringUtils.UTF8));
+        assertEquals(0, coalescer.pendingCount());
+    }
+
+    private static AWSIotMqttCoalescer.Pending pending(String topic, String payload, long minPublishInterval) {
+        AWSIotMqttQueueMessage message = new AWSIotMqttQueueMessage(topic, payload.getBytes(StringUtils.UTF8),
+                AWSIotMqttQos.QOS0, new PublishMessageUserData(null, null));
+        return new AWSIotMqttCoalescer.Pending(message, false, minPublishInterval);
+    }
+}
@@ -0,0 +1,74 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AWSIotMqttDrainWindowTest {
+
+    @Test
+    public void testAcquireUpToSize() {
+        AWSIotMqttDrainWindow window = new AWSIotMqttDrainWindow(100);
+        assertEquals(AWSIotMqttDrainWindow.DEFAULT_INITIAL_SIZE, window.getSize());
+        for (int i = 0; i < AWSIotMqttDrainWindow.DEFAULT_INITIAL_SIZE; i++) {
+            assertTrue(window.acquire());
+        }
+        assertFalse(window.acquire());
+        window.release();
+        assertTrue(window.acquire());
+        assertEquals(AWSIotMqttDrainWindow.DEFAULT_INITIAL_SIZE, window.getInFlight());
+    }
+
+    @Test
+    public void testInitialSizeIsBoundedByMaxSize() {
+        AWSIotMqttDrainWindow window = new AWSIotMqttDrainWindow(3);
+        assertEquals(3, window.getSize());
+        window.delivered();
+        assertEquals(3, window.getSize());
+    }
+
+    @Test
+    public void testGrowsByOnePerAcknowledgementUntilThrottled() {
+        AWSIotMqttDrainWindow window = new AWSIotMqttDrainWindow(100);
+        for (int i = 0; i < 10; i++) {
+            window.delivered();
+        }
+        assertEquals(20, window.getSize());
+
+        window.throttled();
+        assertEquals(10, window.getSize());
+
+        // afterwards by one per window of acknowledgements
+        for (int i = 0; i < 10; i++) {
+            window.delivered();
+        }
+        assertEquals(10, window.getSize());
+        window.delivered();
+        assertEquals(11, window.getSize());
+    }
+
+    @Test
+    public void testThrottledKeepsOneMessage() {
+        AWSIotMqttDrainWindow window = new AWSIotMqttDrainWindow(100);
+        for (int i = 0; i < 10; i++) {
+            window.throttled();
+        }
+        assertEquals(1, window.getSize());
+        assertTrue(window.acquire());
+        assertFalse(window.acquire());
+    }
+
+    @Test
+    public void testResetForgetsMessagesInFlight() {
+        AWSIotMqttDrainWindow window = new AWSIotMqttDrainWindow(100);
+        window.acquire();
+        window.acquire();
+        window.reset();
+        assertEquals(0, window.getInFlight());
+        // acknowledgements of messages from before don't go below zero
+        window.delivered();
+        assertEquals(0, window.getInFlight());
+    }
+}
@@ -0,0 +1,102 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+public class AWSIotMqttFilePersistenceTest {
+
+    private static final String CLIENT_ID = "test-client";
+    private static final String SERVER_URI = "ssl://test.iot.us-east-1.amazonaws.com:8883";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AWSIotMqttFilePersistence persistence;
+
+    @Before
+    public void setUp() throws Exception {
+        persistence = new AWSIotMqttFilePersistence(folder.getRoot(), 1000);
+        persistence.open(CLIENT_ID, SERVER_URI);
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        persistence.put("s-1", persistable("s-1", 10, 100));
+        assertTrue(persistence.containsKey("s-1"));
+
+        final MqttPersistable restored = persistence.get("s-1");
+        assertEquals(10, restored.getHeaderLength());
+        assertEquals(100, restored.getPayloadLength());
+        assertArrayEquals(bytes(10, 1), Arrays.copyOfRange(restored.getHeaderBytes(),
+                restored.getHeaderOffset(), restored.getHeaderOffset() + 10));
+        assertArrayEquals(bytes(100, 2), Arrays.copyOfRange(restored.getPayloadBytes(),
+                restored.getPayloadOffset(), restored.getPayloadOffset() + 100));
+
+        persistence.remove("s-1");
+        assertFalse(persistence.containsKey("s-1"));
+        assertEquals(0, persistence.sizeInBytes());
+    }
+
+    @Test
+    public void testReopenRestoresKeys() throws Exception {
+        persistence.put("s-1", persistable("s-1", 10, 100));
+        persistence.put("s-2", persistable("s-2", 10, 100));
+        persistence.close();
+
+        persistence.open(CLIENT_ID, SERVER_URI);
+        final List<String> keys = new ArrayList<String>();
+        for (final Enumeration<?> e = persistence.keys(); e.hasMoreElements();) {
+            keys.add((String) e.nextElement());
+        }
+        Collections.sort(keys);
+        assertEquals(Arrays.asList("s-1", "s-2"), keys);
+        assertEquals(100, persistence.get("s-2").getPayloadLength());
+
+        persistence.clear();
+        assertFalse(persistence.keys().hasMoreElements());
+    }
+
+    @Test
+    public void testRefusesMessagesOverMaxSize() throws Exception {
+        persistence.put("s-1", persistable("s-1", 10, 500));
+        try {
+            persistence.put("s-2", persistable("s-2", 10, 500));
+            fail("expected MqttPersistenceException");
+        } catch (final MqttPersistenceException e) {
+            assertFalse(persistence.containsKey("s-2"));
+        }
+        // replacing a message only counts the difference
+        persistence.put("s-1", persistable("s-1", 10, 900));
+        assertTrue(persistence.containsKey("s-1"));
+    }
+
+    private static MqttPersistable persistable(String key, int headerLength, int payloadLength) {
+        return new MqttPersistentData(key, bytes(headerLength, 1), 0, headerLength,
+                bytes(payloadLength, 2), 0, payloadLength);
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * seed);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,233 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AWSIotMqttFileQueueTest {
+
+    private static final long MAX_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private AWSIotMqttFileQueue queue;
+
+    private final AWSIotMqttMessageDeliveryCallback callback = new AWSIotMqttMessageDeliveryCallback() {
+        @Override
+        public void statusChanged(MessageDeliveryStatus status, Object userData) {
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(folder.getRoot(), "queue");
+        queue = new AWSIotMqttFileQueue(directory, MAX_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        queue.close();
+    }
+
+    @Test
+    public void testFifoAcrossSegments() {
+        for (int i = 0; i < 40; i++) {
+            assertTrue(queue.offer(message(i, 1000, null)));
+        }
+        assertEquals(40, queue.size());
+        assertTrue(segmentCount() > 1);
+
+        for (int i = 0; i < 40; i++) {
+            final AWSIotMqttQueueMessage message = queue.poll();
+            assertEquals("topic/" + i, message.getTopic());
+            assertEquals(AWSIotMqttQos.values()[i % 2], message.getQos());
+            assertEquals(1000, message.getMessage().length);
+            assertEquals(payload(i, 1000), new String(message.getMessage(), StringUtils.UTF8));
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.sizeInBytes());
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void testPeekDoesNotRemove() {
+        queue.offer(message(0, 10, null));
+        queue.offer(message(1, 10, null));
+        assertEquals("topic/0", queue.peek().getTopic());
+        assertEquals("topic/0", queue.peek().getTopic());
+        assertEquals(2, queue.size());
+        assertEquals("topic/0", queue.poll().getTopic());
+        assertEquals("topic/1", queue.peek().getTopic());
+    }
+
+    @Test
+    public void testRefusesMessagesOverMaxSize() {
+        int queued = 0;
+        while (queue.offer(message(queued, 1000, null))) {
+            queued++;
+        }
+        assertTrue(queue.sizeInBytes() <= MAX_SIZE);
+        assertEquals(queued, queue.size());
+
+        // room is made by reading
+        queue.poll();
+        assertTrue(queue.offer(message(queued, 1000, null)));
+    }
+
+    @Test
+    public void testReopenRestoresMessagesWithoutCallbacks() {
+        for (int i = 0; i < 30; i++) {
+            queue.offer(message(i, 1000, new PublishMessageUserData(callback, "token " + i)));
+        }
+        for (int i = 0; i < 12; i++) {
+            queue.poll();
+        }
+        queue.close();
+
+        queue = new AWSIotMqttFileQueue(directory, MAX_SIZE);
+        assertEquals(18, queue.size());
+        queue.offer(message(30, 10, new PublishMessageUserData(callback, "token 30")));
+        for (int i = 12; i < 30; i++) {
+            final AWSIotMqttQueueMessage message = queue.poll();
+            assertEquals("topic/" + i, message.getTopic());
+            assertNull(message.getUserData().getUserCallback());
+        }
+        final AWSIotMqttQueueMessage message = queue.poll();
+        assertEquals("topic/30", message.getTopic());
+        assertSame(callback, message.getUserData().getUserCallback());
+        assertEquals("token 30", message.getUserData().getUserData());
+    }
+
+    @Test
+    public void testCallbacksOfMessagesOfThisProcess() {
+        queue.offer(message(0, 10, new PublishMessageUserData(callback, "token 0")));
+        queue.offer(message(1, 10, new PublishMessageUserData(null, null)));
+        queue.offer(message(2, 10, new PublishMessageUserData(callback, "token 2")));
+
+        final List<AWSIotMqttQueueMessage> copy = new ArrayList<AWSIotMqttQueueMessage>(queue);
+        assertEquals(3, copy.size());
+        assertEquals("token 0", copy.get(0).getUserData().getUserData());
+        assertNull(copy.get(1).getUserData().getUserCallback());
+        assertEquals("token 2", copy.get(2).getUserData().getUserData());
+
+        assertEquals("token 0", queue.poll().getUserData().getUserData());
+        assertNull(queue.poll().getUserData().getUserCallback());
+        assertEquals("token 2", queue.poll().getUserData().getUserData());
+    }
+
+    @Test
+    public void testReopenDropsIncompleteMessage() throws Exception {
+        queue.offer(message(0, 10, null));
+        queue.offer(message(1, 10, null));
+        queue.close();
+
+        final File[] segments = directory.listFiles();
+        for (final File segment : segments) {
+            if (segment.getName().endsWith(".queue")) {
+                // a message cut short by the process dying
+                final FileOutputStream out = new FileOutputStream(segment, true);
+                out.write(new byte[] {0, 0, 0, 100, 1, 2});
+                out.close();
+            }
+        }
+
+        queue = new AWSIotMqttFileQueue(directory, MAX_SIZE);
+        assertEquals(2, queue.size());
+        queue.offer(message(2, 10, null));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("topic/" + i, queue.poll().getTopic());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testDamagedMessageDropsTheRestOfItsSegment() throws Exception {
+        queue.offer(message(0, 1000, null));
+        // the first ten messages have topics of the same length
+        final long recordSize = queue.sizeInBytes();
+        for (int i = 1; i < 40; i++) {
+            queue.offer(message(i, 1000, null));
+        }
+
+        // flip a byte of the payload of the third message
+        final RandomAccessFile segment = new RandomAccessFile(new File(directory, "0.queue"), "rw");
+        segment.seek(2 * recordSize + 500);
+        final int b = segment.read();
+        segment.seek(2 * recordSize + 500);
+        segment.write(b ^ 0xff);
+        segment.close();
+
+        assertEquals("topic/0", queue.poll().getTopic());
+        assertEquals("topic/1", queue.poll().getTopic());
+        final String topic = queue.poll().getTopic();
+        final int next = Integer.parseInt(topic.substring("topic/".length()));
+        assertTrue(next > 2);
+        assertEquals(39 - next, queue.size());
+        for (int i = next + 1; i < 40; i++) {
+            assertEquals("topic/" + i, queue.poll().getTopic());
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.sizeInBytes());
+    }
+
+    @Test
+    public void testClear() {
+        for (int i = 0; i < 40; i++) {
+            queue.offer(message(i, 1000, new PublishMessageUserData(callback, null)));
+        }
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.sizeInBytes());
+        assertEquals(0, segmentCount());
+        assertFalse(queue.iterator().hasNext());
+
+        queue.offer(message(40, 10, null));
+        queue.close();
+        queue = new AWSIotMqttFileQueue(directory, MAX_SIZE);
+        assertEquals("topic/40", queue.poll().getTopic());
+    }
+
+    private int segmentCount() {
+        int count = 0;
+        for (final String name : directory.list()) {
+            if (name.endsWith(".queue")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static AWSIotMqttQueueMessage message(int i, int length, PublishMessageUserData userData) {
+        return new AWSIotMqttQueueMessage("topic/" + i, payload(i, length).getBytes(StringUtils.UTF8),
+                AWSIotMqttQos.values()[i % 2], userData);
+    }
+
+    private static String payload(int i, int length) {
+        final StringBuilder payload = new StringBuilder(length);
+        while (payload.length() < length) {
+            payload.append((char) ('a' + (i + payload.length()) % 26));
+        }
+        return payload.toString();
+    }
+}
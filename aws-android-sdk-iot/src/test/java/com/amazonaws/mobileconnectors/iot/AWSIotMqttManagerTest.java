@@ -33,7 +33,9 @@ import java.security.KeyPair;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
@@ -42,6 +44,7 @@ import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -1207,6 +1210,60 @@ public class AWSIotMqttManagerTest {
         assertEquals("unit/test/topic" + "test payload", mcb.receivedMessages.get(0));
     }
 
+    @Test
+    public void testMessageDispatcherRunsCallbacksOffClientThread() throws Exception {
+        MockMqttClient mockClient = new MockMqttClient();
+
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setMqttClient(mockClient);
+        assertNull(testClient.getMessageDispatchMetrics());
+        testClient.setMessageDispatcher(2, 10, AWSIotMqttDispatchPolicy.DROP_NEWEST);
+
+        KeyStore testKeystore = AWSIotKeystoreHelper.getIotKeystore(CERT_ID, KEYSTORE_PATH,
+                KEYSTORE_NAME, KEYSTORE_PASSWORD);
+        testClient.setAutoReconnect(false);
+        testClient.connect(testKeystore, null);
+        mockClient.mockConnectSuccess();
+
+        final CountDownLatch received = new CountDownLatch(3);
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        testClient.subscribeToTopic("unit/test/topic", AWSIotMqttQos.QOS0, new AWSIotMqttNewMessageCallback() {
+            @Override
+            public void onMessageArrived(String topic, byte[] data) {
+                messages.add(new String(data, StringUtils.UTF8));
+                threads.add(Thread.currentThread().getName());
+                received.countDown();
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            MqttMessage msg = new MqttMessage();
+            msg.setPayload(("test payload " + i).getBytes(StringUtils.UTF8));
+            mockClient.mockCallback.messageArrived("unit/test/topic", msg);
+        }
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("test payload 0", "test payload 1", "test payload 2"), messages);
+        for (final String thread : threads) {
+            assertTrue(thread.startsWith("AWSIotMqtt dispatch thread"));
+        }
+        // counted once the callbacks return
+        for (int i = 0; i < 100 && testClient.getMessageDispatchMetrics().getDispatchedCount() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, testClient.getMessageDispatchMetrics().getDispatchedCount());
+
+        testClient.disableMessageDispatcher();
+        assertNull(testClient.getMessageDispatchMetrics());
+        MqttMessage msg = new MqttMessage();
+        msg.setPayload("test payload 3".getBytes(StringUtils.UTF8));
+        mockClient.mockCallback.messageArrived("unit/test/topic", msg);
+        assertEquals(4, messages.size());
+        assertEquals(Thread.currentThread().getName(), threads.get(3));
+    }
+
     @Test
     public void testSubscriptionsRetainedOnPersistentConnection() throws Exception {
         MockMqttClient mockClient = new MockMqttClient();
@@ -2407,6 +2464,8 @@ public class AWSIotMqttManagerTest {
         AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
                 Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
         testClient.setMqttClient(mockClient);
+        // one queued message in flight at a time
+        testClient.setMaxDrainWindow(1);
 
         TestClientStatusCallback csb = new TestClientStatusCallback();
 
@@ -2465,6 +2524,8 @@ public class AWSIotMqttManagerTest {
         AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
                 Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
         testClient.setMqttClient(mockClient);
+        // one queued message in flight at a time
+        testClient.setMaxDrainWindow(1);
         testClient.setDrainingInterval(250L);
 
         TestClientStatusCallback csb = new TestClientStatusCallback();
@@ -2518,10 +2579,7 @@ public class AWSIotMqttManagerTest {
 
         // ---
 
-        // cause next publish to occur
-        Robolectric.getForegroundThreadScheduler().advanceBy(250, TimeUnit.MILLISECONDS);
-
-        // 2 publishes, same callbacks
+        // the acknowledgement caused the next publish, same callbacks
         assertTrue(mockClient.publishCalls >= 2);
         assertEquals(1, mdcb1.statuses.size());
         assertEquals(0, mdcb2.statuses.size());
@@ -2539,11 +2597,7 @@ public class AWSIotMqttManagerTest {
 
         // ---
 
-        // cause next publish to occur
-        Robolectric.getForegroundThreadScheduler().advanceBy(250, TimeUnit.MILLISECONDS);
-        mockClient.mockConnectSuccess();
-
-        // 3 publishes, same callbacks
+        // the acknowledgement caused the next publish, same callbacks
         assertTrue(mockClient.publishCalls >= 3);
         assertEquals(1, mdcb1.statuses.size());
         assertEquals(1, mdcb2.statuses.size());
@@ -2657,6 +2711,8 @@ public class AWSIotMqttManagerTest {
         AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
                 Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
         testClient.setMqttClient(mockClient);
+        // one queued message in flight at a time
+        testClient.setMaxDrainWindow(1);
         testClient.setOfflinePublishQueueBound(10);
         testClient.setFullQueueToKeepOldestMessages();
 
@@ -2725,9 +2781,13 @@ public class AWSIotMqttManagerTest {
                 mdcb.statuses.get(1));
         assertEquals(2, mdcb.userDatas.size());
         assertEquals("TEST_TOKEN_0", mdcb.userDatas.get(1));  // first queued message
+        // the acknowledgement caused the next publish
+        assertEquals(2, mockClient.publishCalls);
+        assertEquals("test payload 1", new String(mockClient.mostRecentPublishPayload));
 
-        // queue has 9 messages, publish one to fill it again
+        // queue has 8 messages, publish two to fill it again
         testClient.publishString("test payload A", "test/topic", AWSIotMqttQos.QOS1, mdcb, "TEST_TOKEN_A");
+        testClient.publishString("test payload A2", "test/topic", AWSIotMqttQos.QOS1, mdcb, "TEST_TOKEN_A2");
         // queue full
         assertEquals(10, testClient.getMqttMessageQueue().size());
         // no callback
@@ -2743,26 +2803,35 @@ public class AWSIotMqttManagerTest {
         assertEquals(3, mdcb.userDatas.size());
         assertEquals("TEST_TOKEN_B", mdcb.userDatas.get(2));
 
-        // still only first message after reconnect published
-        assertEquals(1, mockClient.publishCalls);
+        // still only the first two messages after reconnect published
+        assertEquals(2, mockClient.publishCalls);
 
-        // cause all scheduled publishes to occur
+        // each reconnect publishes one more message
         Robolectric.getForegroundThreadScheduler().advanceBy(3000, TimeUnit.MILLISECONDS);
         for (int i = 1; i <= 10; i++) {
             mockClient.mockConnectSuccess();
         }
-        assertEquals(11, mockClient.publishCalls);
+        assertEquals(12, mockClient.publishCalls);
         assertEquals(0, testClient.getMqttMessageQueue().size());
     }
 
     @Test
     public void testDefaultDrainingInterval() throws Exception {
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        assertEquals(250L, (long) testClient.getDrainingInterval());
+        assertEquals(100, testClient.getMaxDrainWindow());
+    }
+
+    @Test
+    public void testDrainWindowGrowsWithAcknowledgements() throws Exception {
         MockMqttClient mockClient = new MockMqttClient();
 
         AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
                 Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
         testClient.setMqttClient(mockClient);
-        assertEquals(250L, (long) testClient.getDrainingInterval());
+        testClient.setOfflinePublishQueueBound(50);
+        testClient.setMaxDrainWindow(12);
 
         TestClientStatusCallback csb = new TestClientStatusCallback();
 
@@ -2770,38 +2839,36 @@ public class AWSIotMqttManagerTest {
                 .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
         testClient.connect(testKeystore, csb);
         mockClient.mockConnectSuccess();
-        assertEquals(MqttManagerConnectionState.Connected, testClient.getConnectionState());
         mockClient.mockDisconnect();
         assertEquals(MqttManagerConnectionState.Reconnecting, testClient.getConnectionState());
 
-        for (int i = 0; i < 10; i++) {
-            testClient.publishString("test payload " + i, "test/topic", AWSIotMqttQos.QOS0);
+        for (int i = 0; i < 30; i++) {
+            testClient.publishString("test payload " + i, "test/topic", AWSIotMqttQos.QOS1);
         }
+        assertEquals(30, testClient.getMqttMessageQueue().size());
 
-        assertEquals(10, testClient.getMqttMessageQueue().size());
-        assertEquals(0, mockClient.publishCalls);
-        checkOfflinePublishingQueue(testClient);
-
-        // cause next reconnect attempt
-        Robolectric.getForegroundThreadScheduler().advanceBy(4100, TimeUnit.MILLISECONDS);
-        mockClient.mockConnectSuccess();
-
-        // first publish occurs immediately upon reconnect
-        assertEquals(1, mockClient.publishCalls);
-        assertEquals("test payload 0", new String(mockClient.mostRecentPublishPayload));
-        assertEquals("test/topic", mockClient.mostRecentPublishTopic);
-        assertEquals(AWSIotMqttQos.QOS0.asInt(), mockClient.mostRecentPublishQoS);
-        assertEquals(9, testClient.getMqttMessageQueue().size());
-
-        // cause next reconnect attempt
+        // cause reconnect attempt
         Robolectric.getForegroundThreadScheduler().advanceBy(4100, TimeUnit.MILLISECONDS);
         mockClient.mockConnectSuccess();
 
+        // the initial window is published at once, without waiting for a timer
         assertEquals(10, mockClient.publishCalls);
+        assertEquals("test payload 9", new String(mockClient.mostRecentPublishPayload));
+        assertEquals(20, testClient.getMqttMessageQueue().size());
+
+        // each acknowledgement grows the window, up to its maximum
+        mockDeliveryComplete(mockClient, mockClient.mostRecentPublishUserContext);
+        assertEquals(12, mockClient.publishCalls);
+        mockDeliveryComplete(mockClient, mockClient.mostRecentPublishUserContext);
+        assertEquals(14, mockClient.publishCalls);
+        mockDeliveryComplete(mockClient, mockClient.mostRecentPublishUserContext);
+        assertEquals(15, mockClient.publishCalls);
+        assertEquals("test payload 14", new String(mockClient.mostRecentPublishPayload));
+        assertEquals(15, testClient.getMqttMessageQueue().size());
     }
 
     @Test
-    public void testLongerDrainingInterval() throws Exception {
+    public void testDrainWindowShrinksWhenThrottled() throws Exception {
         MockMqttClient mockClient = new MockMqttClient();
 
         AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
@@ -2815,32 +2882,238 @@ public class AWSIotMqttManagerTest {
                 .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
         testClient.connect(testKeystore, csb);
         mockClient.mockConnectSuccess();
-        assertEquals(MqttManagerConnectionState.Connected, testClient.getConnectionState());
         mockClient.mockDisconnect();
-        assertEquals(MqttManagerConnectionState.Reconnecting, testClient.getConnectionState());
 
-        for (int i = 0; i < 10; i++) {
-            testClient.publishString("test payload " + i, "test/topic", AWSIotMqttQos.QOS0);
+        for (int i = 0; i < 20; i++) {
+            testClient.publishString("test payload " + i, "test/topic", AWSIotMqttQos.QOS1);
         }
+        assertEquals(20, testClient.getMqttMessageQueue().size());
 
-        assertEquals(10, testClient.getMqttMessageQueue().size());
+        // the client refuses to take more messages
+        mockClient.throwsMaxInflightOnPublish = true;
+        Robolectric.getForegroundThreadScheduler().advanceBy(4100, TimeUnit.MILLISECONDS);
+        mockClient.mockConnectSuccess();
         assertEquals(0, mockClient.publishCalls);
+        assertEquals(20, testClient.getMqttMessageQueue().size());
 
-        checkOfflinePublishingQueue(testClient);
+        // after the draining interval, half the initial window is published
+        mockClient.throwsMaxInflightOnPublish = false;
+        Robolectric.getForegroundThreadScheduler().advanceBy(1000, TimeUnit.MILLISECONDS);
+        long timeout = System.currentTimeMillis() + 5000;
+        while (mockClient.publishCalls < 5 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, mockClient.publishCalls);
+        assertEquals("test payload 4", new String(mockClient.mostRecentPublishPayload));
+        assertEquals(15, testClient.getMqttMessageQueue().size());
+    }
+
+    @Test
+    public void testCoalescedTopicKeepsLatestMessageWhileOffline() throws Exception {
+        MockMqttClient mockClient = new MockMqttClient();
+
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setMqttClient(mockClient);
+        testClient.setCoalescedTopic("state/#", 0);
+
+        TestClientStatusCallback csb = new TestClientStatusCallback();
+        TestMessageDeliveryCallback mdcb = new TestMessageDeliveryCallback();
+
+        KeyStore testKeystore = AWSIotKeystoreHelper
+                .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+        testClient.connect(testKeystore, csb);
+        mockClient.mockConnectSuccess();
+        mockClient.mockDisconnect();
+
+        for (int i = 0; i < 5; i++) {
+            testClient.publishString("door " + i, "state/door", AWSIotMqttQos.QOS1, mdcb, "door " + i);
+        }
+        testClient.publishString("light 0", "state/light", AWSIotMqttQos.QOS1, mdcb, "light 0");
+        testClient.publishString("event 0", "events/door", AWSIotMqttQos.QOS1);
+
+        // only the other topic goes to the offline queue, replaced messages fail
+        assertEquals(1, testClient.getMqttMessageQueue().size());
+        assertEquals(4, mdcb.statuses.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail, mdcb.statuses.get(i));
+            assertEquals("door " + i, mdcb.userDatas.get(i));
+        }
 
-        // cause reconnect attempt
         Robolectric.getForegroundThreadScheduler().advanceBy(4100, TimeUnit.MILLISECONDS);
         mockClient.mockConnectSuccess();
+        assertEquals(3, mockClient.publishCalls);
+        assertEquals("light 0", new String(mockClient.mostRecentPublishPayload, StringUtils.UTF8));
 
-        // first publish occurs immediately upon reconnect
+        MockDeliveryToken testDeliveryToken = new MockDeliveryToken();
+        testDeliveryToken.setUserContext(mockClient.mostRecentPublishUserContext);
+        mockClient.mockCallback.deliveryComplete(testDeliveryToken);
+        assertEquals(AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Success, mdcb.statuses.get(4));
+        assertEquals("light 0", mdcb.userDatas.get(4));
+    }
+
+    @Test
+    public void testCoalescedTopicMinPublishInterval() throws Exception {
+        MockMqttClient mockClient = new MockMqttClient();
+
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setMqttClient(mockClient);
+        testClient.setCoalescedTopic("state/+", 1000);
+        testClient.setUnitTestMillisOverride(10000L);
+
+        KeyStore testKeystore = AWSIotKeystoreHelper
+                .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+        testClient.connect(testKeystore, null);
+        mockClient.mockConnectSuccess();
+
+        // the first message goes out, the next ones wait for the interval
+        for (int i = 0; i < 3; i++) {
+            testClient.publishString("door " + i, "state/door", AWSIotMqttQos.QOS0);
+        }
         assertEquals(1, mockClient.publishCalls);
-        assertEquals("test payload 0", new String(mockClient.mostRecentPublishPayload));
-        assertEquals("test/topic", mockClient.mostRecentPublishTopic);
-        assertEquals(AWSIotMqttQos.QOS0.asInt(), mockClient.mostRecentPublishQoS);
-        assertEquals(9, testClient.getMqttMessageQueue().size());
+        assertEquals("door 0", new String(mockClient.mostRecentPublishPayload, StringUtils.UTF8));
+
+        testClient.setUnitTestMillisOverride(11000L);
+        Robolectric.getForegroundThreadScheduler().advanceBy(1000, TimeUnit.MILLISECONDS);
+        long timeout = System.currentTimeMillis() + 5000;
+        while (mockClient.publishCalls < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, mockClient.publishCalls);
+        assertEquals("door 2", new String(mockClient.mostRecentPublishPayload, StringUtils.UTF8));
+
+        // other topics aren't held up
+        testClient.publishString("light 0", "state/light", AWSIotMqttQos.QOS0);
+        assertEquals(3, mockClient.publishCalls);
+        testClient.removeCoalescedTopic("state/+");
+        testClient.publishString("door 3", "state/door", AWSIotMqttQos.QOS0);
+        assertEquals(4, mockClient.publishCalls);
+    }
+
+    @Test
+    public void testCoalescedTopicKeepsLatestMessageWhileThrottled() throws Exception {
+        MockMqttClient mockClient = new MockMqttClient();
+
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setMqttClient(mockClient);
+        testClient.setCoalescedTopic("state/door", 0);
+        testClient.setDrainingInterval(500L);
+
+        KeyStore testKeystore = AWSIotKeystoreHelper
+                .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+        testClient.connect(testKeystore, null);
+        mockClient.mockConnectSuccess();
 
-        Robolectric.getForegroundThreadScheduler().advanceBy(8100, TimeUnit.MILLISECONDS);
-        assertEquals(9, mockClient.publishCalls);
+        // the client refuses to take more messages
+        mockClient.throwsMaxInflightOnPublish = true;
+        for (int i = 0; i < 3; i++) {
+            testClient.publishString("door " + i, "state/door", AWSIotMqttQos.QOS1);
+        }
+        assertEquals(0, mockClient.publishCalls);
+
+        mockClient.throwsMaxInflightOnPublish = false;
+        Robolectric.getForegroundThreadScheduler().advanceBy(500, TimeUnit.MILLISECONDS);
+        long timeout = System.currentTimeMillis() + 5000;
+        while (mockClient.publishCalls < 1 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, mockClient.publishCalls);
+        assertEquals("door 2", new String(mockClient.mostRecentPublishPayload, StringUtils.UTF8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCoalescedTopicNegativeInterval() throws Exception {
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setCoalescedTopic("state/#", -1);
+    }
+
+    @Test
+    public void testOfflinePublishQueueDirectory() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "iot-offline-queue-" + System.nanoTime());
+        try {
+            MockMqttClient mockClient = new MockMqttClient();
+
+            AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                    Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+            testClient.setOfflinePublishQueueDirectory(directory, 1024 * 1024);
+            // a queue on disk is bounded by its size in bytes only
+            testClient.setOfflinePublishQueueBound(2);
+            testClient.setMqttClient(mockClient);
+
+            TestClientStatusCallback csb = new TestClientStatusCallback();
+
+            KeyStore testKeystore = AWSIotKeystoreHelper
+                    .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+            testClient.connect(testKeystore, csb);
+            mockClient.mockConnectSuccess();
+            mockClient.mockDisconnect();
+            assertEquals(MqttManagerConnectionState.Reconnecting, testClient.getConnectionState());
+
+            for (int i = 0; i < 3; i++) {
+                testClient.publishString("test payload " + i, "test/topic", AWSIotMqttQos.QOS1);
+            }
+            assertEquals(3, testClient.getMqttMessageQueue().size());
+            assertEquals(0, mockClient.publishCalls);
+
+            // a new client, as after a restart, finds the queued messages and publishes them on connect
+            mockClient = new MockMqttClient();
+            testClient = new AWSIotMqttManager("test-client",
+                    Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+            testClient.setOfflinePublishQueueDirectory(directory, 1024 * 1024);
+            testClient.setMqttClient(mockClient);
+            assertEquals(directory, testClient.getOfflinePublishQueueDirectory());
+            assertEquals(3, testClient.getMqttMessageQueue().size());
+            checkOfflinePublishingQueue(testClient);
+
+            testClient.connect(testKeystore, csb);
+            mockClient.mockConnectSuccess();
+            Robolectric.getForegroundThreadScheduler().advanceBy(1000, TimeUnit.MILLISECONDS);
+            assertEquals(0, testClient.getMqttMessageQueue().size());
+            assertEquals(3, mockClient.publishCalls);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testOfflinePublishQueueDirectoryLimitNewest() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "iot-offline-queue-" + System.nanoTime());
+        try {
+            MockMqttClient mockClient = new MockMqttClient();
+
+            AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                    Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+            // room for 4 messages of test/topic and a payload of 14 bytes, in 36 byte records
+            testClient.setOfflinePublishQueueDirectory(directory, 4 * 36);
+            testClient.setMqttClient(mockClient);
+
+            TestClientStatusCallback csb = new TestClientStatusCallback();
+
+            KeyStore testKeystore = AWSIotKeystoreHelper
+                    .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+            testClient.connect(testKeystore, csb);
+            mockClient.mockConnectSuccess();
+            mockClient.mockDisconnect();
+
+            for (int i = 0; i < 6; i++) {
+                testClient.publishString("test payload " + i, "test/topic", AWSIotMqttQos.QOS0);
+            }
+            assertEquals(4, testClient.getMqttMessageQueue().size());
+            checkOfflinePublishingQueue(testClient, 2);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetOfflinePublishQueueDirectoryAfterConnect() throws Exception {
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setMqttClient(new MockMqttClient());
+        testClient.setOfflinePublishQueueDirectory(new File(System.getProperty("java.io.tmpdir")), 1024);
     }
 
     @Test
@@ -2850,6 +3123,8 @@ public class AWSIotMqttManagerTest {
         AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
                 Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
         testClient.setMqttClient(mockClient);
+        // one queued message in flight at a time
+        testClient.setMaxDrainWindow(1);
         testClient.setDrainingInterval(250L);
 
         TestClientStatusCallback csb = new TestClientStatusCallback();
@@ -2900,18 +3175,15 @@ public class AWSIotMqttManagerTest {
 
         // ---
 
-        // cause next publish to occur
-        Robolectric.getForegroundThreadScheduler().advanceBy(250, TimeUnit.MILLISECONDS);
-
-        // 2 publishes, same callbacks
+        // the acknowledgement caused the next publish, same callbacks
         assertTrue(mockClient.publishCalls >= 2);
         assertEquals(1, testClient.getMqttMessageQueue().size());
         assertEquals(1, mdcb1.statuses.size());
         assertEquals(0, mdcb3.statuses.size());
 
-        // ack message 2 (no callback associated, so no user context passed back by client)
+        // ack message 2 (no callback associated)
         testDeliveryToken = new MockDeliveryToken();
-        testDeliveryToken.setUserContext(null);
+        testDeliveryToken.setUserContext(mockClient.mostRecentPublishUserContext);
         testDeliveryToken.setMessage(new MqttMessage(mockClient.mostRecentPublishPayload));
         mockClient.mockCallback.deliveryComplete(testDeliveryToken);
 
@@ -2921,6 +3193,38 @@ public class AWSIotMqttManagerTest {
         assertEquals(0, mdcb3.statuses.size());
     }
 
+    @Test
+    public void testOfflinePublishQueueErrorWithoutCallback() throws Exception {
+        MockMqttClient mockClient = new MockMqttClient();
+
+        AWSIotMqttManager testClient = new AWSIotMqttManager("test-client",
+                Region.getRegion(Regions.US_EAST_1), TEST_ENDPOINT_PREFIX);
+        testClient.setMqttClient(mockClient);
+
+        TestClientStatusCallback csb = new TestClientStatusCallback();
+        TestMessageDeliveryCallback mdcb = new TestMessageDeliveryCallback();
+
+        KeyStore testKeystore = AWSIotKeystoreHelper
+                .getIotKeystore(CERT_ID, KEYSTORE_PATH, KEYSTORE_NAME, KEYSTORE_PASSWORD);
+        testClient.connect(testKeystore, csb);
+        mockClient.mockConnectSuccess();
+        mockClient.mockDisconnect();
+
+        testClient.publishString("test payload 0", "test/topic", AWSIotMqttQos.QOS1);
+        testClient.publishString("test payload 1", "test/topic", AWSIotMqttQos.QOS1, mdcb, "TEST_TOKEN_1");
+        assertEquals(2, testClient.getMqttMessageQueue().size());
+
+        // both fail when drained, and the one without a callback doesn't throw on the client's thread
+        mockClient.throwsExceptionOnPublish = true;
+        Robolectric.getForegroundThreadScheduler().advanceBy(4100, TimeUnit.MILLISECONDS);
+        mockClient.mockConnectSuccess();
+
+        assertEquals(0, testClient.getMqttMessageQueue().size());
+        assertEquals(1, mdcb.statuses.size());
+        assertEquals(AWSIotMqttMessageDeliveryCallback.MessageDeliveryStatus.Fail, mdcb.statuses.get(0));
+        assertEquals("TEST_TOKEN_1", mdcb.userDatas.get(0));
+    }
+
     @Test(expected = AmazonClientException.class)
     public void testPublishDisconnected() throws Exception {
         MockMqttClient mockClient = new MockMqttClient();
@@ -3413,4 +3717,20 @@ public class AWSIotMqttManagerTest {
     private void checkOfflinePublishingQueue(AWSIotMqttManager testClient) {
         checkOfflinePublishingQueue(testClient, 0);
     }
+
+    private void mockDeliveryComplete(MockMqttClient mockClient, Object userContext) {
+        MockDeliveryToken testDeliveryToken = new MockDeliveryToken();
+        testDeliveryToken.setUserContext(userContext);
+        mockClient.mockCallback.deliveryComplete(testDeliveryToken);
+    }
+
+    private void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
 }
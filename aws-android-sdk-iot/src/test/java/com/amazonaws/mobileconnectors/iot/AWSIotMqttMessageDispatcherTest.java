@@ -0,0 +1,253 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AWSIotMqttMessageDispatcherTest {
+
+    private AWSIotMqttMessageDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeepsOrderOfTopic() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(4, 1000, AWSIotMqttDispatchPolicy.BLOCK);
+        final CountDownLatch done = new CountDownLatch(400);
+        final List<String> a = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> b = Collections.synchronizedList(new ArrayList<String>());
+        final List<AWSIotMqttTopic> subscriptionA = subscription("a/#", a, done, null);
+        final List<AWSIotMqttTopic> subscriptionB = subscription("b/#", b, done, null);
+
+        for (int i = 0; i < 200; i++) {
+            dispatcher.dispatch("a/1", payload(i), subscriptionA);
+            dispatcher.dispatch("b/2", payload(i), subscriptionB);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 200; i++) {
+            assertEquals("a/1" + i, a.get(i));
+            assertEquals("b/2" + i, b.get(i));
+        }
+        waitForDispatched(400);
+        assertEquals(400, dispatcher.getMetrics().getDispatchedCount());
+        assertEquals(0, dispatcher.getMetrics().getDroppedCount());
+    }
+
+    @Test
+    public void testSlowTopicDoesNotHoldUpOtherThreads() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(2, 10, AWSIotMqttDispatchPolicy.BLOCK);
+        final String slowTopic = "slow";
+        String fastTopic = null;
+        for (int i = 0; fastTopic == null; i++) {
+            if (stripe("fast/" + i, 2) != stripe(slowTopic, 2)) {
+                fastTopic = "fast/" + i;
+            }
+        }
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastDone = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        dispatcher.dispatch(slowTopic, payload(0), subscription(slowTopic, received, null, release));
+        dispatcher.dispatch(fastTopic, payload(0), subscription(fastTopic, received, fastDone, null));
+
+        // the slow callback is still waiting
+        assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+        assertTrue(received.contains(fastTopic + "0"));
+        assertEquals(1, release.getCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testDropNewestWhenFull() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(1, 2, AWSIotMqttDispatchPolicy.DROP_NEWEST);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<AWSIotMqttTopic> blocking = subscription("t", received, null, release);
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<AWSIotMqttTopic> counting = subscription("t", received, done, null);
+
+        dispatcher.dispatch("t", payload(0), blocking);
+        waitForQueued(0);
+        for (int i = 1; i <= 4; i++) {
+            dispatcher.dispatch("t", payload(i), counting);
+        }
+        assertEquals(2, dispatcher.getMetrics().getQueuedCount());
+        assertEquals(2, dispatcher.getMetrics().getDroppedCount());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("t0", received.get(0));
+        assertEquals("t1", received.get(1));
+        assertEquals("t2", received.get(2));
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(1, 2, AWSIotMqttDispatchPolicy.DROP_OLDEST);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<AWSIotMqttTopic> blocking = subscription("t", received, null, release);
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<AWSIotMqttTopic> counting = subscription("t", received, done, null);
+
+        dispatcher.dispatch("t", payload(0), blocking);
+        waitForQueued(0);
+        for (int i = 1; i <= 4; i++) {
+            dispatcher.dispatch("t", payload(i), counting);
+        }
+        assertEquals(2, dispatcher.getMetrics().getDroppedCount());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("t0", received.get(0));
+        assertEquals("t3", received.get(1));
+        assertEquals("t4", received.get(2));
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(1, 1, AWSIotMqttDispatchPolicy.BLOCK);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch("t", payload(0), subscription("t", received, null, release));
+        waitForQueued(0);
+        dispatcher.dispatch("t", payload(1), subscription("t", received, null, null));
+
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dispatcher.dispatch("t", payload(2), subscription("t", received, null, null));
+                    dispatched.countDown();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(dispatched.await(10, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.getMetrics().getDroppedCount());
+    }
+
+    @Test
+    public void testMetricsRecordLag() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(1, 10, AWSIotMqttDispatchPolicy.BLOCK);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch("t", payload(0), subscription("t", received, null, release));
+        dispatcher.dispatch("t", payload(1), subscription("t", received, done, null));
+
+        Thread.sleep(100);
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        waitForDispatched(2);
+
+        final AWSIotMqttDispatchMetrics metrics = dispatcher.getMetrics();
+        assertEquals(2, metrics.getDispatchedCount());
+        assertTrue(metrics.getMaxLagMillis() >= 100);
+        assertTrue(metrics.getAverageLagMillis() >= 50);
+    }
+
+    @Test
+    public void testCallbackExceptionDoesNotStopThread() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(1, 10, AWSIotMqttDispatchPolicy.BLOCK);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final AWSIotMqttTopic failing = new AWSIotMqttTopic("t", AWSIotMqttQos.QOS0,
+                new AWSIotMqttNewMessageCallback() {
+                    @Override
+                    public void onMessageArrived(String topic, byte[] data) {
+                        throw new IllegalStateException("callback failed");
+                    }
+                });
+        dispatcher.dispatch("t", payload(0), Collections.singletonList(failing));
+        dispatcher.dispatch("t", payload(1), subscription("t", received, done, null));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("t1"), received);
+    }
+
+    @Test
+    public void testShutdownDropsQueuedMessages() throws Exception {
+        dispatcher = new AWSIotMqttMessageDispatcher(1, 10, AWSIotMqttDispatchPolicy.BLOCK);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch("t", payload(0), subscription("t", received, null, release));
+        waitForQueued(0);
+        dispatcher.dispatch("t", payload(1), subscription("t", received, null, null));
+
+        dispatcher.shutdown();
+        dispatcher.dispatch("t", payload(2), subscription("t", received, null, null));
+        release.countDown();
+
+        assertEquals(2, dispatcher.getMetrics().getDroppedCount());
+        assertEquals(Collections.singletonList("t0"), received);
+    }
+
+    private void waitForDispatched(long dispatched) throws InterruptedException {
+        for (int i = 0; i < 1000 && dispatcher.getMetrics().getDispatchedCount() != dispatched; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void waitForQueued(long queued) throws InterruptedException {
+        for (int i = 0; i < 1000 && dispatcher.getMetrics().getQueuedCount() != queued; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A subscription recording topic and payload of its messages, counting
+     * down done after each one, and waiting for release before returning.
+     */
+    private static List<AWSIotMqttTopic> subscription(String filter, final List<String> received,
+            final CountDownLatch done, final CountDownLatch release) {
+        return Collections.singletonList(new AWSIotMqttTopic(filter, AWSIotMqttQos.QOS0,
+                new AWSIotMqttNewMessageCallback() {
+                    @Override
+                    public void onMessageArrived(String topic, byte[] data) {
+                        received.add(topic + new String(data, StringUtils.UTF8));
+                        if (done != null) {
+                            done.countDown();
+                        }
+                        if (release != null) {
+                            try {
+                                release.await(10, TimeUnit.SECONDS);
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }
+                }));
+    }
+
+    private static byte[] payload(int i) {
+        return String.valueOf(i).getBytes(StringUtils.UTF8);
+    }
+
+    private static int stripe(String topic, int threads) {
+        final int h = topic.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % threads;
+    }
+}
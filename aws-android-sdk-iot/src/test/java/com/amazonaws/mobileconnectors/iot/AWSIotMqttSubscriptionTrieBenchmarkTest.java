@@ -0,0 +1,111 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches incoming message topics against 10, 100 and 1000 subscriptions,
+ * a mix of exact topic filters and filters with + and # wildcards, by
+ * scanning every topic filter and splitting it and the topic as before, and
+ * with the subscription trie.
+ */
+@Ignore("Benchmark, run manually")
+public class AWSIotMqttSubscriptionTrieBenchmarkTest {
+    private static final int TOPIC_COUNT = 1000;
+    private static final int MESSAGE_COUNT = 200000;
+
+    @Test
+    public void benchmarkMatching() {
+        for (int round = 0; round < 2; round++) {
+            for (final int subscriptions : new int[] { 10, 100, 1000 }) {
+                run(subscriptions);
+            }
+        }
+    }
+
+    private void run(int subscriptionCount) {
+        final Map<String, AWSIotMqttTopic> topicListeners = new ConcurrentHashMap<String, AWSIotMqttTopic>();
+        final AWSIotMqttSubscriptionTrie trie = new AWSIotMqttSubscriptionTrie();
+        for (int i = 0; i < subscriptionCount; i++) {
+            final String topicFilter;
+            switch (i % 4) {
+                case 0:
+                    topicFilter = "devices/device-" + i + "/telemetry/temperature";
+                    break;
+                case 1:
+                    topicFilter = "devices/device-" + i + "/+/humidity";
+                    break;
+                case 2:
+                    topicFilter = "devices/device-" + i + "/#";
+                    break;
+                default:
+                    topicFilter = "$aws/things/device-" + i + "/shadow/+";
+                    break;
+            }
+            final AWSIotMqttTopic subscription = new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null);
+            topicListeners.put(topicFilter, subscription);
+            trie.put(subscription);
+        }
+        final Random random = new Random(42);
+        final String[] topics = new String[TOPIC_COUNT];
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            final int device = random.nextInt(subscriptionCount);
+            topics[i] = i % 2 == 0
+                    ? "devices/device-" + device + "/telemetry/" + (i % 4 == 0 ? "temperature" : "humidity")
+                    : "$aws/things/device-" + device + "/shadow/update/accepted";
+        }
+
+        long scanMatches = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            final String topic = topics[i % TOPIC_COUNT];
+            for (final String topicKey : topicListeners.keySet()) {
+                if (isTopicMatchBySplitting(topicKey, topic) && topicListeners.get(topicKey) != null) {
+                    scanMatches++;
+                }
+            }
+        }
+        final long scanNanos = System.nanoTime() - start;
+
+        long trieMatches = 0;
+        final List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        start = System.nanoTime();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            matches.clear();
+            trie.match(topics[i % TOPIC_COUNT], matches);
+            trieMatches += matches.size();
+        }
+        final long trieNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%4d subscriptions: scan %8.0f ns/message, trie %5.0f ns/message "
+                        + "(%.0fx), matches %d/%d", subscriptionCount,
+                scanNanos / (double) MESSAGE_COUNT, trieNanos / (double) MESSAGE_COUNT,
+                scanNanos / (double) trieNanos, scanMatches, trieMatches));
+    }
+
+    /**
+     * The matching done before the trie, splitting the topic filter and topic.
+     */
+    private static boolean isTopicMatchBySplitting(String topicFilter, String topic) {
+        final String[] topicFilterTokens = topicFilter.split("/");
+        final String[] topicTokens = topic.split("/");
+        if (topicFilterTokens.length > topicTokens.length) {
+            return false;
+        }
+        for (int i = 0; i < topicFilterTokens.length; i++) {
+            if (("#").equals(topicFilterTokens[i])) {
+                return true;
+            }
+            if (!("+").equals(topicFilterTokens[i]) && !topicFilterTokens[i].equals(topicTokens[i])) {
+                return false;
+            }
+        }
+        return topicFilterTokens.length == topicTokens.length;
+    }
+}
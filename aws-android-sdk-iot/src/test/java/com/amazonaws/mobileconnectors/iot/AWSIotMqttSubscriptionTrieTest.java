@@ -0,0 +1,148 @@
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class AWSIotMqttSubscriptionTrieTest {
+
+    private static final List<String> TOPIC_FILTERS = Arrays.asList(
+            "test", "test/1", "test/1/2", "test/+", "test/+/1", "test/+/+/+/+", "test/#",
+            "+", "+/1", "+/1/+", "#", "test//1", "test/", "$aws/#", "$aws/things/+/shadow/update");
+
+    private static final List<String> TOPICS = Arrays.asList(
+            "test", "test/1", "test/1/2", "test/1/1", "test/1/2/3/4", "test/1/2/3/4/5", "nottest/1",
+            "test/12", "A/1/B", "test//1", "test/", "", "/", "$aws/things/thing/shadow/update",
+            "$SYS/broker", "other");
+
+    private AWSIotMqttSubscriptionTrie trie;
+
+    @Before
+    public void setUp() throws Exception {
+        trie = new AWSIotMqttSubscriptionTrie();
+    }
+
+    private Set<String> match(String topic) {
+        final List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        trie.match(topic, matches);
+        final Set<String> topicFilters = new HashSet<String>();
+        for (final AWSIotMqttTopic subscription : matches) {
+            assertTrue("matched twice: " + subscription.getTopic(), topicFilters.add(subscription.getTopic()));
+        }
+        return topicFilters;
+    }
+
+    private Set<String> expectedMatches(String topic, List<String> topicFilters) {
+        final Set<String> expected = new HashSet<String>();
+        for (final String topicFilter : topicFilters) {
+            if (AWSIotMqttSubscriptionTrie.matches(topicFilter, topic)) {
+                expected.add(topicFilter);
+            }
+        }
+        return expected;
+    }
+
+    @Test
+    public void testMatchesSameAsTopicFilters() throws Exception {
+        for (final String topicFilter : TOPIC_FILTERS) {
+            trie.put(new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null));
+        }
+        for (final String topic : TOPICS) {
+            assertEquals(topic, expectedMatches(topic, TOPIC_FILTERS), match(topic));
+        }
+    }
+
+    @Test
+    public void testMatchExamples() throws Exception {
+        for (final String topicFilter : TOPIC_FILTERS) {
+            trie.put(new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("test", "+", "test/#", "#")), match("test"));
+        assertEquals(new HashSet<String>(Arrays.asList("test/1", "test/+", "+/1", "test/#", "#")),
+                match("test/1"));
+        assertEquals(new HashSet<String>(Arrays.asList("$aws/#", "$aws/things/+/shadow/update")),
+                match("$aws/things/thing/shadow/update"));
+        assertEquals(new HashSet<String>(), match("$SYS/broker"));
+    }
+
+    @Test
+    public void testPutReplacesSubscription() throws Exception {
+        final AWSIotMqttTopic first = new AWSIotMqttTopic("test/+", AWSIotMqttQos.QOS0, null);
+        final AWSIotMqttTopic second = new AWSIotMqttTopic("test/+", AWSIotMqttQos.QOS1, null);
+        trie.put(first);
+        trie.put(second);
+
+        final List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        trie.match("test/1", matches);
+        assertEquals(1, matches.size());
+        assertSame(second, matches.get(0));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        for (final String topicFilter : TOPIC_FILTERS) {
+            trie.put(new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null));
+        }
+        final List<String> remaining = new ArrayList<String>(TOPIC_FILTERS);
+        for (final String topicFilter : TOPIC_FILTERS) {
+            trie.remove(topicFilter);
+            remaining.remove(topicFilter);
+            for (final String topic : TOPICS) {
+                assertEquals(topic, expectedMatches(topic, remaining), match(topic));
+            }
+        }
+        // removing one that isn't there is a no-op
+        trie.remove("not/subscribed");
+    }
+
+    @Test
+    public void testRemoveKeepsChildren() throws Exception {
+        trie.put(new AWSIotMqttTopic("a", AWSIotMqttQos.QOS0, null));
+        trie.put(new AWSIotMqttTopic("a/b/c", AWSIotMqttQos.QOS0, null));
+        trie.remove("a");
+        assertEquals(new HashSet<String>(Arrays.asList("a/b/c")), match("a/b/c"));
+        trie.remove("a/b");
+        assertEquals(new HashSet<String>(Arrays.asList("a/b/c")), match("a/b/c"));
+    }
+
+    @Test
+    public void testManySiblings() throws Exception {
+        final List<String> topicFilters = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            topicFilters.add("devices/device-" + i + "/state");
+        }
+        for (final String topicFilter : topicFilters) {
+            trie.put(new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(new HashSet<String>(Arrays.asList("devices/device-" + i + "/state")),
+                    match("devices/device-" + i + "/state"));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            trie.remove(topicFilters.get(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? 0 : 1, match("devices/device-" + i + "/state").size());
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        for (final String topicFilter : TOPIC_FILTERS) {
+            trie.put(new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null));
+        }
+        trie.clear();
+        for (final String topic : TOPICS) {
+            assertTrue(match(topic).isEmpty());
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class MockMqttClient extends MqttAsyncClient {
     public boolean throwsExceptionOnConnect;
     public MqttException connectException;
     public boolean throwsExceptionOnPublish;
+    public boolean throwsMaxInflightOnPublish;
     public boolean throwsExceptionOnSubscribe;
     public boolean throwsExceptionOnUnsubscribe;
     public boolean throwsExceptionOnDisconnect;
@@ -85,6 +86,9 @@ public class MockMqttClient extends MqttAsyncClient {
         if (throwsExceptionOnPublish) {
             throw new MqttException(MqttException.REASON_CODE_CLIENT_EXCEPTION);
         }
+        if (throwsMaxInflightOnPublish) {
+            throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT);
+        }
         ++publishCalls;
         mostRecentPublishTopic = topic;
         mostRecentPublishPayload = payload;
@@ -55,6 +55,14 @@ public class TopicMatchTest {
         testCases.add(new TopicMatchTestCase("test/#", "test/1/2/3/4", true));
         testCases.add(new TopicMatchTestCase("test/#", "test/1/2/3/4/5", true));
         testCases.add(new TopicMatchTestCase("test/#", "not/1", false));
+        testCases.add(new TopicMatchTestCase("test/#", "test", true));
+        testCases.add(new TopicMatchTestCase("test/+", "test", false));
+        testCases.add(new TopicMatchTestCase("test/+", "test/", true));
+        testCases.add(new TopicMatchTestCase("test//1", "test//1", true));
+        testCases.add(new TopicMatchTestCase("#", "$aws/things/thing", false));
+        testCases.add(new TopicMatchTestCase("+/things/thing", "$aws/things/thing", false));
+        testCases.add(new TopicMatchTestCase("$aws/#", "$aws/things/thing", true));
+        testCases.add(new TopicMatchTestCase("$aws/+/thing", "$aws/things/thing", true));
     }
 
     @Test
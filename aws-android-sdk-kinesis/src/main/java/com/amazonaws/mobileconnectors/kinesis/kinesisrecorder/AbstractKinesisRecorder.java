@@ -17,7 +17,9 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 
 import com.amazonaws.AmazonClientException;
-import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.SegmentedRecordStore.Position;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.SegmentedRecordStore.Record;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.SegmentedRecordStore.RecordIterator;
 import com.amazonaws.util.StringUtils;
 
 import com.amazonaws.logging.Log;
@@ -25,7 +27,15 @@ import com.amazonaws.logging.LogFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An abstract class for Amazon Kinesis recorders. It manages local file store
@@ -45,13 +55,28 @@ public abstract class AbstractKinesisRecorder {
      * Maximum size in bytes of records in PutRecordBatch.
      */
     private static final int MAX_BATCH_RECORDS_SIZE_BYTES = 512 * 1024;
+    /**
+     * Idle time after which threads sending concurrent batches are released.
+     */
+    private static final long SUBMIT_THREAD_KEEP_ALIVE_SECONDS = 60L;
 
     /**
      * The configurable options for Kinesis Recorder, includes the
      * ClientConfiguration of the low level client.
      */
     protected KinesisRecorderConfig config;
-    protected FileRecordStore recordStore;
+    protected SegmentedRecordStore recordStore;
+
+    /**
+     * Sends batches when more than one batch may be in flight. Created on
+     * first use and guarded by this recorder.
+     */
+    private ThreadPoolExecutor submitExecutor;
+
+    /**
+     * Flushes records in the background, null unless enabled in the config.
+     */
+    private final FlushScheduler flushScheduler;
 
     /**
      * Gets the sender to send saved records.
@@ -60,18 +85,39 @@ public abstract class AbstractKinesisRecorder {
      */
     protected abstract RecordSender getRecordSender();
 
+    /**
+     * Gets the maximum number of saved records read into one batch.
+     *
+     * @return maximum number of records per batch
+     */
+    protected int getMaxRecordsPerBatch() {
+        return MAX_RECORDS_PER_BATCH;
+    }
+
+    /**
+     * Gets the maximum total size in bytes of the saved records read into one
+     * batch.
+     *
+     * @return maximum size of a batch
+     */
+    protected int getMaxBatchSize() {
+        return MAX_BATCH_RECORDS_SIZE_BYTES;
+    }
+
     /**
      * Creates a {@link AbstractKinesisRecorder}.
      *
      * @param recordStore local file store that keeps Kinesis records
      * @param config configuration
      */
-    protected AbstractKinesisRecorder(FileRecordStore recordStore, KinesisRecorderConfig config) {
+    protected AbstractKinesisRecorder(SegmentedRecordStore recordStore, KinesisRecorderConfig config) {
         if (recordStore == null) {
             throw new IllegalArgumentException("Record store can't be null");
         }
         this.recordStore = recordStore;
         this.config = config;
+        this.flushScheduler = config != null && config.isAutoFlushEnabled()
+                ? new FlushScheduler(this, config) : null;
     }
 
     /**
@@ -90,17 +136,23 @@ public abstract class AbstractKinesisRecorder {
      * submitted to the streamName provided with a randomly generated partition
      * key to ensure equal distribution across shards. Note: Since operation
      * involves file I/O it is recommended not to call this method on the main
-     * thread to ensure responsive applications.
+     * thread to ensure responsive applications. If background flushing is
+     * enabled with {@link KinesisRecorderConfig#withAutoFlushEnabled(boolean)},
+     * saving a record may schedule a flush.
      *
      * @param data The data to submit to the stream
      * @param streamName The stream to submit the data to.
      */
     public void saveRecord(byte[] data, String streamName) {
+        final boolean saved;
         try {
-            recordStore.put(FileRecordParser.asString(streamName, data));
+            saved = recordStore.put(streamName, data);
         } catch (final IOException e) {
             throw new AmazonClientException("Error saving record", e);
         }
+        if (saved && flushScheduler != null) {
+            flushScheduler.onRecordSaved(data.length);
+        }
     }
 
     /**
@@ -108,7 +160,10 @@ public abstract class AbstractKinesisRecorder {
      * successfully sent will be deleted from the device. Requests that fail due
      * to the device being offline will stop the submission process and be kept.
      * Requests that fail due to other reasons (such as the request being
-     * invalid) will be deleted. Note: Since KinesisRecorder uses synchronous
+     * invalid) will be deleted. Up to
+     * {@link KinesisRecorderConfig#getMaxInFlightBatches()} batches are sent
+     * concurrently, and records are removed in the order they were saved once
+     * their batch is acknowledged. Note: Since KinesisRecorder uses synchronous
      * methods to make calls to Amazon Kinesis, do not call submitAll() on the
      * main thread of your application.
      *
@@ -120,23 +175,38 @@ public abstract class AbstractKinesisRecorder {
     public synchronized void submitAllRecords() {
         final RecordSender sender = getRecordSender();
         final RecordIterator iterator = recordStore.iterator();
-        final List<byte[]> data = new ArrayList<byte[]>(MAX_RECORDS_PER_BATCH);
+        final int maxInFlight = config.getMaxInFlightBatches();
+        final LinkedList<PendingBatch> inFlight = new LinkedList<PendingBatch>();
         int retry = 0;
         int count = 0;
         boolean unknownErrorRetried = false;
         try {
-            while (iterator.hasNext() && retry < MAX_RETRY_COUNT) {
-                final String streamName = nextBatch(iterator, data, MAX_RECORDS_PER_BATCH,
-                        MAX_BATCH_RECORDS_SIZE_BYTES);
-                if (streamName == null || data.isEmpty()) {
+            while (true) {
+                // keep up to maxInFlight batches on the wire
+                while (inFlight.size() < maxInFlight && retry < MAX_RETRY_COUNT
+                        && iterator.hasNext()) {
+                    final List<byte[]> batchData = new ArrayList<byte[]>();
+                    final String batchStreamName = nextBatch(iterator, batchData,
+                            getMaxRecordsPerBatch(), getMaxBatchSize());
+                    if (batchStreamName == null || batchData.isEmpty()) {
+                        break;
+                    }
+                    inFlight.add(sendBatch(sender, batchStreamName, batchData,
+                            iterator.position(), maxInFlight));
+                }
+                if (inFlight.isEmpty()) {
                     break;
                 }
 
+                // batches are acknowledged in the order they were read
+                final PendingBatch batch = inFlight.removeFirst();
+                final String streamName = batch.streamName;
+                final List<byte[]> data = batch.data;
                 try {
 
                     List<byte[]> failures = null;
                     try {
-                        failures = sender.sendBatch(streamName, data);
+                        failures = batch.await();
                     } catch (AmazonClientException ace) {
                         if (!unknownErrorRetried
                                 && ace.getMessage() != null
@@ -162,9 +232,10 @@ public abstract class AbstractKinesisRecorder {
                      * https://github.com/aws/aws-sdk-android/issues/225 If this
                      * errors it will throw an IOException. We don't wrap it so
                      * it's handled separately from network errors which will be
-                     * wrapped by an AmazonClientException.
+                     * wrapped by an AmazonClientException. Records of batches
+                     * still in flight lie behind this position and are kept.
                      */
-                    iterator.removeReadRecords();
+                    iterator.removeRecordsBefore(batch.end);
 
                     if (successCount == 0) {
                         // no record went through, increase retry count.
@@ -191,7 +262,7 @@ public abstract class AbstractKinesisRecorder {
                         }
 
                         try {
-                            iterator.removeReadRecords();
+                            iterator.removeRecordsBefore(batch.end);
                         } catch (final IOException e) {
                             throw new AmazonClientException("Failed to drop bad records.", e);
                         }
@@ -206,7 +277,16 @@ public abstract class AbstractKinesisRecorder {
                     throw new AmazonClientException("Failed to remove read records", e);
                 }
             }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while submitting records", e);
         } finally {
+            // Wait for the batches that are still in flight, so no request
+            // outlives this call. Their records haven't been removed and will
+            // be sent again by the next submission.
+            for (final PendingBatch batch : inFlight) {
+                batch.awaitQuietly();
+            }
             LOGGER.debug(String.format("submitAllRecords sent %d records", count));
             try {
                 iterator.close();
@@ -216,6 +296,101 @@ public abstract class AbstractKinesisRecorder {
         }
     }
 
+    /**
+     * Starts sending a batch. With a single batch in flight the request is
+     * made on the calling thread, otherwise it runs on the submit executor.
+     */
+    private PendingBatch sendBatch(final RecordSender sender, final String streamName,
+            final List<byte[]> data, Position end, int maxInFlight) {
+        final FutureTask<List<byte[]>> task = new FutureTask<List<byte[]>>(
+                new Callable<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> call() {
+                        return sender.sendBatch(streamName, data);
+                    }
+                });
+        if (maxInFlight <= 1) {
+            task.run();
+        } else {
+            getSubmitExecutor(maxInFlight).execute(task);
+        }
+        return new PendingBatch(streamName, data, end, task);
+    }
+
+    private ThreadPoolExecutor getSubmitExecutor(int threads) {
+        if (submitExecutor == null) {
+            submitExecutor = new ThreadPoolExecutor(threads, threads,
+                    SUBMIT_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            final Thread t = new Thread(r);
+                            t.setName("kinesis-recorder-submit-thread");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            submitExecutor.allowCoreThreadTimeOut(true);
+        } else if (submitExecutor.getMaximumPoolSize() != threads) {
+            if (threads > submitExecutor.getMaximumPoolSize()) {
+                submitExecutor.setMaximumPoolSize(threads);
+                submitExecutor.setCorePoolSize(threads);
+            } else {
+                submitExecutor.setCorePoolSize(threads);
+                submitExecutor.setMaximumPoolSize(threads);
+            }
+        }
+        return submitExecutor;
+    }
+
+    /**
+     * A batch that has been handed to the {@link RecordSender}, along with
+     * the log position right after its last record.
+     */
+    private static final class PendingBatch {
+        final String streamName;
+        final List<byte[]> data;
+        final Position end;
+        private final FutureTask<List<byte[]>> task;
+
+        PendingBatch(String streamName, List<byte[]> data, Position end,
+                FutureTask<List<byte[]>> task) {
+            this.streamName = streamName;
+            this.data = data;
+            this.end = end;
+            this.task = task;
+        }
+
+        /**
+         * Waits for the response and returns the records that failed, or
+         * rethrows the exception of the sender.
+         */
+        List<byte[]> await() throws InterruptedException {
+            try {
+                return task.get();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new AmazonClientException("Failed to send records", cause);
+            }
+        }
+
+        void awaitQuietly() {
+            try {
+                task.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                LOGGER.debug("In-flight batch failed, its records are kept", e.getCause());
+            }
+        }
+    }
+
     /**
      * Reads a batch of records belong to the same stream into a list. If data
      * is read successfully, the stream name is returned.
@@ -234,29 +409,16 @@ public abstract class AbstractKinesisRecorder {
         String lastStreamName = null;
         int size = 0;
         int count = 0;
-        final FileRecordParser frp = new FileRecordParser();
         while (iterator.hasNext() && count < maxCount && size < maxSize) {
-            final String line = iterator.peek();
-            if (line == null || line.isEmpty()) {
-                iterator.next();
-                continue;
-            }
-            // parse a line. Skip in case of corrupted data
-            try {
-                frp.parse(line);
-            } catch (final Exception e) {
-                LOGGER.warn("Failed to read line. Skip.", e);
-                iterator.next();
-                continue;
-            }
+            final Record record = iterator.peek();
 
             // check whether it belongs to previous batch
-            if (lastStreamName == null || lastStreamName.equals(frp.streamName)) {
-                data.add(frp.bytes);
+            if (lastStreamName == null || lastStreamName.equals(record.streamName)) {
+                data.add(record.data);
                 // update counter
                 count++;
-                size += frp.bytes.length;
-                lastStreamName = frp.streamName;
+                size += record.data.length;
+                lastStreamName = record.streamName;
                 iterator.next();
             } else {
                 break;
@@ -299,6 +461,22 @@ public abstract class AbstractKinesisRecorder {
         return config.getMaxStorageSize();
     }
 
+    /**
+     * Stops background flushing and releases the threads of this recorder.
+     * Records can still be saved and submitted with {@link #submitAllRecords()}
+     * afterwards, but saving them no longer schedules a flush. A flush that is
+     * running is completed.
+     */
+    public synchronized void shutdown() {
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+        }
+        if (submitExecutor != null) {
+            submitExecutor.shutdown();
+            submitExecutor = null;
+        }
+    }
+
     /**
      * Removes all requests saved to disk in the directory provided this
      * KinesisRecorder.
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link FirehoseRecordSender} that gzips groups of records into single
+ * Firehose records. Within a group every record is terminated by a newline,
+ * unless it already ends with one. Firehose writes the records back to back,
+ * so the delivered S3 objects are concatenated gzip members, which gzip and
+ * most readers decompress as one newline-delimited stream. A group is made as
+ * large as possible while its compressed size stays within the Firehose
+ * record limit.
+ */
+class CompressingFirehoseRecordSender extends FirehoseRecordSender {
+
+    /** Firehose limit of the data of a single record. **/
+    static final int MAX_COMPRESSED_RECORD_SIZE = 1000 * 1024;
+
+    private static final byte NEWLINE = '\n';
+
+    private final int maxCompressedRecordSize;
+
+    /**
+     * Constructs a {@link CompressingFirehoseRecordSender}.
+     *
+     * @param client an {@link AmazonKinesisFirehose} client
+     * @param userAgent user agent string to be set in each request
+     */
+    public CompressingFirehoseRecordSender(AmazonKinesisFirehose client, String userAgent) {
+        this(client, userAgent, MAX_COMPRESSED_RECORD_SIZE);
+    }
+
+    /**
+     * Constructs a {@link CompressingFirehoseRecordSender} with a custom
+     * compressed record size, for testing.
+     */
+    CompressingFirehoseRecordSender(AmazonKinesisFirehose client, String userAgent,
+            int maxCompressedRecordSize) {
+        super(client, userAgent);
+        this.maxCompressedRecordSize = maxCompressedRecordSize;
+    }
+
+    @Override
+    public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+        if (data == null || data.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<Group> groups = new ArrayList<Group>();
+        group(data, groups);
+        final List<byte[]> compressed = new ArrayList<byte[]>(groups.size());
+        for (final Group group : groups) {
+            compressed.add(group.compressed);
+        }
+
+        final PutRecordBatchResult result = putRecordBatch(streamName, compressed);
+
+        final int size = result.getRequestResponses().size();
+        final List<byte[]> failures = new ArrayList<byte[]>();
+        for (int i = 0; i < size; i++) {
+            // Error code is either ServiceUnavailable or InternalFailure
+            if (result.getRequestResponses().get(i).getErrorCode() != null) {
+                failures.addAll(groups.get(i).records);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Splits records into groups whose compressed size fits in a Firehose
+     * record. The whole list is compressed first, and halved until each part
+     * fits, so a batch that compresses well costs a single pass.
+     */
+    private void group(List<byte[]> records, List<Group> groups) {
+        final byte[] compressed = compress(records);
+        if (compressed.length <= maxCompressedRecordSize || records.size() == 1) {
+            // a single record that doesn't fit is sent anyway and rejected
+            // by the service like an oversized uncompressed record
+            groups.add(new Group(records, compressed));
+            return;
+        }
+        final int half = records.size() / 2;
+        group(records.subList(0, half), groups);
+        group(records.subList(half, records.size()), groups);
+    }
+
+    /**
+     * Compresses newline-delimited records into one gzip member.
+     *
+     * @param records records to compress
+     * @return gzip data
+     */
+    static byte[] compress(List<byte[]> records) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final GZIPOutputStream gzip = new GZIPOutputStream(out);
+            for (final byte[] record : records) {
+                gzip.write(record);
+                if (record.length == 0 || record[record.length - 1] != NEWLINE) {
+                    gzip.write(NEWLINE);
+                }
+            }
+            gzip.close();
+        } catch (final IOException e) {
+            // not expected when writing to memory
+            throw new AmazonClientException("Failed to compress records", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A Firehose record and the records compressed into it.
+     */
+    private static final class Group {
+        final List<byte[]> records;
+        final byte[] compressed;
+
+        Group(List<byte[]> records, byte[] compressed) {
+            this.records = records;
+            this.compressed = compressed;
+        }
+    }
+}
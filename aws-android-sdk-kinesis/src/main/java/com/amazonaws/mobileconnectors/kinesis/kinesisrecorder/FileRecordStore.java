@@ -37,8 +37,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The FileRecordStore is responsible for recording Kinesis PutRecordRequests to
- * the Android disk. Currently it stores each request as a JSON object
- * representing it's properties. One request per line.
+ * the Android disk. It stores one request per line. Recorders now keep their
+ * records in a {@link SegmentedRecordStore}; this store is only used to read
+ * records saved by previous versions of the SDK.
  */
 class FileRecordStore {
     private static final Log LOGGER = LogFactory.getLog(FileRecordStore.class);
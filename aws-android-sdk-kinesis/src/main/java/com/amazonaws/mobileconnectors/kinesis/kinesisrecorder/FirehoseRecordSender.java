@@ -54,6 +54,27 @@ class FirehoseRecordSender implements RecordSender {
             return Collections.emptyList();
         }
 
+        final PutRecordBatchResult result = putRecordBatch(streamName, data);
+
+        final int size = result.getRequestResponses().size();
+        final List<byte[]> failures = new ArrayList<byte[]>(result.getFailedPutCount());
+        for (int i = 0; i < size; i++) {
+            // Error code is either ServiceUnavailable or InternalFailure
+            if (result.getRequestResponses().get(i).getErrorCode() != null) {
+                failures.add(data.get(i));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Sends the given Firehose records in one PutRecordBatch request.
+     *
+     * @param streamName delivery stream name
+     * @param data data of each Firehose record
+     * @return the result of the request
+     */
+    PutRecordBatchResult putRecordBatch(String streamName, List<byte[]> data) {
         final PutRecordBatchRequest request = new PutRecordBatchRequest();
         request.setDeliveryStreamName(streamName);
         final List<Record> records = new ArrayList<Record>(data.size());
@@ -65,17 +86,7 @@ class FirehoseRecordSender implements RecordSender {
         request.setRecords(records);
         request.getRequestClientOptions().appendUserAgent(userAgent);
 
-        final PutRecordBatchResult result = client.putRecordBatch(request);
-
-        final int size = result.getRequestResponses().size();
-        final List<byte[]> failures = new ArrayList<byte[]>(result.getFailedPutCount());
-        for (int i = 0; i < size; i++) {
-            // Error code is either ServiceUnavailable or InternalFailure
-            if (result.getRequestResponses().get(i).getErrorCode() != null) {
-                failures.add(data.get(i));
-            }
-        }
-        return failures;
+        return client.putRecordBatch(request);
     }
 
     @Override
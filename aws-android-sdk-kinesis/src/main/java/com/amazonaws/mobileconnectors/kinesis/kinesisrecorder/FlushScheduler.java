@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes the records of a recorder in the background. It tracks the records
+ * saved since the last flush and schedules a flush when their count or size
+ * reaches a threshold, or when the oldest of them reaches the maximum age.
+ * Flushes run one at a time on a single thread. A recoverable failure delays
+ * the next flush with exponential backoff, during which thresholds don't
+ * trigger flushes. Records left from a previous session are sent by the first
+ * flush after a record is saved.
+ */
+class FlushScheduler {
+    private static final Log LOGGER = LogFactory.getLog(FlushScheduler.class);
+    /** Idle time after which the flush thread is released. **/
+    private static final long FLUSH_THREAD_KEEP_ALIVE_SECONDS = 60L;
+
+    private final AbstractKinesisRecorder recorder;
+    private final int recordCountThreshold;
+    private final long pendingBytesThreshold;
+    private final long maxRecordAge;
+    private final long minBackoff;
+    private final long maxBackoff;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // all fields below are guarded by this
+    private int pendingCount;
+    private long pendingBytes;
+    /** Save time of the oldest pending record, or -1 if none. **/
+    private long oldestPendingTime = -1;
+    private int consecutiveFailures;
+    private long backoffUntil;
+    private ScheduledFuture<?> scheduledFlush;
+    private long scheduledTime;
+    private boolean flushing;
+    private boolean shutdown;
+
+    /**
+     * Constructs a {@link FlushScheduler}. The background thread is started
+     * when the first flush is scheduled and released when no flush has been
+     * scheduled for a while.
+     *
+     * @param recorder the recorder to flush
+     * @param config configuration with the flush triggers and backoff
+     */
+    FlushScheduler(AbstractKinesisRecorder recorder, KinesisRecorderConfig config) {
+        this.recorder = recorder;
+        this.recordCountThreshold = config.getAutoFlushRecordCount();
+        this.pendingBytesThreshold = config.getAutoFlushPendingBytes();
+        this.maxRecordAge = config.getAutoFlushMaxRecordAge();
+        this.minBackoff = config.getAutoFlushMinBackoff();
+        this.maxBackoff = config.getAutoFlushMaxBackoff();
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r);
+                t.setName("kinesis-recorder-flush-thread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.setKeepAliveTime(FLUSH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Accounts for a saved record and schedules a flush if a trigger is met.
+     *
+     * @param size size in bytes of the record
+     */
+    synchronized void onRecordSaved(int size) {
+        pendingCount++;
+        pendingBytes += size;
+        if (oldestPendingTime < 0) {
+            oldestPendingTime = System.currentTimeMillis();
+        }
+        // records saved while flushing, e.g. failed records saved again, are
+        // looked at once the flush is over
+        if (!flushing) {
+            schedulePendingFlush();
+        }
+    }
+
+    /**
+     * Stops scheduling flushes. A flush that is running is completed.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        executor.shutdown();
+    }
+
+    private void flush() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            scheduledFlush = null;
+            flushing = true;
+            pendingCount = 0;
+            pendingBytes = 0;
+            oldestPendingTime = -1;
+        }
+
+        boolean failed = false;
+        try {
+            recorder.submitAllRecords();
+        } catch (final AmazonClientException ace) {
+            // records that can't be sent have been dropped by the recorder,
+            // other failures leave the records for a later flush
+            failed = recorder.getRecordSender().isRecoverable(ace);
+            LOGGER.warn("Background flush failed", ace);
+        } catch (final RuntimeException e) {
+            LOGGER.error("Background flush failed", e);
+        }
+        final boolean recordsLeft = failed && recorder.getDiskBytesUsed() > 0;
+
+        synchronized (this) {
+            flushing = false;
+            if (shutdown) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            if (failed) {
+                consecutiveFailures++;
+                backoffUntil = now + backoff(consecutiveFailures);
+                LOGGER.debug(String.format("Next background flush in %d ms",
+                        backoffUntil - now));
+                if (recordsLeft) {
+                    schedule(backoffUntil, now);
+                    return;
+                }
+            } else {
+                consecutiveFailures = 0;
+                backoffUntil = 0;
+            }
+            schedulePendingFlush();
+        }
+    }
+
+    /**
+     * Returns the delay before the next flush after the given number of
+     * consecutive failures: the min backoff doubled for each failure after
+     * the first, up to the max backoff.
+     */
+    long backoff(int failures) {
+        long backoff = minBackoff;
+        for (int i = 1; i < failures && backoff < maxBackoff; i++) {
+            // doubling past the max backoff could overflow
+            backoff = backoff > maxBackoff / 2 ? maxBackoff : backoff * 2;
+        }
+        return Math.min(maxBackoff, backoff);
+    }
+
+    /**
+     * Schedules a flush for the pending records, if a trigger is or will be
+     * met. Must be called while holding this.
+     */
+    private void schedulePendingFlush() {
+        if (shutdown || pendingCount == 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        long due;
+        if ((recordCountThreshold > 0 && pendingCount >= recordCountThreshold)
+                || (pendingBytesThreshold > 0 && pendingBytes >= pendingBytesThreshold)) {
+            due = now;
+        } else if (maxRecordAge > 0) {
+            due = oldestPendingTime + maxRecordAge;
+        } else {
+            return;
+        }
+        schedule(Math.max(due, backoffUntil), now);
+    }
+
+    /**
+     * Schedules a flush at the given time, unless one is already scheduled
+     * at or before it. Must be called while holding this.
+     */
+    private void schedule(long time, long now) {
+        if (scheduledFlush != null) {
+            if (scheduledTime <= time) {
+                return;
+            }
+            if (!scheduledFlush.cancel(false)) {
+                // it's about to run
+                return;
+            }
+        }
+        scheduledTime = time;
+        scheduledFlush = executor.schedule(flushTask, Math.max(0, time - now),
+                TimeUnit.MILLISECONDS);
+    }
+}
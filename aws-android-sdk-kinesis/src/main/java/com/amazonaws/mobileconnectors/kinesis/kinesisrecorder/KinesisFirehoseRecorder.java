@@ -111,6 +111,13 @@ public class KinesisFirehoseRecorder extends AbstractKinesisRecorder {
      * Valid stream name pattern.
      */
     private static final Pattern STREAM_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_.-]{1,64}");
+    /**
+     * Batch limits when records are compressed. A larger batch gives gzip more
+     * to work with, and compressed groups keep the request well below the 500
+     * records and 4 MB limits of PutRecordBatch.
+     */
+    private static final int MAX_COMPRESSED_RECORDS_PER_BATCH = 2000;
+    private static final int MAX_COMPRESSED_BATCH_SIZE_BYTES = 2 * 1024 * 1024;
 
     private FirehoseRecordSender sender;
 
@@ -160,13 +167,15 @@ public class KinesisFirehoseRecorder extends AbstractKinesisRecorder {
      */
     public KinesisFirehoseRecorder(File directory, Regions region,
             AWSCredentialsProvider credentialsProvider, KinesisRecorderConfig config) {
-        super(new FileRecordStore(directory, RECORD_FILE_NAME,
+        super(new SegmentedRecordStore(directory, RECORD_FILE_NAME,
                 config.getMaxStorageSize()), config);
 
         AmazonKinesisFirehose client = new AmazonKinesisFirehoseClient(credentialsProvider,
                 config.getClientConfiguration());
         client.setRegion(Region.getRegion(region));
-        sender = new FirehoseRecordSender(client, USER_AGENT);
+        sender = config.isCompressionEnabled()
+                ? new CompressingFirehoseRecordSender(client, USER_AGENT)
+                : new FirehoseRecordSender(client, USER_AGENT);
     }
 
     /**
@@ -177,7 +186,7 @@ public class KinesisFirehoseRecorder extends AbstractKinesisRecorder {
      * @param recordStore record store
      * @param config configuration
      */
-    KinesisFirehoseRecorder(FirehoseRecordSender sender, FileRecordStore recordStore,
+    KinesisFirehoseRecorder(FirehoseRecordSender sender, SegmentedRecordStore recordStore,
             KinesisRecorderConfig config) {
         super(recordStore, config);
         this.sender = sender;
@@ -188,6 +197,18 @@ public class KinesisFirehoseRecorder extends AbstractKinesisRecorder {
         return sender;
     }
 
+    @Override
+    protected int getMaxRecordsPerBatch() {
+        return config.isCompressionEnabled() ? MAX_COMPRESSED_RECORDS_PER_BATCH
+                : super.getMaxRecordsPerBatch();
+    }
+
+    @Override
+    protected int getMaxBatchSize() {
+        return config.isCompressionEnabled() ? MAX_COMPRESSED_BATCH_SIZE_BYTES
+                : super.getMaxBatchSize();
+    }
+
     @Override
     public void saveRecord(byte[] data, String streamName) {
         if (streamName == null || !STREAM_NAME_PATTERN.matcher(streamName).matches()) {
@@ -97,6 +97,12 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
      * Valid stream name pattern.
      */
     private static final Pattern STREAM_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_.-]{1,128}");
+    /**
+     * Maximum number of saved records per batch when records are aggregated.
+     * Each record ends up in at most one Kinesis record, so this keeps a batch
+     * within the 500 records limit of PutRecords.
+     */
+    private static final int MAX_AGGREGATED_RECORDS_PER_BATCH = 500;
 
     private final KinesisStreamRecordSender sender;
 
@@ -143,7 +149,7 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
      */
     public KinesisRecorder(File directory, Regions region,
             AWSCredentialsProvider credentialsProvider, KinesisRecorderConfig config) {
-        super(new FileRecordStore(directory, RECORD_FILE_NAME,
+        super(new SegmentedRecordStore(directory, RECORD_FILE_NAME,
                 config.getMaxStorageSize()), config);
 
         if (directory == null || credentialsProvider == null || region == null || config == null) {
@@ -154,7 +160,10 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
         final AmazonKinesis client = new AmazonKinesisClient(credentialsProvider,
                 config.getClientConfiguration());
         client.setRegion(Region.getRegion(region));
-        sender = new KinesisStreamRecordSender(client, USER_AGENT, config.getPartitionKey());
+        sender = new KinesisStreamRecordSender(client, USER_AGENT, config.getPartitionKey(),
+                config.isAggregationEnabled()
+                        ? new RecordAggregator(config.getMaxAggregatedRecordSize())
+                        : null);
 
         checkUpgrade(directory);
     }
@@ -167,7 +176,7 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
      * @param recordStore record store
      * @param config configuration
      */
-    KinesisRecorder(KinesisStreamRecordSender sender, FileRecordStore recordStore,
+    KinesisRecorder(KinesisStreamRecordSender sender, SegmentedRecordStore recordStore,
             KinesisRecorderConfig config) {
         super(recordStore, config);
         this.sender = sender;
@@ -229,6 +238,12 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
         return sender;
     }
 
+    @Override
+    protected int getMaxRecordsPerBatch() {
+        return config.isAggregationEnabled() ? MAX_AGGREGATED_RECORDS_PER_BATCH
+                : super.getMaxRecordsPerBatch();
+    }
+
     @Override
     public void saveRecord(byte[] data, String streamName) {
         if (streamName == null || !STREAM_NAME_PATTERN.matcher(streamName).matches()) {
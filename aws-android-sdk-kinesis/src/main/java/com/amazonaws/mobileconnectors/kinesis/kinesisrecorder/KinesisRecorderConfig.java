@@ -24,7 +24,23 @@ import com.amazonaws.ClientConfiguration;
 public class KinesisRecorderConfig {
 
     private static final long DEFAUT_MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
+    private static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 1;
+    private static final int DEFAULT_AUTO_FLUSH_RECORD_COUNT = 500;
+    private static final long DEFAULT_AUTO_FLUSH_PENDING_BYTES = 512 * 1024L;
+    private static final long DEFAULT_AUTO_FLUSH_MAX_RECORD_AGE = 60 * 1000L;
+    private static final long DEFAULT_AUTO_FLUSH_MIN_BACKOFF = 5 * 1000L;
+    private static final long DEFAULT_AUTO_FLUSH_MAX_BACKOFF = 10 * 60 * 1000L;
     private long maxStorageSize = DEFAUT_MAX_STORAGE_SIZE;
+    private int maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+    private boolean aggregationEnabled;
+    private boolean compressionEnabled;
+    private int maxAggregatedRecordSize = RecordAggregator.DEFAULT_MAX_AGGREGATED_RECORD_SIZE;
+    private boolean autoFlushEnabled;
+    private int autoFlushRecordCount = DEFAULT_AUTO_FLUSH_RECORD_COUNT;
+    private long autoFlushPendingBytes = DEFAULT_AUTO_FLUSH_PENDING_BYTES;
+    private long autoFlushMaxRecordAge = DEFAULT_AUTO_FLUSH_MAX_RECORD_AGE;
+    private long autoFlushMinBackoff = DEFAULT_AUTO_FLUSH_MIN_BACKOFF;
+    private long autoFlushMaxBackoff = DEFAULT_AUTO_FLUSH_MAX_BACKOFF;
     private final ClientConfiguration clientConfiguration;
     private String partitionKey;
     private DeadLetterListener mDeadLetterListener;
@@ -61,6 +77,16 @@ public class KinesisRecorderConfig {
         this.maxStorageSize = other.getMaxStorageSize();
         this.clientConfiguration = new ClientConfiguration(other.getClientConfiguration());
         this.partitionKey = other.partitionKey;
+        this.maxInFlightBatches = other.maxInFlightBatches;
+        this.aggregationEnabled = other.aggregationEnabled;
+        this.compressionEnabled = other.compressionEnabled;
+        this.maxAggregatedRecordSize = other.maxAggregatedRecordSize;
+        this.autoFlushEnabled = other.autoFlushEnabled;
+        this.autoFlushRecordCount = other.autoFlushRecordCount;
+        this.autoFlushPendingBytes = other.autoFlushPendingBytes;
+        this.autoFlushMaxRecordAge = other.autoFlushMaxRecordAge;
+        this.autoFlushMinBackoff = other.autoFlushMinBackoff;
+        this.autoFlushMaxBackoff = other.autoFlushMaxBackoff;
     }
 
     /**
@@ -94,6 +120,235 @@ public class KinesisRecorderConfig {
         return this.maxStorageSize;
     }
 
+    /**
+     * Sets the maximum number of batches that
+     * {@link AbstractKinesisRecorder#submitAllRecords()} keeps in flight at
+     * the same time. Records are still removed from disk in the order they
+     * were saved and only after their batch is acknowledged. The default is 1,
+     * which sends one batch at a time.
+     *
+     * @param maxInFlightBatches the maximum number of concurrent batches, at
+     *            least 1.
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxInFlightBatches(int maxInFlightBatches) {
+        if (maxInFlightBatches < 1) {
+            throw new IllegalArgumentException("maxInFlightBatches must be at least 1");
+        }
+        this.maxInFlightBatches = maxInFlightBatches;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of batches sent concurrently by
+     *         submitAllRecords.
+     */
+    public int getMaxInFlightBatches() {
+        return this.maxInFlightBatches;
+    }
+
+    /**
+     * Enables packing many saved records into a single Kinesis record using
+     * the aggregated record format of the Kinesis Producer Library (KPL).
+     * Consumers must de-aggregate the records, for example with the Kinesis
+     * Client Library. Records are only aggregated with records of the same
+     * partition key. This only applies to {@link KinesisRecorder}.
+     *
+     * @param aggregationEnabled whether to aggregate records
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withAggregationEnabled(boolean aggregationEnabled) {
+        this.aggregationEnabled = aggregationEnabled;
+        return this;
+    }
+
+    /**
+     * @return Whether records are packed into KPL aggregated records.
+     */
+    public boolean isAggregationEnabled() {
+        return this.aggregationEnabled;
+    }
+
+    /**
+     * Sets the maximum size in bytes of an aggregated Kinesis record,
+     * including its partition key. Smaller records spread better over shards
+     * when random partition keys are used. The default is 50 KB, and the
+     * upper limit is 1 MB.
+     *
+     * @param maxAggregatedRecordSize the maximum aggregated record size
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxAggregatedRecordSize(int maxAggregatedRecordSize) {
+        if (maxAggregatedRecordSize <= 0
+                || maxAggregatedRecordSize > RecordAggregator.MAX_KINESIS_RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid aggregated record size: "
+                    + maxAggregatedRecordSize);
+        }
+        this.maxAggregatedRecordSize = maxAggregatedRecordSize;
+        return this;
+    }
+
+    /**
+     * @return The maximum size in bytes of an aggregated Kinesis record.
+     */
+    public int getMaxAggregatedRecordSize() {
+        return this.maxAggregatedRecordSize;
+    }
+
+    /**
+     * Enables gzip compression of records sent to Amazon Kinesis Firehose.
+     * Groups of records are compressed into single Firehose records, with a
+     * newline after every record that doesn't already end with one. The
+     * delivered S3 objects are concatenated gzip data, which decompresses to
+     * the newline-delimited records. This only applies to
+     * {@link KinesisFirehoseRecorder}.
+     *
+     * @param compressionEnabled whether to compress records
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    /**
+     * @return Whether records sent to Amazon Kinesis Firehose are compressed.
+     */
+    public boolean isCompressionEnabled() {
+        return this.compressionEnabled;
+    }
+
+    /**
+     * Enables flushing saved records in the background, so that the
+     * application doesn't need to call
+     * {@link AbstractKinesisRecorder#submitAllRecords()}. A flush starts when
+     * the records saved since the last flush reach the record count or byte
+     * threshold, or when the oldest of them reaches the maximum age. Flushes
+     * run one at a time on a single background thread. After a recoverable
+     * failure, such as the device being offline, the next flush is delayed
+     * with exponential backoff. Disabled by default.
+     *
+     * @param autoFlushEnabled whether to flush records in the background
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withAutoFlushEnabled(boolean autoFlushEnabled) {
+        this.autoFlushEnabled = autoFlushEnabled;
+        return this;
+    }
+
+    /**
+     * @return Whether records are flushed in the background.
+     */
+    public boolean isAutoFlushEnabled() {
+        return this.autoFlushEnabled;
+    }
+
+    /**
+     * Sets the number of pending records that triggers a background flush.
+     * The default is 500. 0 disables this trigger.
+     *
+     * @param recordCount the number of pending records
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withAutoFlushRecordCount(int recordCount) {
+        if (recordCount < 0) {
+            throw new IllegalArgumentException("Invalid record count: " + recordCount);
+        }
+        this.autoFlushRecordCount = recordCount;
+        return this;
+    }
+
+    /**
+     * @return The number of pending records that triggers a background flush.
+     */
+    public int getAutoFlushRecordCount() {
+        return this.autoFlushRecordCount;
+    }
+
+    /**
+     * Sets the size in bytes of pending records that triggers a background
+     * flush. The default is 512 KB. 0 disables this trigger.
+     *
+     * @param pendingBytes the size of pending records
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withAutoFlushPendingBytes(long pendingBytes) {
+        if (pendingBytes < 0) {
+            throw new IllegalArgumentException("Invalid pending bytes: " + pendingBytes);
+        }
+        this.autoFlushPendingBytes = pendingBytes;
+        return this;
+    }
+
+    /**
+     * @return The size in bytes of pending records that triggers a background
+     *         flush.
+     */
+    public long getAutoFlushPendingBytes() {
+        return this.autoFlushPendingBytes;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds a record waits before a background
+     * flush sends it, unless the flush fails. This bounds the latency of
+     * records when few are saved. The default is one minute. 0 disables this
+     * trigger.
+     *
+     * @param maxRecordAge the maximum record age in milliseconds
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withAutoFlushMaxRecordAge(long maxRecordAge) {
+        if (maxRecordAge < 0) {
+            throw new IllegalArgumentException("Invalid record age: " + maxRecordAge);
+        }
+        this.autoFlushMaxRecordAge = maxRecordAge;
+        return this;
+    }
+
+    /**
+     * @return The maximum time in milliseconds a record waits for a background
+     *         flush.
+     */
+    public long getAutoFlushMaxRecordAge() {
+        return this.autoFlushMaxRecordAge;
+    }
+
+    /**
+     * Sets the delays in milliseconds of background flushes after recoverable
+     * failures. The first retry waits the minimum delay, which doubles with
+     * every failure up to the maximum delay. The defaults are 5 seconds and 10
+     * minutes.
+     *
+     * @param minBackoff delay after the first failure
+     * @param maxBackoff upper bound of the delay
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withAutoFlushBackoff(long minBackoff, long maxBackoff) {
+        if (minBackoff <= 0 || maxBackoff < minBackoff) {
+            throw new IllegalArgumentException("Invalid backoff: " + minBackoff + ", "
+                    + maxBackoff);
+        }
+        this.autoFlushMinBackoff = minBackoff;
+        this.autoFlushMaxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * @return The delay in milliseconds of a background flush after the first
+     *         recoverable failure.
+     */
+    public long getAutoFlushMinBackoff() {
+        return this.autoFlushMinBackoff;
+    }
+
+    /**
+     * @return The upper bound in milliseconds of the delay of a background
+     *         flush after recoverable failures.
+     */
+    public long getAutoFlushMaxBackoff() {
+        return this.autoFlushMaxBackoff;
+    }
+
     /**
      * Returns the {@link DeadLetterListener} that will respond to records being dropped.
      * @return the {@link DeadLetterListener} that will respond to records being dropped.
@@ -38,6 +38,7 @@ public class KinesisStreamRecordSender implements RecordSender {
     private final AmazonKinesis client;
     private final String userAgent;
     private final String partitionKey;
+    private final RecordAggregator aggregator;
 
     /**
      * Constructs a {@link KinesisStreamRecordSender}.
@@ -58,9 +59,24 @@ public class KinesisStreamRecordSender implements RecordSender {
      */
     public KinesisStreamRecordSender(AmazonKinesis client, String userAgent,
             String partitionKey) {
+        this(client, userAgent, partitionKey, null);
+    }
+
+    /**
+     * Constructs a {@link KinesisStreamRecordSender} that packs records into
+     * KPL aggregated records.
+     *
+     * @param client an {@link AmazonKinesis} client
+     * @param userAgent user agent string to be set in each request
+     * @param partitionKey the partition key, or null for random keys
+     * @param aggregator the aggregator, or null to send each record as is
+     */
+    KinesisStreamRecordSender(AmazonKinesis client, String userAgent,
+            String partitionKey, RecordAggregator aggregator) {
         this.client = client;
         this.userAgent = userAgent;
         this.partitionKey = partitionKey;
+        this.aggregator = aggregator;
     }
 
     @Override
@@ -68,6 +84,9 @@ public class KinesisStreamRecordSender implements RecordSender {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
         }
+        if (aggregator != null) {
+            return sendAggregatedBatch(streamName, data);
+        }
 
         final PutRecordsRequest request = new PutRecordsRequest();
         request.setStreamName(streamName);
@@ -97,6 +116,40 @@ public class KinesisStreamRecordSender implements RecordSender {
         return failures;
     }
 
+    private List<byte[]> sendAggregatedBatch(String streamName, List<byte[]> data) {
+        // a blank key means random keys, which the aggregator picks per
+        // aggregated record
+        final String key = StringUtils.isBlank(this.partitionKey) ? null : this.partitionKey;
+        final List<RecordAggregator.AggregatedRecord> aggregated = aggregator.aggregate(
+                Collections.nCopies(data.size(), key), data);
+
+        final PutRecordsRequest request = new PutRecordsRequest();
+        request.setStreamName(streamName);
+        final List<PutRecordsRequestEntry> records = new ArrayList<PutRecordsRequestEntry>(
+                aggregated.size());
+        for (final RecordAggregator.AggregatedRecord a : aggregated) {
+            final PutRecordsRequestEntry r = new PutRecordsRequestEntry();
+            r.setData(ByteBuffer.wrap(a.data));
+            r.setPartitionKey(a.partitionKey);
+            records.add(r);
+        }
+        request.setRecords(records);
+        request.getRequestClientOptions().appendUserAgent(userAgent);
+
+        final PutRecordsResult result = client.putRecords(request);
+
+        final int size = result.getRecords().size();
+        final List<byte[]> failures = new ArrayList<byte[]>();
+        for (int i = 0; i < size; i++) {
+            if (result.getRecords().get(i).getErrorCode() != null) {
+                // retry all user records of a failed aggregated record
+                failures.addAll(aggregated.get(i).userRecords);
+            }
+        }
+
+        return failures;
+    }
+
     @Override
     public boolean isRecoverable(AmazonClientException ace) {
         if (ace instanceof AmazonServiceException) {
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Packs many small user records into Kinesis records using the aggregated
+ * record format of the Kinesis Producer Library (KPL), so that the Kinesis
+ * Client Library and other KPL-aware consumers can de-aggregate them. An
+ * aggregated record is laid out as
+ *
+ * <pre>
+ * [magic 0xF3 0x89 0x9A 0xC2][protobuf AggregatedRecord][MD5 of the protobuf]
+ *
+ * message AggregatedRecord {
+ *   repeated string partition_key_table = 1;
+ *   repeated string explicit_hash_key_table = 2;
+ *   repeated Record records = 3;
+ * }
+ * message Record {
+ *   required uint64 partition_key_index = 1;
+ *   optional uint64 explicit_hash_key_index = 2;
+ *   required bytes data = 3;
+ * }
+ * </pre>
+ *
+ * User records are only packed together with records of the same partition
+ * key, so that every user record still lands on the shard its key maps to.
+ * Records without a partition key are packed together and each aggregated
+ * record gets a random key. An aggregated record holding a single user record
+ * is sent as the plain user record.
+ */
+class RecordAggregator {
+
+    /** Magic bytes at the start of a KPL aggregated record. **/
+    static final byte[] AGGREGATED_RECORD_MAGIC = new byte[] {
+            (byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2
+    };
+    /** Default maximum size of an aggregated record, as used by the KPL. **/
+    static final int DEFAULT_MAX_AGGREGATED_RECORD_SIZE = 50 * 1024;
+    /** Kinesis limit of data and partition key of a single record. **/
+    static final int MAX_KINESIS_RECORD_SIZE = 1024 * 1024;
+
+    private static final int DIGEST_SIZE = 16;
+    private static final int FIELD_PARTITION_KEY_TABLE = 1;
+    private static final int FIELD_RECORDS = 3;
+    private static final int FIELD_PARTITION_KEY_INDEX = 1;
+    private static final int FIELD_DATA = 3;
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private final int maxAggregatedRecordSize;
+
+    /**
+     * A Kinesis record produced by the aggregator, along with the user
+     * records it carries.
+     */
+    static final class AggregatedRecord {
+        final String partitionKey;
+        final byte[] data;
+        final List<byte[]> userRecords;
+
+        AggregatedRecord(String partitionKey, byte[] data, List<byte[]> userRecords) {
+            this.partitionKey = partitionKey;
+            this.data = data;
+            this.userRecords = userRecords;
+        }
+    }
+
+    /**
+     * Constructs a {@link RecordAggregator}.
+     *
+     * @param maxAggregatedRecordSize maximum size in bytes of an aggregated
+     *            record including its partition key
+     */
+    RecordAggregator(int maxAggregatedRecordSize) {
+        if (maxAggregatedRecordSize <= 0 || maxAggregatedRecordSize > MAX_KINESIS_RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid aggregated record size: "
+                    + maxAggregatedRecordSize);
+        }
+        this.maxAggregatedRecordSize = maxAggregatedRecordSize;
+    }
+
+    /**
+     * Packs user records into aggregated records. Records of the same
+     * partition key keep their relative order.
+     *
+     * @param partitionKeys partition key of each user record, null entries
+     *            are packed together under a random key
+     * @param data user records
+     * @return aggregated records
+     */
+    List<AggregatedRecord> aggregate(List<String> partitionKeys, List<byte[]> data) {
+        if (partitionKeys.size() != data.size()) {
+            throw new IllegalArgumentException("Each record needs a partition key entry");
+        }
+        final List<AggregatedRecord> result = new ArrayList<AggregatedRecord>();
+        final Map<String, Builder> open = new LinkedHashMap<String, Builder>();
+        for (int i = 0; i < data.size(); i++) {
+            final String key = partitionKeys.get(i);
+            final byte[] record = data.get(i);
+            Builder builder = open.get(key);
+            if (builder != null && !builder.fits(record)) {
+                result.add(builder.build());
+                builder = null;
+            }
+            if (builder == null) {
+                builder = new Builder(key != null ? key : UUID.randomUUID().toString());
+                open.put(key, builder);
+            }
+            builder.add(record);
+        }
+        for (final Builder builder : open.values()) {
+            result.add(builder.build());
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates the user records of one aggregated record.
+     */
+    private final class Builder {
+        private final String partitionKey;
+        private final byte[] partitionKeyBytes;
+        private final List<byte[]> records = new ArrayList<byte[]>();
+        /** Size of the aggregated record with the records added so far. **/
+        private int size;
+
+        Builder(String partitionKey) {
+            this.partitionKey = partitionKey;
+            this.partitionKeyBytes = partitionKey.getBytes(StringUtils.UTF8);
+            this.size = partitionKeyBytes.length + AGGREGATED_RECORD_MAGIC.length + DIGEST_SIZE
+                    + lengthDelimitedSize(FIELD_PARTITION_KEY_TABLE, partitionKeyBytes.length);
+        }
+
+        /**
+         * Whether the record can be added without going over the size limit.
+         * The first record is always accepted, it is sent as is if it's too
+         * large to be aggregated.
+         */
+        boolean fits(byte[] record) {
+            return records.isEmpty() || size + entrySize(record) <= maxAggregatedRecordSize;
+        }
+
+        void add(byte[] record) {
+            records.add(record);
+            size += entrySize(record);
+        }
+
+        AggregatedRecord build() {
+            if (records.size() == 1) {
+                return new AggregatedRecord(partitionKey, records.get(0),
+                        Collections.singletonList(records.get(0)));
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            out.write(AGGREGATED_RECORD_MAGIC, 0, AGGREGATED_RECORD_MAGIC.length);
+            final ByteArrayOutputStream message = new ByteArrayOutputStream(size);
+            writeTag(message, FIELD_PARTITION_KEY_TABLE, WIRE_TYPE_LENGTH_DELIMITED);
+            writeVarint(message, partitionKeyBytes.length);
+            message.write(partitionKeyBytes, 0, partitionKeyBytes.length);
+            for (final byte[] record : records) {
+                writeTag(message, FIELD_RECORDS, WIRE_TYPE_LENGTH_DELIMITED);
+                writeVarint(message, recordMessageSize(record));
+                writeTag(message, FIELD_PARTITION_KEY_INDEX, WIRE_TYPE_VARINT);
+                writeVarint(message, 0);
+                writeTag(message, FIELD_DATA, WIRE_TYPE_LENGTH_DELIMITED);
+                writeVarint(message, record.length);
+                message.write(record, 0, record.length);
+            }
+            final byte[] messageBytes = message.toByteArray();
+            out.write(messageBytes, 0, messageBytes.length);
+            final byte[] digest = md5(messageBytes);
+            out.write(digest, 0, digest.length);
+            return new AggregatedRecord(partitionKey, out.toByteArray(), records);
+        }
+    }
+
+    /** Size of a user record inside the AggregatedRecord message. **/
+    private static int entrySize(byte[] record) {
+        return lengthDelimitedSize(FIELD_RECORDS, recordMessageSize(record));
+    }
+
+    /** Size of the Record message of a user record. **/
+    private static int recordMessageSize(byte[] record) {
+        // partition_key_index is always 0, a one byte tag and a one byte value
+        return 2 + lengthDelimitedSize(FIELD_DATA, record.length);
+    }
+
+    private static int lengthDelimitedSize(int field, int length) {
+        return varintSize(field << 3) + varintSize(length) + length;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, (field << 3) | wireType);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static byte[] md5(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(bytes);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AmazonClientException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,727 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+import com.amazonaws.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The SegmentedRecordStore keeps Kinesis records on the Android disk in an
+ * append-only log that is split into segment files. Each record is stored in
+ * binary form as
+ *
+ * <pre>
+ * [int payload length][int CRC32 of payload][payload]
+ * payload = [short stream name length][UTF-8 stream name][data]
+ * </pre>
+ *
+ * Records are never rewritten. Reading progress is tracked by a durable
+ * cursor (segment id and offset), and a segment is unlinked once the cursor
+ * has moved past it.
+ */
+class SegmentedRecordStore {
+    private static final Log LOGGER = LogFactory.getLog(SegmentedRecordStore.class);
+
+    /** Default size at which the active segment is rolled over. **/
+    static final long DEFAULT_SEGMENT_SIZE = 1024 * 1024L;
+
+    /** Suffix of the directory that holds the segments of a store. **/
+    static final String SEGMENTS_DIRECTORY_SUFFIX = ".segments";
+    /** Suffix of a segment file. **/
+    static final String SEGMENT_FILE_SUFFIX = ".seg";
+    /** Name of the file that keeps the durable read cursor. **/
+    static final String CURSOR_FILE_NAME = "cursor";
+
+    /** Size of the length and CRC header in front of each record. **/
+    static final int RECORD_HEADER_SIZE = 8;
+    /**
+     * Upper bound of a record payload. Kinesis data blobs are at most 1 MB and
+     * stream names are at most 128 characters, anything larger is corruption.
+     */
+    private static final int MAX_PAYLOAD_SIZE = 1024 * 1024 + 1024;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final ReentrantLock accessLock = new ReentrantLock(true);
+
+    /** The FileManager used for interacting with the FS. **/
+    private final FileManager fileManager;
+
+    private final File segmentDirectory;
+    private final File cursorFile;
+    private final long maxStorageSize;
+    private final long segmentSize;
+
+    /** Ids of the segments on disk, oldest first. **/
+    private final TreeSet<Long> segments = new TreeSet<Long>();
+    /** Total number of bytes in all segments. **/
+    private long diskBytes;
+
+    /** Id of the segment new records are appended to. **/
+    private long writeSegment;
+    private long writeSegmentLength;
+    private OutputStream writer;
+    private long nextSegmentId;
+
+    /** Committed read position. **/
+    private long cursorSegment;
+    private long cursorOffset;
+
+    /**
+     * A record read back from the store.
+     */
+    static final class Record {
+        final String streamName;
+        final byte[] data;
+
+        Record(String streamName, byte[] data) {
+            this.streamName = streamName;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A position in the log.
+     */
+    static final class Position {
+        final long segment;
+        final long offset;
+
+        Position(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Creates the SegmentedRecordStore with the default segment size.
+     *
+     * @param workDirectory The directory (which the store is only used for the
+     *            KinesisRecorder) to use to store records in
+     * @param recordFileName Name of the record store
+     * @param maxStorageSize Maximum storage size in bytes
+     */
+    public SegmentedRecordStore(File workDirectory, String recordFileName, long maxStorageSize) {
+        this(workDirectory, recordFileName, maxStorageSize, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates the SegmentedRecordStore. Records left in a text record file of
+     * the same name by a previous version of the SDK are moved into the log.
+     *
+     * @param workDirectory The directory (which the store is only used for the
+     *            KinesisRecorder) to use to store records in
+     * @param recordFileName Name of the record store
+     * @param maxStorageSize Maximum storage size in bytes
+     * @param segmentSize Size in bytes at which a new segment is started
+     */
+    SegmentedRecordStore(File workDirectory, String recordFileName, long maxStorageSize,
+            long segmentSize) {
+        this(new FileManager(workDirectory), recordFileName, maxStorageSize, segmentSize);
+    }
+
+    SegmentedRecordStore(FileManager fileManager, String recordFileName, long maxStorageSize,
+            long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.fileManager = fileManager;
+        this.maxStorageSize = maxStorageSize;
+        this.segmentSize = segmentSize;
+        final File recordsDir = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        if (recordsDir == null) {
+            throw new AmazonClientException("Failed to create file store");
+        }
+        this.segmentDirectory = new File(recordsDir,
+                recordFileName + SEGMENTS_DIRECTORY_SUFFIX);
+        if (!segmentDirectory.isDirectory() && !segmentDirectory.mkdirs()) {
+            throw new AmazonClientException("Failed to create file store");
+        }
+        this.cursorFile = new File(segmentDirectory, CURSOR_FILE_NAME);
+        loadSegments();
+        migrateTextRecords(new File(recordsDir, recordFileName));
+    }
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param streamName the stream the record belongs to
+     * @param data record data
+     * @return true if the record is saved, false if the store is full
+     * @throws IOException if the record can't be written
+     */
+    public boolean put(final String streamName, final byte[] data) throws IOException {
+        final byte[] encoded = encode(streamName, data);
+        accessLock.lock();
+        try {
+            if (diskBytes + encoded.length > maxStorageSize) {
+                return false;
+            }
+            if (writer != null && writeSegmentLength > 0
+                    && writeSegmentLength + encoded.length > segmentSize) {
+                closeWriter();
+            }
+            if (writer == null) {
+                openWriter();
+            }
+            try {
+                writer.write(encoded);
+                writer.flush();
+            } catch (final IOException e) {
+                abandonWriter();
+                throw e;
+            }
+            writeSegmentLength += encoded.length;
+            diskBytes += encoded.length;
+            return true;
+        } finally {
+            accessLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes the segments occupy on disk.
+     *
+     * @return size in bytes
+     */
+    public long getFileSize() {
+        accessLock.lock();
+        try {
+            return diskBytes;
+        } finally {
+            accessLock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator that starts at the committed read cursor.
+     *
+     * @return a new {@link RecordIterator}
+     */
+    public RecordIterator iterator() {
+        accessLock.lock();
+        try {
+            return new RecordIterator(cursorSegment, cursorOffset);
+        } finally {
+            accessLock.unlock();
+        }
+    }
+
+    static byte[] encode(String streamName, byte[] data) {
+        final byte[] name = streamName.getBytes(StringUtils.UTF8);
+        final int payloadLength = 2 + name.length + data.length;
+        final byte[] encoded = new byte[RECORD_HEADER_SIZE + payloadLength];
+        int pos = RECORD_HEADER_SIZE;
+        encoded[pos++] = (byte) (name.length >>> 8);
+        encoded[pos++] = (byte) name.length;
+        System.arraycopy(name, 0, encoded, pos, name.length);
+        pos += name.length;
+        System.arraycopy(data, 0, encoded, pos, data.length);
+
+        final CRC32 crc = new CRC32();
+        crc.update(encoded, RECORD_HEADER_SIZE, payloadLength);
+        writeInt(encoded, 0, payloadLength);
+        writeInt(encoded, 4, (int) crc.getValue());
+        return encoded;
+    }
+
+    private static void writeInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) (value >>> 24);
+        buffer[pos + 1] = (byte) (value >>> 16);
+        buffer[pos + 2] = (byte) (value >>> 8);
+        buffer[pos + 3] = (byte) value;
+    }
+
+    private File segmentFile(long id) {
+        return new File(segmentDirectory, id + SEGMENT_FILE_SUFFIX);
+    }
+
+    private void loadSegments() {
+        long maxId = -1;
+        for (final File file : fileManager.listFilesInDirectory(segmentDirectory)) {
+            final String name = file.getName();
+            if (!name.endsWith(SEGMENT_FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                final long id = Long.parseLong(
+                        name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()));
+                segments.add(id);
+                diskBytes += file.length();
+                maxId = Math.max(maxId, id);
+            } catch (final NumberFormatException e) {
+                LOGGER.warn("Ignoring unknown file in record store: " + name);
+            }
+        }
+
+        readCursor();
+        if (segments.isEmpty()) {
+            cursorSegment = Math.max(cursorSegment, maxId + 1);
+            cursorOffset = 0;
+        } else if (!segments.contains(cursorSegment)) {
+            // the cursor refers to a segment that is gone, resume from the
+            // oldest one. Sending duplicates is preferred over losing records.
+            final Long next = segments.ceiling(cursorSegment);
+            cursorSegment = next != null ? next : segments.first();
+            cursorOffset = 0;
+        }
+        // Never append to a segment of a previous session, its tail may hold a
+        // partially written record.
+        nextSegmentId = Math.max(maxId, cursorSegment) + 1;
+    }
+
+    private void readCursor() {
+        cursorSegment = 0;
+        cursorOffset = 0;
+        if (!cursorFile.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(fileManager.newInputStream(cursorFile));
+            final long segment = in.readLong();
+            final long offset = in.readLong();
+            final int checksum = in.readInt();
+            if (checksum == cursorChecksum(segment, offset) && segment >= 0 && offset >= 0) {
+                cursorSegment = segment;
+                cursorOffset = offset;
+            } else {
+                LOGGER.warn("Corrupted record cursor, reading from the oldest segment");
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Failed to read record cursor, reading from the oldest segment", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        final File tempFile = new File(segmentDirectory, CURSOR_FILE_NAME + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(tempFile, false);
+        try {
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeLong(cursorSegment);
+            out.writeLong(cursorOffset);
+            out.writeInt(cursorChecksum(cursorSegment, cursorOffset));
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!tempFile.renameTo(cursorFile)) {
+            throw new IOException("Failed to persist record cursor");
+        }
+    }
+
+    private static int cursorChecksum(long segment, long offset) {
+        final CRC32 crc = new CRC32();
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (segment >>> i));
+        }
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (offset >>> i));
+        }
+        return (int) crc.getValue();
+    }
+
+    private void openWriter() throws IOException {
+        writeSegment = nextSegmentId++;
+        final File file = fileManager.createFile(segmentFile(writeSegment));
+        if (file == null) {
+            throw new IOException("Failed to create segment " + writeSegment);
+        }
+        writer = fileManager.newOutputStream(file, true);
+        writeSegmentLength = file.length();
+        segments.add(writeSegment);
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            final OutputStream stream = writer;
+            writer = null;
+            stream.close();
+        }
+    }
+
+    /**
+     * Closes the writer after a failed write and truncates its segment back to
+     * the last complete record, so that no torn record is left in front of
+     * the next ones. The next record is written to a new segment.
+     */
+    private void abandonWriter() {
+        final OutputStream stream = writer;
+        writer = null;
+        closeQuietly(stream);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(segmentFile(writeSegment), "rw");
+            file.setLength(writeSegmentLength);
+        } catch (final IOException e) {
+            LOGGER.error("Failed to truncate segment " + writeSegment, e);
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Moves the committed cursor to the given position, unlinks segments that
+     * are fully read and persists the cursor.
+     */
+    private void commit(long segment, long offset) throws IOException {
+        // skip over the ends of fully read segments
+        while (segments.contains(segment) && segments.higher(segment) != null
+                && offset >= segmentFile(segment).length()) {
+            segment = segments.higher(segment);
+            offset = 0;
+        }
+
+        final boolean allRead = segments.isEmpty()
+                || (segments.last() == segment && offset >= segmentFile(segment).length());
+        if (allRead) {
+            // nothing left to read, start over with a fresh segment
+            deleteAllRecords();
+            return;
+        }
+
+        // persist the cursor before unlinking, so a crash in between at worst
+        // resends records of the next segment
+        cursorSegment = segment;
+        cursorOffset = offset;
+        writeCursor();
+        while (segments.first() < segment) {
+            deleteSegment(segments.first());
+        }
+    }
+
+    private void deleteSegment(long id) throws IOException {
+        if (writer != null && id == writeSegment) {
+            closeWriter();
+        }
+        final File file = segmentFile(id);
+        final long length = file.length();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete segment " + id);
+        }
+        segments.remove(id);
+        diskBytes -= length;
+    }
+
+    private void deleteAllRecords() throws IOException {
+        closeWriter();
+        while (!segments.isEmpty()) {
+            deleteSegment(segments.first());
+        }
+        diskBytes = 0;
+        cursorSegment = nextSegmentId;
+        cursorOffset = 0;
+        if (cursorFile.exists() && !cursorFile.delete()) {
+            throw new IOException("Failed to delete record cursor");
+        }
+    }
+
+    /**
+     * Moves records of the text based {@link FileRecordStore} into the log and
+     * deletes the text file afterwards.
+     */
+    private void migrateTextRecords(File textFile) {
+        if (!textFile.isFile()) {
+            return;
+        }
+        BufferedReader reader = null;
+        final FileRecordParser frp = new FileRecordParser();
+        int count = 0;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    fileManager.newInputStream(textFile), StringUtils.UTF8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    frp.parse(line);
+                } catch (final Exception e) {
+                    LOGGER.warn("Failed to read line. Skip.", e);
+                    continue;
+                }
+                if (put(frp.streamName, frp.bytes)) {
+                    count++;
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Failed to migrate records from " + textFile.getName(), e);
+            return;
+        } finally {
+            closeQuietly(reader);
+        }
+        LOGGER.debug(String.format("Migrated %d records from %s", count, textFile.getName()));
+        if (!textFile.delete()) {
+            LOGGER.error("Failed to delete migrated record file");
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException e) {
+                LOGGER.error("failed to close stream", e);
+            }
+        }
+    }
+
+    /**
+     * Iterates records from a read position. Records handed out by
+     * {@link #next()} are only removed from the store once
+     * {@link #removeReadRecords()} is called.
+     */
+    public class RecordIterator implements java.util.Iterator<Record> {
+        /** Position of the stream. **/
+        private long readSegment;
+        private long readOffset;
+        private DataInputStream in;
+
+        /** Position right after the last record returned by next(). **/
+        private long consumedSegment;
+        private long consumedOffset;
+
+        private Record nextBuffer;
+        private long bufferedSegment;
+        private long bufferedOffset;
+
+        RecordIterator(long segment, long offset) {
+            readSegment = segment;
+            readOffset = offset;
+            consumedSegment = segment;
+            consumedOffset = offset;
+        }
+
+        @Override
+        public boolean hasNext() {
+            accessLock.lock();
+            try {
+                return peek() != null;
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        @Override
+        public Record next() {
+            accessLock.lock();
+            try {
+                final Record next = peek();
+                if (next != null) {
+                    nextBuffer = null;
+                    consumedSegment = bufferedSegment;
+                    consumedOffset = bufferedOffset;
+                }
+                return next;
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        public Record peek() {
+            accessLock.lock();
+            try {
+                if (nextBuffer == null) {
+                    nextBuffer = readRecord();
+                    bufferedSegment = readSegment;
+                    bufferedOffset = readOffset;
+                }
+                return nextBuffer;
+            } catch (final IOException ioe) {
+                throw new AmazonClientException("IO Error", ioe);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "The remove() operation is not supported for this iterator");
+        }
+
+        /**
+         * Removes all records returned by {@link #next()} so far by moving the
+         * durable cursor. Segments that are fully read are deleted.
+         *
+         * @throws IOException if the cursor can't be persisted
+         */
+        public void removeReadRecords() throws IOException {
+            removeRecordsBefore(position());
+        }
+
+        /**
+         * Returns the position right after the last record returned by
+         * {@link #next()}.
+         *
+         * @return the read position
+         */
+        public Position position() {
+            accessLock.lock();
+            try {
+                return new Position(consumedSegment, consumedOffset);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Removes all records in front of a position previously returned by
+         * {@link #position()}. This allows records to be removed in the order
+         * they were read while later records are still being processed.
+         *
+         * @param position the position to remove records up to
+         * @throws IOException if the cursor can't be persisted
+         */
+        public void removeRecordsBefore(Position position) throws IOException {
+            accessLock.lock();
+            try {
+                commit(position.segment, position.offset);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        public void removeAllRecords() throws IOException {
+            accessLock.lock();
+            try {
+                close();
+                deleteAllRecords();
+                nextBuffer = null;
+                readSegment = consumedSegment = cursorSegment;
+                readOffset = consumedOffset = cursorOffset;
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        public void close() throws IOException {
+            if (in != null) {
+                final InputStream stream = in;
+                in = null;
+                stream.close();
+            }
+        }
+
+        private Record readRecord() throws IOException {
+            while (true) {
+                if (segments.contains(readSegment)) {
+                    if (in == null) {
+                        in = openSegment(readSegment, readOffset);
+                    }
+                    final Record record = readFromSegment();
+                    if (record != null) {
+                        return record;
+                    }
+                }
+                // end of the segment, continue with the next one if any
+                final Long next = segments.higher(readSegment);
+                if (next == null) {
+                    return null;
+                }
+                close();
+                readSegment = next;
+                readOffset = 0;
+            }
+        }
+
+        private DataInputStream openSegment(long segment, long offset) throws IOException {
+            final InputStream stream = fileManager.newInputStream(segmentFile(segment));
+            long skipped = 0;
+            while (skipped < offset) {
+                final long n = stream.skip(offset - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+            return new DataInputStream(new BufferedInputStream(stream, READ_BUFFER_SIZE));
+        }
+
+        /**
+         * Reads the next valid record of the current segment. Records with a
+         * bad checksum are skipped. Returns null at the end of the segment or
+         * when the remaining bytes can't be framed.
+         */
+        private Record readFromSegment() throws IOException {
+            while (true) {
+                final int length;
+                final int checksum;
+                final byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 2 || length > MAX_PAYLOAD_SIZE) {
+                        LOGGER.warn("Corrupted record header in segment " + readSegment
+                                + ". Skipping the rest of the segment.");
+                        skipRestOfSegment();
+                        return null;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (final EOFException e) {
+                    // end of segment, or a record that is still incomplete.
+                    // Reopen at the last good offset on the next read.
+                    close();
+                    return null;
+                }
+                readOffset += RECORD_HEADER_SIZE + length;
+
+                final CRC32 crc = new CRC32();
+                crc.update(payload, 0, length);
+                final int nameLength = ((payload[0] & 0xff) << 8) | (payload[1] & 0xff);
+                if ((int) crc.getValue() != checksum || 2 + nameLength > length) {
+                    LOGGER.warn("Record checksum mismatch in segment " + readSegment + ". Skip.");
+                    continue;
+                }
+                final String streamName = new String(payload, 2, nameLength, StringUtils.UTF8);
+                final byte[] data = new byte[length - 2 - nameLength];
+                System.arraycopy(payload, 2 + nameLength, data, 0, data.length);
+                return new Record(streamName, data);
+            }
+        }
+
+        private void skipRestOfSegment() throws IOException {
+            close();
+            readOffset = segmentFile(readSegment).length();
+            if (writer != null && readSegment == writeSegment) {
+                // don't append behind bytes that can't be framed
+                closeWriter();
+            }
+        }
+    }
+}
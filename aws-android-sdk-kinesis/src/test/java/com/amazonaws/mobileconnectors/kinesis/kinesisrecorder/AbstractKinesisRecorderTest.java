@@ -24,7 +24,7 @@ import static org.junit.Assert.fail;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.SegmentedRecordStore.RecordIterator;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -42,6 +42,9 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -59,7 +62,7 @@ public class AbstractKinesisRecorderTest {
     static class MockAbstractKinesisRecorder extends AbstractKinesisRecorder {
         private RecordSender sender;
 
-        protected MockAbstractKinesisRecorder(FileRecordStore recordStore,
+        protected MockAbstractKinesisRecorder(SegmentedRecordStore recordStore,
                 KinesisRecorderConfig config) {
             super(recordStore, config);
         }
@@ -80,7 +83,7 @@ public class AbstractKinesisRecorderTest {
         deadLetterListener = Mockito.mock(DeadLetterListener.class);
         KinesisRecorderConfig config = new KinesisRecorderConfig()
                 .withDeadLetterListener(deadLetterListener);
-        FileRecordStore recordStore = new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME,
+        SegmentedRecordStore recordStore = new SegmentedRecordStore(temp.newFolder(), RECORD_FILE_NAME,
                 config.getMaxStorageSize());
         MockAbstractKinesisRecorder mockRecorder = new MockAbstractKinesisRecorder(recordStore,
                 config);
@@ -317,6 +320,92 @@ public class AbstractKinesisRecorderTest {
         assertTrue("records not removed", recorder.getDiskBytesUsed() > 0);
     }
 
+    @Test
+    public void testSubmitAllRecordsWithConcurrentBatches() throws InterruptedException {
+        final int maxInFlight = 4;
+        final CountDownLatch allInFlight = new CountDownLatch(maxInFlight);
+        final AtomicInteger sent = new AtomicInteger();
+        RecordSender concurrentSender = new RecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+                // every request waits until the window is full
+                allInFlight.countDown();
+                try {
+                    allInFlight.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new AmazonClientException("interrupted", e);
+                }
+                sent.addAndGet(data.size());
+                return new ArrayList<byte[]>();
+            }
+
+            @Override
+            public boolean isRecoverable(AmazonClientException ace) {
+                return true;
+            }
+        };
+        MockAbstractKinesisRecorder pipelined = createRecorder(maxInFlight);
+        pipelined.setRecordSender(concurrentSender);
+        // 512 KB per batch, so 3 MB is at least 6 batches
+        for (int i = 0; i < 3 * 1024; i++) {
+            pipelined.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        pipelined.submitAllRecords();
+        assertEquals("batches were in flight together", 0, allInFlight.getCount());
+        assertEquals("all records sent", 3 * 1024, sent.get());
+        assertEquals("no records after submitAllRecords", 0, pipelined.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsWithConcurrentBatchesAndPartialFailures() {
+        MockAbstractKinesisRecorder pipelined = createRecorder(4);
+        pipelined.setRecordSender(sender);
+        for (int i = 0; i < 1024; i++) {
+            pipelined.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+                // one of the records fails, but succeeds the next time
+                .thenReturn(Arrays.asList(randomBytes(1024)))
+                .thenReturn(new ArrayList<byte[]>());
+        pipelined.submitAllRecords();
+        assertEquals("records removed", 0, pipelined.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsWithConcurrentBatchesKeepsRecordsOfFailedBatch() {
+        MockAbstractKinesisRecorder pipelined = createRecorder(4);
+        pipelined.setRecordSender(sender);
+        for (int i = 0; i < 1024; i++) {
+            pipelined.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        long size = pipelined.getDiskBytesUsed();
+        AmazonServiceException ase = new AmazonServiceException("some failures");
+        // the first batch fails while the following ones succeed
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+                .thenThrow(ase)
+                .thenReturn(new ArrayList<byte[]>());
+        Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
+        try {
+            pipelined.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertSame("same exception", ase, ace);
+        }
+        assertEquals("records are only removed in order", size, pipelined.getDiskBytesUsed());
+    }
+
+    private MockAbstractKinesisRecorder createRecorder(int maxInFlightBatches) {
+        KinesisRecorderConfig config = new KinesisRecorderConfig()
+                .withDeadLetterListener(deadLetterListener)
+                .withMaxInFlightBatches(maxInFlightBatches);
+        try {
+            return new MockAbstractKinesisRecorder(new SegmentedRecordStore(temp.newFolder(),
+                    RECORD_FILE_NAME, config.getMaxStorageSize()), config);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private byte[] randomBytes(int length) {
         byte[] data = new byte[length];
         new Random().nextBytes(data);
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.mockito.Matchers.any;
+
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchRequest;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResponseEntry;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResult;
+import com.amazonaws.services.kinesisfirehose.model.Record;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the bytes sent to Firehose for 10k JSON clickstream records, with
+ * and without compression, using the batch sizes of
+ * {@link KinesisFirehoseRecorder}. Bytes are the record data in the requests,
+ * before base64 encoding.
+ */
+@Ignore("Benchmark, run manually")
+public class CompressingFirehoseRecordSenderBenchmarkTest {
+    private static final int RECORD_COUNT = 10000;
+    private static final String[] EVENTS = {
+            "page_view", "click", "scroll", "add_to_cart", "purchase"
+    };
+
+    @Test
+    public void benchmarkBytesOnTheWire() {
+        List<byte[]> data = clickstream();
+        long raw = 0;
+        for (byte[] d : data) {
+            raw += d.length;
+        }
+
+        long[] plain = send(new FirehoseRecordSender(client(), "benchmark"), data, 128);
+        long[] compressed = send(new CompressingFirehoseRecordSender(client(), "benchmark"),
+                data, 2000);
+
+        System.out.println(String.format("%d records, %d bytes of data", RECORD_COUNT, raw));
+        System.out.println(String.format("plain:      %8d bytes in %5d Firehose records",
+                plain[0], plain[1]));
+        System.out.println(String.format("compressed: %8d bytes in %5d Firehose records (%.1fx)",
+                compressed[0], compressed[1], plain[0] / (double) compressed[0]));
+    }
+
+    private final long[] wire = new long[2];
+
+    private AmazonKinesisFirehose client() {
+        AmazonKinesisFirehose client = Mockito.mock(AmazonKinesisFirehose.class);
+        Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenAnswer(
+                new Answer<PutRecordBatchResult>() {
+                    @Override
+                    public PutRecordBatchResult answer(InvocationOnMock invocation) {
+                        PutRecordBatchRequest request = (PutRecordBatchRequest) invocation
+                                .getArguments()[0];
+                        List<PutRecordBatchResponseEntry> entries = new ArrayList<PutRecordBatchResponseEntry>();
+                        for (Record record : request.getRecords()) {
+                            wire[0] += record.getData().remaining();
+                            wire[1]++;
+                            entries.add(new PutRecordBatchResponseEntry().withRecordId("id"));
+                        }
+                        return new PutRecordBatchResult().withFailedPutCount(0)
+                                .withRequestResponses(entries);
+                    }
+                });
+        return client;
+    }
+
+    private long[] send(FirehoseRecordSender sender, List<byte[]> data, int batchSize) {
+        wire[0] = 0;
+        wire[1] = 0;
+        for (int i = 0; i < data.size(); i += batchSize) {
+            sender.sendBatch("stream", data.subList(i, Math.min(data.size(), i + batchSize)));
+        }
+        return new long[] {
+                wire[0], wire[1]
+        };
+    }
+
+    private static List<byte[]> clickstream() {
+        Random random = new Random(1);
+        List<byte[]> data = new ArrayList<byte[]>(RECORD_COUNT);
+        long timestamp = 1560000000000L;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            timestamp += random.nextInt(5000);
+            String json = "{\"event_type\":\"" + EVENTS[random.nextInt(EVENTS.length)]
+                    + "\",\"timestamp\":" + timestamp
+                    + ",\"session_id\":\"session-" + (i / 200)
+                    + "\",\"user_id\":\"user-" + random.nextInt(1000)
+                    + "\",\"page\":\"/products/" + random.nextInt(300)
+                    + "\",\"device\":{\"platform\":\"Android\",\"model\":\"Pixel 3\","
+                    + "\"app_version\":\"2.14.0\"}}\n";
+            data.add(json.getBytes(StringUtils.UTF8));
+        }
+        return data;
+    }
+}
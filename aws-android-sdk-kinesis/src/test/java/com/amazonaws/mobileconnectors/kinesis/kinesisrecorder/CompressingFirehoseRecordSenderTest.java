@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchRequest;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResponseEntry;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordBatchResult;
+import com.amazonaws.services.kinesisfirehose.model.Record;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class CompressingFirehoseRecordSenderTest {
+
+    private static final String USER_AGENT = "test_agent";
+
+    private AmazonKinesisFirehose client;
+
+    @Before
+    public void setup() {
+        client = Mockito.mock(AmazonKinesisFirehose.class);
+    }
+
+    @Test
+    public void testSendBatchCompressesIntoOneRecord() throws IOException {
+        CompressingFirehoseRecordSender sender = new CompressingFirehoseRecordSender(client,
+                USER_AGENT);
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < 100; i++) {
+            data.add(("{\"event\":\"click\",\"id\":" + i + "}").getBytes(StringUtils.UTF8));
+        }
+        // records that already end with a newline are not given another
+        data.add("last\n".getBytes(StringUtils.UTF8));
+        Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class)))
+                .thenAnswer(result(-1));
+
+        List<byte[]> failures = sender.sendBatch("stream", data);
+
+        assertTrue("no failures", failures.isEmpty());
+        List<Record> records = capturedRecords();
+        assertEquals(1, records.size());
+        String decompressed = gunzip(records);
+        String[] lines = decompressed.split("\n", -1);
+        assertEquals("101 lines and the trailing empty string", 102, lines.length);
+        assertEquals("{\"event\":\"click\",\"id\":0}", lines[0]);
+        assertEquals("last", lines[100]);
+    }
+
+    @Test
+    public void testGroupsStayWithinMaxRecordSizeAndConcatenate() throws IOException {
+        int maxSize = 4 * 1024;
+        CompressingFirehoseRecordSender sender = new CompressingFirehoseRecordSender(client,
+                USER_AGENT, maxSize);
+        // random data barely compresses, so several groups are needed
+        Random random = new Random(42);
+        List<byte[]> data = new ArrayList<byte[]>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < 400; j++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            data.add(line.toString().getBytes(StringUtils.UTF8));
+            expected.append(line).append('\n');
+        }
+        Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class)))
+                .thenAnswer(result(-1));
+
+        sender.sendBatch("stream", data);
+
+        List<Record> records = capturedRecords();
+        assertTrue("split into groups", records.size() > 1);
+        for (Record record : records) {
+            assertTrue(record.getData().remaining() <= maxSize);
+        }
+        // what S3 ends up with: the records back to back
+        assertEquals(expected.toString(), gunzip(records));
+    }
+
+    @Test
+    public void testFailedGroupReturnsAllItsRecords() {
+        CompressingFirehoseRecordSender sender = new CompressingFirehoseRecordSender(client,
+                USER_AGENT, 1024);
+        Random random = new Random(7);
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < 8; i++) {
+            byte[] d = new byte[300];
+            random.nextBytes(d);
+            data.add(d);
+        }
+        // fail the first group
+        Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class)))
+                .thenAnswer(result(0));
+
+        List<byte[]> failures = sender.sendBatch("stream", data);
+
+        List<Record> records = capturedRecords();
+        assertTrue(records.size() > 1);
+        assertTrue("all records of the first group", failures.size() > 0
+                && failures.size() < data.size());
+        assertTrue(failures.get(0) == data.get(0));
+    }
+
+    /**
+     * Answers a request with one response entry per Firehose record.
+     */
+    private static Answer<PutRecordBatchResult> result(final int failedIndex) {
+        return new Answer<PutRecordBatchResult>() {
+            @Override
+            public PutRecordBatchResult answer(InvocationOnMock invocation) {
+                PutRecordBatchRequest request = (PutRecordBatchRequest) invocation
+                        .getArguments()[0];
+                PutRecordBatchResult result = new PutRecordBatchResult();
+                List<PutRecordBatchResponseEntry> entries = new ArrayList<PutRecordBatchResponseEntry>();
+                for (int i = 0; i < request.getRecords().size(); i++) {
+                    PutRecordBatchResponseEntry entry = new PutRecordBatchResponseEntry();
+                    if (i == failedIndex) {
+                        entry.setErrorCode("ServiceUnavailable");
+                    } else {
+                        entry.setRecordId("record_id_" + i);
+                    }
+                    entries.add(entry);
+                }
+                result.setFailedPutCount(failedIndex < 0 ? 0 : 1);
+                result.setRequestResponses(entries);
+                return result;
+            }
+        };
+    }
+
+    private List<Record> capturedRecords() {
+        ArgumentCaptor<PutRecordBatchRequest> argument = ArgumentCaptor
+                .forClass(PutRecordBatchRequest.class);
+        Mockito.verify(client).putRecordBatch(argument.capture());
+        return argument.getValue().getRecords();
+    }
+
+    /**
+     * Decompresses the records written back to back, as in an S3 object.
+     */
+    private static String gunzip(List<Record> records) throws IOException {
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (Record record : records) {
+            ByteBuffer buffer = record.getData().duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            concatenated.write(bytes);
+        }
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(
+                concatenated.toByteArray()));
+        return new String(IOUtils.toByteArray(in), StringUtils.UTF8);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonClientException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FlushSchedulerTest {
+    private static final String STREAM_NAME = "stream";
+    private static final byte[] DATA = new byte[100];
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Records the time of each sendBatch call, and fails the first few.
+     */
+    static class RecordingSender implements RecordSender {
+        final List<Long> attempts = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch latch;
+        volatile int failuresLeft;
+
+        RecordingSender(int expectedAttempts, int failures) {
+            this.latch = new CountDownLatch(expectedAttempts);
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+            attempts.add(System.currentTimeMillis());
+            latch.countDown();
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new AmazonClientException("offline", new IOException());
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isRecoverable(AmazonClientException ace) {
+            return ace.getCause() instanceof IOException;
+        }
+    }
+
+    static class TestRecorder extends AbstractKinesisRecorder {
+        private final RecordSender sender;
+
+        TestRecorder(SegmentedRecordStore recordStore, KinesisRecorderConfig config,
+                RecordSender sender) {
+            super(recordStore, config);
+            this.sender = sender;
+        }
+
+        @Override
+        protected RecordSender getRecordSender() {
+            return sender;
+        }
+    }
+
+    private TestRecorder createRecorder(KinesisRecorderConfig config, RecordSender sender)
+            throws IOException {
+        return new TestRecorder(new SegmentedRecordStore(temp.newFolder(), "records",
+                config.getMaxStorageSize()), config, sender);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        RecordingSender sender = new RecordingSender(1, 0);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushRecordCount(1), sender);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertFalse("no flush", sender.latch.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRecordCountTriggersFlush() throws Exception {
+        RecordingSender sender = new RecordingSender(1, 0);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushRecordCount(5)
+                .withAutoFlushPendingBytes(0)
+                .withAutoFlushMaxRecordAge(0), sender);
+        for (int i = 0; i < 4; i++) {
+            recorder.saveRecord(DATA, STREAM_NAME);
+        }
+        assertFalse("below threshold", sender.latch.await(300, TimeUnit.MILLISECONDS));
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertTrue("flushed", sender.latch.await(5, TimeUnit.SECONDS));
+        waitForEmptyStore(recorder);
+    }
+
+    @Test
+    public void testPendingBytesTriggersFlush() throws Exception {
+        RecordingSender sender = new RecordingSender(1, 0);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushRecordCount(0)
+                .withAutoFlushPendingBytes(DATA.length * 3)
+                .withAutoFlushMaxRecordAge(0), sender);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertFalse("below threshold", sender.latch.await(300, TimeUnit.MILLISECONDS));
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertTrue("flushed", sender.latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMaxRecordAgeTriggersFlush() throws Exception {
+        RecordingSender sender = new RecordingSender(1, 0);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushMaxRecordAge(500), sender);
+        long saved = System.currentTimeMillis();
+        recorder.saveRecord(DATA, STREAM_NAME);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertTrue("flushed", sender.latch.await(5, TimeUnit.SECONDS));
+        assertTrue("waited for the oldest record to age",
+                sender.attempts.get(0) - saved >= 450);
+        waitForEmptyStore(recorder);
+    }
+
+    @Test
+    public void testBackoffAfterRecoverableFailures() throws Exception {
+        RecordingSender sender = new RecordingSender(3, 2);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushRecordCount(1)
+                .withAutoFlushBackoff(200, 10000), sender);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertTrue("retried", sender.latch.await(5, TimeUnit.SECONDS));
+
+        long firstDelay = sender.attempts.get(1) - sender.attempts.get(0);
+        long secondDelay = sender.attempts.get(2) - sender.attempts.get(1);
+        assertTrue("first backoff " + firstDelay, firstDelay >= 180);
+        assertTrue("backoff doubles " + secondDelay, secondDelay >= 380);
+        waitForEmptyStore(recorder);
+        assertEquals(3, sender.attempts.size());
+    }
+
+    @Test
+    public void testThresholdsDontTriggerDuringBackoff() throws Exception {
+        RecordingSender sender = new RecordingSender(2, 1);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushRecordCount(1)
+                .withAutoFlushBackoff(1000, 1000), sender);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        Thread.sleep(200);
+        assertEquals("first attempt failed", 1, sender.attempts.size());
+        recorder.saveRecord(DATA, STREAM_NAME);
+        recorder.saveRecord(DATA, STREAM_NAME);
+        Thread.sleep(200);
+        assertEquals("backing off", 1, sender.attempts.size());
+        assertTrue("retried", sender.latch.await(5, TimeUnit.SECONDS));
+        waitForEmptyStore(recorder);
+    }
+
+    @Test
+    public void testBackoffIsCappedWithoutOverflow() throws Exception {
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushBackoff(1000, Long.MAX_VALUE / 2), new RecordingSender(1, 0));
+        FlushScheduler scheduler = new FlushScheduler(recorder,
+                recorder.getKinesisRecorderConfig());
+        assertEquals(1000, scheduler.backoff(1));
+        assertEquals(4000, scheduler.backoff(3));
+        assertEquals(Long.MAX_VALUE / 2, scheduler.backoff(100));
+        assertEquals(Long.MAX_VALUE / 2, scheduler.backoff(Integer.MAX_VALUE));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testShutdownStopsFlushes() throws Exception {
+        RecordingSender sender = new RecordingSender(1, 0);
+        TestRecorder recorder = createRecorder(new KinesisRecorderConfig()
+                .withAutoFlushEnabled(true)
+                .withAutoFlushRecordCount(1), sender);
+        recorder.shutdown();
+        recorder.saveRecord(DATA, STREAM_NAME);
+        assertFalse("no flush", sender.latch.await(300, TimeUnit.MILLISECONDS));
+
+        recorder.submitAllRecords();
+        assertEquals(1, sender.attempts.size());
+        assertEquals(0, recorder.getDiskBytesUsed());
+    }
+
+    private void waitForEmptyStore(AbstractKinesisRecorder recorder) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (recorder.getDiskBytesUsed() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("all records sent", 0, recorder.getDiskBytesUsed());
+    }
+}
@@ -16,6 +16,8 @@
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.ClientConfiguration;
 
@@ -58,11 +60,27 @@ public class KinesisRecorderConfigTest {
     public void copyConstructor() {
         KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
         kConfig.withMaxStorageSize(5);
+        kConfig.withMaxInFlightBatches(4);
+        kConfig.withAggregationEnabled(true).withMaxAggregatedRecordSize(2048);
+        kConfig.withCompressionEnabled(true);
+        kConfig.withAutoFlushEnabled(true).withAutoFlushRecordCount(10)
+                .withAutoFlushPendingBytes(1000).withAutoFlushMaxRecordAge(2000)
+                .withAutoFlushBackoff(100, 800);
 
         KinesisRecorderConfig copiedConfig = new KinesisRecorderConfig(kConfig);
 
         assertEquals(kConfig.getMaxStorageSize(),
                 copiedConfig.getMaxStorageSize());
+        assertEquals(4, copiedConfig.getMaxInFlightBatches());
+        assertTrue(copiedConfig.isAggregationEnabled());
+        assertEquals(2048, copiedConfig.getMaxAggregatedRecordSize());
+        assertTrue(copiedConfig.isCompressionEnabled());
+        assertTrue(copiedConfig.isAutoFlushEnabled());
+        assertEquals(10, copiedConfig.getAutoFlushRecordCount());
+        assertEquals(1000, copiedConfig.getAutoFlushPendingBytes());
+        assertEquals(2000, copiedConfig.getAutoFlushMaxRecordAge());
+        assertEquals(100, copiedConfig.getAutoFlushMinBackoff());
+        assertEquals(800, copiedConfig.getAutoFlushMaxBackoff());
 
     }
 
@@ -72,6 +90,28 @@ public class KinesisRecorderConfigTest {
         KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
         kConfig.withMaxStorageSize(100);
         assertEquals(kConfig.getMaxStorageSize(), 100);
+        assertEquals("one batch at a time by default", 1, kConfig.getMaxInFlightBatches());
+        kConfig.withMaxInFlightBatches(8);
+        assertEquals(8, kConfig.getMaxInFlightBatches());
+        assertFalse("aggregation is opt-in", kConfig.isAggregationEnabled());
+        assertEquals(50 * 1024, kConfig.getMaxAggregatedRecordSize());
+        assertFalse("compression is opt-in", kConfig.isCompressionEnabled());
+        assertFalse("auto flush is opt-in", kConfig.isAutoFlushEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxInFlightBatches() {
+        new KinesisRecorderConfig().withMaxInFlightBatches(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxAggregatedRecordSize() {
+        new KinesisRecorderConfig().withMaxAggregatedRecordSize(1024 * 1024 + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAutoFlushBackoff() {
+        new KinesisRecorderConfig().withAutoFlushBackoff(1000, 500);
     }
 
 }
@@ -140,6 +140,40 @@ public class KinesisStreamRecordSenderTest {
         }
     }
 
+    @Test
+    public void testSendAggregatedBatch() {
+        KinesisStreamRecordSender aggregatingSender = new KinesisStreamRecordSender(client,
+                USER_AGENT, "key", new RecordAggregator(1024));
+
+        // 16 records of 100 bytes need two aggregated records, fail the second
+        PutRecordsResult result = new PutRecordsResult();
+        result.setFailedRecordCount(1);
+        PutRecordsResultEntry ok = new PutRecordsResultEntry();
+        ok.setSequenceNumber("record_id_0");
+        PutRecordsResultEntry failed = new PutRecordsResultEntry();
+        failed.setErrorCode("ProvisionedThroughputExceededException");
+        List<PutRecordsResultEntry> entries = new ArrayList<PutRecordsResultEntry>();
+        entries.add(ok);
+        entries.add(failed);
+        result.setRecords(entries);
+
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < 16; i++) {
+            data.add(new byte[100]);
+        }
+        Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
+        List<byte[]> failures = aggregatingSender.sendBatch("stream", data);
+
+        ArgumentCaptor<PutRecordsRequest> argument = ArgumentCaptor
+                .forClass(PutRecordsRequest.class);
+        Mockito.verify(client).putRecords(argument.capture());
+        List<PutRecordsRequestEntry> records = argument.getValue().getRecords();
+        assertEquals(2, records.size());
+        assertEquals("key", records.get(0).getPartitionKey());
+        assertEquals("key", records.get(1).getPartitionKey());
+        assertEquals("user records of the failed record are retried", 7, failures.size());
+    }
+
     @Test(expected = AmazonClientException.class)
     public void testSendBatchException() {
         String streamName = "stream";
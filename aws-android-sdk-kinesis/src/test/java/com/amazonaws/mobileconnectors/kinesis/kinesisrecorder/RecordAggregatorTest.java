@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.RecordAggregator.AggregatedRecord;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RecordAggregatorTest {
+
+    private final RecordAggregator aggregator = new RecordAggregator(
+            RecordAggregator.DEFAULT_MAX_AGGREGATED_RECORD_SIZE);
+
+    @Test
+    public void testAggregateIsKplCompatible() throws Exception {
+        List<byte[]> data = records(10, 100);
+        List<AggregatedRecord> result = aggregator.aggregate(
+                Collections.<String> nCopies(data.size(), "key"), data);
+
+        assertEquals(1, result.size());
+        AggregatedRecord record = result.get(0);
+        assertEquals("key", record.partitionKey);
+        assertEquals(10, record.userRecords.size());
+        assertEquals(Arrays.asList("key"), partitionKeyTable(record.data));
+        List<byte[]> decoded = deaggregate(record.data);
+        assertEquals(10, decoded.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(Arrays.equals(data.get(i), decoded.get(i)));
+        }
+    }
+
+    @Test
+    public void testAggregatedRecordsStayWithinMaxSize() throws Exception {
+        int maxSize = 1024;
+        RecordAggregator small = new RecordAggregator(maxSize);
+        List<byte[]> data = records(100, 100);
+        List<AggregatedRecord> result = small.aggregate(
+                Collections.<String> nCopies(data.size(), null), data);
+
+        assertTrue("split into several records", result.size() > 1);
+        List<byte[]> decoded = new ArrayList<byte[]>();
+        List<String> keys = new ArrayList<String>();
+        for (AggregatedRecord record : result) {
+            assertTrue("record size " + record.data.length,
+                    record.data.length
+                            + record.partitionKey.getBytes(StringUtils.UTF8).length <= maxSize);
+            assertNotNull("random partition key", record.partitionKey);
+            keys.add(record.partitionKey);
+            decoded.addAll(deaggregate(record.data));
+        }
+        assertNotEquals(keys.get(0), keys.get(1));
+        assertEquals(100, decoded.size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(Arrays.equals(data.get(i), decoded.get(i)));
+        }
+    }
+
+    @Test
+    public void testRecordsAreGroupedByPartitionKey() throws Exception {
+        List<byte[]> data = records(6, 10);
+        List<String> keys = Arrays.asList("a", "b", "a", "b", "a", "c");
+        List<AggregatedRecord> result = aggregator.aggregate(keys, data);
+
+        assertEquals(3, result.size());
+        assertEquals("a", result.get(0).partitionKey);
+        List<byte[]> a = deaggregate(result.get(0).data);
+        assertEquals(3, a.size());
+        assertTrue(Arrays.equals(data.get(0), a.get(0)));
+        assertTrue(Arrays.equals(data.get(2), a.get(1)));
+        assertTrue(Arrays.equals(data.get(4), a.get(2)));
+        assertEquals("b", result.get(1).partitionKey);
+        assertEquals(2, deaggregate(result.get(1).data).size());
+        assertEquals("c", result.get(2).partitionKey);
+        assertTrue("single record is sent as is",
+                Arrays.equals(data.get(5), result.get(2).data));
+    }
+
+    @Test
+    public void testOversizedRecordIsSentAsIs() {
+        byte[] large = new byte[2048];
+        List<AggregatedRecord> result = new RecordAggregator(1024).aggregate(
+                Arrays.asList("key", "key"), Arrays.asList(large, new byte[10]));
+        assertEquals(2, result.size());
+        assertTrue(result.get(0).data == large);
+    }
+
+    private static List<byte[]> records(int count, int size) {
+        List<byte[]> data = new ArrayList<byte[]>();
+        for (int i = 0; i < count; i++) {
+            byte[] d = new byte[size];
+            Arrays.fill(d, (byte) i);
+            data.add(d);
+        }
+        return data;
+    }
+
+    /**
+     * Minimal protobuf reader that follows what KPL de-aggregation does:
+     * checks magic and MD5, then reads the record data fields.
+     */
+    private static List<byte[]> deaggregate(byte[] record) throws Exception {
+        ByteBuffer message = checkedMessage(record);
+        List<byte[]> records = new ArrayList<byte[]>();
+        while (message.hasRemaining()) {
+            int tag = (int) readVarint(message);
+            byte[] field = readField(message, tag);
+            if (tag >>> 3 == 3) {
+                ByteBuffer entry = ByteBuffer.wrap(field);
+                byte[] data = null;
+                while (entry.hasRemaining()) {
+                    int entryTag = (int) readVarint(entry);
+                    byte[] value = readField(entry, entryTag);
+                    if (entryTag >>> 3 == 3) {
+                        data = value;
+                    }
+                }
+                assertNotNull("record data", data);
+                records.add(data);
+            }
+        }
+        return records;
+    }
+
+    private static List<String> partitionKeyTable(byte[] record) throws Exception {
+        ByteBuffer message = checkedMessage(record);
+        List<String> keys = new ArrayList<String>();
+        while (message.hasRemaining()) {
+            int tag = (int) readVarint(message);
+            byte[] field = readField(message, tag);
+            if (tag >>> 3 == 1) {
+                keys.add(new String(field, StringUtils.UTF8));
+            }
+        }
+        return keys;
+    }
+
+    private static ByteBuffer checkedMessage(byte[] record) throws Exception {
+        byte[] magic = Arrays.copyOfRange(record, 0, 4);
+        assertTrue("magic", Arrays.equals(RecordAggregator.AGGREGATED_RECORD_MAGIC, magic));
+        byte[] message = Arrays.copyOfRange(record, 4, record.length - 16);
+        byte[] digest = Arrays.copyOfRange(record, record.length - 16, record.length);
+        assertTrue("md5", Arrays.equals(MessageDigest.getInstance("MD5").digest(message), digest));
+        return ByteBuffer.wrap(message);
+    }
+
+    private static byte[] readField(ByteBuffer buffer, int tag) {
+        if ((tag & 0x7) == 0) {
+            readVarint(buffer);
+            return null;
+        }
+        assertEquals("length delimited", 2, tag & 0x7);
+        byte[] value = new byte[(int) readVarint(buffer)];
+        buffer.get(value);
+        return value;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
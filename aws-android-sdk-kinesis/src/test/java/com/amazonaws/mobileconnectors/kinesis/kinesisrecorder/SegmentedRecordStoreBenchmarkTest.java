@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.AmazonClientException;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures saveRecord and submitAllRecords throughput of the recorder at
+ * backlog sizes from 1 MB to 100 MB. The sender acknowledges every record
+ * without network I/O, so the numbers reflect the cost of the record store.
+ * It writes up to 100 MB to disk and is therefore not run with the unit tests.
+ */
+@Ignore("Benchmark, run manually")
+public class SegmentedRecordStoreBenchmarkTest {
+    private static final String STREAM_NAME = "benchmark_stream";
+    private static final int RECORD_SIZE = 1024;
+    private static final long MB = 1024 * 1024L;
+    private static final long[] BACKLOG_SIZES = {
+            1 * MB, 10 * MB, 100 * MB
+    };
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    static class BenchmarkRecorder extends AbstractKinesisRecorder {
+        private final RecordSender sender = new RecordSender() {
+            @Override
+            public List<byte[]> sendBatch(String streamName, List<byte[]> data) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isRecoverable(AmazonClientException ace) {
+                return true;
+            }
+        };
+
+        BenchmarkRecorder(SegmentedRecordStore recordStore, KinesisRecorderConfig config) {
+            super(recordStore, config);
+        }
+
+        @Override
+        protected RecordSender getRecordSender() {
+            return sender;
+        }
+    }
+
+    @Test
+    public void benchmarkSaveAndSubmit() throws IOException {
+        byte[] data = new byte[RECORD_SIZE];
+        new Random().nextBytes(data);
+
+        for (long backlog : BACKLOG_SIZES) {
+            KinesisRecorderConfig config = new KinesisRecorderConfig()
+                    .withMaxStorageSize(backlog * 2);
+            BenchmarkRecorder recorder = new BenchmarkRecorder(new SegmentedRecordStore(
+                    temp.newFolder(), "benchmark_records", config.getMaxStorageSize()), config);
+            int records = (int) (backlog / RECORD_SIZE);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                recorder.saveRecord(data, STREAM_NAME);
+            }
+            long saveNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            recorder.submitAllRecords();
+            long submitNanos = System.nanoTime() - start;
+            assertEquals("backlog drained", 0, recorder.getDiskBytesUsed());
+
+            System.out.println(String.format(
+                    "backlog %4d MB: saveRecord %8.0f records/s, submit %8.0f records/s (%.1f MB/s)",
+                    backlog / MB,
+                    records / (saveNanos / 1e9),
+                    records / (submitNanos / 1e9),
+                    (backlog / (double) MB) / (submitNanos / 1e9)));
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.SegmentedRecordStore.Record;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.SegmentedRecordStore.RecordIterator;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+public class SegmentedRecordStoreTest {
+
+    private static final String STREAM_NAME = "stream";
+    private static final String RECORD_FILE_NAME = "records";
+    private static final long MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temp.newFolder();
+    }
+
+    @Test
+    public void testPutIterateAndRemove() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(store.put(STREAM_NAME, bytes(i)));
+        }
+
+        RecordIterator iter = store.iterator();
+        int counter = 0;
+        while (iter.hasNext()) {
+            counter++;
+            Record record = iter.next();
+            assertEquals(STREAM_NAME, record.streamName);
+            assertEquals(String.valueOf(counter), new String(record.data, StringUtils.UTF8));
+            if (counter == 5) {
+                iter.removeReadRecords();
+                assertEquals("5 records left", 5, count(store));
+            }
+        }
+        assertEquals(10, counter);
+        iter.removeReadRecords();
+        iter.close();
+        assertEquals("all records removed", 0, store.getFileSize());
+
+        iter = store.iterator();
+        assertFalse(iter.hasNext());
+        assertNull(iter.next());
+
+        store.put(STREAM_NAME, bytes(11));
+        assertEquals("11", new String(iter.peek().data, StringUtils.UTF8));
+        assertEquals("11", new String(iter.peek().data, StringUtils.UTF8));
+        assertEquals("11", new String(iter.next().data, StringUtils.UTF8));
+        iter.close();
+    }
+
+    @Test
+    public void testRecordsRoundTripAcrossStreams() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        byte[] binary = new byte[256];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) i;
+        }
+        store.put("a", binary);
+        store.put("b.stream-name_1", bytes(2));
+
+        RecordIterator iter = store.iterator();
+        Record first = iter.next();
+        assertEquals("a", first.streamName);
+        assertTrue(Arrays.equals(binary, first.data));
+        Record second = iter.next();
+        assertEquals("b.stream-name_1", second.streamName);
+        assertEquals("2", new String(second.data, StringUtils.UTF8));
+        assertFalse(iter.hasNext());
+        iter.close();
+    }
+
+    @Test
+    public void testFullyReadSegmentsAreDeleted() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE, 1024);
+        for (int i = 0; i < 20; i++) {
+            store.put(STREAM_NAME, new byte[200]);
+        }
+        int segmentCount = segmentFiles().length;
+        assertTrue("multiple segments", segmentCount > 3);
+
+        RecordIterator iter = store.iterator();
+        for (int i = 0; i < 10; i++) {
+            iter.next();
+        }
+        iter.removeReadRecords();
+        assertTrue("read segments deleted", segmentFiles().length < segmentCount);
+        assertEquals(10, count(store));
+
+        while (iter.hasNext()) {
+            iter.next();
+        }
+        iter.removeReadRecords();
+        iter.close();
+        assertEquals("no segments left", 0, segmentFiles().length);
+        assertEquals(0, store.getFileSize());
+    }
+
+    @Test
+    public void testCursorSurvivesRestart() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        for (int i = 1; i <= 10; i++) {
+            store.put(STREAM_NAME, bytes(i));
+        }
+        RecordIterator iter = store.iterator();
+        for (int i = 0; i < 4; i++) {
+            iter.next();
+        }
+        iter.removeReadRecords();
+        iter.close();
+
+        SegmentedRecordStore reopened = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        reopened.put(STREAM_NAME, bytes(11));
+        iter = reopened.iterator();
+        int expected = 5;
+        while (iter.hasNext()) {
+            assertEquals(String.valueOf(expected++), new String(iter.next().data,
+                    StringUtils.UTF8));
+        }
+        iter.close();
+        assertEquals("records 5 to 11", 12, expected);
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        store.put(STREAM_NAME, bytes(1));
+        store.put(STREAM_NAME, bytes(2));
+        store.put(STREAM_NAME, bytes(3));
+
+        // flip the data byte of the second record
+        File segment = segmentFiles()[0];
+        int recordLength = SegmentedRecordStore.encode(STREAM_NAME, bytes(1)).length;
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.seek(2L * recordLength - 1);
+        raf.write('x');
+        raf.close();
+
+        RecordIterator iter = store.iterator();
+        assertEquals("1", new String(iter.next().data, StringUtils.UTF8));
+        assertEquals("3", new String(iter.next().data, StringUtils.UTF8));
+        assertFalse(iter.hasNext());
+        iter.close();
+    }
+
+    @Test
+    public void testTruncatedTailIsIgnored() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        store.put(STREAM_NAME, bytes(1));
+        store.put(STREAM_NAME, bytes(2));
+
+        // simulate a crash in the middle of writing a record
+        File segment = segmentFiles()[0];
+        byte[] partial = SegmentedRecordStore.encode(STREAM_NAME, bytes(3));
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(partial, 0, partial.length / 2);
+        out.close();
+
+        SegmentedRecordStore reopened = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        reopened.put(STREAM_NAME, bytes(4));
+        RecordIterator iter = reopened.iterator();
+        assertEquals("1", new String(iter.next().data, StringUtils.UTF8));
+        assertEquals("2", new String(iter.next().data, StringUtils.UTF8));
+        assertEquals("4", new String(iter.next().data, StringUtils.UTF8));
+        assertFalse(iter.hasNext());
+        iter.close();
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoTornRecord() throws IOException {
+        final boolean[] failNextWrite = new boolean[1];
+        FileManager fileManager = new FileManager(directory) {
+            @Override
+            public OutputStream newOutputStream(File file, boolean append)
+                    throws FileNotFoundException {
+                return new FilterOutputStream(super.newOutputStream(file, append)) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (failNextWrite[0]) {
+                            failNextWrite[0] = false;
+                            out.write(b, off, len / 2);
+                            throw new IOException("disk full");
+                        }
+                        out.write(b, off, len);
+                    }
+                };
+            }
+        };
+        SegmentedRecordStore store = new SegmentedRecordStore(fileManager, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE, SegmentedRecordStore.DEFAULT_SEGMENT_SIZE);
+        store.put(STREAM_NAME, bytes(1));
+        failNextWrite[0] = true;
+        try {
+            store.put(STREAM_NAME, bytes(2));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        store.put(STREAM_NAME, bytes(3));
+
+        int recordLength = SegmentedRecordStore.encode(STREAM_NAME, bytes(1)).length;
+        assertEquals(2L * recordLength, store.getFileSize());
+        RecordIterator iter = store.iterator();
+        assertEquals("1", new String(iter.next().data, StringUtils.UTF8));
+        assertEquals("3", new String(iter.next().data, StringUtils.UTF8));
+        assertFalse(iter.hasNext());
+        iter.close();
+    }
+
+    @Test
+    public void testWhenWritingExceedsMaxStorageSize_noMoreRecordsWritten() throws IOException {
+        int recordLength = SegmentedRecordStore.encode(STREAM_NAME, bytes(0)).length;
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                recordLength * 10L);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(store.put(STREAM_NAME, bytes(i)));
+        }
+        assertEquals(recordLength * 10L, store.getFileSize());
+        assertFalse(store.put(STREAM_NAME, bytes(0)));
+        assertEquals(recordLength * 10L, store.getFileSize());
+    }
+
+    @Test
+    public void testRemoveAllRecords() throws IOException {
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE, 64);
+        for (int i = 0; i < 10; i++) {
+            store.put(STREAM_NAME, bytes(i));
+        }
+        RecordIterator iter = store.iterator();
+        iter.next();
+        iter.removeAllRecords();
+        assertEquals(0, store.getFileSize());
+        assertEquals(0, segmentFiles().length);
+        assertFalse(iter.hasNext());
+
+        store.put(STREAM_NAME, bytes(42));
+        assertEquals("42", new String(iter.next().data, StringUtils.UTF8));
+        iter.close();
+    }
+
+    @Test
+    public void testMigrateTextRecords() throws IOException {
+        FileRecordStore textStore = new FileRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        for (int i = 0; i < 5; i++) {
+            textStore.put(FileRecordParser.asString(STREAM_NAME, bytes(i)));
+        }
+        textStore.put("corrupted line");
+
+        SegmentedRecordStore store = new SegmentedRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        assertEquals(5, count(store));
+        assertFalse("text file deleted", new File(new File(directory,
+                Constants.RECORDS_DIRECTORY), RECORD_FILE_NAME).exists());
+    }
+
+    private File[] segmentFiles() {
+        File segmentDirectory = new File(new File(directory, Constants.RECORDS_DIRECTORY),
+                RECORD_FILE_NAME + SegmentedRecordStore.SEGMENTS_DIRECTORY_SUFFIX);
+        File[] files = segmentDirectory.listFiles();
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(SegmentedRecordStore.SEGMENT_FILE_SUFFIX)) {
+                count++;
+            }
+        }
+        File[] segments = new File[count];
+        count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(SegmentedRecordStore.SEGMENT_FILE_SUFFIX)) {
+                segments[count++] = file;
+            }
+        }
+        return segments;
+    }
+
+    private int count(SegmentedRecordStore store) throws IOException {
+        RecordIterator iter = store.iterator();
+        int count = 0;
+        while (iter.next() != null) {
+            count++;
+        }
+        iter.close();
+        return count;
+    }
+
+    private byte[] bytes(int i) {
+        return String.valueOf(i).getBytes(StringUtils.UTF8);
+    }
+}
@@ -38,6 +38,8 @@ public class PinpointConfiguration {
     private boolean enableEvents = true;
     private boolean enableTargeting = true;
     private boolean shouldPostNotificationsInForeground = false;
+    private boolean asyncEventRecording = false;
+    private boolean compressEventSubmissions = false;
     private ClientConfiguration clientConfiguration;
     private AWSCredentialsProvider credentialsProvider;
     private PinpointCallback<PinpointManager> initCompletionCallback;
@@ -370,6 +372,49 @@ public class PinpointConfiguration {
         return this;
     }
 
+    /**
+     * Configuration option to record events asynchronously. Recorded events are buffered in memory and written to
+     * the local database on a background thread, many events per transaction, so recording an event doesn't wait
+     * for the database. Buffered events are written before events are submitted and when the database is closed.
+     * By default events are written on the thread that records them.
+     *
+     * @param asyncEventRecording true to record events asynchronously.
+     * @return the current PinpointConfiguration instance.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public PinpointConfiguration withAsyncEventRecording(final boolean asyncEventRecording) {
+        this.asyncEventRecording = asyncEventRecording;
+        return this;
+    }
+
+    /**
+     * @return true if events are recorded asynchronously, otherwise false.
+     */
+    public boolean getAsyncEventRecording() {
+        return asyncEventRecording;
+    }
+
+    /**
+     * Configuration option to gzip the body of the requests that submit events to Pinpoint. Batches of events are
+     * mostly repeated attribute names and values, so they compress well and take much less time to upload on a slow
+     * connection. By default request bodies are not compressed.
+     *
+     * @param compressEventSubmissions true to compress event submissions.
+     * @return the current PinpointConfiguration instance.
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public PinpointConfiguration withCompressEventSubmissions(final boolean compressEventSubmissions) {
+        this.compressEventSubmissions = compressEventSubmissions;
+        return this;
+    }
+
+    /**
+     * @return true if the body of event submissions is gzipped, otherwise false.
+     */
+    public boolean getCompressEventSubmissions() {
+        return compressEventSubmissions;
+    }
+
     /**
      * @return true if notifications should be posted while the app is in the foreground, otherwise false.
      */
@@ -16,6 +16,7 @@
 package com.amazonaws.mobileconnectors.pinpoint.analytics;
 
 import androidx.core.util.Consumer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -24,6 +25,7 @@ import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -79,6 +81,18 @@ public class AnalyticsClient implements JSONSerializable {
     private final Map<String, Map<String, String>> eventTypeAttributes = new ConcurrentHashMap<String, Map<String, String>>();
     private final Map<String, Map<String, Double>> eventTypeMetrics = new ConcurrentHashMap<String, Map<String, Double>>();
     private final Map<String, String> eventSourceAttributes = new ConcurrentHashMap<String, String>();
+    /**
+     * Incremented on every change to the global attributes and metrics,
+     * after the change is made.
+     */
+    private final AtomicLong globalAttributesVersion = new AtomicLong();
+    /**
+     * The global attributes and metrics of each event type, shared by the
+     * events created with them. Snapshots of an older version are replaced
+     * when the next event of their type is created.
+     */
+    private final Map<String, AttributeSnapshot> attributeSnapshots = new ConcurrentHashMap<String, AttributeSnapshot>();
+    private final Map<String, EventAggregator> eventAggregators = new ConcurrentHashMap<String, EventAggregator>();
     private String sessionId;
     private long sessionStartTime;
     private EventRecorder eventRecorder;
@@ -119,30 +133,24 @@ public class AnalyticsClient implements JSONSerializable {
     }
 
     protected AnalyticsEvent createEvent(String eventType, long sessionStart, Long sessionEnd, Long sessionDuration) {
-        final AnalyticsEvent event = AnalyticsEvent.newInstance(context, sessionId, sessionStart, sessionEnd, sessionDuration,
-                                                                System.currentTimeMillis(), eventType);
-
-        for (final Entry<String, String> attr : globalAttributes.entrySet()) {
-            event.addAttribute(attr.getKey(), attr.getValue());
-        }
-
-        if (eventTypeAttributes.containsKey(event.getEventType())) {
-            for (final Entry<String, String> attr : eventTypeAttributes.get(event.getEventType()).entrySet()) {
-                event.addAttribute(attr.getKey(), attr.getValue());
-            }
-        }
-
-        for (final Entry<String, Double> metric : globalMetrics.entrySet()) {
-            event.addMetric(metric.getKey(), metric.getValue());
-        }
-
-        if (eventTypeMetrics.containsKey(event.getEventType())) {
-            for (final Entry<String, Double> metric : eventTypeMetrics.get(event.getEventType()).entrySet()) {
-                event.addMetric(metric.getKey(), metric.getValue());
-            }
-        }
+        return AnalyticsEvent.newInstance(context, getAttributeSnapshot(eventType), sessionId, sessionStart, sessionEnd,
+                                          sessionDuration, System.currentTimeMillis(), eventType);
+    }
 
-        return event;
+    /**
+     * Gets the current global attributes and metrics of an event type,
+     * copying them only if they changed since the last event of the type.
+     */
+    AttributeSnapshot getAttributeSnapshot(final String eventType) {
+        final long version = globalAttributesVersion.get();
+        AttributeSnapshot snapshot = attributeSnapshots.get(eventType);
+        if (snapshot == null || snapshot.getVersion() != version) {
+            // a change made while copying increments the version, so the copy is replaced next time
+            snapshot = AttributeSnapshot.of(version, globalAttributes, eventTypeAttributes.get(eventType),
+                                            globalMetrics, eventTypeMetrics.get(eventType));
+            attributeSnapshots.put(eventType, snapshot);
+        }
+        return snapshot;
     }
 
     /**
@@ -158,9 +166,88 @@ public class AnalyticsClient implements JSONSerializable {
             return;
         }
         final AnalyticsEvent recordEvent = AnalyticsEvent.createFromEvent(context, sessionId, System.currentTimeMillis(), event);
+        final EventAggregator aggregator = eventAggregators.get(recordEvent.getEventType());
+        if (aggregator != null) {
+            final List<AnalyticsEvent> summaries = new ArrayList<AnalyticsEvent>();
+            final boolean aggregated = aggregator.add(recordEvent, summaries);
+            recordSummaries(summaries);
+            if (aggregated) {
+                return;
+            }
+        }
         eventRecorder.recordEvent(recordEvent);
     }
 
+    /**
+     * Rolls up the events of a type recorded from now on into summary events,
+     * as described in {@link EventAggregation}. Replaces the aggregation of
+     * the type, if any, recording the summaries of its open window.
+     *
+     * @param aggregation the aggregation of an event type
+     */
+    public void addEventAggregation(final EventAggregation aggregation) {
+        if (aggregation == null) {
+            log.warn("Null aggregation provided to addEventAggregation.");
+            return;
+        }
+        final EventAggregator previous = eventAggregators.put(aggregation.getEventType(),
+                new EventAggregator(context, aggregation));
+        if (previous != null) {
+            close(previous);
+        }
+    }
+
+    /**
+     * Records the events of a type as they are again, recording the summaries
+     * of the open window of its aggregation.
+     *
+     * @param eventType the type of events no longer aggregated
+     */
+    public void removeEventAggregation(final String eventType) {
+        if (eventType == null) {
+            log.warn("Null eventType provided to removeEventAggregation.");
+            return;
+        }
+        final EventAggregator aggregator = eventAggregators.remove(eventType);
+        if (aggregator != null) {
+            close(aggregator);
+        }
+    }
+
+    /**
+     * Closes the open windows of all aggregations, recording their summary
+     * events. Called when the session is paused or stopped.
+     */
+    public void flushEventAggregations() {
+        for (final EventAggregator aggregator : eventAggregators.values()) {
+            close(aggregator);
+        }
+    }
+
+    private void close(final EventAggregator aggregator) {
+        final List<AnalyticsEvent> summaries = new ArrayList<AnalyticsEvent>();
+        aggregator.close(summaries);
+        recordSummaries(summaries);
+    }
+
+    private void closeExpiredEventAggregations() {
+        if (eventAggregators.isEmpty()) {
+            return;
+        }
+        final List<AnalyticsEvent> summaries = new ArrayList<AnalyticsEvent>();
+        final long now = System.currentTimeMillis();
+        for (final EventAggregator aggregator : eventAggregators.values()) {
+            aggregator.closeExpired(now, summaries);
+        }
+        recordSummaries(summaries);
+    }
+
+    private void recordSummaries(final List<AnalyticsEvent> summaries) {
+        for (final AnalyticsEvent summary : summaries) {
+            eventRecorder.recordEvent(summary);
+        }
+    }
+
     /**
      * Submit all recorded events.
      * If the device is off line, this is a no-op. See
@@ -169,6 +256,7 @@ public class AnalyticsClient implements JSONSerializable {
      */
     public void submitEvents() {
         log.info("Submitting events.");
+        closeExpiredEventAggregations();
         eventRecorder.submitEvents();
     }
 
@@ -186,6 +274,7 @@ public class AnalyticsClient implements JSONSerializable {
         Consumer<Exception> onError
     ) {
         log.info("Submitting events.");
+        closeExpiredEventAggregations();
         try {
             Future<List<AnalyticsEvent>> result = eventRecorder.submitEventsWithResult();
             onSuccess.accept(result.get());
@@ -214,6 +303,7 @@ public class AnalyticsClient implements JSONSerializable {
             return;
         }
         globalAttributes.put(attributeName, attributeValue);
+        globalAttributesVersion.incrementAndGet();
     }
 
     /**
@@ -247,6 +337,7 @@ public class AnalyticsClient implements JSONSerializable {
             eventTypeAttributes.put(eventType, eventAttrs);
         }
         eventAttrs.put(attributeName, attributeValue);
+        globalAttributesVersion.incrementAndGet();
     }
 
     /**
@@ -269,6 +360,7 @@ public class AnalyticsClient implements JSONSerializable {
         }
 
         globalMetrics.put(metricName, metricValue);
+        globalAttributesVersion.incrementAndGet();
     }
 
     /**
@@ -303,6 +395,7 @@ public class AnalyticsClient implements JSONSerializable {
             eventTypeMetrics.put(eventType, eventMetrics);
         }
         eventMetrics.put(metricName, metricValue);
+        globalAttributesVersion.incrementAndGet();
     }
 
     /**
@@ -318,6 +411,7 @@ public class AnalyticsClient implements JSONSerializable {
         }
 
         globalAttributes.remove(attributeName);
+        globalAttributesVersion.incrementAndGet();
     }
 
     /**
@@ -341,6 +435,7 @@ public class AnalyticsClient implements JSONSerializable {
         final Map<String, String> eventAttrs = eventTypeAttributes.get(eventType);
         if (eventAttrs != null) {
             eventAttrs.remove(attributeName);
+            globalAttributesVersion.incrementAndGet();
         }
     }
 
@@ -357,6 +452,7 @@ public class AnalyticsClient implements JSONSerializable {
         }
 
         globalMetrics.remove(metricName);
+        globalAttributesVersion.incrementAndGet();
     }
 
     /**
@@ -380,6 +476,7 @@ public class AnalyticsClient implements JSONSerializable {
         final Map<String, Double> eventMetrics = eventTypeMetrics.get(eventType);
         if (eventMetrics != null) {
             eventMetrics.remove(metricName);
+            globalAttributesVersion.incrementAndGet();
         }
     }
 
@@ -52,6 +52,13 @@ public class AnalyticsEvent implements JSONSerializable {
     private final String sdkName;
     private final String sdkVersion;
     private final PinpointSession session;
+    /**
+     * The global attributes and metrics the event was created with, shared
+     * with other events. It is replaced by {@link AttributeSnapshot#EMPTY}
+     * once they are copied to the maps below, which hold the attributes and
+     * metrics added to this event and take precedence.
+     */
+    private volatile AttributeSnapshot shared = AttributeSnapshot.EMPTY;
     private final Map<String, String> attributes = new ConcurrentHashMap<String, String>();
     private final Map<String, Double> metrics = new ConcurrentHashMap<String, Double>();
     private final Long timestamp;
@@ -71,6 +78,15 @@ public class AnalyticsEvent implements JSONSerializable {
                            final Map<String, Double> metrics, final SDKInfo sdkInfo, final String sessionId, final long sessionStart,
                            final Long sessionEnd, final Long sessionDuration, final long timestamp, final String uniqueId,
                            final AndroidAppDetails appDetails, final AndroidDeviceDetails deviceDetails) {
+        this(eventId, eventType, AttributeSnapshot.EMPTY, attributes, metrics, sdkInfo, sessionId, sessionStart, sessionEnd,
+             sessionDuration, timestamp, uniqueId, appDetails, deviceDetails);
+    }
+
+    private AnalyticsEvent(final String eventId, final String eventType, final AttributeSnapshot shared,
+                           final Map<String, String> attributes, final Map<String, Double> metrics, final SDKInfo sdkInfo,
+                           final String sessionId, final long sessionStart, final Long sessionEnd, final Long sessionDuration,
+                           final long timestamp, final String uniqueId, final AndroidAppDetails appDetails,
+                           final AndroidDeviceDetails deviceDetails) {
         this.eventId = eventId;
         this.sdkName = sdkInfo.getName();
         this.sdkVersion = sdkInfo.getVersion();
@@ -80,6 +96,8 @@ public class AnalyticsEvent implements JSONSerializable {
         this.eventType = eventType;
         this.appDetails = appDetails;
         this.deviceDetails = deviceDetails;
+        this.shared = shared;
+        this.currentNumOfAttributesAndMetrics.set(shared.getCount());
         if (null != attributes) {
             for (final Entry<String, String> kvp : attributes.entrySet()) {
                 this.addAttribute(kvp.getKey(), kvp.getValue());
@@ -103,12 +121,33 @@ public class AnalyticsEvent implements JSONSerializable {
      */
     public static AnalyticsEvent createFromEvent(final PinpointContext context, final String sessionId, final long timestamp,
                                                  final AnalyticsEvent copyEvent) {
-        return new AnalyticsEvent(copyEvent.getEventId(), copyEvent.getEventType(), copyEvent.getAllAttributes(), copyEvent.getAllMetrics(),
+        // the copy shares the global attributes of the event, if still unchanged
+        final AttributeSnapshot copyShared;
+        final Map<String, String> copyAttributes;
+        final Map<String, Double> copyMetrics;
+        synchronized (copyEvent) {
+            copyShared = copyEvent.shared;
+            copyAttributes = new HashMap<String, String>(copyEvent.attributes);
+            copyMetrics = new HashMap<String, Double>(copyEvent.metrics);
+        }
+        return new AnalyticsEvent(copyEvent.getEventId(), copyEvent.getEventType(), copyShared, copyAttributes, copyMetrics,
                                   context.getSDKInfo(), sessionId, copyEvent.getSession().getSessionStart(),
                                   copyEvent.getSession().getSessionStop(), copyEvent.getSession().getSessionDuration(), timestamp,
                                   context.getUniqueId(), context.getSystem().getAppDetails(), context.getSystem().getDeviceDetails());
     }
 
+    /**
+     * Creates a new instance of an AnalyticsEvent that shares the given
+     * global attributes and metrics.
+     */
+    static AnalyticsEvent newInstance(final PinpointContext context, final AttributeSnapshot shared, final String sessionId,
+                                      final Long sessionStart, final Long sessionEnd, Long duration, long timestamp,
+                                      final String eventType) {
+        return new AnalyticsEvent(UUID.randomUUID().toString(), eventType, shared, null, null, context.getSDKInfo(),
+                                  sessionId, sessionStart, sessionEnd, duration, timestamp, context.getUniqueId(),
+                                  context.getSystem().getAppDetails(), context.getSystem().getDeviceDetails());
+    }
+
     /**
      * Creates a new instance of an AnalyticsEvent
      *
@@ -159,7 +198,7 @@ public class AnalyticsEvent implements JSONSerializable {
                                   timestamp, uniqueId, appDetails, deviceDetails);
     }
 
-    private static String processAttributeMetricKey(final String key) {
+    static String processAttributeMetricKey(final String key) {
         final String trimmedKey = StringUtil.clipString(key, MAX_EVENT_ATTRIBUTE_METRIC_KEY_LENGTH, false);
         if (trimmedKey.length() < key.length()) {
             log.warn("The attribute key has been trimmed to a length of " + MAX_EVENT_ATTRIBUTE_METRIC_KEY_LENGTH + " characters.");
@@ -167,7 +206,7 @@ public class AnalyticsEvent implements JSONSerializable {
         return trimmedKey;
     }
 
-    private static String processAttributeValue(final String value) {
+    static String processAttributeValue(final String value) {
         final String trimmedValue = StringUtil.clipString(value, MAX_EVENT_ATTRIBUTE_VALUE_LENGTH, false);
         if (trimmedValue.length() < value.length()) {
             log.warn("The attribute value has been trimmed to a length of " + MAX_EVENT_ATTRIBUTE_VALUE_LENGTH + " characters.");
@@ -295,6 +334,9 @@ public class AnalyticsEvent implements JSONSerializable {
                 log.warn("Max number of attributes/metrics reached(" + MAX_NUM_OF_METRICS_AND_ATTRIBUTES + ").");
             }
         } else {
+            if (shared.getAttributes().containsKey(name)) {
+                copyShared();
+            }
             attributes.remove(name);
         }
     }
@@ -310,7 +352,7 @@ public class AnalyticsEvent implements JSONSerializable {
         if (attributeName == null) {
             return false;
         }
-        return attributes.containsKey(attributeName);
+        return attributes.containsKey(attributeName) || shared.getAttributes().containsKey(attributeName);
     }
 
     /**
@@ -336,10 +378,32 @@ public class AnalyticsEvent implements JSONSerializable {
                 log.warn("Max number of attributes/metrics reached(" + MAX_NUM_OF_METRICS_AND_ATTRIBUTES + ").");
             }
         } else {
+            if (shared.getMetrics().containsKey(name)) {
+                copyShared();
+            }
             metrics.remove(name);
         }
     }
 
+    /**
+     * Copies the shared global attributes and metrics to this event, so one
+     * of them can be removed.
+     */
+    private synchronized void copyShared() {
+        final AttributeSnapshot snapshot = shared;
+        for (final Entry<String, String> entry : snapshot.getAttributes().entrySet()) {
+            if (!attributes.containsKey(entry.getKey())) {
+                attributes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (final Entry<String, Double> entry : snapshot.getMetrics().entrySet()) {
+            if (!metrics.containsKey(entry.getKey())) {
+                metrics.put(entry.getKey(), entry.getValue());
+            }
+        }
+        shared = AttributeSnapshot.EMPTY;
+    }
+
     /**
      * Determines if this {@link AnalyticsEvent} contains a specific metric.
      *
@@ -351,7 +415,7 @@ public class AnalyticsEvent implements JSONSerializable {
         if (metricName == null) {
             return false;
         }
-        return metrics.containsKey(metricName);
+        return metrics.containsKey(metricName) || shared.getMetrics().containsKey(metricName);
     }
 
     /**
@@ -374,7 +438,8 @@ public class AnalyticsEvent implements JSONSerializable {
         if (name == null) {
             return null;
         }
-        return attributes.get(name);
+        final String value = attributes.get(name);
+        return value != null ? value : shared.getAttributes().get(name);
     }
 
     /**
@@ -388,7 +453,8 @@ public class AnalyticsEvent implements JSONSerializable {
         if (name == null) {
             return null;
         }
-        return metrics.get(name);
+        final Double value = metrics.get(name);
+        return value != null ? value : shared.getMetrics().get(name);
     }
 
     public PinpointSession getSession() {
@@ -454,7 +520,13 @@ public class AnalyticsEvent implements JSONSerializable {
      * and the attribute values are the values
      */
     public Map<String, String> getAllAttributes() {
-        return Collections.unmodifiableMap(attributes);
+        final AttributeSnapshot snapshot = shared;
+        if (snapshot.getAttributes().isEmpty()) {
+            return Collections.unmodifiableMap(attributes);
+        }
+        final Map<String, String> allAttributes = new HashMap<String, String>(snapshot.getAttributes());
+        allAttributes.putAll(attributes);
+        return Collections.unmodifiableMap(allAttributes);
     }
 
     /**
@@ -464,7 +536,13 @@ public class AnalyticsEvent implements JSONSerializable {
      * metric values are the values
      */
     public Map<String, Double> getAllMetrics() {
-        return Collections.unmodifiableMap(metrics);
+        final AttributeSnapshot snapshot = shared;
+        if (snapshot.getMetrics().isEmpty()) {
+            return Collections.unmodifiableMap(metrics);
+        }
+        final Map<String, Double> allMetrics = new HashMap<String, Double>(snapshot.getMetrics());
+        allMetrics.putAll(metrics);
+        return Collections.unmodifiableMap(allMetrics);
     }
 
     /**
@@ -547,8 +625,31 @@ public class AnalyticsEvent implements JSONSerializable {
         builder.withAttribute("app_title", this.appDetails.getAppTitle());
         builder.withAttribute(ClientContext.APP_ID_KEY, this.appDetails.getAppId());
 
+        // the shared global attributes and metrics, then the ones of this event, which replace them
+        final AttributeSnapshot snapshot = shared;
         final JSONObject attributesJson = new JSONObject();
-        for (final Entry<String, String> entry : getAllAttributes().entrySet()) {
+        putAttributes(attributesJson, snapshot.getAttributes());
+        putAttributes(attributesJson, attributes);
+
+        final JSONObject metricsJson = new JSONObject();
+        putMetrics(metricsJson, snapshot.getMetrics());
+        putMetrics(metricsJson, metrics);
+
+        // If there are any attributes put then add the attributes to the
+        // structure
+        if (attributesJson.length() > 0) {
+            builder.withAttribute("attributes", attributesJson);
+        }
+
+        // If there are any metrics put then add the attributes to the structure
+        if (metricsJson.length() > 0) {
+            builder.withAttribute("metrics", metricsJson);
+        }
+        return builder.toJSONObject();
+    }
+
+    private void putAttributes(final JSONObject attributesJson, final Map<String, String> source) {
+        for (final Entry<String, String> entry : source.entrySet()) {
             try {
                 attributesJson.put(entry.getKey(), entry.getValue());
             } catch (final JSONException e) {
@@ -556,9 +657,10 @@ public class AnalyticsEvent implements JSONSerializable {
                 log.error("Error serializing attribute for eventType: " + eventType);
             }
         }
+    }
 
-        final JSONObject metricsJson = new JSONObject();
-        for (final Entry<String, Double> entry : getAllMetrics().entrySet()) {
+    private void putMetrics(final JSONObject metricsJson, final Map<String, Double> source) {
+        for (final Entry<String, Double> entry : source.entrySet()) {
             try {
                 metricsJson.put(entry.getKey(), entry.getValue());
             } catch (final JSONException e) {
@@ -566,18 +668,6 @@ public class AnalyticsEvent implements JSONSerializable {
                 log.error("Error serializing metric for eventType: " + eventType);
             }
         }
-
-        // If there are any attributes put then add the attributes to the
-        // structure
-        if (attributesJson.length() > 0) {
-            builder.withAttribute("attributes", attributesJson);
-        }
-
-        // If there are any metrics put then add the attributes to the structure
-        if (metricsJson.length() > 0) {
-            builder.withAttribute("metrics", metricsJson);
-        }
-        return builder.toJSONObject();
     }
 
     /**
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.analytics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable copy of the global attributes and metrics of an event type,
+ * as of a version of the global attributes of the {@link AnalyticsClient}.
+ * Events created while the global attributes are unchanged share the same
+ * snapshot instead of each copying them.
+ * <p>
+ * Keys and values are clipped, and entries over the limit of attributes and
+ * metrics dropped, as if they were added to each event one by one.
+ */
+final class AttributeSnapshot {
+    static final AttributeSnapshot EMPTY = new AttributeSnapshot(-1,
+            Collections.<String, String>emptyMap(), Collections.<String, Double>emptyMap(), 0);
+
+    private final long version;
+    private final Map<String, String> attributes;
+    private final Map<String, Double> metrics;
+    private final int count;
+
+    private AttributeSnapshot(final long version, final Map<String, String> attributes,
+                              final Map<String, Double> metrics, final int count) {
+        this.version = version;
+        this.attributes = attributes;
+        this.metrics = metrics;
+        this.count = count;
+    }
+
+    /**
+     * Copies the global attributes and metrics of an event type.
+     *
+     * @param version          the version of the global attributes being copied
+     * @param globalAttributes the attributes of all events
+     * @param typeAttributes   the attributes of the event type, or null
+     * @param globalMetrics    the metrics of all events
+     * @param typeMetrics      the metrics of the event type, or null
+     * @return the snapshot
+     */
+    static AttributeSnapshot of(final long version,
+                                final Map<String, String> globalAttributes,
+                                final Map<String, String> typeAttributes,
+                                final Map<String, Double> globalMetrics,
+                                final Map<String, Double> typeMetrics) {
+        final Map<String, String> attributes = new HashMap<String, String>();
+        final Map<String, Double> metrics = new HashMap<String, Double>();
+        int count = 0;
+        count = putAttributes(attributes, globalAttributes, count);
+        count = putAttributes(attributes, typeAttributes, count);
+        count = putMetrics(metrics, globalMetrics, count);
+        count = putMetrics(metrics, typeMetrics, count);
+        if (count == 0) {
+            return new AttributeSnapshot(version, EMPTY.attributes, EMPTY.metrics, 0);
+        }
+        return new AttributeSnapshot(version, Collections.unmodifiableMap(attributes),
+                Collections.unmodifiableMap(metrics), count);
+    }
+
+    private static int putAttributes(final Map<String, String> attributes, final Map<String, String> source,
+                                     int count) {
+        if (source != null) {
+            for (final Entry<String, String> entry : source.entrySet()) {
+                if (count < AnalyticsEvent.MAX_NUM_OF_METRICS_AND_ATTRIBUTES) {
+                    attributes.put(AnalyticsEvent.processAttributeMetricKey(entry.getKey()),
+                            AnalyticsEvent.processAttributeValue(entry.getValue()));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int putMetrics(final Map<String, Double> metrics, final Map<String, Double> source,
+                                  int count) {
+        if (source != null) {
+            for (final Entry<String, Double> entry : source.entrySet()) {
+                if (count < AnalyticsEvent.MAX_NUM_OF_METRICS_AND_ATTRIBUTES) {
+                    metrics.put(AnalyticsEvent.processAttributeMetricKey(entry.getKey()), entry.getValue());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    Map<String, Double> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of attributes and metrics counted towards the limit
+     */
+    int getCount() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return attributes.isEmpty() && metrics.isEmpty();
+    }
+}
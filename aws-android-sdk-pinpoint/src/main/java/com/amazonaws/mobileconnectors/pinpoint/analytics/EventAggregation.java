@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.analytics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configures the roll-up of events of a type into summary events. Register it
+ * with {@link AnalyticsClient#addEventAggregation(EventAggregation)}. Events of
+ * the type recorded afterwards are not stored, but counted in a window of
+ * {@link #getWindowDuration()} milliseconds, separately for each set of
+ * attribute values. A window is closed by the first event of the type
+ * recorded after it ends, by submitting events, and when the session is
+ * paused or stopped. Then one event of the same type is recorded for each set
+ * of attribute values, with the attributes and these metrics:
+ * <ul>
+ * <li>{@value #COUNT_METRIC}: the number of events</li>
+ * <li><i>metric</i>.count, .sum, .min and .max: the number of events with the
+ * metric, and the sum, minimum and maximum of its values</li>
+ * <li><i>metric</i>.bucket<i>N</i>: for metrics with a histogram, the number
+ * of values in bucket <i>N</i>. Bucket 0 holds the values up to the first
+ * bound, bucket <i>N</i> the values over bound <i>N-1</i> up to bound
+ * <i>N</i>, and the last one the values over the last bound. The bounds are
+ * listed in the attribute <i>metric</i>.buckets.</li>
+ * </ul>
+ * Summary events are subject to the limit of attributes and metrics of any
+ * event, so only a few metrics of an aggregated event type should be given a
+ * histogram. Events in an open window are kept in memory until it closes.
+ */
+public class EventAggregation {
+    /** The metric of a summary event that holds the number of events. */
+    public static final String COUNT_METRIC = "_count";
+    static final long DEFAULT_WINDOW_DURATION = 60 * 1000L;
+
+    private final String eventType;
+    private long windowDuration = DEFAULT_WINDOW_DURATION;
+    private final Map<String, double[]> histogramBounds = new HashMap<String, double[]>();
+
+    /**
+     * @param eventType the type of events to aggregate
+     */
+    public EventAggregation(final String eventType) {
+        if (eventType == null) {
+            throw new IllegalArgumentException("The eventType of an aggregation can't be null");
+        }
+        this.eventType = eventType;
+    }
+
+    /**
+     * Sets how long a window stays open after its first event.
+     *
+     * @param windowDuration the duration of a window, in milliseconds. Defaults to one minute.
+     * @return the current EventAggregation instance
+     */
+    @SuppressWarnings("checkstyle:hiddenfield")
+    public EventAggregation withWindowDuration(final long windowDuration) {
+        if (windowDuration <= 0) {
+            throw new IllegalArgumentException("The window duration must be positive");
+        }
+        this.windowDuration = windowDuration;
+        return this;
+    }
+
+    /**
+     * Counts the values of a metric in histogram buckets.
+     *
+     * @param metricName the name of the metric
+     * @param bounds     the upper bounds of the buckets, in ascending order
+     * @return the current EventAggregation instance
+     */
+    public EventAggregation withHistogram(final String metricName, final double... bounds) {
+        if (metricName == null || bounds == null || bounds.length == 0) {
+            throw new IllegalArgumentException("A histogram needs a metric name and at least one bound");
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("The bounds of a histogram must be in ascending order");
+            }
+        }
+        histogramBounds.put(metricName, bounds.clone());
+        return this;
+    }
+
+    /**
+     * @return the type of events aggregated
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return the duration of a window, in milliseconds
+     */
+    public long getWindowDuration() {
+        return windowDuration;
+    }
+
+    /**
+     * @return the bounds of the histogram of each metric that has one
+     */
+    public Map<String, double[]> getHistogramBounds() {
+        return Collections.unmodifiableMap(histogramBounds);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.analytics;
+
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Rolls up the events of an {@link EventAggregation} into summary events, one
+ * per set of attribute values in each window.
+ */
+final class EventAggregator {
+    /**
+     * Events with attribute values not seen in the window once it has this
+     * many sets of them are recorded as they are.
+     */
+    static final int MAX_GROUPS_PER_WINDOW = 100;
+
+    private final PinpointContext context;
+    private final String eventType;
+    private final long windowDuration;
+    private final Map<String, double[]> histogramBounds;
+    private final Map<String, String> histogramBoundsAttributes = new HashMap<String, String>();
+    /** The start of the open window, -1 when there is none. **/
+    private long windowStart = -1;
+    private final Map<Map<String, String>, Group> groups = new LinkedHashMap<Map<String, String>, Group>();
+
+    EventAggregator(final PinpointContext context, final EventAggregation aggregation) {
+        this.context = context;
+        this.eventType = aggregation.getEventType();
+        this.windowDuration = aggregation.getWindowDuration();
+        this.histogramBounds = new HashMap<String, double[]>(aggregation.getHistogramBounds());
+        for (final Entry<String, double[]> entry : histogramBounds.entrySet()) {
+            final StringBuilder bounds = new StringBuilder();
+            for (final double bound : entry.getValue()) {
+                bounds.append(bounds.length() == 0 ? "" : ",").append(bound);
+            }
+            histogramBoundsAttributes.put(entry.getKey(), bounds.toString());
+        }
+    }
+
+    /**
+     * Counts an event in the open window, closing the window first if the
+     * event is past its end.
+     *
+     * @param event     the event, of the aggregated type
+     * @param summaries the summaries of the closed window are added to it
+     * @return false if the event wasn't counted, and should be recorded as it is
+     */
+    synchronized boolean add(final AnalyticsEvent event, final List<AnalyticsEvent> summaries) {
+        final long timestamp = event.getEventTimestamp();
+        if (windowStart >= 0 && timestamp >= windowStart + windowDuration) {
+            close(summaries);
+        }
+        final Map<String, String> attributes = event.getAllAttributes();
+        Group group = groups.get(attributes);
+        if (group == null) {
+            if (groups.size() >= MAX_GROUPS_PER_WINDOW) {
+                return false;
+            }
+            group = new Group(event);
+            groups.put(new HashMap<String, String>(attributes), group);
+        }
+        if (windowStart < 0) {
+            windowStart = timestamp;
+        }
+        group.add(event);
+        return true;
+    }
+
+    /**
+     * Closes the open window if it ended before the given time.
+     *
+     * @param now       the current time, in milliseconds
+     * @param summaries the summaries of the closed window are added to it
+     */
+    synchronized void closeExpired(final long now, final List<AnalyticsEvent> summaries) {
+        if (windowStart >= 0 && now >= windowStart + windowDuration) {
+            close(summaries);
+        }
+    }
+
+    /**
+     * Closes the open window, if any.
+     *
+     * @param summaries the summaries of the closed window are added to it
+     */
+    synchronized void close(final List<AnalyticsEvent> summaries) {
+        for (final Entry<Map<String, String>, Group> entry : groups.entrySet()) {
+            summaries.add(entry.getValue().summarize(entry.getKey()));
+        }
+        groups.clear();
+        windowStart = -1;
+    }
+
+    /**
+     * The statistics of the events with the same attribute values.
+     */
+    private final class Group {
+        private final PinpointSession session;
+        private long count;
+        private long lastTimestamp;
+        private final Map<String, MetricStats> metrics = new LinkedHashMap<String, MetricStats>();
+
+        Group(final AnalyticsEvent first) {
+            this.session = first.getSession();
+        }
+
+        void add(final AnalyticsEvent event) {
+            count++;
+            lastTimestamp = Math.max(lastTimestamp, event.getEventTimestamp());
+            for (final Entry<String, Double> metric : event.getAllMetrics().entrySet()) {
+                MetricStats stats = metrics.get(metric.getKey());
+                if (stats == null) {
+                    stats = new MetricStats(histogramBounds.get(metric.getKey()));
+                    metrics.put(metric.getKey(), stats);
+                }
+                stats.add(metric.getValue());
+            }
+        }
+
+        AnalyticsEvent summarize(final Map<String, String> attributes) {
+            final AnalyticsEvent summary = AnalyticsEvent.newInstance(context, session.getSessionId(),
+                    session.getSessionStart(), session.getSessionStop(), session.getSessionDuration(),
+                    lastTimestamp, eventType);
+            for (final Entry<String, String> attribute : attributes.entrySet()) {
+                summary.addAttribute(attribute.getKey(), attribute.getValue());
+            }
+            summary.addMetric(EventAggregation.COUNT_METRIC, (double) count);
+            for (final Entry<String, MetricStats> entry : metrics.entrySet()) {
+                final String name = entry.getKey();
+                final MetricStats stats = entry.getValue();
+                summary.addMetric(name + ".count", (double) stats.count);
+                summary.addMetric(name + ".sum", stats.sum);
+                summary.addMetric(name + ".min", stats.min);
+                summary.addMetric(name + ".max", stats.max);
+                if (stats.buckets != null) {
+                    summary.addAttribute(name + ".buckets", histogramBoundsAttributes.get(name));
+                    for (int i = 0; i < stats.buckets.length; i++) {
+                        summary.addMetric(name + ".bucket" + i, (double) stats.buckets[i]);
+                    }
+                }
+            }
+            return summary;
+        }
+    }
+
+    private static final class MetricStats {
+        private final double[] bounds;
+        private final long[] buckets;
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        MetricStats(final double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = bounds != null ? new long[bounds.length + 1] : null;
+        }
+
+        void add(final double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (buckets != null) {
+                int bucket = 0;
+                while (bucket < bounds.length && value > bounds[bucket]) {
+                    bucket++;
+                }
+                buckets[bucket]++;
+            }
+        }
+    }
+}
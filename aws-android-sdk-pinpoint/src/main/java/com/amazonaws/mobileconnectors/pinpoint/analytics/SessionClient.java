@@ -203,6 +203,9 @@ public class SessionClient {
             session.pause();
         }
 
+        // record the summaries of the aggregated events of the session
+        this.pinpointContext.getAnalyticsClient().flushEventAggregations();
+
         log.info("Firing Session Event: " + SESSION_STOP_EVENT_TYPE);
         final Long stopTime = session.getStopTime() == null ? 0L : session.getStopTime();
         final AnalyticsEvent e = this.pinpointContext.getAnalyticsClient().createEvent(SESSION_STOP_EVENT_TYPE, session.getStartTime(),
@@ -232,6 +235,9 @@ public class SessionClient {
         session.pause();
         log.debug("Session Paused: " + session.getSessionID());
 
+        // record the summaries of the aggregated events of the session
+        this.pinpointContext.getAnalyticsClient().flushEventAggregations();
+
         log.info("Firing Session Event: " + SESSION_PAUSE_EVENT_TYPE);
         final AnalyticsEvent e = this.pinpointContext.getAnalyticsClient().createEvent(SESSION_PAUSE_EVENT_TYPE, session.getStartTime(),
                                                                                        null, session.getSessionDuration());
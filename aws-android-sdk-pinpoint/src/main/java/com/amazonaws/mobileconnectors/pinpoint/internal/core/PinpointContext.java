@@ -20,6 +20,7 @@ import com.amazonaws.mobileconnectors.pinpoint.PinpointConfiguration;
 import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsClient;
 import com.amazonaws.mobileconnectors.pinpoint.analytics.SessionClient;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.configuration.AndroidPreferencesConfiguration;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.http.GzipRequestHandler;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.http.SDKInfoHandler;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.idresolver.SharedPrefsUniqueIdService;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.AndroidSystem;
@@ -28,6 +29,7 @@ import com.amazonaws.mobileconnectors.pinpoint.targeting.TargetingClient;
 import com.amazonaws.mobileconnectors.pinpoint.targeting.notification.NotificationClient;
 import com.amazonaws.services.pinpoint.AmazonPinpoint;
 import com.amazonaws.services.pinpoint.AmazonPinpointClient;
+import com.amazonaws.services.pinpoint.model.PutEventsRequest;
 import com.amazonaws.services.pinpointanalytics.AmazonPinpointAnalyticsClient;
 import android.content.Context;
 import android.net.ConnectivityManager;
@@ -82,6 +84,9 @@ public class PinpointContext implements Serializable {
 
         analyticsServiceClient.addRequestHandler(new SDKInfoHandler(sdkInfo));
         pinpointServiceClient.addRequestHandler(new SDKInfoHandler(sdkInfo));
+        if (pinpointConfiguration != null && pinpointConfiguration.getCompressEventSubmissions()) {
+            pinpointServiceClient.addRequestHandler(new GzipRequestHandler(PutEventsRequest.class));
+        }
     }
 
     public NotificationClient getNotificationClient() {
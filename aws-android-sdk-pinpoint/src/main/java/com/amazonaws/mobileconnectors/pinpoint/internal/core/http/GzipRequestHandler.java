@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.core.http;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips the body of requests of the given type. Request handlers run before
+ * the request is signed, so the signature covers the compressed body. Bodies
+ * smaller than MIN_COMPRESSED_SIZE are sent as they are.
+ */
+public final class GzipRequestHandler extends RequestHandler2 {
+    static final String CONTENT_ENCODING_HEADER_NAME = "Content-Encoding";
+    static final int MIN_COMPRESSED_SIZE = 1024;
+    private static final Log log = LogFactory.getLog(GzipRequestHandler.class);
+
+    private final Class<? extends AmazonWebServiceRequest> requestType;
+
+    public GzipRequestHandler(final Class<? extends AmazonWebServiceRequest> requestType) {
+        this.requestType = requestType;
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+    }
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        if (request == null
+                || !requestType.isInstance(request.getOriginalRequest())
+                || request.getContent() == null
+                || request.getHeaders().containsKey(CONTENT_ENCODING_HEADER_NAME)) {
+            return;
+        }
+        final InputStream original = request.getContent();
+        if (!original.markSupported()) {
+            // can't be read twice if compressing fails
+            return;
+        }
+        original.mark(Integer.MAX_VALUE);
+        try {
+            final byte[] content = readAll(original);
+            if (content.length < MIN_COMPRESSED_SIZE) {
+                original.reset();
+                return;
+            }
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+            final GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(content);
+            gzip.close();
+            request.setContent(new ByteArrayInputStream(compressed.toByteArray()));
+            request.addHeader("Content-Length", Integer.toString(compressed.size()));
+            request.addHeader(CONTENT_ENCODING_HEADER_NAME, "gzip");
+        } catch (final IOException e) {
+            // the content is in memory, this is not expected
+            log.warn("Unable to compress the request, sending it uncompressed.", e);
+            try {
+                original.reset();
+            } catch (final IOException resetException) {
+                log.error("Unable to reset the request content.", resetException);
+            }
+        }
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 32));
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
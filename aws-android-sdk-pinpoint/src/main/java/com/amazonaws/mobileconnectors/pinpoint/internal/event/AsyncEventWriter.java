@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import com.amazonaws.logging.Log;
+import com.amazonaws.logging.LogFactory;
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffers recorded events in a fixed size ring buffer and writes them to the
+ * database on a background thread. The writer takes every event buffered at
+ * the time, up to a limit, and hands them to the {@link BatchWriter} in one
+ * go, so a burst of events costs one transaction instead of one per event.
+ * Callers block only when the buffer is full.
+ */
+class AsyncEventWriter {
+    private static final Log log = LogFactory.getLog(AsyncEventWriter.class);
+
+    /**
+     * Default number of events buffered in memory.
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * Maximum number of events written in one transaction.
+     */
+    static final int MAX_EVENTS_PER_BATCH = 256;
+
+    /**
+     * Writes a batch of events to storage.
+     */
+    interface BatchWriter {
+        /**
+         * @param events events in the order they were recorded
+         */
+        void write(List<AnalyticsEvent> events);
+    }
+
+    private final BatchWriter batchWriter;
+    private final Thread writerThread;
+
+    // guarded by this
+    private final AnalyticsEvent[] ring;
+    private int head;
+    private int count;
+    /** Number of events ever buffered. **/
+    private long enqueued;
+    /** Number of events ever handed to the batch writer. **/
+    private long written;
+    private boolean shutdown;
+
+    /**
+     * Constructs an {@link AsyncEventWriter} and starts its writer thread.
+     *
+     * @param batchWriter writes batches of events
+     * @param capacity number of events buffered in memory
+     */
+    AsyncEventWriter(final BatchWriter batchWriter, final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.batchWriter = batchWriter;
+        this.ring = new AnalyticsEvent[capacity];
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "pinpoint-event-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Buffers an event to be written. Waits while the buffer is full.
+     *
+     * @param event the event
+     * @return true if buffered, false if the writer is shut down
+     */
+    synchronized boolean enqueue(final AnalyticsEvent event) {
+        boolean interrupted = false;
+        try {
+            while (count == ring.length && !shutdown) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    // the event is still recorded, restore the flag afterwards
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (shutdown) {
+            return false;
+        }
+        ring[(head + count) % ring.length] = event;
+        count++;
+        enqueued++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Waits until all events buffered before this call are written.
+     */
+    void flush() {
+        if (Thread.currentThread() == writerThread) {
+            return;
+        }
+        synchronized (this) {
+            final long target = enqueued;
+            boolean interrupted = false;
+            while (written < target && writerThread.isAlive()) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered events and stops the writer thread. Events enqueued
+     * afterwards are rejected.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        if (Thread.currentThread() == writerThread) {
+            return;
+        }
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of events waiting to be written
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    private void writeLoop() {
+        final List<AnalyticsEvent> batch = new ArrayList<AnalyticsEvent>(MAX_EVENTS_PER_BATCH);
+        while (true) {
+            synchronized (this) {
+                while (count == 0 && !shutdown) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        // only shutdown stops the writer
+                    }
+                }
+                if (count == 0) {
+                    // shut down and drained
+                    notifyAll();
+                    return;
+                }
+                final int n = Math.min(count, MAX_EVENTS_PER_BATCH);
+                for (int i = 0; i < n; i++) {
+                    batch.add(ring[head]);
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                }
+                count -= n;
+                // wake up callers waiting for space
+                notifyAll();
+            }
+
+            try {
+                batchWriter.write(batch);
+            } catch (final RuntimeException e) {
+                log.error(String.format("Failed to write %d events to the local database.",
+                        batch.size()), e);
+            }
+
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,645 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+import com.amazonaws.services.pinpoint.model.Event;
+import com.amazonaws.services.pinpoint.model.Session;
+import com.amazonaws.util.DateUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Compact binary encoding of stored events. An event is stored as its JSON
+ * tree, with type tagged values and binary numbers. The field names of the
+ * event JSON are written as ids into a fixed list. Attribute and metric names,
+ * and the values of the device, app and SDK details, which are the same for
+ * most events, are interned in {@link EventKeyTable} and written as ids. The
+ * table holds at most {@link #MAX_INTERNED_KEYS} strings, so that an app
+ * using ever new names can't grow it without bound; strings that don't fit
+ * are written in full. Decoding gives back the same
+ * JSON as {@link AnalyticsEvent#toJSONObject()}, or fills in the
+ * {@link Event} of a PutEvents request directly, without building the JSON.
+ */
+class EventCodec {
+    static final int FORMAT_VERSION = 1;
+    /**
+     * The max number of strings interned in {@link EventKeyTable}.
+     */
+    static final int MAX_INTERNED_KEYS = 512;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_INTERNED = 6;
+    private static final int TAG_OBJECT = 7;
+    private static final int TAG_ARRAY = 8;
+
+    /** A key written as this id follows in full. */
+    private static final int KEY_INLINE = 0;
+    /** A key written as this id is followed by the id of an interned key. */
+    private static final int KEY_INTERNED = 1;
+
+    /**
+     * The field names of the event JSON, written as their index plus two.
+     * Names may be added at the end only.
+     */
+    private static final List<String> KNOWN_KEYS = Arrays.asList(
+            "class", "hashCode", "event_id", "event_type", "unique_id", "timestamp",
+            "platform", "platform_version", "make", "model", "locale", "carrier",
+            "session", "id", "startTimestamp", "stopTimestamp", "duration",
+            "sdk_version", "sdk_name", "app_version_name", "app_version_code",
+            "app_package_name", "app_title", ClientContext.APP_ID_KEY,
+            "attributes", "metrics");
+    private static final Map<String, Integer> KNOWN_KEY_IDS = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < KNOWN_KEYS.size(); i++) {
+            KNOWN_KEY_IDS.put(KNOWN_KEYS.get(i), i + 2);
+        }
+    }
+
+    /**
+     * Fields whose keys, the names chosen by the app, are interned.
+     */
+    private static final Set<String> INTERNED_NAME_FIELDS = new HashSet<String>(Arrays.asList(
+            "attributes", "metrics"));
+
+    /**
+     * Fields whose values are interned. Their values come from the device,
+     * app and SDK, so only a few are ever interned for an installation. Values
+     * chosen by the app, such as the event type, aren't interned, so that the
+     * table doesn't grow with them.
+     */
+    private static final Set<String> INTERNED_VALUE_KEYS = new HashSet<String>(Arrays.asList(
+            "class", "platform", "platform_version", "make", "model", "locale",
+            "carrier", "sdk_version", "sdk_name", "app_version_name", "app_version_code",
+            "app_package_name", "app_title", ClientContext.APP_ID_KEY));
+
+    private final PinpointDBBase pinpointDBBase;
+    /**
+     * Events of a session share its start, so the last one formatted is kept.
+     */
+    private volatile FormattedDate lastSessionStart = new FormattedDate(0L);
+
+    // guarded by this
+    private final List<String> keys = new ArrayList<String>();
+    private final Map<String, Integer> keyIds = new HashMap<String, Integer>();
+    private boolean keysLoaded;
+
+    /**
+     * @param pinpointDBBase the database with the interned keys
+     */
+    EventCodec(final PinpointDBBase pinpointDBBase) {
+        this.pinpointDBBase = pinpointDBBase;
+    }
+
+    /**
+     * Encodes an event, interning new values. To store the interned values
+     * only along with the event, encode it in {@link #runInTransaction}.
+     *
+     * @param event the event
+     * @return the encoded event
+     */
+    byte[] encode(final AnalyticsEvent event) {
+        final Writer out = new Writer();
+        out.writeByte(FORMAT_VERSION);
+        writeValue(out, null, event.toJSONObject());
+        return out.toByteArray();
+    }
+
+    /**
+     * Runs a task storing events in a database transaction, so that the values
+     * interned by encoding them are stored if and only if the events are. The
+     * codec stays locked meanwhile, and the database is only locked after
+     * it, so that the interning of other threads can't deadlock with the
+     * transaction.
+     *
+     * @param task the task encoding and storing the events
+     * @param <T> the type of the result of the task
+     * @return the result of the task
+     */
+    synchronized <T> T runInTransaction(final Callable<T> task) {
+        try {
+            return pinpointDBBase.runInTransaction(task);
+        } catch (final RuntimeException e) {
+            // the values interned by the task are rolled back with it
+            keysLoaded = false;
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes an event to the JSON it was encoded from.
+     *
+     * @param data the encoded event
+     * @return the JSON of the event
+     * @throws IOException if the data is malformed
+     */
+    JSONObject decodeJSON(final byte[] data) throws IOException {
+        final Reader in = open(data);
+        if (in.readByte() != TAG_OBJECT) {
+            throw new IOException("Encoded event is not an object");
+        }
+        return readObject(in);
+    }
+
+    /**
+     * Decodes an event into the payload of a PutEvents request. The payload
+     * is the same as the one built from
+     * {@link AnalyticsEvent#translateToEvent(JSONObject)}.
+     *
+     * @param data the encoded event
+     * @param event the payload to fill in
+     * @return the id of the event
+     * @throws IOException if the data is malformed or misses required fields
+     */
+    String decodeEvent(final byte[] data, final Event event) throws IOException {
+        final Reader in = open(data);
+        if (in.readByte() != TAG_OBJECT) {
+            throw new IOException("Encoded event is not an object");
+        }
+        String eventId = null;
+        String eventType = null;
+        Long timestamp = null;
+        String sessionId = null;
+        Long sessionStart = null;
+        long sessionStop = 0;
+        long sessionDuration = 0;
+        String appPackageName = "";
+        String appTitle = "";
+        String appVersionCode = "";
+        String sdkName = "";
+        String sdkVersion = "";
+        final Map<String, String> attributes = new HashMap<String, String>();
+        final Map<String, Double> metrics = new HashMap<String, Double>();
+
+        final int count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+            final String key = readKey(in);
+            if ("session".equals(key)) {
+                if (in.readByte() != TAG_OBJECT) {
+                    throw new IOException("Session is not an object");
+                }
+                final int sessionCount = in.readVarint();
+                for (int j = 0; j < sessionCount; j++) {
+                    final String sessionKey = readKey(in);
+                    final Object value = readValue(in, in.readByte());
+                    if ("id".equals(sessionKey)) {
+                        sessionId = asString(value);
+                    } else if ("startTimestamp".equals(sessionKey)) {
+                        sessionStart = asLong(value);
+                    } else if ("stopTimestamp".equals(sessionKey)) {
+                        sessionStop = asLong(value);
+                    } else if ("duration".equals(sessionKey)) {
+                        sessionDuration = asLong(value);
+                    }
+                }
+            } else if ("attributes".equals(key) || "metrics".equals(key)) {
+                if (in.readByte() != TAG_OBJECT) {
+                    throw new IOException("Attributes or metrics are not an object");
+                }
+                final int entries = in.readVarint();
+                for (int j = 0; j < entries; j++) {
+                    final String name = readKey(in);
+                    final Object value = readValue(in, in.readByte());
+                    if ("metrics".equals(key)) {
+                        if (value instanceof Number) {
+                            metrics.put(name, ((Number) value).doubleValue());
+                        }
+                    } else {
+                        attributes.put(name, value == null ? "" : value.toString());
+                    }
+                }
+            } else {
+                final Object value = readValue(in, in.readByte());
+                if ("event_id".equals(key)) {
+                    eventId = asString(value);
+                } else if ("event_type".equals(key)) {
+                    eventType = asString(value);
+                } else if ("timestamp".equals(key)) {
+                    timestamp = asLong(value);
+                } else if ("app_package_name".equals(key)) {
+                    appPackageName = asString(value);
+                } else if ("app_title".equals(key)) {
+                    appTitle = asString(value);
+                } else if ("app_version_code".equals(key)) {
+                    appVersionCode = asString(value);
+                } else if ("sdk_name".equals(key)) {
+                    sdkName = asString(value);
+                } else if ("sdk_version".equals(key)) {
+                    sdkVersion = asString(value);
+                }
+            }
+        }
+
+        if (eventId == null || eventType == null || timestamp == null || sessionId == null
+                || sessionStart == null) {
+            throw new IOException("Encoded event misses required fields");
+        }
+
+        final Session session = new Session()
+                .withId(sessionId)
+                .withStartTimestamp(formatSessionStart(sessionStart));
+        if (sessionStop != 0L) {
+            session.withStopTimestamp(DateUtils.formatISO8601Date(new Date(sessionStop)));
+        }
+        if (sessionDuration != 0L) {
+            session.withDuration((int) sessionDuration);
+        }
+        event.withAppPackageName(appPackageName)
+                .withAppTitle(appTitle)
+                .withAppVersionCode(appVersionCode)
+                .withAttributes(attributes)
+                .withClientSdkVersion(sdkVersion)
+                .withEventType(eventType)
+                .withMetrics(metrics)
+                .withSdkName(sdkName)
+                .withSession(session)
+                .withTimestamp(DateUtils.formatISO8601Date(new Date(timestamp)));
+        return eventId;
+    }
+
+    private String formatSessionStart(final long millis) {
+        FormattedDate formatted = lastSessionStart;
+        if (formatted.millis != millis) {
+            formatted = new FormattedDate(millis);
+            lastSessionStart = formatted;
+        }
+        return formatted.text;
+    }
+
+    private static final class FormattedDate {
+        final long millis;
+        final String text;
+
+        FormattedDate(final long millis) {
+            this.millis = millis;
+            this.text = DateUtils.formatISO8601Date(new Date(millis));
+        }
+    }
+
+    private static String asString(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value.toString();
+    }
+
+    private static long asLong(final Object value) throws IOException {
+        if (!(value instanceof Number)) {
+            throw new IOException("Expected a number");
+        }
+        return ((Number) value).longValue();
+    }
+
+    private Reader open(final byte[] data) throws IOException {
+        final Reader in = new Reader(data);
+        final int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown event format version " + version);
+        }
+        return in;
+    }
+
+    private void writeValue(final Writer out, final String key, final Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            final int id = key != null && INTERNED_VALUE_KEYS.contains(key)
+                    ? intern((String) value) : -1;
+            if (id >= 0) {
+                out.writeByte(TAG_INTERNED);
+                out.writeVarint(id);
+            } else {
+                out.writeByte(TAG_STRING);
+                out.writeString((String) value);
+            }
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeVarlong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            out.writeByte(TAG_OBJECT);
+            out.writeVarint(object.length());
+            final boolean internNames = key != null && INTERNED_NAME_FIELDS.contains(key);
+            final Iterator<?> names = object.keys();
+            while (names.hasNext()) {
+                final String name = (String) names.next();
+                writeKey(out, name, internNames);
+                writeValue(out, name, object.opt(name));
+            }
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            out.writeByte(TAG_ARRAY);
+            out.writeVarint(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(out, null, array.opt(i));
+            }
+        } else {
+            out.writeByte(TAG_STRING);
+            out.writeString(value.toString());
+        }
+    }
+
+    private Object readValue(final Reader in, final int tag) throws IOException {
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_LONG:
+                return in.readVarlong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_STRING:
+                return in.readString();
+            case TAG_INTERNED:
+                return key(in.readVarint());
+            case TAG_OBJECT:
+                return readObject(in);
+            case TAG_ARRAY:
+                final int length = in.readVarint();
+                final JSONArray array = new JSONArray();
+                for (int i = 0; i < length; i++) {
+                    final Object value = readValue(in, in.readByte());
+                    array.put(value == null ? JSONObject.NULL : value);
+                }
+                return array;
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    private JSONObject readObject(final Reader in) throws IOException {
+        final int count = in.readVarint();
+        final JSONObject object = new JSONObject();
+        for (int i = 0; i < count; i++) {
+            final String name = readKey(in);
+            try {
+                final Object value = readValue(in, in.readByte());
+                object.put(name, value == null ? JSONObject.NULL : value);
+            } catch (final JSONException e) {
+                throw new IOException("Invalid value for " + name);
+            }
+        }
+        return object;
+    }
+
+    private void writeKey(final Writer out, final String key, final boolean internNames) {
+        final Integer knownId = KNOWN_KEY_IDS.get(key);
+        if (knownId != null) {
+            out.writeVarint(knownId);
+            return;
+        }
+        final int id = internNames ? intern(key) : -1;
+        if (id >= 0) {
+            out.writeVarint(KEY_INTERNED);
+            out.writeVarint(id);
+        } else {
+            out.writeVarint(KEY_INLINE);
+            out.writeString(key);
+        }
+    }
+
+    private String readKey(final Reader in) throws IOException {
+        final int id = in.readVarint();
+        if (id == KEY_INLINE) {
+            return in.readString();
+        }
+        if (id == KEY_INTERNED) {
+            return key(in.readVarint());
+        }
+        if (id - 2 >= KNOWN_KEYS.size()) {
+            throw new IOException("Unknown field id " + id);
+        }
+        return KNOWN_KEYS.get(id - 2);
+    }
+
+    /**
+     * Returns the id of an interned string, storing the string if it is new,
+     * or -1 if the table is full.
+     */
+    private synchronized int intern(final String key) {
+        loadKeys();
+        Integer id = keyIds.get(key);
+        while (id == null) {
+            if (keys.size() >= MAX_INTERNED_KEYS) {
+                return -1;
+            }
+            try {
+                pinpointDBBase.insertKey(keys.size(), key);
+                id = keys.size();
+                keys.add(key);
+                keyIds.put(key, id);
+            } catch (final SQLException e) {
+                // another instance on the same database interned this key,
+                // or another key with this id
+                final int known = keys.size();
+                reloadKeys();
+                id = keyIds.get(key);
+                if (id == null && keys.size() == known) {
+                    throw e;
+                }
+            }
+        }
+        return id;
+    }
+
+    private synchronized String key(final int id) throws IOException {
+        loadKeys();
+        if (id >= keys.size()) {
+            reloadKeys();
+        }
+        if (id < 0 || id >= keys.size() || keys.get(id) == null) {
+            throw new IOException("Unknown key id " + id);
+        }
+        return keys.get(id);
+    }
+
+    private void loadKeys() {
+        if (!keysLoaded) {
+            reloadKeys();
+        }
+    }
+
+    private void reloadKeys() {
+        keys.clear();
+        keyIds.clear();
+        Cursor cursor = null;
+        try {
+            cursor = pinpointDBBase.queryKeys();
+            while (cursor.moveToNext()) {
+                final int id = cursor.getInt(0);
+                final String key = cursor.getString(1);
+                while (keys.size() <= id) {
+                    keys.add(null);
+                }
+                keys.set(id, key);
+                keyIds.put(key, id);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        keysLoaded = true;
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Writer {
+        private byte[] buffer = new byte[512];
+        private int length;
+
+        void writeByte(final int b) {
+            ensure(1);
+            buffer[length++] = (byte) b;
+        }
+
+        void writeVarint(final int value) {
+            writeVarlong(value);
+        }
+
+        /**
+         * Writes a zigzag encoded varint, so small negative numbers stay
+         * short. Lengths and ids use it as well.
+         */
+        void writeVarlong(final long value) {
+            long v = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buffer[length++] = (byte) v;
+        }
+
+        void writeDouble(final double value) {
+            final long bits = Double.doubleToLongBits(value);
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (bits >>> shift);
+            }
+        }
+
+        void writeString(final String value) {
+            final byte[] bytes = value.getBytes(StringUtils.UTF8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void ensure(final int more) {
+            if (length + more > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+            }
+        }
+    }
+
+    /**
+     * Reads values written by {@link Writer}.
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(final byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() throws IOException {
+            if (position >= data.length) {
+                throw new EOFException();
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            final long value = readVarlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Invalid length or id " + value);
+            }
+            return (int) value;
+        }
+
+        long readVarlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        double readDouble() throws IOException {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | readByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() throws IOException {
+            final int length = readVarint();
+            if (length > data.length - position) {
+                throw new EOFException();
+            }
+            final String value = new String(data, position, length, StringUtils.UTF8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Strings interned by the binary event encoding, e.g. attribute and metric
+ * names and the values of the device, app and SDK details. Stored events
+ * refer to them by id. The encoding bounds the number of strings.
+ */
+public class EventKeyTable {
+
+    /**
+     * Database table name
+     */
+    public static final String TABLE_EVENT_KEY = "pinpointeventkey";
+    /**
+     * The id events use to refer to the string
+     */
+    public static final String COLUMN_KEY_ID = "key_id";
+    public static final String COLUMN_KEY = "key_name";
+    /*
+     * Database creation SQL statement
+     */
+    private static final String DATABASE_CREATE =
+        "create table if not exists " + TABLE_EVENT_KEY + "(" + COLUMN_KEY_ID + " integer primary key, " + COLUMN_KEY
+        + " TEXT NOT NULL UNIQUE" + ");";
+
+    /**
+     * Creates the table.
+     *
+     * @param database An SQLiteDatabase instance.
+     */
+    public static void onCreate(final SQLiteDatabase database) {
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    /**
+     * Drops the table.
+     *
+     * @param database An SQLiteDatabase instance.
+     */
+    public static void onDrop(final SQLiteDatabase database) {
+        database.execSQL("DROP TABLE IF EXISTS " + TABLE_EVENT_KEY);
+    }
+}
@@ -22,19 +22,24 @@ import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
 import android.net.Uri;
 
+import java.io.IOException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -67,7 +72,6 @@ import com.amazonaws.services.pinpoint.model.Session;
 import com.amazonaws.util.DateUtils;
 import com.amazonaws.util.VersionInfoUtils;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -84,22 +88,64 @@ public class EventRecorder {
     static final String EVENT_ID = "event_id";
     static final String KEY_MAX_SUBMISSIONS_ALLOWED = "maxSubmissionAllowed";
     static final int DEFAULT_MAX_SUBMISSIONS_ALLOWED = 3;
+    static final String KEY_MAX_CONCURRENT_SUBMISSIONS = "maxConcurrentSubmissions";
+    static final int DEFAULT_MAX_CONCURRENT_SUBMISSIONS = 4;
     static final int SERVICE_DEFINED_MAX_EVENTS_PER_BATCH = 100;
     private static final String USER_AGENT = PinpointManager.class.getName() + "/" + VersionInfoUtils.getVersion();
     private static int clippedEventLength = 10;
     private final static int MAX_EVENT_OPERATIONS = 1000;
+    private static final long SUBMISSION_THREAD_KEEP_ALIVE_SECONDS = 30;
     private static final long MINIMUM_PENDING_SIZE = 16 * 1024;
     private static final Log log = LogFactory.getLog(EventRecorder.class);
     private final PinpointDBUtil dbUtil;
     private final ExecutorService submissionRunnableQueue;
+    /**
+     * Sends the batches of a submission, with as many threads as
+     * maxConcurrentSubmissions. It has no threads while there is nothing to
+     * submit.
+     */
+    private final ThreadPoolExecutor batchSubmissionExecutor;
     private final PinpointContext pinpointContext;
+    /**
+     * Writes recorded events in the background, null when events are written
+     * on the caller's thread.
+     */
+    private final AsyncEventWriter eventWriter;
 
     EventRecorder(final PinpointContext pinpointContext,
                   final PinpointDBUtil dbUtil,
                   final ExecutorService submissionRunnableQueue) {
+        this(pinpointContext, dbUtil, submissionRunnableQueue, false);
+    }
+
+    EventRecorder(final PinpointContext pinpointContext,
+                  final PinpointDBUtil dbUtil,
+                  final ExecutorService submissionRunnableQueue,
+                  final boolean asyncEventRecording) {
         this.pinpointContext = pinpointContext;
         this.dbUtil = dbUtil;
         this.submissionRunnableQueue = submissionRunnableQueue;
+        this.batchSubmissionExecutor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_SUBMISSIONS,
+                DEFAULT_MAX_CONCURRENT_SUBMISSIONS, SUBMISSION_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "pinpoint-event-submitter");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.batchSubmissionExecutor.allowCoreThreadTimeOut(true);
+        if (asyncEventRecording) {
+            this.eventWriter = new AsyncEventWriter(new AsyncEventWriter.BatchWriter() {
+                @Override
+                public void write(final List<AnalyticsEvent> events) {
+                    writeEvents(events);
+                }
+            }, AsyncEventWriter.DEFAULT_CAPACITY);
+        } else {
+            this.eventWriter = null;
+        }
     }
 
     /**
@@ -123,7 +169,9 @@ public class EventRecorder {
                 new LinkedBlockingQueue<Runnable>(
                         MAX_EVENT_OPERATIONS),
                 new ThreadPoolExecutor.DiscardPolicy());
-        return new EventRecorder(pinpointContext, dbUtil, submissionRunnableQueue);
+        final boolean asyncEventRecording = pinpointContext.getPinpointConfiguration() != null
+                && pinpointContext.getPinpointConfiguration().getAsyncEventRecording();
+        return new EventRecorder(pinpointContext, dbUtil, submissionRunnableQueue, asyncEventRecording);
     }
 
     /**
@@ -136,17 +184,25 @@ public class EventRecorder {
     }
 
     /**
-     * Closes the database.
+     * Writes the events waiting in memory, if any, and closes the database.
      */
     public void closeDB() {
+        if (eventWriter != null) {
+            eventWriter.shutdown();
+        }
+        batchSubmissionExecutor.shutdown();
         dbUtil.closeDB();
     }
 
     /**
      * Records an {@link com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent}.
+     * With asynchronous event recording the event is buffered in memory and
+     * written to the local database on a background thread, along with other
+     * events recorded in the meantime.
      *
      * @param event the analytics event
-     * @return the URI of the event recorded in the local database
+     * @return the URI of the event recorded in the local database, or null if
+     *         the event is written asynchronously or failed to be recorded
      */
     public Uri recordEvent(final AnalyticsEvent event) {
         if (event == null) {
@@ -154,32 +210,18 @@ public class EventRecorder {
             return null;
         }
 
+        if (eventWriter != null && eventWriter.enqueue(event)) {
+            log.info(String.format("Event Recorded to buffer with EventType: %s",
+                    StringUtil.clipString(event.getEventType(), clippedEventLength, true)));
+            return null;
+        }
+
         log.info(String.format("Event Recorded to database with EventType: %s",
                 StringUtil.clipString(event.getEventType(), clippedEventLength, true)));
 
-        long maxPendingSize = pinpointContext.getConfiguration().optLong(KEY_MAX_PENDING_SIZE, DEFAULT_MAX_PENDING_SIZE);
-        if (maxPendingSize < MINIMUM_PENDING_SIZE) {
-            maxPendingSize = MINIMUM_PENDING_SIZE;
-        }
-
         final Uri uri = this.dbUtil.saveEvent(event);
         if (uri != null) {
-            while (this.dbUtil.getTotalSize() > maxPendingSize) {
-                Cursor cursor = null;
-                try {
-                    cursor = this.dbUtil.queryOldestEvents(5);
-                    while (this.dbUtil.getTotalSize() > maxPendingSize && cursor.moveToNext()) {
-                        this.dbUtil.deleteEvent(
-                                cursor.getInt(EventTable.COLUMN_INDEX.ID.getValue()),
-                                cursor.getInt(EventTable.COLUMN_INDEX.SIZE.getValue()));
-                    }
-                } finally {
-                    if (cursor != null) {
-                        cursor.close();
-                    }
-                }
-            }
-
+            this.dbUtil.deleteOldestEvents(getMaxPendingSize());
             return uri;
         } else {
             log.warn(String.format("Event: '%s' failed to record to local database.",
@@ -188,11 +230,89 @@ public class EventRecorder {
         }
     }
 
+    /**
+     * Writes the events buffered in memory to the local database. It returns
+     * immediately when events are recorded synchronously.
+     */
+    public void flushEvents() {
+        if (eventWriter != null) {
+            eventWriter.flush();
+        }
+    }
+
+    /**
+     * Writes events in one transaction, then drops the oldest events over
+     * maxPendingSize.
+     */
+    private void writeEvents(final List<AnalyticsEvent> events) {
+        this.dbUtil.saveEvents(events);
+        this.dbUtil.deleteOldestEvents(getMaxPendingSize());
+    }
+
+    private int getMaxConcurrentSubmissions() {
+        return pinpointContext.getConfiguration().optInt(KEY_MAX_CONCURRENT_SUBMISSIONS,
+                DEFAULT_MAX_CONCURRENT_SUBMISSIONS);
+    }
+
+    private long getMaxPendingSize() {
+        final long maxPendingSize = pinpointContext.getConfiguration().optLong(KEY_MAX_PENDING_SIZE, DEFAULT_MAX_PENDING_SIZE);
+        return Math.max(maxPendingSize, MINIMUM_PENDING_SIZE);
+    }
+
     private static final int JSON_COLUMN_INDEX = EventTable.COLUMN_INDEX.JSON.getValue();
+    private static final int DATA_COLUMN_INDEX = EventTable.COLUMN_INDEX.DATA.getValue();
     private static final int ID_COLUMN_INDEX = EventTable.COLUMN_INDEX.ID.getValue();
     private static final int SIZE_COLUMN_INDEX = EventTable.COLUMN_INDEX.SIZE.getValue();
 
+    /**
+     * An event read from the database, still encoded. Events stored by older
+     * versions of the SDK are JSON, newer ones are encoded by
+     * {@link EventCodec}.
+     */
+    static final class StoredEvent {
+        final int rowId;
+        final byte[] data;
+        final String json;
+        /** Set once the event is added to a request. **/
+        String eventId;
+
+        StoredEvent(final int rowId, final byte[] data, final String json) {
+            this.rowId = rowId;
+            this.data = data;
+            this.json = json;
+        }
+
+        int length() {
+            return data != null ? data.length : json.length();
+        }
+    }
+
     JSONObject readEventFromCursor(final Cursor cursor, final HashMap<Integer, Integer> idsAndSizeToDelete) {
+        final StoredEvent storedEvent = readStoredEvent(cursor, idsAndSizeToDelete);
+        if (storedEvent == null) {
+            return null;
+        }
+        final JSONObject jsonObject = toJSONObject(storedEvent);
+        if (jsonObject != null) {
+            try {
+                //link event with databaseId
+                jsonObject.put(DATABASE_ID_KEY, storedEvent.rowId);
+            } catch (final JSONException e) {
+                log.error(String.format(Locale.US,
+                        "Unable to add the database id to event with ID=%d.", storedEvent.rowId));
+            }
+        }
+        return jsonObject;
+    }
+
+    /**
+     * Reads the event at the cursor without decoding it.
+     *
+     * @param cursor the cursor to the database to read the event from
+     * @param idsAndSizeToDelete map the id and size of the event is added to
+     * @return the event, or null if it couldn't be read
+     */
+    StoredEvent readStoredEvent(final Cursor cursor, final HashMap<Integer, Integer> idsAndSizeToDelete) {
         Integer rowId = null;
         Integer size = null;
         try {
@@ -209,38 +329,33 @@ public class EventRecorder {
                 size = cursor.getInt(SIZE_COLUMN_INDEX);
             }
 
-            JSONObject jsonObject = null;
-            if (cursor.isNull(JSON_COLUMN_INDEX)) {
+            StoredEvent storedEvent = null;
+            final byte[] data = cursor.isNull(DATA_COLUMN_INDEX) ? null : cursor.getBlob(DATA_COLUMN_INDEX);
+            if (data != null) {
+                storedEvent = new StoredEvent(rowId, data, null);
+            } else if (cursor.isNull(JSON_COLUMN_INDEX)) {
                 log.error(String.format(Locale.US,
                         "Event from DB with ID=%d and SiZE=%d contained a NULL message.", rowId, size));
             } else {
-                final String message = cursor.getString(JSON_COLUMN_INDEX);
-                try {
-                    jsonObject = new JSONObject(message);
-                    //link event with databaseId
-                    jsonObject.put(DATABASE_ID_KEY,rowId);
-                } catch (final JSONException e) {
-                    log.error(String.format(Locale.US,
-                            "Unable to deserialize event JSON for event with ID=%d.", rowId));
-                }
+                storedEvent = new StoredEvent(rowId, null, cursor.getString(JSON_COLUMN_INDEX));
+            }
 
-                if (size != null && message.length() != size) {
-                    log.warn(String.format(Locale.US,
-                            "Message with ID=%d has a size mismatch. DBMsgSize=%d DBSizeCol=%d",
-                            rowId, message.length(), size));
-                    // In this case we had a size in the DB, but it didn't match the size of the message in the DB.
-                    // We set the size as null so the total size will end up recalculated from the remaining
-                    // items in the database after this item is removed.
-                    size = null;
-                }
+            if (storedEvent != null && size != null && storedEvent.length() != size) {
+                log.warn(String.format(Locale.US,
+                        "Message with ID=%d has a size mismatch. DBMsgSize=%d DBSizeCol=%d",
+                        rowId, storedEvent.length(), size));
+                // In this case we had a size in the DB, but it didn't match the size of the message in the DB.
+                // We set the size as null so the total size will end up recalculated from the remaining
+                // items in the database after this item is removed.
+                size = null;
             }
 
-            return jsonObject;
+            return storedEvent;
         } catch (final Exception ex) {
             log.error("Failed accessing cursor to get next event.", ex);
         } finally {
             // if the row Id is not null then this item needs to be deleted from the database regardless of whether
-            // the message was valid json or not, since we don't want to leave a corrupted item in the DB.
+            // the message was valid or not, since we don't want to leave a corrupted item in the DB.
             if (rowId != null && idsAndSizeToDelete != null) {
                 idsAndSizeToDelete.put(rowId, size);
             }
@@ -248,12 +363,28 @@ public class EventRecorder {
         return null;
     }
 
+    private JSONObject toJSONObject(final StoredEvent storedEvent) {
+        try {
+            if (storedEvent.data != null) {
+                return dbUtil.getEventCodec().decodeJSON(storedEvent.data);
+            }
+            return new JSONObject(storedEvent.json);
+        } catch (final IOException e) {
+            log.error(String.format(Locale.US,
+                    "Unable to decode event with ID=%d.", storedEvent.rowId));
+        } catch (final JSONException e) {
+            log.error(String.format(Locale.US,
+                    "Unable to deserialize event JSON for event with ID=%d.", storedEvent.rowId));
+        }
+        return null;
+    }
+
     public void submitEvents() {
         submissionRunnableQueue.execute(new Runnable() {
             @Override
             public void run() {
                 if (isNetworkAvailable(pinpointContext.getApplicationContext())) {
-                    processEvents();
+                    processEvents(false);
                 } else {
                     log.warn("Device is offline, skipping submitting events to Pinpoint");
                 }
@@ -281,34 +412,33 @@ public class EventRecorder {
      *
      * @param cursor the cursor to the database to read events from
      * @param idsAndSizeToDelete map of id and size of the event
-     * @return an array of the events.
+     * @return a list of the events, not yet decoded.
      */
-    JSONArray getBatchOfEvents(final Cursor cursor,
+    List<StoredEvent> getBatchOfEvents(final Cursor cursor,
                                        final HashMap<Integer, Integer> idsAndSizeToDelete) {
-        final JSONArray eventArray = new JSONArray();
+        final List<StoredEvent> events = new ArrayList<StoredEvent>();
         long currentRequestSize = 0;
-        long eventLength;
         final long maxRequestSize = pinpointContext
                 .getConfiguration()
                 .optLong(KEY_MAX_SUBMISSION_SIZE, DEFAULT_MAX_SUBMISSION_SIZE);
 
         do {
-            JSONObject json = readEventFromCursor(cursor, idsAndSizeToDelete);
-            if (json != null) {
-                eventLength = json.length();
-                currentRequestSize += eventLength;
-                eventArray.put(json);
+            final StoredEvent storedEvent = readStoredEvent(cursor, idsAndSizeToDelete);
+            if (storedEvent != null) {
+                currentRequestSize += storedEvent.length();
+                events.add(storedEvent);
             }
             if (currentRequestSize > maxRequestSize
-                    || eventArray.length() >= SERVICE_DEFINED_MAX_EVENTS_PER_BATCH) {
+                    || events.size() >= SERVICE_DEFINED_MAX_EVENTS_PER_BATCH) {
                 break;
             }
         } while (cursor.moveToNext());
 
-        return eventArray;
+        return events;
     }
 
     public List<JSONObject> getAllEvents() {
+        flushEvents();
         final List<JSONObject> events = new ArrayList<JSONObject>();
         Cursor cursor = null;
         try {
@@ -328,8 +458,22 @@ public class EventRecorder {
     }
 
     List<AnalyticsEvent> processEvents() {
+        return processEvents(true);
+    }
+
+    /**
+     * Submits the stored events.
+     *
+     * @param collectSyncedEvents whether to decode the successfully submitted
+     *            events into the returned list
+     * @return the successfully submitted events, empty if not collected
+     */
+    List<AnalyticsEvent> processEvents(final boolean collectSyncedEvents) {
         final long start = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
 
+        // submit the events still buffered in memory as well
+        flushEvents();
+
         Cursor cursor = null;
         List<AnalyticsEvent> result = new ArrayList<>();
         try {
@@ -342,13 +486,22 @@ public class EventRecorder {
             }
 
             int submissions = 0;
+            final int maxConcurrentSubmissions = getMaxConcurrentSubmissions();
+            // by default, enough batches to have maxConcurrentSubmissions in flight
             final long maxSubmissionsAllowed = pinpointContext
                     .getConfiguration()
-                    .optInt(KEY_MAX_SUBMISSIONS_ALLOWED, DEFAULT_MAX_SUBMISSIONS_ALLOWED);
+                    .optInt(KEY_MAX_SUBMISSIONS_ALLOWED,
+                            Math.max(DEFAULT_MAX_SUBMISSIONS_ALLOWED, maxConcurrentSubmissions));
+            if (maxConcurrentSubmissions > 1) {
+                setBatchSubmissionThreads(maxConcurrentSubmissions);
+            }
+            // batches being sent, oldest first, so they are completed in the order they were read
+            final Deque<BatchSubmission> inFlight = new ArrayDeque<BatchSubmission>();
+            boolean interrupted = false;
 
             do {
                 final HashMap<Integer, Integer> batchIdsAndSizeToDelete = new HashMap<Integer, Integer>();
-                final JSONArray events = this.getBatchOfEvents(cursor, batchIdsAndSizeToDelete);
+                final List<StoredEvent> events = this.getBatchOfEvents(cursor, batchIdsAndSizeToDelete);
 
                 // submitEventsAndEndpoint will submit the events and add the successfully submitted events
                 // into the SUCCESSFUL_EVENT_IDS and the failed events into the FAILED_EVENT_IDS map
@@ -357,30 +510,32 @@ public class EventRecorder {
                 // want to keep the events in the local database, batchIdsAndSizeToDelete is cleared
                 // so we do not delete them.
                 if (batchIdsAndSizeToDelete.size() > 0) {
-                    submitEventsAndEndpoint(events, batchIdsAndSizeToDelete);
-                    submissions++;
-                }
-
-                //Add all successfully submitted events to result
-                result.addAll(getSuccessfullySyncedEvents(events, batchIdsAndSizeToDelete));
-                // Delete events from the local database. At this point batchIdsAndSizeToDelete
-                // reflects the set of events that can be deleted from the local database.
-                for (Integer id : batchIdsAndSizeToDelete.keySet()) {
-                    try {
-                        dbUtil.deleteEvent(id, batchIdsAndSizeToDelete.get(id));
-                    } catch (final IllegalArgumentException exc) {
-                        log.error("Failed to delete event: " + id, exc);
+                    if (maxConcurrentSubmissions > 1) {
+                        while (!interrupted && inFlight.size() >= maxConcurrentSubmissions) {
+                            interrupted = !completeOldestBatch(inFlight, collectSyncedEvents, result);
+                        }
+                        if (interrupted) {
+                            // the events of this batch are kept for a later submission
+                            break;
+                        }
+                        inFlight.add(sendBatch(events, batchIdsAndSizeToDelete));
+                    } else {
+                        submitEventsAndEndpoint(events, batchIdsAndSizeToDelete);
+                        completeBatch(events, batchIdsAndSizeToDelete, collectSyncedEvents, result);
                     }
+                    submissions++;
                 }
                 if (submissions >= maxSubmissionsAllowed) {
                     break;
                 }
             } while (cursor.moveToNext());
 
+            while (!interrupted && !inFlight.isEmpty()) {
+                interrupted = !completeOldestBatch(inFlight, collectSyncedEvents, result);
+            }
+
             log.info(String.format(Locale.US, "Time of attemptDelivery: %d",
                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) - start));
-        } catch (JSONException jsonException) {
-            log.error("Failed to parse to event object", jsonException);
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -390,26 +545,174 @@ public class EventRecorder {
         return result;
     }
 
-    private List<AnalyticsEvent> getSuccessfullySyncedEvents(JSONArray events,
-                                                             HashMap<Integer, Integer> batchIdsAndSizeToDelete)
-        throws JSONException {
+    /**
+     * A batch of events sent on the batch submission executor. Unlike a
+     * cancelled Future, it can be waited for until its thread is done with
+     * the batch.
+     */
+    private final class BatchSubmission implements Runnable {
+        final List<StoredEvent> events;
+        final HashMap<Integer, Integer> batchIdsAndSizeToDelete;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // guarded by this
+        private boolean cancelled;
+        private Thread runner;
+        /** Whether the batch was submitted without an exception. **/
+        private volatile boolean submitted;
+
+        BatchSubmission(final List<StoredEvent> events, final HashMap<Integer, Integer> batchIdsAndSizeToDelete) {
+            this.events = events;
+            this.batchIdsAndSizeToDelete = batchIdsAndSizeToDelete;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    if (cancelled) {
+                        return;
+                    }
+                    runner = Thread.currentThread();
+                }
+                try {
+                    submitEventsAndEndpoint(events, batchIdsAndSizeToDelete);
+                    submitted = true;
+                } catch (final RuntimeException e) {
+                    log.error("Unable to submit events, events will be saved.", e);
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Stops the batch from being sent, or interrupts the thread sending it.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+
+        void awaitUninterruptibly() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private BatchSubmission sendBatch(final List<StoredEvent> events,
+                                      final HashMap<Integer, Integer> batchIdsAndSizeToDelete) {
+        final BatchSubmission submission = new BatchSubmission(events, batchIdsAndSizeToDelete);
+        batchSubmissionExecutor.execute(submission);
+        return submission;
+    }
+
+    private synchronized void setBatchSubmissionThreads(final int threads) {
+        if (threads > batchSubmissionExecutor.getMaximumPoolSize()) {
+            batchSubmissionExecutor.setMaximumPoolSize(threads);
+            batchSubmissionExecutor.setCorePoolSize(threads);
+        } else if (threads < batchSubmissionExecutor.getMaximumPoolSize()) {
+            batchSubmissionExecutor.setCorePoolSize(threads);
+            batchSubmissionExecutor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Waits for the oldest batch sent on the batch submission executor to
+     * complete, and completes it. The events are kept in the local database
+     * if the batch couldn't be sent. If interrupted, every batch in flight is
+     * cancelled and waited for, their events are kept, and false is returned.
+     */
+    private boolean completeOldestBatch(final Deque<BatchSubmission> inFlight,
+                                        final boolean collectSyncedEvents,
+                                        final List<AnalyticsEvent> result) {
+        final BatchSubmission submission = inFlight.peek();
+        try {
+            submission.await();
+        } catch (final InterruptedException e) {
+            log.warn("Interrupted while submitting events, events will be saved.");
+            // the batches are only given up once their threads are done with them
+            for (final BatchSubmission batch : inFlight) {
+                batch.cancel();
+            }
+            for (final BatchSubmission batch : inFlight) {
+                batch.awaitUninterruptibly();
+            }
+            inFlight.clear();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        inFlight.poll();
+        if (!submission.submitted) {
+            submission.batchIdsAndSizeToDelete.clear();
+        }
+        completeBatch(submission.events, submission.batchIdsAndSizeToDelete, collectSyncedEvents, result);
+        return true;
+    }
+
+    private void completeBatch(final List<StoredEvent> events,
+                               final HashMap<Integer, Integer> batchIdsAndSizeToDelete,
+                               final boolean collectSyncedEvents,
+                               final List<AnalyticsEvent> result) {
+        //Add all successfully submitted events to result
+        if (collectSyncedEvents) {
+            result.addAll(getSuccessfullySyncedEvents(events, batchIdsAndSizeToDelete));
+        }
+        // Delete events from the local database. At this point batchIdsAndSizeToDelete
+        // reflects the set of events that can be deleted from the local database.
+        try {
+            dbUtil.deleteEvents(batchIdsAndSizeToDelete);
+        } catch (final RuntimeException exc) {
+            log.error("Failed to delete events: " + batchIdsAndSizeToDelete.keySet(), exc);
+        }
+    }
+
+    private List<AnalyticsEvent> getSuccessfullySyncedEvents(List<StoredEvent> events,
+                                                             HashMap<Integer, Integer> batchIdsAndSizeToDelete) {
         List<AnalyticsEvent> result = new ArrayList<>();
-        for (int i = 0; i<events.length(); i++) {
-            if (batchIdsAndSizeToDelete.containsKey(events.getJSONObject(i).getInt(DATABASE_ID_KEY))) {
-                result.add(AnalyticsEvent.translateToEvent(events.getJSONObject(i)));
+        for (final StoredEvent storedEvent : events) {
+            if (batchIdsAndSizeToDelete.containsKey(storedEvent.rowId)) {
+                final JSONObject json = toJSONObject(storedEvent);
+                if (json == null) {
+                    continue;
+                }
+                try {
+                    result.add(AnalyticsEvent.translateToEvent(json));
+                } catch (final JSONException jsonException) {
+                    log.error("Failed to parse to event object", jsonException);
+                }
             }
         }
         return result;
     }
 
-    private void submitEventsAndEndpoint(final JSONArray eventArray,
+    private void submitEventsAndEndpoint(final List<StoredEvent> eventArray,
                                          final HashMap<Integer, Integer> batchIdsAndSizeToProcess) {
         submitEventsAndEndpoint(eventArray,
                 batchIdsAndSizeToProcess,
                 pinpointContext.getTargetingClient().currentEndpoint());
     }
 
-    private void submitEventsAndEndpoint(final JSONArray eventArray,
+    private void submitEventsAndEndpoint(final List<StoredEvent> eventArray,
                                          final HashMap<Integer, Integer> batchIdsAndSizeToDelete,
                                          EndpointProfile endpoint) {
 
@@ -419,8 +722,12 @@ public class EventRecorder {
             return;
         }
 
+        // the endpoint is only sent when it changed since the service last acknowledged it
+        final String endpointHash = endpoint.getContentHash();
+        final boolean includeEndpoint = !pinpointContext.getTargetingClient().isEndpointProfileSynced(endpointHash);
+
         // package them into an putEvents request
-        PutEventsRequest request = this.createRecordEventsRequest(eventArray, endpoint);
+        PutEventsRequest request = this.createRecordEventsRequest(eventArray, endpoint, includeEndpoint);
         request.getRequestClientOptions().appendUserAgent(USER_AGENT);
 
         try {
@@ -428,7 +735,9 @@ public class EventRecorder {
             PutEventsResult resultResponse = pinpointContext.getPinpointServiceClient().putEvents(request);
 
             //process endpoint response.
-            processEndpointResponse(endpoint, resultResponse);
+            if (includeEndpoint && processEndpointResponse(endpoint, resultResponse)) {
+                pinpointContext.getTargetingClient().markEndpointProfileSynced(endpointHash);
+            }
 
             //request accepted, checking each event item in the response.
             processEventsResponse(eventArray, endpoint, resultResponse, batchIdsAndSizeToDelete);
@@ -457,7 +766,7 @@ public class EventRecorder {
                         amazonServiceException);
                 log.error(
                         String.format(Locale.getDefault(), "Failed submission of %d events, events will be " +
-                                "removed from the local database. ", eventArray.length()),
+                                "removed from the local database. ", eventArray.size()),
                         amazonServiceException);
             }
         } catch (final AmazonClientException amazonClientException) {
@@ -474,24 +783,27 @@ public class EventRecorder {
             } else {
                 log.error(
                         String.format(Locale.getDefault(), "AmazonClientException: Failed submission of %d events, events will be " +
-                        "removed from the local database. ", eventArray.length()),
+                        "removed from the local database. ", eventArray.size()),
                         amazonClientException);
             }
         }
     }
 
-    private void processEndpointResponse(EndpointProfile endpoint, PutEventsResult resultResponse) {
+    /**
+     * @return true if the endpoint was accepted
+     */
+    private boolean processEndpointResponse(EndpointProfile endpoint, PutEventsResult resultResponse) {
         final Map<String, ItemResponse> results = resultResponse
                 .getEventsResponse()
                 .getResults();
         if (results == null || results.isEmpty()) {
             log.error("PutEventsResult is empty!");
-            return;
+            return false;
         }
 
         if (endpoint.getEndpointId().isEmpty()) {
             log.error("EndpointId is missing!");
-            return;
+            return false;
         }
 
         final EndpointItemResponse endpointItemResponse = results
@@ -499,51 +811,53 @@ public class EventRecorder {
                 .getEndpointItemResponse();
         if (endpointItemResponse == null) {
             log.error("EndPointItemResponse is null!");
-            return;
+            return false;
         }
 
         if (202 == endpointItemResponse.getStatusCode()) {
             log.info("EndpointProfile updated successfully.");
+            return true;
         } else {
             log.error("AmazonServiceException occurred during endpoint update: " +
                     endpointItemResponse.getMessage());
+            return false;
         }
     }
 
-    private void processEventsResponse(final JSONArray eventArray,
+    private void processEventsResponse(final List<StoredEvent> eventArray,
                                        EndpointProfile endpointProfile,
                                        final PutEventsResult resultResponse,
                                        final Map<Integer, Integer> batchIdsAndSizeToDelete) {
         String eventId;
         EventItemResponse responseMessage;
 
-        for(int i = 0; i < eventArray.length(); i++) {
-            try {
-                eventId = eventArray.getJSONObject(i).getString(EVENT_ID);
-                responseMessage = resultResponse
-                        .getEventsResponse()
-                        .getResults()
-                        .get(endpointProfile.getEndpointId())
-                        .getEventsItemResponse()
-                        .get(eventId);
-                // If the event is Accepted by Pinpoint OR if a retryable error occurred
-                // while submitting, remove the event from batchIdsAndSizeToDelete
-                // so the event does not get deleted from the local database.
-                if (responseMessage.getMessage().equalsIgnoreCase("Accepted")) {
-                    log.info(String.format("Successful submit event with event id %s", eventId));
-                } else if (isRetryable(responseMessage.getStatusCode())) {
-                    log.warn(String.format("Unable to successfully deliver event to server. " +
-                            "Event will be saved. Event id %s", eventId));
-                    batchIdsAndSizeToDelete.remove(eventArray.getJSONObject(i).getInt(DATABASE_ID_KEY));
-                } else {
-                    // Item level exception, not retryable, so the event will be removed
-                    // from the local database.
-                    log.error(
-                            String.format("Failed to submitEvents to EventService: statusCode: %s Status Message: %s",
-                                    responseMessage.getStatusCode(), responseMessage.getMessage()));
-                }
-            } catch (JSONException e) {
-                log.error("Failed to get event id while processing event item response.", e);
+        for (final StoredEvent storedEvent : eventArray) {
+            eventId = storedEvent.eventId;
+            if (eventId == null) {
+                // not part of the request
+                continue;
+            }
+            responseMessage = resultResponse
+                    .getEventsResponse()
+                    .getResults()
+                    .get(endpointProfile.getEndpointId())
+                    .getEventsItemResponse()
+                    .get(eventId);
+            // If the event is Accepted by Pinpoint OR if a retryable error occurred
+            // while submitting, remove the event from batchIdsAndSizeToDelete
+            // so the event does not get deleted from the local database.
+            if (responseMessage.getMessage().equalsIgnoreCase("Accepted")) {
+                log.info(String.format("Successful submit event with event id %s", eventId));
+            } else if (isRetryable(responseMessage.getStatusCode())) {
+                log.warn(String.format("Unable to successfully deliver event to server. " +
+                        "Event will be saved. Event id %s", eventId));
+                batchIdsAndSizeToDelete.remove(storedEvent.rowId);
+            } else {
+                // Item level exception, not retryable, so the event will be removed
+                // from the local database.
+                log.error(
+                        String.format("Failed to submitEvents to EventService: statusCode: %s Status Message: %s",
+                                responseMessage.getStatusCode(), responseMessage.getMessage()));
             }
         }
     }
@@ -564,13 +878,17 @@ public class EventRecorder {
     }
 
     /**
-     * @param events array of events
+     * @param events events read from the database, each one gets the id it
+     *            is sent with
      * @param endpointProfile endpoint profile for the device endpoint
+     * @param includeEndpoint whether to send the endpoint profile, or an
+     *            empty endpoint that leaves it as it is
      *
      * @return the request to put event
      */
-    private PutEventsRequest createRecordEventsRequest(final JSONArray events,
-                                                       final EndpointProfile endpointProfile) {
+    private PutEventsRequest createRecordEventsRequest(final List<StoredEvent> events,
+                                                       final EndpointProfile endpointProfile,
+                                                       final boolean includeEndpoint) {
 
         final PutEventsRequest putRequest = new PutEventsRequest().withApplicationId(endpointProfile.getApplicationId());
         final String endpointId = endpointProfile.getEndpointId();
@@ -580,24 +898,34 @@ public class EventRecorder {
         final Map<String,Event> eventsMap = new HashMap<String, Event>();
 
         // build endpoint payload
-        buildEndpointPayload(endpointProfile, endpoint);
-
-        for (int i = 0; i < events.length(); i++) {
-            JSONObject eventJSON = null;
-            AnalyticsEvent internalEvent = null;
-            try {
-                eventJSON = events.getJSONObject(i);
-                internalEvent = AnalyticsEvent.translateToEvent(eventJSON);
-            } catch (final JSONException jsonException) {
-                // Do not log JSONException due to potentially sensitive information
-                log.error("Stored event was invalid JSON.", jsonException);
-                continue;
-            }
+        if (includeEndpoint) {
+            buildEndpointPayload(endpointProfile, endpoint);
+        }
 
+        for (final StoredEvent storedEvent : events) {
             // build event payload
             final Event event = new Event();
-            buildEventPayload(internalEvent, event);
-            eventsMap.put(internalEvent.getEventId(), event);
+            if (storedEvent.data != null) {
+                // decoded straight into the payload
+                try {
+                    storedEvent.eventId = dbUtil.getEventCodec().decodeEvent(storedEvent.data, event);
+                } catch (final IOException e) {
+                    log.error("Stored event could not be decoded.", e);
+                    continue;
+                }
+            } else {
+                final AnalyticsEvent internalEvent;
+                try {
+                    internalEvent = AnalyticsEvent.translateToEvent(new JSONObject(storedEvent.json));
+                } catch (final JSONException jsonException) {
+                    // Do not log JSONException due to potentially sensitive information
+                    log.error("Stored event was invalid JSON.", jsonException);
+                    continue;
+                }
+                buildEventPayload(internalEvent, event);
+                storedEvent.eventId = internalEvent.getEventId();
+            }
+            eventsMap.put(storedEvent.eventId, event);
         }
 
         // build request payload, could also build with only endpoint payload
@@ -29,6 +29,11 @@ public class EventTable {
     public static final String COLUMN_ID = "event_id";
     public static final String COLUMN_JSON = "event_json";
     public static final String COLUMN_SIZE = "event_size";
+    /**
+     * The event in the binary encoding of {@link EventCodec}. Events stored
+     * before it was added have it NULL and only have the JSON column set.
+     */
+    public static final String COLUMN_DATA = "event_data";
     /*
      * Database creation SQL statement
      */
@@ -54,11 +59,30 @@ public class EventTable {
      * @param newVersion The new version of the database.
      */
     public static void onUpgrade(final SQLiteDatabase database, final int oldVersion, final int newVersion) {
+        if (oldVersion < 2 && newVersion >= 2) {
+            // events already stored keep their JSON and are read as such
+            database.execSQL("ALTER TABLE " + TABLE_EVENT + " ADD COLUMN " + COLUMN_DATA + " BLOB");
+            EventKeyTable.onCreate(database);
+        }
+    }
 
+    /**
+     * Downgrades the database. The events stored by a newer version may be in
+     * a format this version can't read, so they are dropped along with the
+     * tables, which are created again.
+     *
+     * @param database   An SQLiteDatabase instance.
+     * @param oldVersion The old version of the database.
+     * @param newVersion The new version of the database.
+     */
+    public static void onDowngrade(final SQLiteDatabase database, final int oldVersion, final int newVersion) {
+        database.execSQL("DROP TABLE IF EXISTS " + TABLE_EVENT);
+        EventKeyTable.onDrop(database);
+        onCreate(database, newVersion);
     }
 
     public static enum COLUMN_INDEX {
-        ID(0), SIZE(1), JSON(2);
+        ID(0), SIZE(1), JSON(2), DATA(3);
 
         private final int value;
 
@@ -24,6 +24,11 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.text.TextUtils;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.COLUMN_SIZE;
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.TABLE_EVENT;
 
@@ -35,6 +40,8 @@ public class PinpointDBBase {
     private static final int EVENTS = 10;
     private static final int EVENT_ID = 20;
     private static final String BASE_PATH = "events";
+    /** Stays well under SQLite's limit on the length of a statement. **/
+    private static final int MAX_IDS_PER_DELETE = 500;
     private final Context context;
     private final Uri contentUri;
     private final UriMatcher uriMatcher;
@@ -104,6 +111,173 @@ public class PinpointDBBase {
         return Uri.parse(BASE_PATH + "/" + id);
     }
 
+    /**
+     * Inserts records to the table in a single transaction.
+     *
+     * @param uri         The Uri of a table.
+     * @param valuesArray The values of the records.
+     * @return The number of records inserted.
+     */
+    public int bulkInsert(final Uri uri, final ContentValues[] valuesArray) {
+        final int uriType = uriMatcher.match(uri);
+        if (uriType != EVENTS) {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        long size = getTotalSize();
+        db.beginTransaction();
+        try {
+            for (final ContentValues values : valuesArray) {
+                db.insertOrThrow(TABLE_EVENT, null, values);
+                size += values.getAsLong(COLUMN_SIZE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        totalSize = size;
+        return valuesArray.length;
+    }
+
+    /**
+     * Deletes the oldest records, so that the total size of the remaining
+     * records is at most the given size. The records are removed with a
+     * single range delete.
+     *
+     * @param maxTotalSize The maximum total size of the remaining records.
+     * @return Number of rows deleted.
+     */
+    public int deleteOldest(final long maxTotalSize) {
+        final long size = getTotalSize();
+        if (size <= maxTotalSize) {
+            return 0;
+        }
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        final long excess = size - maxTotalSize;
+        long lastId = -1;
+        long removed = 0;
+        Cursor cursor = null;
+        try {
+            cursor = db.query(TABLE_EVENT, new String[] { EventTable.COLUMN_ID, COLUMN_SIZE },
+                              null, null, null, null, EventTable.COLUMN_ID + " ASC");
+            while (removed < excess && cursor.moveToNext()) {
+                lastId = cursor.getLong(0);
+                removed += cursor.getLong(1);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        if (lastId < 0) {
+            totalSize = -1;
+            return 0;
+        }
+        final int rowsDeleted = db.delete(TABLE_EVENT, EventTable.COLUMN_ID + "<=?",
+                                          new String[] { Long.toString(lastId) });
+        totalSize = size - removed;
+        return rowsDeleted;
+    }
+
+    /**
+     * Deletes the records with the given ids in a single transaction, at most
+     * MAX_IDS_PER_DELETE ids per statement.
+     *
+     * @param idsAndSizes The ids of the records, mapped to their size if known.
+     * @return Number of rows deleted.
+     */
+    public int deleteAll(final Map<Integer, Integer> idsAndSizes) {
+        if (idsAndSizes.isEmpty()) {
+            return 0;
+        }
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        long size = getTotalSize();
+        final List<Integer> ids = new ArrayList<Integer>(idsAndSizes.keySet());
+        int rowsDeleted = 0;
+        db.beginTransaction();
+        try {
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_DELETE) {
+                final List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_DELETE));
+                final StringBuilder where = new StringBuilder(EventTable.COLUMN_ID).append(" IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    where.append(i == 0 ? "" : ",").append(chunk.get(i).intValue());
+                }
+                rowsDeleted += db.delete(TABLE_EVENT, where.append(')').toString(), null);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (final Integer knownSize : idsAndSizes.values()) {
+            if (knownSize == null) {
+                size = -1;
+                break;
+            }
+            size -= knownSize;
+        }
+        totalSize = rowsDeleted == ids.size() ? size : -1;
+        return rowsDeleted;
+    }
+
+    /**
+     * Runs a task in a transaction, which is committed if the task returns
+     * and rolled back if it throws.
+     *
+     * @param task The task.
+     * @param <T>  The type of the result of the task.
+     * @return The result of the task.
+     */
+    public <T> T runInTransaction(final Callable<T> task) {
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        boolean committed = false;
+        db.beginTransaction();
+        try {
+            final T result;
+            try {
+                result = task.call();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+            return result;
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (!committed) {
+                // the task may have counted records that were rolled back
+                totalSize = -1;
+            }
+        }
+    }
+
+    /**
+     * Queries all interned keys.
+     *
+     * @return A Cursor pointing to the id and key of each record.
+     */
+    public Cursor queryKeys() {
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        return db.query(EventKeyTable.TABLE_EVENT_KEY,
+                        new String[] { EventKeyTable.COLUMN_KEY_ID, EventKeyTable.COLUMN_KEY },
+                        null, null, null, null, null);
+    }
+
+    /**
+     * Inserts an interned key with the given id.
+     *
+     * @param id  The id of the key.
+     * @param key The key.
+     */
+    public void insertKey(final int id, final String key) {
+        final ContentValues values = new ContentValues();
+        values.put(EventKeyTable.COLUMN_KEY_ID, id);
+        values.put(EventKeyTable.COLUMN_KEY, key);
+        databaseHelper.getWritableDatabase().insertOrThrow(EventKeyTable.TABLE_EVENT_KEY, null, values);
+    }
+
     /**
      * Get total size of event records.
      *
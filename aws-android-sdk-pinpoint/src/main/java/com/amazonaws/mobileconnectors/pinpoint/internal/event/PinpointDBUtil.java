@@ -21,6 +21,10 @@ import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.COLUMN_ID;
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.COLUMN_SIZE;
 
@@ -34,6 +38,11 @@ public class PinpointDBUtil {
      */
     private PinpointDBBase pinpointDBBase;
 
+    /**
+     * eventCodec encodes the stored events
+     */
+    private final EventCodec eventCodec;
+
     /**
      * Constructs a PinpointDBUtil with the given Context.
      *
@@ -43,6 +52,7 @@ public class PinpointDBUtil {
         if (pinpointDBBase == null) {
             pinpointDBBase = new PinpointDBBase(context);
         }
+        eventCodec = new EventCodec(pinpointDBBase);
     }
 
     /**
@@ -61,17 +71,52 @@ public class PinpointDBUtil {
      * @return An Uri of the record inserted.
      */
     public Uri saveEvent(final AnalyticsEvent event) {
-        return pinpointDBBase.insert(pinpointDBBase.getContentUri(), generateContentValuesFromEvent(event));
+        return eventCodec.runInTransaction(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                return pinpointDBBase.insert(pinpointDBBase.getContentUri(), generateContentValuesFromEvent(event));
+            }
+        });
+    }
+
+    /**
+     * Saves events into the database in a single transaction.
+     *
+     * @param events The AnalyticsEvents to be saved.
+     * @return The number of records inserted.
+     */
+    public int saveEvents(final List<AnalyticsEvent> events) {
+        return eventCodec.runInTransaction(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                final ContentValues[] values = new ContentValues[events.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = generateContentValuesFromEvent(events.get(i));
+                }
+                return pinpointDBBase.bulkInsert(pinpointDBBase.getContentUri(), values);
+            }
+        });
     }
 
     private ContentValues generateContentValuesFromEvent(final AnalyticsEvent event) {
-        ContentValues values = new ContentValues();
-        String json = event.toJSONObject().toString();
-        values.put(EventTable.COLUMN_JSON, json);
-        values.put(COLUMN_SIZE, json.length());
+        final ContentValues values = new ContentValues();
+        final byte[] data = eventCodec.encode(event);
+        values.put(EventTable.COLUMN_DATA, data);
+        // the JSON column is NOT NULL, it is only filled in for events stored by older versions
+        values.put(EventTable.COLUMN_JSON, "");
+        values.put(COLUMN_SIZE, data.length);
         return values;
     }
 
+    /**
+     * Gets the codec of the events stored in the data column.
+     *
+     * @return The event codec.
+     */
+    EventCodec getEventCodec() {
+        return eventCodec;
+    }
+
     /**
      * Queries all the events.
      *
@@ -112,6 +157,27 @@ public class PinpointDBUtil {
         return pinpointDBBase.delete(getEventUri(id), null, null, size);
     }
 
+    /**
+     * Deletes the events with the given ids in a single transaction.
+     *
+     * @param idsAndSizes The ids of the events, mapped to their size if known.
+     * @return Number of rows deleted.
+     */
+    public int deleteEvents(final Map<Integer, Integer> idsAndSizes) {
+        return pinpointDBBase.deleteAll(idsAndSizes);
+    }
+
+    /**
+     * Deletes the oldest events until the total size of the remaining events
+     * is at most the given size.
+     *
+     * @param maxTotalSize The maximum total size of the remaining events.
+     * @return Number of rows deleted.
+     */
+    public int deleteOldestEvents(final long maxTotalSize) {
+        return pinpointDBBase.deleteOldest(maxTotalSize);
+    }
+
     /**
      * Gets the Uri of the event table.
      *
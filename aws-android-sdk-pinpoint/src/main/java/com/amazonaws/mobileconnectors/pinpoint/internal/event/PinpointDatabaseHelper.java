@@ -21,7 +21,7 @@ import android.database.sqlite.SQLiteOpenHelper;
 
 public class PinpointDatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "awspinpoint.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     private int version;
 
@@ -59,4 +59,17 @@ public class PinpointDatabaseHelper extends SQLiteOpenHelper {
     public void onUpgrade(final SQLiteDatabase database, final int oldVersion, final int newVersion) {
         EventTable.onUpgrade(database, oldVersion, newVersion);
     }
+
+    /**
+     * Downgrades the database, e.g. when the app is downgraded to an SDK with
+     * an older database version.
+     *
+     * @param database   An SQLiteDatabase instance.
+     * @param oldVersion The old version of the database.
+     * @param newVersion The new version of the database.
+     */
+    @Override
+    public void onDowngrade(final SQLiteDatabase database, final int oldVersion, final int newVersion) {
+        EventTable.onDowngrade(database, oldVersion, newVersion);
+    }
 }
@@ -23,8 +23,12 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.amazonaws.logging.Log;
 import com.amazonaws.logging.LogFactory;
@@ -57,12 +61,32 @@ public class TargetingClient {
     private static final int MAX_EVENT_OPERATIONS = 1000;
     private static final String CUSTOM_ATTRIBUTES_KEY = "ENDPOINT_PROFILE_CUSTOM_ATTRIBUTES";
     private static final String CUSTOM_METRICS_KEY = "ENDPOINT_PROFILE_CUSTOM_METRICS";
+    private static final String SYNCED_PROFILE_HASH_KEY = "ENDPOINT_PROFILE_SYNCED_HASH";
+    private static final String SYNCED_PROFILE_TIME_KEY = "ENDPOINT_PROFILE_SYNCED_TIME";
+    static final String KEY_ENDPOINT_UPDATE_DELAY = "endpointUpdateDelay";
+    static final long DEFAULT_ENDPOINT_UPDATE_DELAY = 1000L;
+    static final String KEY_ENDPOINT_RESYNC_INTERVAL = "endpointResyncInterval";
+    static final long DEFAULT_ENDPOINT_RESYNC_INTERVAL = 24 * 60 * 60 * 1000L;
+    private static final long UPDATE_SCHEDULER_KEEP_ALIVE_SECONDS = 60L;
 
     private final PinpointContext context;
     private final Map<String, java.util.List<String>> globalAttributes;
     private final Map<String, Double> globalMetrics;
     private final ExecutorService endpointRunnableQueue;
     private final EndpointProfile endpointProfile;
+    /**
+     * The profile of the update waiting to run, null when none is. Updates
+     * requested before it runs replace its profile instead of queueing.
+     */
+    private final AtomicReference<EndpointProfile> pendingUpdate = new AtomicReference<EndpointProfile>();
+    /**
+     * Hands the pending update to the endpoint executor once its delay has
+     * passed, so that the executor isn't held while it waits.
+     */
+    private final ScheduledThreadPoolExecutor updateScheduler;
+    private final Object syncLock = new Object();
+    private String syncedProfileHash;
+    private long syncedProfileTime;
 
     /**
      * Initializes a targetingClient used for testing only
@@ -74,10 +98,22 @@ public class TargetingClient {
                            ExecutorService executor) {
         checkNotNull(context, "A valid pinpointContext must be provided");
         this.endpointRunnableQueue = executor;
+        this.updateScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "PinpointEndpointUpdate");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        updateScheduler.setKeepAliveTime(UPDATE_SCHEDULER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        updateScheduler.allowCoreThreadTimeOut(true);
         this.context = context;
         this.endpointProfile = new EndpointProfile(this.context);
         globalAttributes = loadAttributes();
         globalMetrics = loadMetrics();
+        syncedProfileHash = context.getSystem().getPreferences().getString(SYNCED_PROFILE_HASH_KEY, null);
+        syncedProfileTime = context.getSystem().getPreferences().getLong(SYNCED_PROFILE_TIME_KEY, 0L);
     }
 
     /**
@@ -115,6 +151,9 @@ public class TargetingClient {
     /**
      * Register the current endpoint with the Pinpoint service.
      * TargetingClient attributes and Metrics are added to the endpoint profile.
+     * The update is sent after a short delay, together with any updates
+     * requested in the meantime, and skipped if the endpoint is unchanged
+     * since it was last acknowledged.
      */
     public void updateEndpointProfile() {
         this.executeUpdate(this.currentEndpoint());
@@ -150,6 +189,53 @@ public class TargetingClient {
             return;
         }
 
+        if (pendingUpdate.getAndSet(endpointProfile) != null) {
+            log.debug("EndpointProfile update coalesced with the pending one.");
+            return;
+        }
+
+        final long delay = context.getConfiguration()
+                .optLong(KEY_ENDPOINT_UPDATE_DELAY, DEFAULT_ENDPOINT_UPDATE_DELAY);
+        if (delay <= 0) {
+            submitPendingUpdate();
+            return;
+        }
+        try {
+            updateScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    submitPendingUpdate();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            pendingUpdate.set(null);
+            log.error("EndpointProfile update could not be scheduled.", e);
+        }
+    }
+
+    private void submitPendingUpdate() {
+        try {
+            endpointRunnableQueue.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendUpdate(pendingUpdate.getAndSet(null));
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            pendingUpdate.set(null);
+            log.error("EndpointProfile update was rejected by the executor.", e);
+        }
+    }
+
+    @SuppressWarnings("checkstyle:hiddenfield")
+    private void sendUpdate(EndpointProfile endpointProfile) {
+        // hashed before the request is built, so that a change in between is sent again
+        final String contentHash = endpointProfile.getContentHash();
+        if (isEndpointProfileSynced(contentHash)) {
+            log.info("EndpointProfile is unchanged, skipping update.");
+            return;
+        }
+
         final EndpointDemographic demographic = new EndpointDemographic()
                 .withAppVersion(endpointProfile.getDemographic().getAppVersion())
                 .withLocale(endpointProfile.getDemographic().getLocale().toString())
@@ -191,20 +277,49 @@ public class TargetingClient {
 
         updateEndpointRequest.getRequestClientOptions().appendUserAgent(USER_AGENT);
 
-        endpointRunnableQueue.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    log.info("Updating EndpointProfile.");
-                    context.getPinpointServiceClient().updateEndpoint(updateEndpointRequest);
-                    log.info("EndpointProfile updated successfully.");
-                } catch (final AmazonServiceException e) {
-                    log.error("AmazonServiceException occurred during endpoint update:", e);
-                } catch (final AmazonClientException e) {
-                    log.info("AmazonClientException occurred during endpoint update:", e);
-                }
-            }
-        });
+        try {
+            log.info("Updating EndpointProfile.");
+            context.getPinpointServiceClient().updateEndpoint(updateEndpointRequest);
+            markEndpointProfileSynced(contentHash);
+            log.info("EndpointProfile updated successfully.");
+        } catch (final AmazonServiceException e) {
+            log.error("AmazonServiceException occurred during endpoint update:", e);
+        } catch (final AmazonClientException e) {
+            log.info("AmazonClientException occurred during endpoint update:", e);
+        }
+    }
+
+    /**
+     * Returns whether the Pinpoint service acknowledged an endpoint with the
+     * given content hash recently enough for it not to be sent again.
+     *
+     * @param contentHash the {@link EndpointProfile#getContentHash()} of the endpoint
+     * @return true if the endpoint doesn't need to be sent
+     */
+    public boolean isEndpointProfileSynced(final String contentHash) {
+        final long resyncInterval = context.getConfiguration()
+                .optLong(KEY_ENDPOINT_RESYNC_INTERVAL, DEFAULT_ENDPOINT_RESYNC_INTERVAL);
+        synchronized (syncLock) {
+            final long age = System.currentTimeMillis() - syncedProfileTime;
+            return contentHash != null && contentHash.equals(syncedProfileHash)
+                    && age >= 0 && age < resyncInterval;
+        }
+    }
+
+    /**
+     * Records that the Pinpoint service acknowledged an endpoint, either with
+     * UpdateEndpoint or as part of a PutEvents request.
+     *
+     * @param contentHash the {@link EndpointProfile#getContentHash()} of the endpoint sent
+     */
+    public void markEndpointProfileSynced(final String contentHash) {
+        final long now = System.currentTimeMillis();
+        synchronized (syncLock) {
+            syncedProfileHash = contentHash;
+            syncedProfileTime = now;
+        }
+        context.getSystem().getPreferences().putString(SYNCED_PROFILE_HASH_KEY, contentHash);
+        context.getSystem().getPreferences().putLong(SYNCED_PROFILE_TIME_KEY, now);
     }
 
     private void saveAttributes() {
@@ -15,10 +15,15 @@
 
 package com.amazonaws.mobileconnectors.pinpoint.targeting.endpointProfile;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import com.amazonaws.logging.Log;
@@ -31,6 +36,7 @@ import com.amazonaws.mobileconnectors.pinpoint.internal.core.util.DateUtil;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.util.JSONBuilder;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.util.JSONSerializable;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.util.StringUtil;
+import com.amazonaws.util.BinaryUtils;
 
 import static com.amazonaws.mobileconnectors.pinpoint.internal.core.util.Preconditions.checkNotNull;
 
@@ -48,6 +54,7 @@ public class EndpointProfile implements JSONSerializable {
     private static final Log log =
         LogFactory.getLog(EndpointProfile.class);
     private static final int JSON_INDENTATION = 4;
+    private static final String EFFECTIVE_DATE_KEY = "EffectiveDate";
     private final PinpointContext pinpointContext;
     private final Map<String, java.util.List<String>> attributes = new ConcurrentHashMap<String, java.util.List<String>>();
     private final Map<String, Double> metrics = new ConcurrentHashMap<String, Double>();
@@ -418,7 +425,7 @@ public class EndpointProfile implements JSONSerializable {
         builder.withAttribute("Address", getAddress());
         builder.withAttribute("Location", getLocation().toJSONObject());
         builder.withAttribute("Demographic", getDemographic().toJSONObject());
-        builder.withAttribute("EffectiveDate", DateUtil.isoDateFromMillis(getEffectiveDate()));
+        builder.withAttribute(EFFECTIVE_DATE_KEY, DateUtil.isoDateFromMillis(getEffectiveDate()));
         builder.withAttribute("OptOut", getOptOut());
 
         final JSONObject attributesJson = new JSONObject();
@@ -455,4 +462,60 @@ public class EndpointProfile implements JSONSerializable {
         builder.withAttribute("User", getUser().toJSONObject());
         return builder.toJSONObject();
     }
+
+    /**
+     * Returns a hash of the content of the endpoint sent to the Pinpoint
+     * service, other than its effective date. Endpoints with the same
+     * attributes and metrics have the same hash, whatever order they were
+     * added in.
+     *
+     * @return the content hash, as a hex string
+     */
+    public String getContentHash() {
+        final JSONObject json = toJSONObject();
+        json.remove(EFFECTIVE_DATE_KEY);
+        final StringBuilder canonical = new StringBuilder();
+        appendCanonical(canonical, json);
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return BinaryUtils.toHex(digest.digest(canonical.toString().getBytes(StringUtil.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not available", e);
+        }
+    }
+
+    /**
+     * Writes a JSON value with the keys of objects in sorted order.
+     */
+    private static void appendCanonical(final StringBuilder out, final Object value) {
+        if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            final TreeSet<String> keys = new TreeSet<String>();
+            final Iterator<?> keysItr = object.keys();
+            while (keysItr.hasNext()) {
+                keys.add((String) keysItr.next());
+            }
+            out.append('{');
+            for (final String key : keys) {
+                out.append(JSONObject.quote(key)).append(':');
+                appendCanonical(out, object.opt(key));
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                appendCanonical(out, array.opt(i));
+                out.append(',');
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        } else {
+            out.append(value);
+        }
+    }
 }
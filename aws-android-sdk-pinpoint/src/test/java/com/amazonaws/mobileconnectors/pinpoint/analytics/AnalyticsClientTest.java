@@ -18,6 +18,8 @@ package com.amazonaws.mobileconnectors.pinpoint.analytics;
 import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.configuration.AndroidPreferencesConfiguration;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.AndroidDeviceDetails;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.util.SDKInfo;
 import com.amazonaws.mobileconnectors.pinpoint.internal.event.EventRecorder;
 import com.amazonaws.mobileconnectors.pinpoint.internal.event.PinpointDBUtil;
 
@@ -35,9 +37,16 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -657,4 +666,119 @@ public class AnalyticsClientTest extends MobileAnalyticsTestBase {
                 "123456789012345678901234567890123456789012345678901234567890");
     }
 
+    @Test
+    public void createEvent_globalAttributesSharedUntilChanged() {
+        target.addGlobalAttribute("globalAttr", "global1");
+        target.addGlobalMetric(EVENT_TYPE, "typeMetric", 2.0);
+
+        final AttributeSnapshot snapshot = target.getAttributeSnapshot(EVENT_TYPE);
+        target.createEvent(EVENT_TYPE);
+        assertSame(snapshot, target.getAttributeSnapshot(EVENT_TYPE));
+        assertThat(snapshot.getAttributes().get("globalAttr"), is("global1"));
+        assertThat(snapshot.getMetrics().get("typeMetric"), is(2.0));
+        assertNotSame(snapshot, target.getAttributeSnapshot("other_event"));
+
+        target.addGlobalAttribute("globalAttr", "global2");
+        final AttributeSnapshot changed = target.getAttributeSnapshot(EVENT_TYPE);
+        assertNotSame(snapshot, changed);
+        assertThat(changed.getAttributes().get("globalAttr"), is("global2"));
+        // the previous snapshot is unchanged
+        assertThat(snapshot.getAttributes().get("globalAttr"), is("global1"));
+
+        target.removeGlobalMetric(EVENT_TYPE, "typeMetric");
+        assertTrue(target.getAttributeSnapshot(EVENT_TYPE).getMetrics().isEmpty());
+    }
+
+    @Test
+    public void createEvent_sharedAttributesSerializeAsCopiedAttributes() throws JSONException {
+        for (int i = 0; i < 10; i++) {
+            target.addGlobalAttribute("attr" + i, "value" + i);
+            target.addGlobalMetric("metric" + i, (double) i);
+        }
+        target.addGlobalAttribute(EVENT_TYPE, "attr0", "typeValue");
+        target.addGlobalMetric(EVENT_TYPE, "typeMetric", 42.0);
+
+        final AnalyticsEvent event = target.createEvent(EVENT_TYPE);
+        event.addAttribute("local", "localValue");
+        event.addAttribute("attr1", "overridden");
+        event.addAttribute("attr2", null);
+        event.addMetric("metric3", null);
+
+        // an event with every attribute and metric added to it
+        final AnalyticsEvent copied = AnalyticsEvent.newInstance(event.getEventId(), event.getEventType(),
+                event.getAllAttributes(), event.getAllMetrics(), new SDKInfo(event.getSdkName(), event.getSdkVersion()),
+                event.getSession().getSessionId(), event.getSession().getSessionStart(),
+                event.getSession().getSessionStop(), event.getSession().getSessionDuration(),
+                event.getEventTimestamp(), event.getUniqueId(), event.getAppDetails(),
+                new AndroidDeviceDetails(null));
+
+        assertThat(event.getAttribute("attr0"), is("typeValue"));
+        assertThat(event.getAttribute("attr1"), is("overridden"));
+        assertFalse(event.hasAttribute("attr2"));
+        assertFalse(event.hasMetric("metric3"));
+        assertThat(event.getMetric("typeMetric"), is(42.0));
+        assertThat(event.getAllAttributes().size(), is(10));
+        assertThat(event.getAllMetrics().size(), is(10));
+        assertJSONEquals(copied.toJSONObject().getJSONObject("attributes"),
+                event.toJSONObject().getJSONObject("attributes"));
+        assertJSONEquals(copied.toJSONObject().getJSONObject("metrics"),
+                event.toJSONObject().getJSONObject("metrics"));
+
+        // removing from one event leaves the others alone
+        final AnalyticsEvent other = target.createEvent(EVENT_TYPE);
+        assertThat(other.getAttribute("attr2"), is("value2"));
+        assertThat(other.getMetric("metric3"), is(3.0));
+
+        // the recorded copy keeps the shared attributes and the event's own
+        target.recordEvent(event);
+        final ArgumentCaptor<AnalyticsEvent> eventCaptor = ArgumentCaptor.forClass(AnalyticsEvent.class);
+        verify(dbUtil, times(1)).saveEvent(eventCaptor.capture());
+        final AnalyticsEvent recorded = eventCaptor.getValue();
+        assertThat(recorded.getAllAttributes(), is(event.getAllAttributes()));
+        assertThat(recorded.getAllMetrics(), is(event.getAllMetrics()));
+    }
+
+    @Test
+    public void recordEvent_aggregatedEventType_recordsSummaryOnFlush() {
+        target.addEventAggregation(new EventAggregation(EVENT_TYPE).withHistogram("metric", 10.0));
+        for (int i = 0; i < 20; i++) {
+            target.recordEvent(target.createEvent(EVENT_TYPE).withAttribute("attr", "attr1")
+                    .withMetric("metric", (double) i));
+        }
+        target.recordEvent(target.createEvent("other_event"));
+
+        final ArgumentCaptor<AnalyticsEvent> eventCaptor = ArgumentCaptor.forClass(AnalyticsEvent.class);
+        verify(dbUtil, times(1)).saveEvent(eventCaptor.capture());
+        assertThat(eventCaptor.getValue().getEventType(), is("other_event"));
+
+        target.flushEventAggregations();
+        verify(dbUtil, times(2)).saveEvent(eventCaptor.capture());
+        final AnalyticsEvent summary = eventCaptor.getValue();
+        assertThat(summary.getEventType(), is(EVENT_TYPE));
+        assertThat(summary.getAttribute("attr"), is("attr1"));
+        assertThat(summary.getMetric(EventAggregation.COUNT_METRIC), is(20.0));
+        assertThat(summary.getMetric("metric.sum"), is(190.0));
+        assertThat(summary.getMetric("metric.bucket0"), is(11.0));
+        assertThat(summary.getMetric("metric.bucket1"), is(9.0));
+
+        // removing the aggregation records events as they are again
+        target.removeEventAggregation(EVENT_TYPE);
+        target.recordEvent(target.createEvent(EVENT_TYPE));
+        verify(dbUtil, times(3)).saveEvent(any(AnalyticsEvent.class));
+    }
+
+    private static void assertJSONEquals(final JSONObject expected, final JSONObject actual) throws JSONException {
+        assertEquals(toMap(expected), toMap(actual));
+    }
+
+    private static Map<String, Object> toMap(final JSONObject json) throws JSONException {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        final Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            map.put(key, json.get(key));
+        }
+        return map;
+    }
+
 }
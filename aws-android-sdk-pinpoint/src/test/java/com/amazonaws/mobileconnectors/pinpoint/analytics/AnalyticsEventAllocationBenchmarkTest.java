@@ -0,0 +1,133 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.analytics;
+
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.util.SDKInfo;
+import com.amazonaws.mobileconnectors.pinpoint.internal.event.EventRecorder;
+import com.amazonaws.services.pinpoint.AmazonPinpointClient;
+import com.amazonaws.services.pinpointanalytics.AmazonPinpointAnalyticsClient;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the bytes allocated to create an event and the copy of it that
+ * {@link AnalyticsClient#recordEvent(AnalyticsEvent)} records, with 20 global
+ * attributes, 10 global metrics and 5 attributes of the event type. The
+ * events are created as before, adding each global attribute and metric to
+ * them, and sharing a snapshot of them. The events are not recorded.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(RobolectricTestRunner.class)
+public class AnalyticsEventAllocationBenchmarkTest {
+    private static final String EVENT_TYPE = "frame_rendered";
+    private static final int EVENT_COUNT = 20000;
+
+    private PinpointContext pinpointContext;
+    private AnalyticsClient analyticsClient;
+    private final Map<String, String> globalAttributes = new HashMap<String, String>();
+    private final Map<String, Double> globalMetrics = new HashMap<String, Double>();
+    private final Map<String, String> typeAttributes = new HashMap<String, String>();
+
+    @Before
+    public void setup() {
+        // not a mock, which would record every call
+        pinpointContext = new PinpointContext(mock(AmazonPinpointAnalyticsClient.class), mock(AmazonPinpointClient.class),
+                RuntimeEnvironment.application.getApplicationContext(), "appId",
+                new SDKInfo("AppIntelligenceSDK-Analytics", "test"), null);
+        analyticsClient = new AnalyticsClient(pinpointContext);
+        analyticsClient.setEventRecorder(mock(EventRecorder.class));
+        for (int i = 0; i < 20; i++) {
+            globalAttributes.put("global_attribute_" + i, "value_" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            globalMetrics.put("global_metric_" + i, (double) i);
+        }
+        for (int i = 0; i < 5; i++) {
+            typeAttributes.put("type_attribute_" + i, "value_" + i);
+        }
+        for (final Entry<String, String> entry : globalAttributes.entrySet()) {
+            analyticsClient.addGlobalAttribute(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<String, Double> entry : globalMetrics.entrySet()) {
+            analyticsClient.addGlobalMetric(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<String, String> entry : typeAttributes.entrySet()) {
+            analyticsClient.addGlobalAttribute(EVENT_TYPE, entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Test
+    public void benchmarkAllocations() {
+        for (int round = 0; round < 3; round++) {
+            final long[] copied = measure(true);
+            final long[] shared = measure(false);
+            System.out.println(String.format("copied: %5d bytes/event %5d ns/event, "
+                            + "shared: %5d bytes/event %5d ns/event (%.1fx fewer bytes)",
+                    copied[0], copied[1], shared[0], shared[1], copied[0] / (double) shared[0]));
+        }
+    }
+
+    /**
+     * @return bytes allocated and nanoseconds per event
+     */
+    private long[] measure(final boolean copyGlobalAttributes) {
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            final AnalyticsEvent event = copyGlobalAttributes ? createCopying() : analyticsClient.createEvent(EVENT_TYPE);
+            event.addMetric("frame_time", 16.0);
+            AnalyticsEvent.createFromEvent(pinpointContext, "session", 1000L, event);
+        }
+        final long nanos = System.nanoTime() - start;
+        final long bytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+        return new long[] { bytes / EVENT_COUNT, nanos / EVENT_COUNT };
+    }
+
+    /**
+     * Creates an event as {@link AnalyticsClient#createEvent(String)} did
+     * before, adding each global attribute and metric to it.
+     */
+    private AnalyticsEvent createCopying() {
+        final AnalyticsEvent event = AnalyticsEvent.newInstance(pinpointContext, "session", 0L, null, null,
+                System.currentTimeMillis(), EVENT_TYPE);
+        for (final Entry<String, String> entry : globalAttributes.entrySet()) {
+            event.addAttribute(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<String, String> entry : typeAttributes.entrySet()) {
+            event.addAttribute(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<String, Double> entry : globalMetrics.entrySet()) {
+            event.addMetric(entry.getKey(), entry.getValue());
+        }
+        return event;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.analytics;
+
+import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class EventAggregatorTest {
+    private static final String EVENT_TYPE = "frame_rendered";
+    private static final long WINDOW = 1000L;
+
+    private PinpointContext pinpointContext;
+    private final List<AnalyticsEvent> summaries = new ArrayList<AnalyticsEvent>();
+
+    @Before
+    public void setup() {
+        pinpointContext = new AnalyticsContextBuilder()
+                .withSdkInfo("AppIntelligenceSDK-Analytics", "test")
+                .withUniqueIdValue("abc123")
+                .withContext(RuntimeEnvironment.application.getApplicationContext())
+                .build();
+    }
+
+    private AnalyticsEvent event(final long timestamp, final String screen, final Double frameTime) {
+        final AnalyticsEvent event = AnalyticsEvent.newInstance(pinpointContext, "session", 100L, null, null,
+                timestamp, EVENT_TYPE);
+        event.addAttribute("screen", screen);
+        if (frameTime != null) {
+            event.addMetric("frame_time", frameTime);
+        }
+        return event;
+    }
+
+    @Test
+    public void testWindowSummarizesMetrics() {
+        final EventAggregator aggregator = new EventAggregator(pinpointContext,
+                new EventAggregation(EVENT_TYPE).withWindowDuration(WINDOW));
+        assertTrue(aggregator.add(event(5000L, "home", 16.0), summaries));
+        assertTrue(aggregator.add(event(5100L, "home", 40.0), summaries));
+        assertTrue(aggregator.add(event(5200L, "home", null), summaries));
+        assertTrue(aggregator.add(event(5300L, "home", 4.0), summaries));
+        assertTrue(summaries.isEmpty());
+
+        aggregator.close(summaries);
+        assertEquals(1, summaries.size());
+        final AnalyticsEvent summary = summaries.get(0);
+        assertEquals(EVENT_TYPE, summary.getEventType());
+        assertEquals("home", summary.getAttribute("screen"));
+        assertEquals("session", summary.getSession().getSessionId());
+        assertEquals(Long.valueOf(100L), summary.getSession().getSessionStart());
+        assertEquals(Long.valueOf(5300L), summary.getEventTimestamp());
+        assertEquals(4.0, summary.getMetric(EventAggregation.COUNT_METRIC), 0);
+        assertEquals(3.0, summary.getMetric("frame_time.count"), 0);
+        assertEquals(60.0, summary.getMetric("frame_time.sum"), 0);
+        assertEquals(4.0, summary.getMetric("frame_time.min"), 0);
+        assertEquals(40.0, summary.getMetric("frame_time.max"), 0);
+        assertNull(summary.getMetric("frame_time.bucket0"));
+
+        summaries.clear();
+        aggregator.close(summaries);
+        assertTrue(summaries.isEmpty());
+    }
+
+    @Test
+    public void testGroupsByAttributes() {
+        final EventAggregator aggregator = new EventAggregator(pinpointContext,
+                new EventAggregation(EVENT_TYPE).withWindowDuration(WINDOW));
+        aggregator.add(event(5000L, "home", 16.0), summaries);
+        aggregator.add(event(5100L, "settings", 20.0), summaries);
+        aggregator.add(event(5200L, "home", 18.0), summaries);
+
+        aggregator.close(summaries);
+        assertEquals(2, summaries.size());
+        assertEquals("home", summaries.get(0).getAttribute("screen"));
+        assertEquals(2.0, summaries.get(0).getMetric(EventAggregation.COUNT_METRIC), 0);
+        assertEquals("settings", summaries.get(1).getAttribute("screen"));
+        assertEquals(1.0, summaries.get(1).getMetric(EventAggregation.COUNT_METRIC), 0);
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        final EventAggregator aggregator = new EventAggregator(pinpointContext,
+                new EventAggregation(EVENT_TYPE).withWindowDuration(WINDOW).withHistogram("frame_time", 16.0, 33.0));
+        for (final double frameTime : new double[] { 8.0, 16.0, 17.0, 33.0, 34.0, 100.0 }) {
+            aggregator.add(event(5000L, "home", frameTime), summaries);
+        }
+
+        aggregator.close(summaries);
+        final AnalyticsEvent summary = summaries.get(0);
+        assertEquals("16.0,33.0", summary.getAttribute("frame_time.buckets"));
+        assertEquals(2.0, summary.getMetric("frame_time.bucket0"), 0);
+        assertEquals(2.0, summary.getMetric("frame_time.bucket1"), 0);
+        assertEquals(2.0, summary.getMetric("frame_time.bucket2"), 0);
+        assertNull(summary.getMetric("frame_time.bucket3"));
+    }
+
+    @Test
+    public void testEventPastWindowClosesIt() {
+        final EventAggregator aggregator = new EventAggregator(pinpointContext,
+                new EventAggregation(EVENT_TYPE).withWindowDuration(WINDOW));
+        aggregator.add(event(5000L, "home", 16.0), summaries);
+        aggregator.add(event(5999L, "home", 16.0), summaries);
+        assertTrue(summaries.isEmpty());
+
+        aggregator.add(event(6000L, "home", 16.0), summaries);
+        assertEquals(1, summaries.size());
+        assertEquals(2.0, summaries.get(0).getMetric(EventAggregation.COUNT_METRIC), 0);
+
+        summaries.clear();
+        aggregator.closeExpired(6999L, summaries);
+        assertTrue(summaries.isEmpty());
+        aggregator.closeExpired(7000L, summaries);
+        assertEquals(1, summaries.size());
+        assertEquals(1.0, summaries.get(0).getMetric(EventAggregation.COUNT_METRIC), 0);
+    }
+
+    @Test
+    public void testGroupsOverLimitAreNotAggregated() {
+        final EventAggregator aggregator = new EventAggregator(pinpointContext,
+                new EventAggregation(EVENT_TYPE).withWindowDuration(WINDOW));
+        for (int i = 0; i < EventAggregator.MAX_GROUPS_PER_WINDOW; i++) {
+            assertTrue(aggregator.add(event(5000L, "screen_" + i, 16.0), summaries));
+        }
+        assertFalse(aggregator.add(event(5000L, "screen_new", 16.0), summaries));
+        assertTrue(aggregator.add(event(5000L, "screen_0", 16.0), summaries));
+
+        aggregator.close(summaries);
+        assertEquals(EventAggregator.MAX_GROUPS_PER_WINDOW, summaries.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHistogramBoundsMustAscend() {
+        new EventAggregation(EVENT_TYPE).withHistogram("frame_time", 33.0, 16.0);
+    }
+}
@@ -245,6 +245,15 @@ public class SessionClientTest extends MobileAnalyticsTestBase {
 
     }
 
+    @Test
+    public void pauseAndStopSession_flushEventAggregations() {
+        target.startSession();
+        target.pauseSession();
+        verify(mockAnalyticsClient, times(1)).flushEventAggregations();
+        target.stopSession();
+        verify(mockAnalyticsClient, times(2)).flushEventAggregations();
+    }
+
     @Test
     public void stopSession_sessionIsInactive_doesNotFireStopEvent() {
         target.stopSession();
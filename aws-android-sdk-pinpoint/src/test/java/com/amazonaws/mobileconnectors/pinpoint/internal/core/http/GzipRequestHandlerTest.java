@@ -0,0 +1,97 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.core.http;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.services.pinpoint.model.GetEndpointRequest;
+import com.amazonaws.services.pinpoint.model.PutEventsRequest;
+import com.amazonaws.util.StringInputStream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GzipRequestHandlerTest {
+    private final GzipRequestHandler handler = new GzipRequestHandler(PutEventsRequest.class);
+
+    private static String body(int length) {
+        final StringBuilder body = new StringBuilder();
+        while (body.length() < length) {
+            body.append("{\"EventType\":\"level_complete\",\"Attributes\":{\"level\":\"12\"}}");
+        }
+        return body.toString();
+    }
+
+    private static <T extends com.amazonaws.AmazonWebServiceRequest> Request<T> request(T original, String body)
+            throws IOException {
+        final Request<T> request = new DefaultRequest<T>(original, "AmazonPinpoint");
+        request.setContent(new StringInputStream(body));
+        request.addHeader("Content-Length", Integer.toString(body.length()));
+        return request;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testCompressesPutEvents() throws IOException {
+        final String body = body(16 * 1024);
+        final Request<PutEventsRequest> request = request(new PutEventsRequest(), body);
+        handler.beforeRequest(request);
+
+        assertEquals("gzip", request.getHeaders().get(GzipRequestHandler.CONTENT_ENCODING_HEADER_NAME));
+        final int length = Integer.parseInt(request.getHeaders().get("Content-Length"));
+        assertTrue(length < body.length() / 4);
+        assertEquals(length, request.getContent().available());
+        assertEquals(body, read(new GZIPInputStream(request.getContent())));
+    }
+
+    @Test
+    public void testSmallBodiesAreNotCompressed() throws IOException {
+        final String body = body(GzipRequestHandler.MIN_COMPRESSED_SIZE / 2);
+        final Request<PutEventsRequest> request = request(new PutEventsRequest(), body);
+        handler.beforeRequest(request);
+
+        assertFalse(request.getHeaders().containsKey(GzipRequestHandler.CONTENT_ENCODING_HEADER_NAME));
+        assertEquals(Integer.toString(body.length()), request.getHeaders().get("Content-Length"));
+        assertEquals(body, read(request.getContent()));
+    }
+
+    @Test
+    public void testOtherRequestsAreNotCompressed() throws IOException {
+        final String body = body(16 * 1024);
+        final Request<GetEndpointRequest> request = request(new GetEndpointRequest(), body);
+        handler.beforeRequest(request);
+
+        assertFalse(request.getHeaders().containsKey(GzipRequestHandler.CONTENT_ENCODING_HEADER_NAME));
+        assertEquals(body, read(request.getContent()));
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncEventWriterTest {
+
+    /**
+     * Collects written batches, optionally holding the writer thread until
+     * released.
+     */
+    static class CollectingWriter implements AsyncEventWriter.BatchWriter {
+        final List<List<AnalyticsEvent>> batches =
+                Collections.synchronizedList(new ArrayList<List<AnalyticsEvent>>());
+        final CountDownLatch release;
+
+        CollectingWriter(boolean hold) {
+            release = new CountDownLatch(hold ? 1 : 0);
+        }
+
+        @Override
+        public void write(List<AnalyticsEvent> events) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batches.add(new ArrayList<AnalyticsEvent>(events));
+        }
+
+        List<AnalyticsEvent> written() {
+            List<AnalyticsEvent> all = new ArrayList<AnalyticsEvent>();
+            synchronized (batches) {
+                for (List<AnalyticsEvent> batch : batches) {
+                    all.addAll(batch);
+                }
+            }
+            return all;
+        }
+    }
+
+    private static List<AnalyticsEvent> events(int count) {
+        List<AnalyticsEvent> events = new ArrayList<AnalyticsEvent>();
+        for (int i = 0; i < count; i++) {
+            events.add(Mockito.mock(AnalyticsEvent.class));
+        }
+        return events;
+    }
+
+    @Test
+    public void testFlushWritesEventsInOrder() {
+        CollectingWriter batchWriter = new CollectingWriter(false);
+        AsyncEventWriter writer = new AsyncEventWriter(batchWriter, 16);
+        List<AnalyticsEvent> events = events(100);
+        for (AnalyticsEvent event : events) {
+            assertTrue(writer.enqueue(event));
+        }
+        writer.flush();
+        assertEquals(events, batchWriter.written());
+        assertEquals(0, writer.size());
+        writer.shutdown();
+    }
+
+    @Test
+    public void testEventsBufferedDuringWriteAreBatched() {
+        CollectingWriter batchWriter = new CollectingWriter(true);
+        AsyncEventWriter writer = new AsyncEventWriter(batchWriter, 1024);
+        List<AnalyticsEvent> events = events(AsyncEventWriter.MAX_EVENTS_PER_BATCH + 11);
+        for (AnalyticsEvent event : events) {
+            writer.enqueue(event);
+        }
+        batchWriter.release.countDown();
+        writer.flush();
+
+        assertEquals(events, batchWriter.written());
+        for (List<AnalyticsEvent> batch : batchWriter.batches) {
+            assertTrue(batch.size() <= AsyncEventWriter.MAX_EVENTS_PER_BATCH);
+        }
+        // the first event is picked up on its own, the rest in full batches
+        assertTrue(batchWriter.batches.size() <= 3);
+        writer.shutdown();
+    }
+
+    @Test
+    public void testEnqueueBlocksWhenFull() throws Exception {
+        final CollectingWriter batchWriter = new CollectingWriter(true);
+        final AsyncEventWriter writer = new AsyncEventWriter(batchWriter, 4);
+        final List<AnalyticsEvent> events = events(10);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (AnalyticsEvent event : events) {
+                    writer.enqueue(event);
+                }
+                done.countDown();
+            }
+        });
+        producer.start();
+
+        assertFalse("blocked while the buffer is full", done.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(4, writer.size());
+        batchWriter.release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        writer.flush();
+        assertEquals(events, batchWriter.written());
+        writer.shutdown();
+    }
+
+    @Test
+    public void testShutdownWritesBufferedEvents() {
+        CollectingWriter batchWriter = new CollectingWriter(true);
+        AsyncEventWriter writer = new AsyncEventWriter(batchWriter, 64);
+        List<AnalyticsEvent> events = events(50);
+        for (AnalyticsEvent event : events) {
+            writer.enqueue(event);
+        }
+        batchWriter.release.countDown();
+        writer.shutdown();
+
+        assertEquals(events, batchWriter.written());
+        assertFalse("rejected after shutdown", writer.enqueue(events.get(0)));
+        assertEquals(50, batchWriter.written().size());
+    }
+
+    @Test
+    public void testWriteFailureDoesNotStopWriter() {
+        final List<AnalyticsEvent> written = new ArrayList<AnalyticsEvent>();
+        AsyncEventWriter writer = new AsyncEventWriter(new AsyncEventWriter.BatchWriter() {
+            private boolean failed;
+
+            @Override
+            public void write(List<AnalyticsEvent> events) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("disk full");
+                }
+                written.addAll(events);
+            }
+        }, 16);
+        List<AnalyticsEvent> events = events(2);
+        writer.enqueue(events.get(0));
+        writer.flush();
+        writer.enqueue(events.get(1));
+        writer.flush();
+        assertEquals(events.subList(1, 2), written);
+        writer.shutdown();
+    }
+}
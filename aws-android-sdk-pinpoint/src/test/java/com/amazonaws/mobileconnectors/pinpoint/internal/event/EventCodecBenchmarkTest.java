@@ -0,0 +1,192 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.configuration.AndroidPreferencesConfiguration;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.MockDeviceDetails;
+import com.amazonaws.mobileconnectors.pinpoint.targeting.endpointProfile.EndpointProfile;
+import com.amazonaws.services.pinpoint.model.EndpointItemResponse;
+import com.amazonaws.services.pinpoint.model.Event;
+import com.amazonaws.services.pinpoint.model.EventItemResponse;
+import com.amazonaws.services.pinpoint.model.EventsResponse;
+import com.amazonaws.services.pinpoint.model.ItemResponse;
+import com.amazonaws.services.pinpoint.model.PutEventsRequest;
+import com.amazonaws.services.pinpoint.model.PutEventsResult;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Submits 10k events stored as JSON, as before, and in the binary encoding.
+ * The service accepts every event. It reports the time of the whole
+ * submission, which includes reading and deleting rows, and of turning the
+ * stored events into request payloads alone.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(RobolectricTestRunner.class)
+public class EventCodecBenchmarkTest {
+    private static final int EVENT_COUNT = 10000;
+
+    private PinpointContext pinpointContext;
+    private PinpointDBUtil dbUtil;
+    private EventRecorder eventRecorder;
+    private final List<AnalyticsEvent> events = new ArrayList<AnalyticsEvent>();
+
+    @Before
+    public void setup() {
+        final AndroidPreferencesConfiguration config = mock(AndroidPreferencesConfiguration.class);
+        when(config.optLong(eq(EventRecorder.KEY_MAX_PENDING_SIZE), any(Long.class)))
+                .thenReturn(64L * 1024 * 1024);
+        when(config.optLong(eq(EventRecorder.KEY_MAX_SUBMISSION_SIZE), any(Long.class)))
+                .thenReturn(EventRecorder.DEFAULT_MAX_SUBMISSION_SIZE);
+        when(config.optInt(eq(EventRecorder.KEY_MAX_SUBMISSIONS_ALLOWED), any(Integer.class)))
+                .thenReturn(Integer.MAX_VALUE);
+        pinpointContext = new AnalyticsContextBuilder()
+                .withSdkInfo("AppIntelligenceSDK-Analytics", "test")
+                .withUniqueIdValue("abc123")
+                .withDeviceDetails(new MockDeviceDetails())
+                .withConfiguration(config)
+                .withContext(RuntimeEnvironment.application.getApplicationContext())
+                .build();
+        final EndpointProfile endpointProfile = new EndpointProfile(pinpointContext);
+        when(pinpointContext.getTargetingClient().currentEndpoint()).thenReturn(endpointProfile);
+        when(pinpointContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class)))
+                .thenAnswer(new Answer<PutEventsResult>() {
+                    @Override
+                    public PutEventsResult answer(final InvocationOnMock invocation) {
+                        final PutEventsRequest request = (PutEventsRequest) invocation.getArguments()[0];
+                        final ItemResponse itemResponse = new ItemResponse().withEndpointItemResponse(
+                                new EndpointItemResponse().withStatusCode(202).withMessage("Accepted"));
+                        for (final String eventId : request.getEventsRequest().getBatchItem()
+                                .get(endpointProfile.getEndpointId()).getEvents().keySet()) {
+                            itemResponse.addEventsItemResponseEntry(eventId,
+                                    new EventItemResponse().withStatusCode(202).withMessage("Accepted"));
+                        }
+                        return new PutEventsResult().withEventsResponse(new EventsResponse()
+                                .addResultsEntry(endpointProfile.getEndpointId(), itemResponse));
+                    }
+                });
+
+        dbUtil = new PinpointDBUtil(RuntimeEnvironment.application.getApplicationContext());
+        eventRecorder = new EventRecorder(pinpointContext, dbUtil, mock(ExecutorService.class));
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            final AnalyticsEvent event = AnalyticsEvent.newInstance(pinpointContext, "session-" + (i / 500),
+                    1560000000000L, null, null, 1560000000000L + i * 1000L,
+                    i % 3 == 0 ? "level_complete" : "button_click");
+            event.addAttribute("screen", "screen_" + (i % 20));
+            event.addAttribute("variant", i % 2 == 0 ? "A" : "B");
+            event.addMetric("duration", i * 1.5);
+            event.addMetric("position", (double) (i % 10));
+            events.add(event);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dbUtil.closeDB();
+    }
+
+    @Test
+    public void benchmarkSubmission() throws Exception {
+        final List<String> jsonEvents = new ArrayList<String>();
+        final List<byte[]> binaryEvents = new ArrayList<byte[]>();
+        long jsonBytes = 0;
+        long binaryBytes = 0;
+        for (final AnalyticsEvent event : events) {
+            final String json = event.toJSONObject().toString();
+            final byte[] data = dbUtil.getEventCodec().encode(event);
+            jsonEvents.add(json);
+            binaryEvents.add(data);
+            jsonBytes += json.length();
+            binaryBytes += data.length;
+        }
+        System.out.println(String.format("stored size: json %d bytes, binary %d bytes (%.1fx)",
+                jsonBytes, binaryBytes, jsonBytes / (double) binaryBytes));
+
+        // payloads alone, a few rounds to warm up
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (final String json : jsonEvents) {
+                final AnalyticsEvent internalEvent = AnalyticsEvent.translateToEvent(new JSONObject(json));
+                eventRecorder.buildEventPayload(internalEvent, new Event());
+            }
+            final long jsonNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (final byte[] data : binaryEvents) {
+                dbUtil.getEventCodec().decodeEvent(data, new Event());
+            }
+            final long binaryNanos = System.nanoTime() - start;
+            System.out.println(String.format("payloads: json %d ms, binary %d ms (%.1fx)",
+                    jsonNanos / 1000000, binaryNanos / 1000000, jsonNanos / (double) binaryNanos));
+        }
+
+        // whole submissions
+        insertJSON(jsonEvents);
+        long start = System.nanoTime();
+        eventRecorder.processEvents(false);
+        final long jsonNanos = System.nanoTime() - start;
+
+        dbUtil.saveEvents(events);
+        start = System.nanoTime();
+        eventRecorder.processEvents(false);
+        final long binaryNanos = System.nanoTime() - start;
+        System.out.println(String.format("submission: json %d ms, binary %d ms (%.1fx), %d events left",
+                jsonNanos / 1000000, binaryNanos / 1000000, jsonNanos / (double) binaryNanos,
+                dbUtil.queryAllEvents().getCount()));
+    }
+
+    private void insertJSON(final List<String> jsonEvents) {
+        final PinpointDatabaseHelper helper = new PinpointDatabaseHelper(
+                RuntimeEnvironment.application.getApplicationContext());
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (final String json : jsonEvents) {
+                final ContentValues values = new ContentValues();
+                values.put(EventTable.COLUMN_JSON, json);
+                values.put(EventTable.COLUMN_SIZE, json.length());
+                db.insertOrThrow(EventTable.TABLE_EVENT, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            helper.close();
+        }
+    }
+}
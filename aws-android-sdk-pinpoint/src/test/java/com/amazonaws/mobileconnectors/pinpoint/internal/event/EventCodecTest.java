@@ -0,0 +1,205 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import android.database.Cursor;
+
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.MockDeviceDetails;
+import com.amazonaws.services.pinpoint.model.Event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class EventCodecTest {
+    private PinpointContext mockContext;
+    private MockDeviceDetails deviceDetails;
+    private PinpointDBBase dbBase;
+    private AnalyticsEvent event;
+
+    @Before
+    public void setup() {
+        deviceDetails = new MockDeviceDetails();
+        mockContext = new AnalyticsContextBuilder()
+                .withSdkInfo("AppIntelligenceSDK-Analytics", "test")
+                .withUniqueIdValue("abc123")
+                .withDeviceDetails(deviceDetails)
+                .withContext(RuntimeEnvironment.application.getApplicationContext())
+                .build();
+        dbBase = new PinpointDBBase(RuntimeEnvironment.application.getApplicationContext());
+        event = AnalyticsEvent.newInstance(mockContext, "sessionId", 100L, 1000L, 900L,
+                1370111901909L, "level_complete");
+        event.addAttribute("level", "12");
+        event.addAttribute("player", "été ☃");
+        event.addMetric("score", 4200.5);
+        event.addMetric("negative", -3.0);
+    }
+
+    @After
+    public void tearDown() {
+        dbBase.closeDBHelper();
+    }
+
+    @Test
+    public void testDecodeJSONRoundTrips() throws Exception {
+        final EventCodec codec = new EventCodec(dbBase);
+        final byte[] data = codec.encode(event);
+        assertEquals(event.toJSONObject().toString(), codec.decodeJSON(data).toString());
+        assertTrue("smaller than JSON", data.length < event.toJSONObject().toString().length());
+    }
+
+    @Test
+    public void testDecodeEventMatchesPayloadFromJSON() throws Exception {
+        final EventCodec codec = new EventCodec(dbBase);
+        final Event expected = new Event();
+        new EventRecorder(mockContext, null, null).buildEventPayload(
+                AnalyticsEvent.translateToEvent(event.toJSONObject()), expected);
+
+        final Event actual = new Event();
+        assertEquals(event.getEventId(), codec.decodeEvent(codec.encode(event), actual));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testValuesAreInternedOnce() throws Exception {
+        final EventCodec codec = new EventCodec(dbBase);
+        codec.encode(event);
+        final int keys = countKeys();
+        assertTrue(keys > 0);
+
+        codec.encode(AnalyticsEvent.createFromEvent(mockContext, "otherSession", 2000L, event));
+        assertEquals("no new keys", keys, countKeys());
+    }
+
+    @Test
+    public void testNamesAreInternedButNotEventTypes() throws Exception {
+        final EventCodec codec = new EventCodec(dbBase);
+        codec.encode(event);
+        final int keys = countKeys();
+
+        final AnalyticsEvent other = AnalyticsEvent.newInstance(mockContext, "sessionId", 100L,
+                1000L, 900L, 1370111901909L, "another_event_type");
+        other.addAttribute("another_attribute", "value");
+        other.addMetric("another_metric", 1.0);
+        final byte[] data = codec.encode(other);
+        assertEquals("only the new names", keys + 2, countKeys());
+        assertEquals(other.toJSONObject().toString(), codec.decodeJSON(data).toString());
+    }
+
+    @Test
+    public void testNamesAreWrittenInFullOnceTheTableIsFull() throws Exception {
+        final EventCodec codec = new EventCodec(dbBase);
+        for (int i = countKeys(); i < EventCodec.MAX_INTERNED_KEYS; i++) {
+            final AnalyticsEvent filler = AnalyticsEvent.createFromEvent(mockContext,
+                    "sessionId", 2000L, event);
+            filler.addAttribute("attribute_" + i, "value");
+            codec.encode(filler);
+        }
+        assertEquals(EventCodec.MAX_INTERNED_KEYS, countKeys());
+
+        final AnalyticsEvent other = AnalyticsEvent.createFromEvent(mockContext, "sessionId",
+                2000L, event);
+        other.addAttribute("one_too_many", "value");
+        other.addMetric("another_metric", 1.0);
+        final byte[] data = new EventCodec(dbBase).encode(other);
+        assertEquals("no new keys", EventCodec.MAX_INTERNED_KEYS, countKeys());
+        assertEquals(other.toJSONObject().toString(), codec.decodeJSON(data).toString());
+    }
+
+    @Test
+    public void testValuesAreSharedWithOtherInstances() throws Exception {
+        final byte[] data = new EventCodec(dbBase).encode(event);
+
+        // e.g. after a restart
+        final EventCodec codec = new EventCodec(dbBase);
+        assertEquals(event.toJSONObject().toString(), codec.decodeJSON(data).toString());
+
+        // values interned by another instance are picked up
+        final EventCodec other = new EventCodec(dbBase);
+        other.decodeJSON(data);
+        final AnalyticsEvent otherEvent = withLocale(Locale.CANADA);
+        final byte[] otherData = other.encode(otherEvent);
+        assertEquals(otherEvent.toJSONObject().toString(), codec.decodeJSON(otherData).toString());
+
+        // including when both intern a new value with the same id
+        final AnalyticsEvent first = withLocale(Locale.FRANCE);
+        final String firstJson = first.toJSONObject().toString();
+        final byte[] firstData = codec.encode(first);
+        final AnalyticsEvent second = withLocale(Locale.GERMANY);
+        final String secondJson = second.toJSONObject().toString();
+        final byte[] secondData = other.encode(second);
+        assertEquals(secondJson, codec.decodeJSON(secondData).toString());
+        assertEquals(firstJson, other.decodeJSON(firstData).toString());
+    }
+
+    /**
+     * Returns a copy of the event, with the locale given until the next call.
+     */
+    private AnalyticsEvent withLocale(final Locale locale) {
+        deviceDetails.setLocale(locale);
+        return AnalyticsEvent.createFromEvent(mockContext, "sessionId", 3000L, event);
+    }
+
+    @Test
+    public void testMalformedDataThrows() {
+        final EventCodec codec = new EventCodec(dbBase);
+        final byte[] data = codec.encode(event);
+        assertDecodeFails(codec, Arrays.copyOf(data, data.length / 2));
+        assertDecodeFails(codec, new byte[0]);
+        final byte[] version = data.clone();
+        version[0] = (byte) (EventCodec.FORMAT_VERSION + 1);
+        assertDecodeFails(codec, version);
+    }
+
+    private void assertDecodeFails(final EventCodec codec, final byte[] data) {
+        try {
+            codec.decodeJSON(data);
+            fail("decodeJSON should fail");
+        } catch (final IOException e) {
+            // expected
+        }
+        try {
+            codec.decodeEvent(data, new Event());
+            fail("decodeEvent should fail");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private int countKeys() {
+        final Cursor cursor = dbBase.queryKeys();
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.MockDeviceDetails;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Measures events/sec recorded by {@link EventRecorder} from a tight loop,
+ * with events written synchronously and with the background writer. The
+ * async figure includes flushing the buffer, so it is the rate at which
+ * events reach the database. Both include trimming to maxPendingSize.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(RobolectricTestRunner.class)
+public class EventRecorderBenchmarkTest {
+    private static final int EVENT_COUNT = 5000;
+
+    private PinpointContext pinpointContext;
+    private PinpointDBUtil dbUtil;
+    private AnalyticsEvent event;
+
+    @Before
+    public void setup() {
+        pinpointContext = new AnalyticsContextBuilder()
+                .withSdkInfo("AppIntelligenceSDK-Analytics", "test")
+                .withUniqueIdValue("abc123")
+                .withDeviceDetails(new MockDeviceDetails())
+                .withContext(RuntimeEnvironment.application.getApplicationContext())
+                .build();
+        dbUtil = new PinpointDBUtil(RuntimeEnvironment.application.getApplicationContext());
+        event = AnalyticsEvent.newInstance(pinpointContext, "sessionId", 100L, 1000L, 900L,
+                System.currentTimeMillis(), "level_complete");
+        event.addAttribute("level", "12");
+        event.addAttribute("difficulty", "hard");
+        event.addMetric("score", 4200.0);
+    }
+
+    @After
+    public void tearDown() {
+        dbUtil.closeDB();
+    }
+
+    @Test
+    public void benchmarkEventsPerSecond() {
+        // warm up both paths
+        record(false, 500);
+        record(true, 500);
+
+        final double sync = record(false, EVENT_COUNT);
+        final double async = record(true, EVENT_COUNT);
+        System.out.println(String.format("sync:  %8.0f events/sec", sync));
+        System.out.println(String.format("async: %8.0f events/sec (%.1fx)", async, async / sync));
+    }
+
+    private double record(final boolean asyncEventRecording, final int count) {
+        dbUtil.deleteOldestEvents(0);
+        final EventRecorder recorder = new EventRecorder(pinpointContext, dbUtil,
+                Mockito.mock(ExecutorService.class), asyncEventRecording);
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            recorder.recordEvent(event);
+        }
+        recorder.flushEvents();
+        final long elapsed = System.nanoTime() - start;
+        return count / (elapsed / 1e9);
+    }
+}
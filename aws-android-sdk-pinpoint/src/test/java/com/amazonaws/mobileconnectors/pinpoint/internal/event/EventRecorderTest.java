@@ -15,6 +15,7 @@
 
 package com.amazonaws.mobileconnectors.pinpoint.internal.event;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 
@@ -24,22 +25,30 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.stubbing.OngoingStubbing;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.logging.Log;
 import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
 import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
@@ -52,9 +61,11 @@ import com.amazonaws.services.pinpoint.model.BadRequestException;
 import com.amazonaws.services.pinpoint.model.EndpointItemResponse;
 import com.amazonaws.services.pinpoint.model.Event;
 import com.amazonaws.services.pinpoint.model.EventItemResponse;
+import com.amazonaws.services.pinpoint.model.EventsBatch;
 import com.amazonaws.services.pinpoint.model.EventsResponse;
 import com.amazonaws.services.pinpoint.model.InternalServerErrorException;
 import com.amazonaws.services.pinpoint.model.ItemResponse;
+import com.amazonaws.services.pinpoint.model.PublicEndpoint;
 import com.amazonaws.services.pinpoint.model.PutEventsRequest;
 import com.amazonaws.services.pinpoint.model.PutEventsResult;
 import com.amazonaws.services.pinpointanalytics.AmazonPinpointAnalyticsClient;
@@ -62,8 +73,10 @@ import com.amazonaws.services.pinpointanalytics.AmazonPinpointAnalyticsClient;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -268,8 +281,8 @@ public class EventRecorderTest {
         // Allows looping for next batch submit
         when(cursor.moveToNext()).thenReturn(true).thenReturn(true).thenReturn(true);
 
-        JSONArray readArray = eventRecorder.getBatchOfEvents(cursor, new HashMap<Integer, Integer>());
-        assertEquals(EventRecorder.SERVICE_DEFINED_MAX_EVENTS_PER_BATCH, readArray.length());
+        List<EventRecorder.StoredEvent> readArray = eventRecorder.getBatchOfEvents(cursor, new HashMap<Integer, Integer>());
+        assertEquals(EventRecorder.SERVICE_DEFINED_MAX_EVENTS_PER_BATCH, readArray.size());
     }
 
     @Test
@@ -311,6 +324,33 @@ public class EventRecorderTest {
         eventRecorder.processEvents();
         //putEvents API only accept request with endpoint profile.
         assertTrue(dbUtil.queryAllEvents().getCount() == 0);
+        //the accepted endpoint is not sent again until it changes
+        verify(mockContext.getTargetingClient()).markEndpointProfileSynced(endpointProfile.getContentHash());
+    }
+
+    @Test
+    public void testProcessEventWithSyncedEndpointOmitsIt() {
+        itemResponse = new ItemResponse()
+                .withEndpointItemResponse(new EndpointItemResponse().withStatusCode(202).withMessage("Accepted"));
+        itemResponse.addEventsItemResponseEntry(analyticsEvent.getEventId(),
+                new EventItemResponse().withStatusCode(202).withMessage("Accepted"));
+        putEventsResult = new PutEventsResult().withEventsResponse(
+            new EventsResponse().addResultsEntry(endpointProfile.getEndpointId(), itemResponse));
+
+        eventRecorder.recordEvent(analyticsEvent);
+        when(mockContext.getTargetingClient().currentEndpoint()).thenReturn(endpointProfile);
+        when(mockContext.getTargetingClient().isEndpointProfileSynced(endpointProfile.getContentHash())).thenReturn(true);
+        when(mockContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class))).thenReturn(putEventsResult);
+        eventRecorder.processEvents();
+
+        final ArgumentCaptor<PutEventsRequest> requestCaptor = ArgumentCaptor.forClass(PutEventsRequest.class);
+        verify(mockContext.getPinpointServiceClient()).putEvents(requestCaptor.capture());
+        final EventsBatch batch = requestCaptor.getValue().getEventsRequest().getBatchItem()
+                .get(endpointProfile.getEndpointId());
+        assertEquals(new PublicEndpoint(), batch.getEndpoint());
+        assertEquals(1, batch.getEvents().size());
+        verify(mockContext.getTargetingClient(), times(0)).markEndpointProfileSynced(any(String.class));
+        assertTrue(dbUtil.queryAllEvents().getCount() == 0);
     }
 
     @Test
@@ -391,4 +431,283 @@ public class EventRecorderTest {
         }
         assertTrue(dbUtil.getTotalSize() == 0);
     }
+
+    @Test
+    public void testAsyncRecordEvent() throws JSONException {
+        final EventRecorder asyncRecorder = new EventRecorder(mockContext, dbUtil,
+                                                                     submissionRunnable, true);
+        for (int i = 0; i < 10; i++) {
+            // written in the background
+            assertNull(asyncRecorder.recordEvent(analyticsEvent));
+        }
+        final List<JSONObject> events = asyncRecorder.getAllEvents();
+        assertEquals(10, events.size());
+        for (final JSONObject event : events) {
+            assertEquals(EVENT_NAME, event.getString("event_type"));
+        }
+    }
+
+    @Test
+    public void testAsyncCloseDBWritesBufferedEvents() {
+        final PinpointDBUtil spyDbUtil = Mockito.spy(dbUtil);
+        final EventRecorder asyncRecorder = new EventRecorder(mockContext, spyDbUtil,
+                                                                     submissionRunnable, true);
+        for (int i = 0; i < 10; i++) {
+            asyncRecorder.recordEvent(analyticsEvent);
+        }
+        Mockito.doNothing().when(spyDbUtil).closeDB();
+        asyncRecorder.closeDB();
+
+        final Cursor c = dbUtil.queryAllEvents();
+        assertEquals(10, c.getCount());
+        c.close();
+        assertNotNull("written synchronously after shutdown",
+                      asyncRecorder.recordEvent(analyticsEvent));
+    }
+
+    @Test
+    public void testAsyncTrimming() {
+        final EventRecorder asyncRecorder = new EventRecorder(mockContext, dbUtil,
+                                                                     submissionRunnable, true);
+        for (int i = 0; i < 100; i++) {
+            asyncRecorder.recordEvent(analyticsEvent);
+        }
+        asyncRecorder.flushEvents();
+        assertTrue(dbUtil.getTotalSize() <= 16 * 1024);
+        assertTrue(dbUtil.getTotalSize() > 0);
+    }
+
+    @Test
+    public void testEventsStoredAsJSONAreMigrated() throws JSONException {
+        // an event stored by a version that only had the JSON column
+        final String legacyJson = AnalyticsEvent.newInstance(UUID.randomUUID().toString(), EVENT_NAME,
+                analyticsEvent.getAllAttributes(), analyticsEvent.getAllMetrics(), mockContext.getSDKInfo(),
+                SESSION_ID, SESSION_START, SESSION_END, SESSION_DURATION, TIME_STAMP, UNIQUE_ID,
+                mockContext.getSystem().getAppDetails(), mockContext.getSystem().getDeviceDetails())
+                .toJSONObject().toString();
+        dbUtil.closeDB();
+        final PinpointDatabaseHelper legacyHelper = new PinpointDatabaseHelper(
+                RuntimeEnvironment.application.getApplicationContext(), 1);
+        final ContentValues values = new ContentValues();
+        values.put(EventTable.COLUMN_JSON, legacyJson);
+        values.put(EventTable.COLUMN_SIZE, legacyJson.length());
+        legacyHelper.getWritableDatabase().insertOrThrow(EventTable.TABLE_EVENT, null, values);
+        legacyHelper.close();
+
+        dbUtil = new PinpointDBUtil(RuntimeEnvironment.application.getApplicationContext());
+        eventRecorder = new EventRecorder(mockContext, dbUtil, submissionRunnable);
+        eventRecorder.recordEvent(analyticsEvent);
+
+        final List<JSONObject> events = eventRecorder.getAllEvents();
+        assertEquals(2, events.size());
+        events.get(0).remove("databaseId");
+        assertEquals(legacyJson, events.get(0).toString());
+        events.get(1).remove("databaseId");
+        assertEquals(analyticsEvent.toJSONObject().toString(), events.get(1).toString());
+
+        // both are submitted
+        final String legacyEventId = new JSONObject(legacyJson).getString("event_id");
+        itemResponse = new ItemResponse()
+                .withEndpointItemResponse(new EndpointItemResponse().withStatusCode(202).withMessage("Accepted"));
+        itemResponse.addEventsItemResponseEntry(analyticsEvent.getEventId(),
+                new EventItemResponse().withStatusCode(202).withMessage("Accepted"));
+        itemResponse.addEventsItemResponseEntry(legacyEventId,
+                new EventItemResponse().withStatusCode(202).withMessage("Accepted"));
+        putEventsResult = new PutEventsResult().withEventsResponse(
+                new EventsResponse().addResultsEntry(endpointProfile.getEndpointId(), itemResponse));
+        when(mockContext.getTargetingClient().currentEndpoint()).thenReturn(endpointProfile);
+        when(mockContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class))).thenReturn(putEventsResult);
+
+        // the test configuration submits one event per call
+        final List<AnalyticsEvent> submitted = new ArrayList<AnalyticsEvent>();
+        submitted.addAll(eventRecorder.processEvents());
+        submitted.addAll(eventRecorder.processEvents());
+        assertEquals(2, submitted.size());
+        assertEquals(0, dbUtil.queryAllEvents().getCount());
+
+        final ArgumentCaptor<PutEventsRequest> request = ArgumentCaptor.forClass(PutEventsRequest.class);
+        verify(mockContext.getPinpointServiceClient(), times(2)).putEvents(request.capture());
+        final Map<String, Event> sent = new HashMap<String, Event>();
+        for (final PutEventsRequest putEventsRequest : request.getAllValues()) {
+            sent.putAll(putEventsRequest.getEventsRequest().getBatchItem()
+                    .get(endpointProfile.getEndpointId()).getEvents());
+        }
+        assertEquals(EVENT_NAME, sent.get(legacyEventId).getEventType());
+        assertEquals(EVENT_NAME, sent.get(analyticsEvent.getEventId()).getEventType());
+        assertEquals("value1", sent.get(analyticsEvent.getEventId()).getAttributes().get("key1"));
+    }
+
+    @Test
+    public void testProcessEventsConcurrently() throws Exception {
+        final int maxConcurrentSubmissions = 4;
+        final PinpointContext pinpointContext = concurrentSubmissionContext(Integer.MAX_VALUE,
+                maxConcurrentSubmissions);
+        final EndpointProfile endpoint = pinpointContext.getTargetingClient().currentEndpoint();
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final CountDownLatch firstBatches = new CountDownLatch(maxConcurrentSubmissions);
+        when(pinpointContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class)))
+                .thenAnswer(new Answer<PutEventsResult>() {
+                    @Override
+                    public PutEventsResult answer(final InvocationOnMock invocation) throws Exception {
+                        final int current = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), current));
+                        }
+                        // the first batches are only answered once they are all being sent
+                        firstBatches.countDown();
+                        firstBatches.await(5, TimeUnit.SECONDS);
+                        inFlight.decrementAndGet();
+                        return acceptAll((PutEventsRequest) invocation.getArguments()[0], endpoint);
+                    }
+                });
+
+        final EventRecorder recorder = new EventRecorder(pinpointContext, dbUtil, submissionRunnable);
+        final List<String> eventIds = recordEvents(recorder, pinpointContext, 12);
+
+        final List<AnalyticsEvent> submitted = recorder.processEvents();
+        assertEquals(maxConcurrentSubmissions, maxInFlight.get());
+        verify(pinpointContext.getPinpointServiceClient(), times(12)).putEvents(any(PutEventsRequest.class));
+        // in the order they were recorded
+        final List<String> submittedIds = new ArrayList<String>();
+        for (final AnalyticsEvent event : submitted) {
+            submittedIds.add(event.getEventId());
+        }
+        assertEquals(eventIds, submittedIds);
+        assertEquals(0, dbUtil.queryAllEvents().getCount());
+        assertEquals(0, dbUtil.getTotalSize());
+    }
+
+    @Test
+    public void testDefaultMaxSubmissionsFillsConcurrentSubmissions() throws Exception {
+        final int maxConcurrentSubmissions = EventRecorder.DEFAULT_MAX_SUBMISSIONS_ALLOWED + 2;
+        final PinpointContext pinpointContext = concurrentSubmissionContext(null, maxConcurrentSubmissions);
+        final EndpointProfile endpoint = pinpointContext.getTargetingClient().currentEndpoint();
+        final CountDownLatch allBatches = new CountDownLatch(maxConcurrentSubmissions);
+        when(pinpointContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class)))
+                .thenAnswer(new Answer<PutEventsResult>() {
+                    @Override
+                    public PutEventsResult answer(final InvocationOnMock invocation) throws Exception {
+                        allBatches.countDown();
+                        allBatches.await(5, TimeUnit.SECONDS);
+                        return acceptAll((PutEventsRequest) invocation.getArguments()[0], endpoint);
+                    }
+                });
+
+        final EventRecorder recorder = new EventRecorder(pinpointContext, dbUtil, submissionRunnable);
+        recordEvents(recorder, pinpointContext, 12);
+
+        assertEquals(maxConcurrentSubmissions, recorder.processEvents().size());
+        assertEquals("all in flight together", 0, allBatches.getCount());
+        assertEquals(12 - maxConcurrentSubmissions, dbUtil.queryAllEvents().getCount());
+    }
+
+    @Test
+    public void testInterruptedSubmissionWaitsForBatchesInFlight() throws Exception {
+        final int maxConcurrentSubmissions = 4;
+        final PinpointContext pinpointContext = concurrentSubmissionContext(Integer.MAX_VALUE,
+                maxConcurrentSubmissions);
+        final EndpointProfile endpoint = pinpointContext.getTargetingClient().currentEndpoint();
+        final CountDownLatch sending = new CountDownLatch(maxConcurrentSubmissions);
+        final AtomicInteger running = new AtomicInteger();
+        when(pinpointContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class)))
+                .thenAnswer(new Answer<PutEventsResult>() {
+                    @Override
+                    public PutEventsResult answer(final InvocationOnMock invocation) throws Exception {
+                        running.incrementAndGet();
+                        try {
+                            sending.countDown();
+                            // until the submission is cancelled
+                            Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                            return acceptAll((PutEventsRequest) invocation.getArguments()[0], endpoint);
+                        } catch (final InterruptedException e) {
+                            throw new AmazonClientException("interrupted", e);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }
+                });
+
+        final EventRecorder recorder = new EventRecorder(pinpointContext, dbUtil, submissionRunnable);
+        recordEvents(recorder, pinpointContext, 12);
+
+        final List<List<AnalyticsEvent>> submitted = new ArrayList<List<AnalyticsEvent>>();
+        final Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                submitted.add(recorder.processEvents());
+            }
+        });
+        submitter.start();
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        submitter.interrupt();
+        submitter.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertEquals(1, submitted.size());
+        assertTrue(submitted.get(0).isEmpty());
+        assertEquals("batches done before giving up", 0, running.get());
+        assertEquals(12, dbUtil.queryAllEvents().getCount());
+    }
+
+    /**
+     * Returns a context whose batches hold one event each, with the given
+     * submission limits. A null max submissions allowed is left to its default.
+     */
+    private PinpointContext concurrentSubmissionContext(final Integer maxSubmissionsAllowed,
+                                                        final int maxConcurrentSubmissions) {
+        final AndroidPreferencesConfiguration config = mock(AndroidPreferencesConfiguration.class);
+        when(config.optLong(eq(EventRecorder.KEY_MAX_PENDING_SIZE), any(Long.class)))
+                .thenReturn(EventRecorder.DEFAULT_MAX_PENDING_SIZE);
+        // one event per batch
+        when(config.optLong(eq(EventRecorder.KEY_MAX_SUBMISSION_SIZE), any(Long.class))).thenReturn(1L);
+        if (maxSubmissionsAllowed != null) {
+            when(config.optInt(eq(EventRecorder.KEY_MAX_SUBMISSIONS_ALLOWED), any(Integer.class)))
+                    .thenReturn(maxSubmissionsAllowed);
+        } else {
+            when(config.optInt(eq(EventRecorder.KEY_MAX_SUBMISSIONS_ALLOWED), any(Integer.class)))
+                    .thenAnswer(new Answer<Integer>() {
+                        @Override
+                        public Integer answer(final InvocationOnMock invocation) {
+                            return (Integer) invocation.getArguments()[1];
+                        }
+                    });
+        }
+        when(config.optInt(eq(EventRecorder.KEY_MAX_CONCURRENT_SUBMISSIONS), any(Integer.class)))
+                .thenReturn(maxConcurrentSubmissions);
+        final PinpointContext pinpointContext = new AnalyticsContextBuilder()
+                .withSdkInfo(SDK_NAME, SDK_VERSION)
+                .withUniqueIdValue(UNIQUE_ID)
+                .withDeviceDetails(testDeviceDetails)
+                .withConfiguration(config)
+                .withContext(RuntimeEnvironment.application.getApplicationContext())
+                .build();
+        final EndpointProfile endpoint = new EndpointProfile(pinpointContext);
+        when(pinpointContext.getTargetingClient().currentEndpoint()).thenReturn(endpoint);
+        return pinpointContext;
+    }
+
+    private static List<String> recordEvents(final EventRecorder recorder, final PinpointContext pinpointContext,
+                                             final int count) {
+        final List<String> eventIds = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            final AnalyticsEvent event = AnalyticsEvent.newInstance(pinpointContext, SESSION_ID, SESSION_START,
+                    SESSION_END, SESSION_DURATION, TIME_STAMP + i, EVENT_NAME);
+            recorder.recordEvent(event);
+            eventIds.add(event.getEventId());
+        }
+        return eventIds;
+    }
+
+    private static PutEventsResult acceptAll(final PutEventsRequest request, final EndpointProfile endpoint) {
+        final ItemResponse response = new ItemResponse().withEndpointItemResponse(
+                new EndpointItemResponse().withStatusCode(202).withMessage("Accepted"));
+        for (final String eventId : request.getEventsRequest().getBatchItem()
+                .get(endpoint.getEndpointId()).getEvents().keySet()) {
+            response.addEventsItemResponseEntry(eventId,
+                    new EventItemResponse().withStatusCode(202).withMessage("Accepted"));
+        }
+        return new PutEventsResult().withEventsResponse(
+                new EventsResponse().addResultsEntry(endpoint.getEndpointId(), response));
+    }
 }
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016-2019 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.pinpoint.internal.event;
+
+import com.amazonaws.Request;
+import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
+import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextBuilder;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.configuration.AndroidPreferencesConfiguration;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.http.GzipRequestHandler;
+import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.MockDeviceDetails;
+import com.amazonaws.mobileconnectors.pinpoint.targeting.endpointProfile.EndpointProfile;
+import com.amazonaws.services.pinpoint.model.EndpointItemResponse;
+import com.amazonaws.services.pinpoint.model.EventItemResponse;
+import com.amazonaws.services.pinpoint.model.EventsResponse;
+import com.amazonaws.services.pinpoint.model.ItemResponse;
+import com.amazonaws.services.pinpoint.model.PutEventsRequest;
+import com.amazonaws.services.pinpoint.model.PutEventsResult;
+import com.amazonaws.services.pinpoint.model.transform.PutEventsRequestMarshaller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drains a full 5 MB backlog over a simulated link with a fixed round trip
+ * time and a bandwidth shared by all requests, sequentially as before,
+ * concurrently, and concurrently with gzipped bodies. Request bodies are
+ * marshalled, and compressed, as the client would send them.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(RobolectricTestRunner.class)
+public class EventSubmissionBenchmarkTest {
+    private static final long BACKLOG_SIZE = EventRecorder.DEFAULT_MAX_PENDING_SIZE;
+    private static final long ROUND_TRIP_MILLIS = 50;
+    private static final long BYTES_PER_SECOND = 4 * 1024 * 1024;
+
+    private PinpointContext pinpointContext;
+    private AndroidPreferencesConfiguration config;
+    private EndpointProfile endpointProfile;
+    private PinpointDBUtil dbUtil;
+    private volatile boolean gzip;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final Object link = new Object();
+
+    @Before
+    public void setup() {
+        config = mock(AndroidPreferencesConfiguration.class);
+        when(config.optLong(eq(EventRecorder.KEY_MAX_PENDING_SIZE), any(Long.class)))
+                .thenReturn(2 * BACKLOG_SIZE);
+        when(config.optLong(eq(EventRecorder.KEY_MAX_SUBMISSION_SIZE), any(Long.class)))
+                .thenReturn(EventRecorder.DEFAULT_MAX_SUBMISSION_SIZE);
+        when(config.optInt(eq(EventRecorder.KEY_MAX_SUBMISSIONS_ALLOWED), any(Integer.class)))
+                .thenReturn(Integer.MAX_VALUE);
+        pinpointContext = new AnalyticsContextBuilder()
+                .withSdkInfo("AppIntelligenceSDK-Analytics", "test")
+                .withUniqueIdValue("abc123")
+                .withDeviceDetails(new MockDeviceDetails())
+                .withConfiguration(config)
+                .withContext(RuntimeEnvironment.application.getApplicationContext())
+                .build();
+        endpointProfile = new EndpointProfile(pinpointContext);
+        when(pinpointContext.getTargetingClient().currentEndpoint()).thenReturn(endpointProfile);
+        final GzipRequestHandler gzipHandler = new GzipRequestHandler(PutEventsRequest.class);
+        when(pinpointContext.getPinpointServiceClient().putEvents(any(PutEventsRequest.class)))
+                .thenAnswer(new Answer<PutEventsResult>() {
+                    @Override
+                    public PutEventsResult answer(final InvocationOnMock invocation) throws Exception {
+                        final PutEventsRequest request = (PutEventsRequest) invocation.getArguments()[0];
+                        final Request<PutEventsRequest> httpRequest = new PutEventsRequestMarshaller().marshall(request);
+                        if (gzip) {
+                            gzipHandler.beforeRequest(httpRequest);
+                        }
+                        final long bytes = Long.parseLong(httpRequest.getHeaders().get("Content-Length"));
+                        bytesSent.addAndGet(bytes);
+                        Thread.sleep(ROUND_TRIP_MILLIS);
+                        synchronized (link) {
+                            Thread.sleep(bytes * 1000 / BYTES_PER_SECOND);
+                        }
+
+                        final ItemResponse itemResponse = new ItemResponse().withEndpointItemResponse(
+                                new EndpointItemResponse().withStatusCode(202).withMessage("Accepted"));
+                        for (final String eventId : request.getEventsRequest().getBatchItem()
+                                .get(endpointProfile.getEndpointId()).getEvents().keySet()) {
+                            itemResponse.addEventsItemResponseEntry(eventId,
+                                    new EventItemResponse().withStatusCode(202).withMessage("Accepted"));
+                        }
+                        return new PutEventsResult().withEventsResponse(new EventsResponse()
+                                .addResultsEntry(endpointProfile.getEndpointId(), itemResponse));
+                    }
+                });
+        dbUtil = new PinpointDBUtil(RuntimeEnvironment.application.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbUtil.closeDB();
+    }
+
+    @Test
+    public void benchmarkBacklogSubmission() {
+        drain(1, false);
+        drain(EventRecorder.DEFAULT_MAX_CONCURRENT_SUBMISSIONS, false);
+        drain(EventRecorder.DEFAULT_MAX_CONCURRENT_SUBMISSIONS, true);
+    }
+
+    private void drain(final int maxConcurrentSubmissions, final boolean gzipBodies) {
+        fillBacklog();
+        gzip = gzipBodies;
+        bytesSent.set(0);
+        when(config.optInt(eq(EventRecorder.KEY_MAX_CONCURRENT_SUBMISSIONS), any(Integer.class)))
+                .thenReturn(maxConcurrentSubmissions);
+        final EventRecorder eventRecorder = new EventRecorder(pinpointContext, dbUtil, mock(ExecutorService.class));
+        final long start = System.nanoTime();
+        eventRecorder.processEvents(false);
+        final long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println(String.format("concurrency %d, gzip %-5s: %6d ms, %8d bytes sent "
+                        + "(%5d ms at link bandwidth), %d events left",
+                maxConcurrentSubmissions, gzipBodies, millis, bytesSent.get(),
+                bytesSent.get() * 1000 / BYTES_PER_SECOND, dbUtil.queryAllEvents().getCount()));
+    }
+
+    private void fillBacklog() {
+        dbUtil.deleteOldestEvents(0);
+        int i = 0;
+        while (dbUtil.getTotalSize() < BACKLOG_SIZE) {
+            final List<AnalyticsEvent> events = new ArrayList<AnalyticsEvent>();
+            for (int j = 0; j < 500; j++, i++) {
+                final AnalyticsEvent event = AnalyticsEvent.newInstance(pinpointContext, "session-" + (i / 500),
+                        1560000000000L, null, null, 1560000000000L + i * 1000L,
+                        i % 3 == 0 ? "level_complete" : "button_click");
+                event.addAttribute("screen", "screen_" + (i % 20));
+                event.addAttribute("variant", i % 2 == 0 ? "A" : "B");
+                event.addMetric("duration", i * 1.5);
+                event.addMetric("position", (double) (i % 10));
+                events.add(event);
+            }
+            dbUtil.saveEvents(events);
+        }
+    }
+}
@@ -30,9 +30,17 @@ import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.MockDeviceDe
 import android.database.Cursor;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE, sdk=23)
@@ -156,4 +164,134 @@ public class PinpointDBUtilTest {
         assertEquals(c2.getCount(), 0);
         c2.close();
     }
+
+    @Test
+    public void testSaveEvents() {
+        List<AnalyticsEvent> events = new ArrayList<AnalyticsEvent>();
+        for (int i = 0; i < 10; i++) {
+            events.add(AnalyticsEvent.newInstance(mockContext, SESSION_ID, SESSION_START,
+                    SESSION_END, SESSION_DURATION, TIME_STAMP + i, EVENT_NAME));
+        }
+        long sizeBefore = dbUtil.getTotalSize();
+        assertEquals(10, dbUtil.saveEvents(events));
+
+        Cursor c = dbUtil.queryAllEvents();
+        assertEquals(10, c.getCount());
+        long size = 0;
+        while (c.moveToNext()) {
+            size += c.getInt(EventTable.COLUMN_INDEX.SIZE.getValue());
+        }
+        c.close();
+        assertEquals(sizeBefore + size, dbUtil.getTotalSize());
+    }
+
+    @Test
+    public void testFailedSaveRollsBackInternedValues() throws Exception {
+        dbUtil.saveEvent(AnalyticsEvent.newInstance(mockContext, SESSION_ID,
+                SESSION_START, SESSION_END, SESSION_DURATION, TIME_STAMP, EVENT_NAME));
+        long size = dbUtil.getTotalSize();
+        int keys = countKeys();
+        // only the locale of this event is new
+        testDeviceDetails.setLocale(new Locale("xx", "YY"));
+        AnalyticsEvent analyticsEvent = AnalyticsEvent.newInstance(mockContext, SESSION_ID,
+                SESSION_START, SESSION_END, SESSION_DURATION, TIME_STAMP, EVENT_NAME);
+        try {
+            dbUtil.saveEvents(Arrays.asList(analyticsEvent, null));
+            fail("saving a null event should fail");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        assertEquals("no orphan keys", keys, countKeys());
+        assertEquals(size, dbUtil.getTotalSize());
+
+        Uri uri = dbUtil.saveEvent(analyticsEvent);
+        assertEquals(keys + 1, countKeys());
+        Cursor c = dbUtil.queryEventById(Integer.parseInt(uri.getLastPathSegment()));
+        c.moveToFirst();
+        byte[] data = c.getBlob(EventTable.COLUMN_INDEX.DATA.getValue());
+        c.close();
+        assertEquals(analyticsEvent.toJSONObject().toString(),
+                new EventCodec(new PinpointDBBase(RuntimeEnvironment.application)).decodeJSON(data).toString());
+    }
+
+    @Test
+    public void testDowngradeRecreatesTables() {
+        dbUtil.closeDB();
+        PinpointDatabaseHelper newerHelper = new PinpointDatabaseHelper(
+                RuntimeEnvironment.application.getApplicationContext(), 3);
+        newerHelper.getWritableDatabase();
+        newerHelper.close();
+
+        dbUtil = new PinpointDBUtil(RuntimeEnvironment.application.getApplicationContext());
+        AnalyticsEvent analyticsEvent = AnalyticsEvent.newInstance(mockContext, SESSION_ID,
+                SESSION_START, SESSION_END, SESSION_DURATION, TIME_STAMP, EVENT_NAME);
+        dbUtil.saveEvent(analyticsEvent);
+        Cursor c = dbUtil.queryAllEvents();
+        assertEquals(1, c.getCount());
+        c.close();
+    }
+
+    private int countKeys() {
+        Cursor cursor = new PinpointDBBase(RuntimeEnvironment.application).queryKeys();
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testDeleteOldestEvents() {
+        AnalyticsEvent analyticsEvent = AnalyticsEvent.newInstance(mockContext, SESSION_ID,
+                SESSION_START, SESSION_END, SESSION_DURATION, TIME_STAMP, EVENT_NAME);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(Integer.parseInt(dbUtil.saveEvent(analyticsEvent).getLastPathSegment()));
+        }
+        long eventSize = dbUtil.getTotalSize() / 10;
+
+        assertEquals(0, dbUtil.deleteOldestEvents(eventSize * 10));
+        // keeps the newest events that fit
+        assertEquals(7, dbUtil.deleteOldestEvents(eventSize * 3 + eventSize / 2));
+        assertEquals(eventSize * 3, dbUtil.getTotalSize());
+
+        Cursor c = dbUtil.queryAllEvents();
+        assertEquals(3, c.getCount());
+        c.close();
+        for (int i = 0; i < ids.size(); i++) {
+            Cursor e = dbUtil.queryEventById(ids.get(i));
+            assertEquals(i >= 7 ? 1 : 0, e.getCount());
+            e.close();
+        }
+    }
+
+    @Test
+    public void testDeleteEvents() {
+        AnalyticsEvent analyticsEvent = AnalyticsEvent.newInstance(mockContext, SESSION_ID,
+                SESSION_START, SESSION_END, SESSION_DURATION, TIME_STAMP, EVENT_NAME);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(Integer.parseInt(dbUtil.saveEvent(analyticsEvent).getLastPathSegment()));
+        }
+        long eventSize = dbUtil.getTotalSize() / 10;
+
+        Map<Integer, Integer> idsAndSizes = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 10; i += 2) {
+            idsAndSizes.put(ids.get(i), (int) eventSize);
+        }
+        assertEquals(5, dbUtil.deleteEvents(idsAndSizes));
+        assertEquals(eventSize * 5, dbUtil.getTotalSize());
+        for (int i = 0; i < ids.size(); i++) {
+            Cursor e = dbUtil.queryEventById(ids.get(i));
+            assertEquals(i % 2 == 0 ? 0 : 1, e.getCount());
+            e.close();
+        }
+
+        // unknown sizes are recalculated
+        idsAndSizes.clear();
+        idsAndSizes.put(ids.get(1), null);
+        assertEquals(1, dbUtil.deleteEvents(idsAndSizes));
+        assertEquals(eventSize * 4, dbUtil.getTotalSize());
+        assertEquals(0, dbUtil.deleteEvents(new HashMap<Integer, Integer>()));
+    }
 }
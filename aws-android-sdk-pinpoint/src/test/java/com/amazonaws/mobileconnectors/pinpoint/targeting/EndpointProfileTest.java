@@ -258,6 +258,28 @@ public class EndpointProfileTest extends MobileAnalyticsTestBase {
                                                       .getMake()));
     }
 
+    @Test
+    public void testContentHash() {
+        final EndpointProfile first = new EndpointProfile(mockContext);
+        first.addAttribute("key1", Arrays.asList("a", "b"));
+        first.addAttribute("key2", Arrays.asList("c"));
+        first.addMetric("metric", 1.0);
+        final EndpointProfile second = new EndpointProfile(mockContext);
+        second.addMetric("metric", 1.0);
+        second.addAttribute("key2", Arrays.asList("c"));
+        second.addAttribute("key1", Arrays.asList("a", "b"));
+        second.setEffectiveDate(first.getEffectiveDate() + 1000L);
+
+        // the order things were added in and the effective date don't matter
+        assertEquals(first.getContentHash(), second.getContentHash());
+
+        second.addAttribute("key1", Arrays.asList("b", "a"));
+        assertFalse(first.getContentHash().equals(second.getContentHash()));
+        second.addAttribute("key1", Arrays.asList("a", "b"));
+        second.getUser().setUserId("user");
+        assertFalse(first.getContentHash().equals(second.getContentHash()));
+    }
+
     @Test
     public void testLocaleWithInvalidISO3Code() {
         final TargetingClient targetingClient = new TargetingClient(mockContext, mock(ThreadPoolExecutor.class));
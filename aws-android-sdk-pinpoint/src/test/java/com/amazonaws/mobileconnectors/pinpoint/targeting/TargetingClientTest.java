@@ -42,8 +42,13 @@ import static junit.framework.Assert.assertNotNull;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -215,4 +220,94 @@ public class TargetingClientTest extends MobileAnalyticsTestBase {
             assertEquals(request.getEndpointRequest().getUser().getUserId(), "");
         }
     }
+
+    private void runLastEnqueued(int numExpectedRunnables) {
+        final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor
+                .forClass(Runnable.class);
+        verify(mockPinpointExecutor, times(numExpectedRunnables))
+                .execute(runnableCaptor.capture());
+        runnableCaptor.getValue().run();
+    }
+
+    @Test
+    public void updateEndpoint_rapidUpdates_coalescedIntoOne() {
+        targetingClient.updateEndpointProfile();
+        targetingClient.addAttribute("key", Arrays.asList("value"));
+        targetingClient.updateEndpointProfile();
+        targetingClient.updateEndpointProfile();
+
+        final ArgumentCaptor<UpdateEndpointRequest> requestArgumentCaptor = ArgumentCaptor.forClass(UpdateEndpointRequest.class);
+        runLastEnqueued(1);
+        verify(mockPinpointServiceClient, times(1))
+                .updateEndpoint(requestArgumentCaptor.capture());
+        assertEquals(Arrays.asList("value"),
+                requestArgumentCaptor.getValue().getEndpointRequest().getAttributes().get("key"));
+
+        // an update requested after the pending one ran is queued again
+        targetingClient.updateEndpointProfile();
+        runLastEnqueued(2);
+    }
+
+    @Test
+    public void updateEndpoint_withDelay_queuedAfterDelay() {
+        when(mockContext.getConfiguration().optLong(eq(TargetingClient.KEY_ENDPOINT_UPDATE_DELAY), anyLong()))
+                .thenReturn(200L);
+
+        targetingClient.updateEndpointProfile();
+        targetingClient.updateEndpointProfile();
+
+        // the executor isn't held while the update waits
+        verify(mockPinpointExecutor, never()).execute(any(Runnable.class));
+        verify(mockPinpointExecutor, timeout(2000).times(1)).execute(any(Runnable.class));
+        runLastEnqueued(1);
+        verify(mockPinpointServiceClient, times(1))
+                .updateEndpoint(any(UpdateEndpointRequest.class));
+    }
+
+    @Test
+    public void updateEndpoint_unchangedProfile_skipsUpdate() {
+        when(mockContext.getConfiguration().optLong(eq(TargetingClient.KEY_ENDPOINT_RESYNC_INTERVAL), anyLong()))
+                .thenReturn(TargetingClient.DEFAULT_ENDPOINT_RESYNC_INTERVAL);
+
+        targetingClient.updateEndpointProfile();
+        runLastEnqueued(1);
+        assertTrue(targetingClient.isEndpointProfileSynced(targetingClient.currentEndpoint().getContentHash()));
+
+        targetingClient.updateEndpointProfile();
+        runLastEnqueued(2);
+        verify(mockPinpointServiceClient, times(1))
+                .updateEndpoint(any(UpdateEndpointRequest.class));
+
+        targetingClient.addMetric("metric", 1.0);
+        assertFalse(targetingClient.isEndpointProfileSynced(targetingClient.currentEndpoint().getContentHash()));
+        targetingClient.updateEndpointProfile();
+        runLastEnqueued(3);
+        verify(mockPinpointServiceClient, times(2))
+                .updateEndpoint(any(UpdateEndpointRequest.class));
+    }
+
+    @Test
+    public void updateEndpoint_failedUpdate_notMarkedSynced() {
+        when(mockContext.getConfiguration().optLong(eq(TargetingClient.KEY_ENDPOINT_RESYNC_INTERVAL), anyLong()))
+                .thenReturn(TargetingClient.DEFAULT_ENDPOINT_RESYNC_INTERVAL);
+        when(mockPinpointServiceClient.updateEndpoint(any(UpdateEndpointRequest.class)))
+                .thenThrow(new com.amazonaws.AmazonClientException("offline"));
+
+        targetingClient.updateEndpointProfile();
+        runLastEnqueued(1);
+        assertFalse(targetingClient.isEndpointProfileSynced(targetingClient.currentEndpoint().getContentHash()));
+    }
+
+    @Test
+    public void isEndpointProfileSynced_afterResyncInterval_false() {
+        when(mockContext.getConfiguration().optLong(eq(TargetingClient.KEY_ENDPOINT_RESYNC_INTERVAL), anyLong()))
+                .thenReturn(60000L);
+        targetingClient.markEndpointProfileSynced("hash");
+        assertTrue(targetingClient.isEndpointProfileSynced("hash"));
+        assertFalse(targetingClient.isEndpointProfileSynced("other"));
+
+        when(mockContext.getConfiguration().optLong(eq(TargetingClient.KEY_ENDPOINT_RESYNC_INTERVAL), anyLong()))
+                .thenReturn(0L);
+        assertFalse(targetingClient.isEndpointProfileSynced("hash"));
+    }
 }